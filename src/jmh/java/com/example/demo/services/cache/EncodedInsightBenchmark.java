@@ -0,0 +1,69 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.unit.DataSize;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость тела ответа при попадании в кэш: сериализация Jackson на каждый запрос
+ * против готовых байтов из EncodedInsightCache
+ *
+ * <p>Запуск с профилем аллокаций:
+ * {@code mvn -Pbenchmarks test-compile exec:exec -Djmh.args="EncodedInsightBenchmark -prof gc"}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodedInsightBenchmark {
+
+    @Param({"ru", "en"})
+    private String language;
+
+    private ObjectMapper objectMapper;
+    private EncodedInsightCache encodedInsights;
+    private InsightResponse response;
+
+    @Setup
+    public void setUp() {
+        objectMapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        encodedInsights = new EncodedInsightCache(objectMapper, new SimpleMeterRegistry(), true,
+                DataSize.ofMegabytes(16), 1024, 50_000);
+        response = InsightRedisSerializerBenchmark.corpusResponse(language, 1);
+        encodedInsights.get(response);
+    }
+
+    @Benchmark
+    public byte[] jackson() throws Exception {
+        return objectMapper.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public byte[] encodedHit() {
+        return encodedInsights.get(response).json();
+    }
+
+    @Benchmark
+    public byte[] encodedGzipHit() {
+        return encodedInsights.get(response).gzip();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение JSON с именами классов (прежний формат Redis) и CompactRedisSerializer (Smile + LZ4)
+ * на ответах из корпуса src/test/resources/insight-corpus
+ *
+ * <p>Запуск: {@code mvn -Pbenchmarks test-compile exec:exec -Djmh.args="InsightRedisSerializerBenchmark"}.
+ * Время кодирования и декодирования - нс на операцию; размер записи в байтах выводится
+ * в результатах дополнительным счетчиком {@code bytesPerEntry}.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsightRedisSerializerBenchmark {
+
+    @Param({"json", "compact"})
+    private String format;
+
+    @Param({"ru", "en"})
+    private String language;
+
+    /** Во сколько раз увеличен ответ: 1 - типичный ответ модели */
+    @Param({"1", "4"})
+    private int scale;
+
+    private RedisSerializer<Object> serializer;
+    private InsightResponse response;
+    private byte[] encoded;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        RedisSerializer<?> selected = "json".equals(format)
+                ? CompactRedisSerializer.jsonSerializer()
+                : new CompactRedisSerializer<>(InsightResponse.class, 512, true);
+        serializer = (RedisSerializer<Object>) selected;
+        response = corpusResponse(language, scale);
+        encoded = serializer.serialize(response);
+    }
+
+    @Benchmark
+    public byte[] encode(EntrySize size) {
+        size.bytesPerEntry = encoded.length;
+        return serializer.serialize(response);
+    }
+
+    @Benchmark
+    public Object decode(EntrySize size) {
+        size.bytesPerEntry = encoded.length;
+        return serializer.deserialize(encoded);
+    }
+
+    /**
+     * Размер закодированной записи в байтах - дополнительный счетчик в результатах JMH.
+     * JMH обнуляет счетчики перед итерацией, поэтому значение записывается в самом замере.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class EntrySize {
+
+        public long bytesPerEntry;
+    }
+
+    /**
+     * Ответ из корпуса: первый абзац - резюме, нумерованные строки - концепции, строки с URL - источники
+     */
+    static InsightResponse corpusResponse(String language, int scale) {
+        String text;
+        try (InputStream in = InsightRedisSerializerBenchmark.class
+                .getResourceAsStream("/insight-corpus/" + language + ".txt")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Нет корпуса для языка " + language);
+            }
+            text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        String[] lines = text.split("\n");
+        StringBuilder summary = new StringBuilder();
+        List<String> concepts = new ArrayList<>();
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (int copy = 0; copy < scale; copy++) {
+            summary.append(lines[1]).append(' ');
+            for (String line : lines) {
+                int url = line.indexOf("http");
+                if (url > 0) {
+                    recommendations.add(new Recommendation(line.substring(0, url).trim(), line.substring(url).trim()));
+                } else if (!line.isEmpty() && Character.isDigit(line.charAt(0))) {
+                    concepts.add(line);
+                }
+            }
+        }
+        return new InsightResponse("Spring Boot", summary.toString().trim(), concepts, recommendations, Instant.now());
+    }
+}
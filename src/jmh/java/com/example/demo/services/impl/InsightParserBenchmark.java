@@ -0,0 +1,57 @@
+package com.example.demo.services.impl;
+
+import com.example.demo.dto.insight.InsightResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение прежнего разбора регулярными выражениями и однопроходного InsightTextParser
+ *
+ * <p>Запуск: {@code mvn -Pbenchmarks test-compile exec:exec}. Профиль по умолчанию
+ * передает {@code -prof gc}, чтобы получить gc.alloc.rate.norm (байт на операцию).</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InsightParserBenchmark {
+
+    private static final String TOPIC = "Spring Boot";
+
+    @Param({"ru", "en", "es", "fr", "de"})
+    private String language;
+
+    /** Во сколько раз увеличен ответ модели: 1 - типичный ответ (1-2 КБ) */
+    @Param({"1", "4", "16"})
+    private int scale;
+
+    private String content;
+
+    @Setup
+    public void setUp() {
+        content = InsightCorpus.scale(InsightCorpus.load(language), scale);
+    }
+
+    @Benchmark
+    public InsightResponse regex() {
+        return LegacyInsightTextParser.parse(content, TOPIC);
+    }
+
+    @Benchmark
+    public InsightResponse singlePass() {
+        return InsightTextParser.parse(content, TOPIC).insight();
+    }
+}
@@ -1,29 +1,21 @@
 package com.example.demo.config;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.http.client.ClientHttpRequestFactory;
-import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.web.client.RestTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
-import java.time.Duration;
-
 @Configuration
 @EnableCaching
 @EnableAsync
+@EnableScheduling
 public class AppConfig implements WebMvcConfigurer {
     
-    @Value("${ollama.api.timeout:120000}")
-    private int ollamaApiTimeout;
-
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/api/**")
@@ -34,31 +26,20 @@ public class AppConfig implements WebMvcConfigurer {
     }
     
     /**
-     * Создает RestTemplate с настроенными таймаутами для AI сервисов
-     * с увеличенным таймаутом для долгих запросов к Ollama API
-     */
-    @Bean(name = "aiRestTemplate")
-    public RestTemplate aiRestTemplate(RestTemplateBuilder builder) {
-        return builder
-                .setConnectTimeout(Duration.ofSeconds(10))
-                .setReadTimeout(Duration.ofMillis(ollamaApiTimeout)) // Используем таймаут из конфигурации
-                .requestFactory(this::clientHttpRequestFactory)
-                .build();
-    }
-    
-    private ClientHttpRequestFactory clientHttpRequestFactory() {
-        SimpleClientHttpRequestFactory factory = new SimpleClientHttpRequestFactory();
-        factory.setConnectTimeout(10000);                // 10 секунд на подключение
-        factory.setReadTimeout(ollamaApiTimeout);        // Таймаут из конфигурации (по умолчанию 120 секунд)
-        return factory;
-    }
-    
-    /**
-     * Настройка менеджера кэша для приложения
+     * Пул потоков для длительных операций с AI (потоковая генерация через SSE),
+     * чтобы не удерживать потоки Tomcat на время генерации
      */
-    @Bean
-    public CacheManager cacheManager() {
-        // В production следует заменить на Redis или другое распределенное решение
-        return new ConcurrentMapCacheManager("aiResponses", "userProfiles");
+    @Bean(name = "aiTaskExecutor")
+    public ThreadPoolTaskExecutor aiTaskExecutor(
+            @Value("${ai.executor.core-pool-size:4}") int corePoolSize,
+            @Value("${ai.executor.max-pool-size:16}") int maxPoolSize,
+            @Value("${ai.executor.queue-capacity:100}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(corePoolSize);
+        executor.setMaxPoolSize(maxPoolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("ai-task-");
+        executor.initialize();
+        return executor;
     }
 }
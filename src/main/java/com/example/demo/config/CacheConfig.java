@@ -1,48 +1,210 @@
 package com.example.demo.config;
 
+import com.example.demo.services.cache.AnalysisCacheStore;
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.services.cache.CacheInvalidationBus;
+import com.example.demo.services.cache.CompactRedisSerializer;
+import com.example.demo.services.cache.DurableCacheManager;
+import com.example.demo.services.cache.InsightCacheSnapshot;
+import com.example.demo.services.cache.InsightWeigher;
+import com.example.demo.services.cache.LocalCacheMeterBinderProvider;
+import com.example.demo.services.cache.SnapshotRestoringCache;
+import com.example.demo.services.cache.TwoLevelCacheManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
-import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.util.unit.DataSize;
 
 import java.time.Duration;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Конфигурация кэширования для приложения
- * Профиль "dev" использует стандартный кэш в памяти
- * Профиль "prod" использует Redis для распределенного кэширования
+ * Профиль "prod" использует двухуровневый кэш: локальный Caffeine (L1) перед Redis (L2)
+ * с инвалидацией L1 на других узлах через Redis pub/sub
+ * Остальные профили используют только ограниченный локальный кэш Caffeine
+ * Локальный кэш ответов AI ограничен оценкой занимаемой памяти, остальные - числом записей;
+ * вытеснение в обоих случаях выполняется политикой W-TinyLFU Caffeine с учетом частоты обращений
+ * Кэш ответов AI в обоих случаях дополняется долговременным хранилищем в таблице ai_analysis_cache
  */
 @Configuration
 @EnableCaching
 public class CacheConfig {
 
+    /** Кэши, промахи которых дочитываются из ai_analysis_cache */
+    private static final Set<String> DURABLE_CACHES = Set.of("aiResponses");
+
+    /** Кэши, промахи которых после перезапуска дочитываются из снимка (профили без Redis) */
+    private static final Set<String> SNAPSHOT_CACHES = Set.of("aiResponses");
+
+    /** Кэши профилей без Redis */
+    private static final List<String> LOCAL_CACHES = List.of("aiResponses", "userProfiles");
+
+    /** Размер и время жизни записей локального кэша (L1) */
+    @Value("${ai.cache.l1.max-size:1000}")
+    private long localMaxSize;
+
+    @Value("${ai.cache.l1.ttl:10m}")
+    private Duration localTtl;
+
+    /** Объем памяти под ответы AI в локальном кэше по оценке {@link InsightWeigher} */
+    @Value("${ai.cache.l1.ai-responses.max-weight:64MB}")
+    private DataSize insightsMaxWeight;
+
+    @Value("${ai.cache.l1.ai-responses.ttl:${ai.cache.l1.ttl:10m}}")
+    private Duration insightsLocalTtl;
+
+    @Value("${ai.cache.l1.user-profiles.ttl:${ai.cache.l1.ttl:10m}}")
+    private Duration userProfilesLocalTtl;
+
+    /** Жесткий TTL ответов AI: дольше ответы не хранятся в Redis (см. ai.cache.insights.soft-ttl) */
+    @Value("${ai.cache.insights.hard-ttl:24h}")
+    private Duration insightsHardTtl;
+
+    /**
+     * Формат записи ответов AI в Redis: compact (Smile + LZ4) или json. Читаются оба формата,
+     * поэтому при поэтапном обновлении запись переключается на compact после обновления всех узлов
+     */
+    @Value("${ai.cache.redis.format:compact}")
+    private String insightsRedisFormat;
+
+    /** Размер сериализованного ответа в байтах, начиная с которого он сжимается LZ4 */
+    @Value("${ai.cache.redis.compression-threshold:512}")
+    private int compressionThreshold;
+
+    /**
+     * Локальный кэш для сред без Redis
+     *
+     * <p>Кэш ответов AI при включенном снимке ({@code ai.cache.snapshot.enabled}) дочитывает промахи
+     * из снимка предыдущего запуска.</p>
+     *
+     * @return CacheManager с ограниченными по объему и времени жизни кэшами Caffeine
+     */
+    @Bean
+    @Profile("!prod")
+    public CacheManager localCacheManager(AnalysisCacheStore analysisCacheStore, InsightCacheSnapshot snapshot) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(LOCAL_CACHES.toArray(String[]::new)) {
+            @Override
+            protected org.springframework.cache.Cache adaptCaffeineCache(
+                    String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> cache) {
+                org.springframework.cache.Cache adapted = super.adaptCaffeineCache(name, cache);
+                return snapshot.isEnabled() && SNAPSHOT_CACHES.contains(name)
+                        ? new SnapshotRestoringCache(adapted, snapshot)
+                        : adapted;
+            }
+        };
+        // Каждый кэш получает собственные ограничения и TTL
+        for (String name : LOCAL_CACHES) {
+            cacheManager.registerCustomCache(name, localCacheSpec(name).build());
+        }
+        return durable(cacheManager, analysisCacheStore);
+    }
+
+    /**
+     * Метрики локальных кэшей, в том числе обернутых долговременным и двухуровневым кэшем
+     */
+    @Bean
+    public CacheMeterBinderProvider<org.springframework.cache.Cache> localCacheMeterBinderProvider() {
+        return new LocalCacheMeterBinderProvider();
+    }
+
     /**
-     * Конфигурация Redis Cache Manager для продакшн среды
-     * 
+     * Канал инвалидаций локальных кэшей между узлами
+     */
+    @Bean
+    @Profile("prod")
+    public CacheInvalidationBus cacheInvalidationBus(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+            @Value("${ai.cache.invalidation-channel:ai-insight:cache-invalidation}") String channel) {
+        return new CacheInvalidationBus(redisTemplate, objectMapper, channel);
+    }
+
+    /**
+     * Подписка на канал инвалидаций
+     */
+    @Bean
+    @Profile("prod")
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                           CacheInvalidationBus invalidationBus) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(invalidationBus, invalidationBus.getTopic());
+        return container;
+    }
+
+    /**
+     * Конфигурация двухуровневого Cache Manager для продакшн среды
+     *
      * @param connectionFactory фабрика подключений Redis
-     * @return CacheManager настроенный для Redis
+     * @return CacheManager с локальным кэшем перед Redis
      */
     @Bean
     @Profile("prod")
-    public CacheManager redisCacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheManager redisCacheManager(RedisConnectionFactory connectionFactory,
+                                          CacheInvalidationBus invalidationBus, MeterRegistry meterRegistry,
+                                          AnalysisCacheStore analysisCacheStore) {
         RedisCacheConfiguration cacheConfig = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofHours(1)) // TTL по умолчанию для кэша
                 .serializeValuesWith(
                         RedisSerializationContext.SerializationPair.fromSerializer(
-                                new GenericJackson2JsonRedisSerializer()))
+                                CompactRedisSerializer.jsonSerializer()))
                 .disableCachingNullValues();
 
-        return RedisCacheManager.builder(connectionFactory)
+        RedisCacheManager remoteCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(cacheConfig)
-                .withCacheConfiguration("insightCache", 
+                .withCacheConfiguration("aiResponses", cacheConfig
+                        .entryTtl(insightsHardTtl)
+                        .serializeValuesWith(RedisSerializationContext.SerializationPair.fromSerializer(
+                                new CompactRedisSerializer<>(InsightResponse.class, compressionThreshold,
+                                        !"json".equalsIgnoreCase(insightsRedisFormat)))))
+                .withCacheConfiguration("insightCache",
                         RedisCacheConfiguration.defaultCacheConfig()
                                 .entryTtl(Duration.ofDays(1))) // больший TTL для AI-результатов
                 .build();
+        // Менеджер Redis не зарегистрирован как бин, поэтому инициализируется здесь
+        remoteCacheManager.afterPropertiesSet();
+
+        TwoLevelCacheManager cacheManager = new TwoLevelCacheManager(remoteCacheManager,
+                name -> localCacheSpec(name).build(), invalidationBus::publish, meterRegistry);
+        invalidationBus.setLocalEvictor(cacheManager::evictLocal);
+        return durable(cacheManager, analysisCacheStore);
+    }
+
+    private static CacheManager durable(CacheManager cacheManager, AnalysisCacheStore analysisCacheStore) {
+        return analysisCacheStore.isEnabled()
+                ? new DurableCacheManager(cacheManager, analysisCacheStore, DURABLE_CACHES)
+                : cacheManager;
+    }
+
+    /**
+     * Настройки локального кэша: ответы AI ограничены объемом памяти, остальные кэши - числом записей
+     *
+     * <p>TTL локального кэша ограничивает устаревание L1, если сообщение об инвалидации не было доставлено.</p>
+     *
+     * @param cacheName имя кэша; null - настройки по умолчанию
+     */
+    private Caffeine<Object, Object> localCacheSpec(String cacheName) {
+        Caffeine<Object, Object> spec = Caffeine.newBuilder().recordStats();
+        if ("aiResponses".equals(cacheName)) {
+            return spec.maximumWeight(insightsMaxWeight.toBytes())
+                    .weigher(new InsightWeigher())
+                    .expireAfterWrite(insightsLocalTtl);
+        }
+        return spec.maximumSize(localMaxSize)
+                .expireAfterWrite("userProfiles".equals(cacheName) ? userProfilesLocalTtl : localTtl);
     }
 }
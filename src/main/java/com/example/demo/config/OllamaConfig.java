@@ -1,11 +1,28 @@
 package com.example.demo.config;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
 
@@ -19,35 +36,188 @@ import java.util.stream.Collectors;
 
 /**
  * Конфигурация для работы с Ollama API
+ *
+ * <p>Все RestTemplate для Ollama используют один пул соединений Apache HttpClient 5
+ * с keep-alive, ограничением числа соединений на хост и вытеснением простаивающих соединений.
+ * Асинхронные запросы идут через неблокирующий клиент HttpClient 5 со вторым пулом с теми же ограничениями:
+ * блокирующий и неблокирующий транспорты HttpClient 5 не могут делить один пул. Метрики экспортируются
+ * для обоих пулов. Таймауты задаются только здесь: {@code ollama.api.connect-timeout}
+ * и {@code ollama.api.timeout}.</p>
  */
 @Configuration
 @Slf4j
 public class OllamaConfig {
 
-    @Value("${ollama.api.timeout:30000}")
-    private int apiTimeout;
+    @Value("${ollama.api.timeout:120000}")
+    private long apiTimeout;
+
+    @Value("${ollama.api.connect-timeout:5000}")
+    private long connectTimeout;
+
+    @Value("${ollama.http.max-connections-per-route:16}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${ollama.http.max-connections-total:64}")
+    private int maxConnectionsTotal;
+
+    @Value("${ollama.http.keep-alive:60s}")
+    private Duration keepAlive;
+
+    @Value("${ollama.http.idle-eviction:30s}")
+    private Duration idleEviction;
+
+    /**
+     * Пул соединений к Ollama API, общий для всех RestTemplate
+     *
+     * @return пул соединений с ограничениями на хост и в целом
+     */
+    @Bean(name = "ollamaConnectionManager", destroyMethod = "close")
+    public PoolingHttpClientConnectionManager ollamaConnectionManager() {
+        return PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setMaxConnTotal(maxConnectionsTotal)
+                .setDefaultConnectionConfig(connectionConfig())
+                .build();
+    }
+
+    /**
+     * Пул соединений неблокирующего клиента с теми же ограничениями на хост и в целом
+     *
+     * @return пул соединений асинхронных запросов
+     */
+    @Bean(name = "ollamaAsyncConnectionManager", destroyMethod = "close")
+    public PoolingAsyncClientConnectionManager ollamaAsyncConnectionManager() {
+        return PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setMaxConnTotal(maxConnectionsTotal)
+                .setDefaultConnectionConfig(connectionConfig())
+                .build();
+    }
+
+    /**
+     * HTTP-клиент на общем пуле: keep-alive ограничен {@code ollama.http.keep-alive},
+     * просроченные и простаивающие соединения закрываются фоновым потоком
+     */
+    @Bean(name = "ollamaPooledHttpClient", destroyMethod = "close")
+    public CloseableHttpClient ollamaPooledHttpClient(
+            @Qualifier("ollamaConnectionManager") PoolingHttpClientConnectionManager connectionManager) {
+        TimeValue maxKeepAlive = TimeValue.ofMilliseconds(keepAlive.toMillis());
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> maxKeepAlive)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleEviction.toMillis()))
+                .setDefaultRequestConfig(requestConfig())
+                .build();
+    }
 
     /**
-     * Создает RestTemplate с настроенными таймаутами и обработчиком ошибок для Ollama API
+     * Неблокирующий HTTP-клиент для асинхронных запросов к Ollama API на пуле ollamaAsyncConnectionManager.
+     * Ожидание ответа не занимает поток - результат приходит в обратный вызов; keep-alive, вытеснение
+     * соединений и таймауты совпадают с ollamaPooledHttpClient.
+     *
+     * @return запущенный асинхронный клиент
+     */
+    @Bean(name = "ollamaAsyncHttpClient", destroyMethod = "close")
+    public CloseableHttpAsyncClient ollamaAsyncHttpClient(
+            @Qualifier("ollamaAsyncConnectionManager") PoolingAsyncClientConnectionManager connectionManager) {
+        TimeValue maxKeepAlive = TimeValue.ofMilliseconds(keepAlive.toMillis());
+        CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setKeepAliveStrategy((response, context) -> maxKeepAlive)
+                .evictExpiredConnections()
+                .evictIdleConnections(TimeValue.ofMilliseconds(idleEviction.toMillis()))
+                .setDefaultRequestConfig(requestConfig())
+                .build();
+        client.start();
+        return client;
+    }
+
+    /**
+     * Параметры соединений, общие для обоих пулов
+     */
+    private ConnectionConfig connectionConfig() {
+        return ConnectionConfig.custom()
+                .setConnectTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setSocketTimeout(Timeout.ofMilliseconds(apiTimeout))
+                // Перед повторным использованием проверяем соединение, простаивавшее дольше 2 секунд
+                .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                .build();
+    }
+
+    /**
+     * Параметры запросов по умолчанию, общие для обоих клиентов
+     */
+    private RequestConfig requestConfig() {
+        return RequestConfig.custom()
+                // Ожидание свободного соединения из пула не должно превышать таймаут подключения
+                .setConnectionRequestTimeout(Timeout.ofMilliseconds(connectTimeout))
+                .setResponseTimeout(Timeout.ofMilliseconds(apiTimeout))
+                .build();
+    }
+
+    /**
+     * Фабрика запросов, общая для всех RestTemplate к Ollama
+     */
+    @Bean(name = "ollamaRequestFactory")
+    public ClientHttpRequestFactory ollamaRequestFactory(
+            @Qualifier("ollamaPooledHttpClient") CloseableHttpClient httpClient) {
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
+    /**
+     * Экспорт метрик пула соединений (leased, pending, available, max) в Micrometer
+     * с тегом {@code httpclient=ollama}
+     */
+    @Bean
+    public MeterBinder ollamaConnectionPoolMetrics(
+            @Qualifier("ollamaConnectionManager") PoolingHttpClientConnectionManager connectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "ollama");
+    }
+
+    /**
+     * Экспорт метрик пула асинхронных соединений с тегом {@code httpclient=ollama-async}
+     */
+    @Bean
+    public MeterBinder ollamaAsyncConnectionPoolMetrics(
+            @Qualifier("ollamaAsyncConnectionManager") PoolingAsyncClientConnectionManager connectionManager) {
+        return new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "ollama-async");
+    }
+
+    /**
+     * Создает RestTemplate с пулом соединений и обработчиком ошибок для Ollama API
      *
      * @return настроенный экземпляр RestTemplate
      */
     @Bean(name = "ollamaRestTemplate")
-    public RestTemplate ollamaRestTemplate() {
+    public RestTemplate ollamaRestTemplate(
+            @Qualifier("ollamaRequestFactory") ClientHttpRequestFactory requestFactory) {
         return new RestTemplateBuilder()
-                .setConnectTimeout(Duration.ofMillis(5000))
-                .setReadTimeout(Duration.ofMillis(apiTimeout))
+                .requestFactory(() -> requestFactory)
                 .errorHandler(new DetailedErrorHandler())
                 .build();
     }
 
+    /**
+     * RestTemplate для AI сервисов на том же пуле соединений, что и ollamaRestTemplate
+     *
+     * @return настроенный экземпляр RestTemplate
+     */
+    @Bean(name = "aiRestTemplate")
+    public RestTemplate aiRestTemplate(RestTemplateBuilder builder,
+            @Qualifier("ollamaRequestFactory") ClientHttpRequestFactory requestFactory) {
+        return builder
+                .requestFactory(() -> requestFactory)
+                .build();
+    }
+
     /**
      * Обработчик ошибок, который логирует детальную информацию о проблемах с API
      */
     private static class DetailedErrorHandler implements ResponseErrorHandler {
         @Override
         public boolean hasError(@NonNull ClientHttpResponse response) throws IOException {
-            return response.getStatusCode().is4xxClientError() || 
+            return response.getStatusCode().is4xxClientError() ||
                    response.getStatusCode().is5xxServerError();
         }
 
@@ -56,11 +226,11 @@ public class OllamaConfig {
             // Читаем тело ответа для логирования
             try (BufferedReader reader = new BufferedReader(
                     new InputStreamReader(response.getBody(), StandardCharsets.UTF_8))) {
-                
+
                 String responseBody = reader.lines()
                         .collect(Collectors.joining("\n"));
-                
-                log.error("Ошибка при обращении к Ollama API. Статус: {}, Тело ответа: {}", 
+
+                log.error("Ошибка при обращении к Ollama API. Статус: {}, Тело ответа: {}",
                          response.getStatusCode(), responseBody);
             }
         }
@@ -81,6 +81,7 @@ public class WebSecurityConfig {
                             "/*/swagger-ui/**",
                             "/*/swagger-ui.html",
                             "/*/ai/analyze/**",     // Public AI analysis endpoint
+                            "/*/ai/insights/**",    // Cached AI insights by fingerprint
                             "/*/ai/test/**",        // Test endpoints
                             // Дублируем пути для поддержки как с контекстом, так и без него
                             "/h2-console/**",
@@ -92,6 +93,7 @@ public class WebSecurityConfig {
                             "/swagger-ui/**",
                             "/swagger-ui.html",
                             "/ai/analyze/**", 
+                            "/ai/insights/**",
                             "/ai/test/**"
                     ).permitAll()
                     
@@ -1,24 +1,44 @@
 package com.example.demo.controllers;
 
+import com.example.demo.dto.insight.InsightBatchItem;
 import com.example.demo.dto.insight.InsightRequest;
 import com.example.demo.dto.insight.InsightResponse;
 import com.example.demo.dto.insight.Recommendation;
+import com.example.demo.exceptions.AIOverloadedException;
+import com.example.demo.exceptions.BadRequestException;
+import com.example.demo.exceptions.ResourceNotFoundException;
 import com.example.demo.services.AIService;
+import com.example.demo.services.cache.EncodedInsightCache;
+import com.example.demo.services.client.AdaptiveConcurrencyLimiter;
+import com.example.demo.services.client.FairShareScheduler;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 
 /**
  * Контроллер для работы с AI-анализом
@@ -32,70 +52,375 @@ import java.util.concurrent.CompletionException;
 @Slf4j
 public class AIController {
 
+    /**
+     * Отпечаток запроса: 32 hex-символа хэша и язык
+     */
+    private static final Pattern FINGERPRINT = Pattern.compile("[0-9a-f]{32}_.{1,64}");
+
     private final AIService aiService;
+    
+    private final AsyncTaskExecutor aiTaskExecutor;
+    
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    
+    private final FairShareScheduler fairShareScheduler;
+    
+    private final ObjectMapper objectMapper;
+    
+    private final EncodedInsightCache encodedInsights;
+    
+    @Value("${ollama.api.timeout:120000}")
+    private long streamTimeout;
+    
+    @Value("${ai.batch.max-size:50}")
+    private int batchMaxSize;
+    
+    @Value("${ai.batch.timeout:10m}")
+    private Duration batchTimeout;
+    
+    @Value("${ai.cache.insights.soft-ttl:1h}")
+    private Duration insightSoftTtl = Duration.ofHours(1);
 
     /**
      * Асинхронный анализ темы с использованием AI
      * 
+     * <p>Метод возвращает CompletableFuture, поэтому поток Tomcat освобождается на время генерации
+     * и ответ отправляется клиенту по завершении запроса к модели (Spring MVC async).</p>
+     * 
+     * <p>Тело ответа записывается готовыми байтами из {@link EncodedInsightCache}: ответ из кэша
+     * сериализуется один раз, а клиенту, принимающему gzip, отдается сжатая копия.</p>
+     * 
+     * <p>Заголовок Content-Location указывает адрес ответа {@code /ai/insights/{fingerprint}}, по которому
+     * его можно повторно получать с условными запросами, пока ответ находится в кэше. Резервный ответ
+     * в кэш не попадает, поэтому отдается без Content-Location.</p>
+     * 
      * @param request запрос с темой для анализа
+     * @param acceptEncoding заголовок Accept-Encoding клиента
      * @return CompletableFuture с результатом анализа
      */
     @PostMapping(value = "/analyze", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
     @ResponseStatus(HttpStatus.OK)
-    public ResponseEntity<?> analyzeWithAI(@Valid @RequestBody InsightRequest request) {
+    public CompletableFuture<ResponseEntity<?>> analyzeWithAI(@Valid @RequestBody InsightRequest request,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         log.info("Processing public AI analysis request for topic: {}", request.getTopic());
         
+        // Validate the request manually
+        if (request.getTopic() == null || request.getTopic().isEmpty()) {
+            log.warn("Invalid request - missing topic");
+            return CompletableFuture.completedFuture(ResponseEntity
+                .badRequest()
+                .body(Map.of("error", "Topic is required")));
+        }
+        
         try {
-            // Validate the request manually
-            if (request.getTopic() == null || request.getTopic().isEmpty()) {
-                log.warn("Invalid request - missing topic");
-                return ResponseEntity
-                    .badRequest()
-                    .body(Map.of("error", "Topic is required"));
-            }
-            
             // Use the actual AIService to analyze with Ollama
             log.info("Calling AIService.analyzeWithAIAsync for topic: {}", request.getTopic());
-            CompletableFuture<InsightResponse> future = aiService.analyzeWithAIAsync(request);
-            log.info("Waiting for response from AIService...");
-            
+            return aiService.analyzeWithAIAsyncKeyed(request)
+                .<ResponseEntity<?>>thenApply(keyed -> {
+                    InsightResponse response = keyed != null ? keyed.insight() : null;
+                    log.info("Response received from AIService: {}", response != null ? "valid response" : "null");
+                    if (response == null) {
+                        throw new IllegalStateException("Null response received from AIService");
+                    }
+                    ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+                    if (keyed.cacheKey() == null) {
+                        // Резервный ответ не кэшируется: ни адреса, ни готовых байтов для него нет
+                        return builder.body(response);
+                    }
+                    builder.header(HttpHeaders.CONTENT_LOCATION, "/ai/insights/" + keyed.cacheKey());
+                    return insightBody(builder, response, encodedInsights.get(response), acceptEncoding);
+                })
+                .exceptionally(e -> {
+                    Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof AIOverloadedException overloaded) {
+                        // Перегрузка не маскируется резервным ответом: клиент получает 429/503 с Retry-After
+                        throw overloaded;
+                    }
+                    return fallbackResponse(request, cause);
+                });
+        } catch (AIOverloadedException e) {
+            return CompletableFuture.failedFuture(e);
+        } catch (Exception e) {
+            return CompletableFuture.completedFuture(fallbackResponse(request, e));
+        }
+    }
+    
+    /**
+     * Ответ с готовыми байтами JSON (или gzip, если клиент его принимает) и их длиной в Content-Length;
+     * без готовых байтов тело сериализуется Spring MVC
+     */
+    private static ResponseEntity<?> insightBody(ResponseEntity.BodyBuilder builder, InsightResponse response,
+                                                 EncodedInsightCache.EncodedInsight encoded, String acceptEncoding) {
+        if (encoded == null) {
+            return builder.body(response);
+        }
+        boolean gzip = encoded.gzip() != null && acceptsGzip(acceptEncoding);
+        byte[] body = gzip ? encoded.gzip() : encoded.json();
+        builder.contentType(MediaType.APPLICATION_JSON)
+                .contentLength(body.length)
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return builder.body(body);
+    }
+    
+    /**
+     * Ответ из кэша по отпечатку запроса
+     * 
+     * <p>Ресурс доступен, пока ответ находится в кэше aiResponses; модель не вызывается. Ответ содержит
+     * сильный ETag от хэша содержимого и Cache-Control с max-age до истечения мягкого TTL
+     * ({@code ai.cache.insights.soft-ttl}). Несжатое и сжатое gzip представления имеют разные ETag
+     * ({@code "<hash>"} и {@code "<hash>-gzip"}); If-None-Match принимает тег выбранного представления,
+     * а клиентом с gzip - и тег несжатого. При совпадении возвращается 304 без тела и без сериализации:
+     * ETag вычисляется при записи ответа в кэш и хранится по отпечатку запроса
+     * ({@link EncodedInsightCache#validator(String, InsightResponse)}), поэтому сравнивается до формирования
+     * тела, в том числе для ответа, прочитанного из L2, и при {@code ai.cache.encoded.enabled=false}.</p>
+     * 
+     * @param fingerprint отпечаток запроса из заголовка Content-Location ответа POST /ai/analyze
+     * @param ifNoneMatch заголовок If-None-Match клиента
+     * @param acceptEncoding заголовок Accept-Encoding клиента
+     * @return ответ, 304 или 404, если ответа нет в кэше
+     */
+    @GetMapping(value = "/insights/{fingerprint}", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<?> getInsight(@PathVariable String fingerprint,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        if (!FINGERPRINT.matcher(fingerprint).matches()) {
+            throw new BadRequestException("Некорректный отпечаток запроса: " + fingerprint);
+        }
+        InsightResponse response = aiService.getInsight(fingerprint);
+        if (response == null) {
+            throw new ResourceNotFoundException("Ответ " + fingerprint + " отсутствует в кэше");
+        }
+        // ETag запомнен при записи ответа в кэш: 304 отдается без сериализации
+        EncodedInsightCache.InsightValidator validator = encodedInsights.validator(fingerprint, response);
+        CacheControl cacheControl = CacheControl.maxAge(freshFor(response)).cachePublic();
+        boolean gzip = validator.compressible() && acceptsGzip(acceptEncoding);
+        String etag = validator.etag(gzip);
+        // Несжатая копия подходит любому клиенту, поэтому при перепроверке ее тега клиентом с gzip
+        // возвращается 304 с этим тегом: кэш обновит и отдаст уже сохраненное представление
+        String matched = etagMatches(ifNoneMatch, etag) ? etag
+                : gzip && etagMatches(ifNoneMatch, validator.etag()) ? validator.etag() : null;
+        if (matched != null) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(matched)
+                    .cacheControl(cacheControl)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .build();
+        }
+        EncodedInsightCache.EncodedInsight encoded = encodedInsights.isEnabled()
+                ? encodedInsights.get(response) : encodedInsights.encode(response);
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                .eTag(etag)
+                .cacheControl(cacheControl);
+        return insightBody(builder, response, encoded, acceptEncoding);
+    }
+    
+    /**
+     * Время до истечения мягкого TTL ответа; после него клиент должен перепроверять ответ при каждом запросе
+     */
+    private Duration freshFor(InsightResponse response) {
+        if (response.getTimestamp() == null) {
+            return Duration.ZERO;
+        }
+        Duration remaining = insightSoftTtl.minus(Duration.between(response.getTimestamp(), Instant.now()));
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+    
+    /**
+     * Совпадает ли ETag со списком из If-None-Match: {@code *} или любой из тегов при слабом сравнении
+     * (префикс {@code W/} не учитывается)
+     */
+    static boolean etagMatches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null || etag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return true;
+            }
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Принимает ли клиент gzip: кодировка gzip или * в Accept-Encoding без q=0
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.trim().split(";");
+            String name = parts[0].trim();
+            if (!name.equalsIgnoreCase("gzip") && !name.equals("*")) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(parameter.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Create a simple fallback response in controller when something fails
+     */
+    private ResponseEntity<?> fallbackResponse(InsightRequest request, Throwable e) {
+        log.error("Error analyzing with AI: {} ({})", e.getMessage(), e.getClass().getName(), e);
+        
+        InsightResponse fallbackResponse = InsightResponse.builder()
+            .topic(request.getTopic())
+            .summary("Не удалось проанализировать тему из-за технической проблемы: " + e.getMessage())
+            .keyConcepts(Arrays.asList(
+                "Попробуйте позднее",
+                "Свяжитесь с администратором"
+            ))
+            .recommendations(Arrays.asList(
+                new Recommendation("Документация по Spring Boot", "https://spring.io/projects/spring-boot"),
+                new Recommendation("Справочный центр", "https://example.com/help")
+            ))
+            .timestamp(java.time.Instant.now())
+            .build();
+        
+        return ResponseEntity.ok(fallbackResponse);
+    }
+    
+    /**
+     * Потоковый анализ темы с использованием AI через Server-Sent Events
+     * 
+     * <p>События: {@code token} - очередной фрагмент текста модели ({@code {"content": "..."}}),
+     * {@code partial} - частичный {@link InsightResponse}, как только сгенерировано резюме, очередная
+     * ключевая концепция или очередной источник (заполнено только новое значение),
+     * {@code insight} - итоговый структурированный {@link InsightResponse},
+     * {@code error} - сообщение об ошибке. Поток закрывается после {@code insight} или {@code error}.</p>
+     * 
+     * @param request запрос с темой для анализа
+     * @return SSE-поток с фрагментами ответа и итоговым результатом
+     */
+    @PostMapping(value = "/analyze/stream", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAnalysis(@Valid @RequestBody InsightRequest request) {
+        log.info("Processing streaming AI analysis request for topic: {}", request.getTopic());
+        
+        // Небольшой запас сверх таймаута Ollama, чтобы итоговое событие успело уйти клиенту
+        SseEmitter emitter = new SseEmitter(streamTimeout + 5000);
+        
+        // Контекст безопасности передается в поток генерации: по нему планировщик определяет очередь пользователя
+        aiTaskExecutor.execute(new DelegatingSecurityContextRunnable(() -> {
             try {
-                InsightResponse response = future.join();
-                log.info("Response received from AIService: {}", response != null ? "valid response" : "null");
-                
-                if (response == null) {
-                    throw new RuntimeException("Null response received from AIService");
+                InsightResponse response = aiService.analyzeWithAIStreaming(request,
+                        token -> sendEvent(emitter, "token", Map.of("content", token)),
+                        partial -> sendEvent(emitter, "partial", partial));
+                sendEvent(emitter, "insight", response);
+                emitter.complete();
+            } catch (StreamClosedException e) {
+                log.info("Client disconnected from stream for topic: {}", request.getTopic());
+            } catch (AIOverloadedException e) {
+                log.warn("Streaming request rejected by concurrency limiter: {}", e.getMessage());
+                try {
+                    sendEvent(emitter, "error", Map.of(
+                            "message", e.getMessage(),
+                            "status", e.getStatus().value(),
+                            "retryAfter", e.getRetryAfterSeconds()));
+                    emitter.complete();
+                } catch (StreamClosedException closed) {
+                    log.debug("Client already disconnected, error event dropped");
                 }
-                
-                return ResponseEntity.ok(response);
-            } catch (CompletionException ce) {
-                log.error("CompletionException in future: {}", ce.getMessage(), ce);
-                Throwable cause = ce.getCause() != null ? ce.getCause() : ce;
-                if (cause instanceof RuntimeException) {
-                    throw (RuntimeException) cause;
-                } else {
-                    throw new RuntimeException("Error in AI analysis: " + cause.getMessage(), cause);
+            } catch (Exception e) {
+                log.error("Error streaming AI analysis: {} ({})", e.getMessage(), e.getClass().getName(), e);
+                try {
+                    sendEvent(emitter, "error", Map.of("message", "Не удалось проанализировать тему: " + e.getMessage()));
+                    emitter.complete();
+                } catch (StreamClosedException closed) {
+                    log.debug("Client already disconnected, error event dropped");
                 }
             }
-        } catch (Exception e) {
-            log.error("Error analyzing with AI: {} ({})", e.getMessage(), e.getClass().getName(), e);
-            
-            // Create a simple fallback response in controller when something fails
-            InsightResponse fallbackResponse = InsightResponse.builder()
-                .topic(request.getTopic())
-                .summary("Не удалось проанализировать тему из-за технической проблемы: " + e.getMessage())
-                .keyConcepts(Arrays.asList(
-                    "Попробуйте позднее",
-                    "Свяжитесь с администратором"
-                ))
-                .recommendations(Arrays.asList(
-                    new Recommendation("Документация по Spring Boot", "https://spring.io/projects/spring-boot"),
-                    new Recommendation("Справочный центр", "https://example.com/help")
-                ))
-                .timestamp(java.time.Instant.now())
-                .build();
-            
-            return ResponseEntity.ok(fallbackResponse);
+        }));
+        
+        return emitter;
+    }
+    
+    /**
+     * Пакетный анализ нескольких тем
+     * 
+     * <p>Ответ передается потоком NDJSON: по одной строке {@link InsightBatchItem} на каждый запрос
+     * в порядке готовности, поэтому результаты из кэша приходят сразу, не дожидаясь генерации остальных.
+     * Позиция запроса в исходном списке передается в поле {@code index}.</p>
+     * 
+     * @param requests список запросов (не более ai.batch.max-size)
+     * @return поток NDJSON с результатами
+     */
+    @PostMapping(value = "/analyze/batch", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseBodyEmitter analyzeBatch(@RequestBody List<InsightRequest> requests) {
+        log.info("Processing batch AI analysis request for {} topics", requests != null ? requests.size() : 0);
+        
+        if (requests == null || requests.isEmpty()) {
+            throw new BadRequestException("Список запросов не может быть пустым");
+        }
+        if (requests.size() > batchMaxSize) {
+            throw new BadRequestException("Слишком много запросов в пакете: " + requests.size() + " (максимум " + batchMaxSize + ")");
+        }
+        
+        ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeout.toMillis());
+        AtomicBoolean clientGone = new AtomicBoolean();
+        emitter.onTimeout(() -> clientGone.set(true));
+        emitter.onError(e -> clientGone.set(true));
+        
+        aiService.analyzeBatch(requests, item -> {
+            if (clientGone.get()) {
+                return;
+            }
+            try {
+                emitter.send(objectMapper.writeValueAsString(item) + "\n", MediaType.APPLICATION_NDJSON);
+            } catch (IOException | IllegalStateException e) {
+                log.info("Client disconnected from batch stream: {}", e.getMessage());
+                clientGone.set(true);
+            }
+        }).whenComplete((ignored, error) -> {
+            if (error != null) {
+                log.error("Error in batch AI analysis: {}", error.getMessage(), error);
+                emitter.completeWithError(error);
+            } else if (!clientGone.get()) {
+                emitter.complete();
+            }
+        });
+        
+        return emitter;
+    }
+    
+    private void sendEvent(SseEmitter emitter, String name, Object data) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException | IllegalStateException e) {
+            throw new StreamClosedException(e);
+        }
+    }
+    
+    /**
+     * Сигнализирует, что клиент закрыл SSE-соединение и генерацию нужно прервать
+     */
+    private static class StreamClosedException extends RuntimeException {
+        StreamClosedException(Throwable cause) {
+            super(cause);
         }
     }
     
@@ -134,6 +459,28 @@ public class AIController {
         ));
     }
     
+    /**
+     * Очереди запросов к модели по пользователям - доступно только для администраторов
+     * 
+     * @return текущий лимит, число выполняющихся запросов и очереди пользователей с оценкой ожидания
+     */
+    @GetMapping("/manage/queues")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getQueues() {
+        List<FairShareScheduler.QueueStats> queues = concurrencyLimiter.getQueueStats();
+        
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("limit", concurrencyLimiter.getLimit());
+        result.put("inFlight", concurrencyLimiter.getInFlight());
+        result.put("queueDepth", concurrencyLimiter.getQueueDepth());
+        result.put("classWeights", fairShareScheduler.getClassWeights());
+        result.put("maxQueuePerUser", fairShareScheduler.getMaxQueuePerUser());
+        result.put("maxQueuePerAnonymousClient", fairShareScheduler.getMaxQueuePerAnonymousClient());
+        result.put("maxAnonymousQueue", fairShareScheduler.getMaxAnonymousQueue());
+        result.put("users", queues);
+        return ResponseEntity.ok(result);
+    }
+    
     /**
      * Test endpoint to generate a fallback response directly
      * 
@@ -1,8 +1,11 @@
 package com.example.demo.controllers;
 
 import com.example.demo.services.client.OllamaClient;
+import com.example.demo.services.client.OllamaClusterClient;
+import com.example.demo.services.client.OllamaNode;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -10,6 +13,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -23,6 +28,8 @@ public class OllamaStatusController {
 
     private final OllamaClient ollamaClient;
     
+    private final ObjectProvider<OllamaClusterClient> clusterClient;
+    
     /**
      * Получение статуса Ollama и доступных моделей
      *
@@ -58,4 +65,51 @@ public class OllamaStatusController {
         
         return ResponseEntity.ok(status);
     }
+    
+    /**
+     * Состояние узлов Ollama: загрузка, скорость генерации и здоровье каждого узла.
+     * Если кластер не включен, возвращается единственный узел из ollama.api.base-url.
+     * 
+     * @return Информация об узлах Ollama
+     */
+    @GetMapping("/nodes")
+    public ResponseEntity<Map<String, Object>> getNodes() {
+        log.info("Запрошено состояние узлов Ollama");
+        
+        Map<String, Object> result = new HashMap<>();
+        OllamaClusterClient cluster = clusterClient.getIfAvailable();
+        if (cluster == null) {
+            Map<String, Object> node = new LinkedHashMap<>();
+            node.put("url", ollamaClient.getBaseUrl());
+            node.put("state", ollamaClient.isAvailable() ? "HEALTHY" : "UNAVAILABLE");
+            result.put("clusterEnabled", false);
+            result.put("nodes", List.of(node));
+            return ResponseEntity.ok(result);
+        }
+        
+        long now = cluster.currentTimeMillis();
+        List<Map<String, Object>> nodes = cluster.getNodes().stream()
+                .map(node -> describeNode(node, now))
+                .toList();
+        result.put("clusterEnabled", true);
+        result.put("provider", cluster.getProviderName());
+        result.put("nodes", nodes);
+        return ResponseEntity.ok(result);
+    }
+    
+    private Map<String, Object> describeNode(OllamaNode node, long now) {
+        Map<String, Object> info = new LinkedHashMap<>();
+        info.put("url", node.getBaseUrl());
+        info.put("state", node.getState(now).name());
+        info.put("outstanding", node.getOutstanding());
+        info.put("tokensPerSecond", Double.isNaN(node.getThroughput()) ? null : node.getThroughput());
+        info.put("consecutiveFailures", node.getConsecutiveFailures());
+        info.put("successes", node.getSuccesses());
+        info.put("failures", node.getFailures());
+        info.put("ejections", node.getEjections());
+        info.put("ejectedUntil", node.getEjectedUntil(now));
+        info.put("embedSuccesses", node.getEmbedSuccesses());
+        info.put("embedFailures", node.getEmbedFailures());
+        return info;
+    }
 }
@@ -0,0 +1,32 @@
+package com.example.demo.dto.insight;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Результат анализа одной темы из пакетного запроса (одна строка NDJSON-ответа)
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class InsightBatchItem {
+
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_ERROR = "error";
+
+    /** Позиция запроса в исходном списке */
+    private int index;
+    private String topic;
+    private String language;
+    /** ok или error */
+    private String status;
+    /** Результат получен из кэша без обращения к модели */
+    private boolean cached;
+    private InsightResponse insight;
+    private String error;
+}
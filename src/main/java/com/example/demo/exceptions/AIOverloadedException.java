@@ -0,0 +1,34 @@
+package com.example.demo.exceptions;
+
+import org.springframework.http.HttpStatus;
+
+/**
+ * Исключение, выбрасываемое при перегрузке AI сервиса: очередь запросов к модели заполнена
+ * или запрос не дождался свободного слота. В отличие от {@link AIServiceException}
+ * не заменяется резервным ответом, а возвращается клиенту как 429/503 с заголовком Retry-After.
+ */
+public class AIOverloadedException extends AIServiceException {
+
+    private final HttpStatus status;
+    private final long retryAfterSeconds;
+
+    public AIOverloadedException(String message, HttpStatus status, long retryAfterSeconds) {
+        super(message);
+        this.status = status;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    /**
+     * HTTP-статус ответа: 429 при заполненной очереди, 503 при истечении ожидания
+     */
+    public HttpStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * Рекомендуемая пауза перед повтором запроса, в секундах
+     */
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -8,6 +8,7 @@ import jakarta.validation.ConstraintViolationException;
 
 import lombok.extern.slf4j.Slf4j;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.MethodArgumentNotValidException;
@@ -97,6 +98,26 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(apiError, HttpStatus.BAD_REQUEST);
     }
 
+    @ExceptionHandler(AIOverloadedException.class)
+    public ResponseEntity<ApiError> handleAIOverloadedException(
+            AIOverloadedException ex, WebRequest request) {
+        
+        // Перегрузка не заменяется резервным ответом: клиент должен повторить запрос позже
+        log.warn("AI Service overloaded: {}", ex.getMessage());
+        
+        ApiError apiError = ApiError.builder()
+                .timestamp(LocalDateTime.now())
+                .status(ex.getStatus().value())
+                .error(ex.getStatus().getReasonPhrase())
+                .message(ex.getMessage())
+                .path(request.getDescription(false).replace("uri=", ""))
+                .build();
+        
+        return ResponseEntity.status(ex.getStatus())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(apiError);
+    }
+
     @ExceptionHandler(AIServiceException.class)
     public ResponseEntity<Object> handleAIServiceException(
             AIServiceException ex, WebRequest request) {
@@ -1,15 +1,27 @@
 package com.example.demo.services;
 
+import com.example.demo.dto.insight.InsightBatchItem;
 import com.example.demo.dto.insight.InsightRequest;
 import com.example.demo.dto.insight.InsightResponse;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Сервис для работы с AI-анализом и получением инсайтов
  */
 public interface AIService {
     
+    /**
+     * Результат анализа и ключ, под которым он хранится в кэше aiResponses
+     * 
+     * @param insight структурированный ответ
+     * @param cacheKey отпечаток запроса или null, если ответ резервный и в кэш не попал
+     */
+    record KeyedInsight(InsightResponse insight, String cacheKey) {
+    }
+    
     /**
      * Синхронно анализирует тему с использованием AI и возвращает структурированный ответ
      * 
@@ -26,6 +38,42 @@ public interface AIService {
      */
     CompletableFuture<InsightResponse> analyzeWithAIAsync(InsightRequest request);
     
+    /**
+     * Асинхронно анализирует тему так же, как {@link #analyzeWithAIAsync(InsightRequest)}, и сообщает ключ
+     * кэша, если ответ взят из кэша aiResponses или сохранен в нем
+     * 
+     * @param request запрос с темой для анализа
+     * @return CompletableFuture с ответом и ключом кэша (null для резервного ответа)
+     */
+    CompletableFuture<KeyedInsight> analyzeWithAIAsyncKeyed(InsightRequest request);
+    
+    /**
+     * Анализирует тему в потоковом режиме: фрагменты текста передаются получателю по мере генерации,
+     * итоговый структурированный ответ возвращается после завершения генерации и помещается в кэш
+     * 
+     * <p>Резюме, каждая ключевая концепция и каждый источник передаются получателю частичных результатов,
+     * как только полностью сгенерированы: в частичном ответе заполнено только новое значение.
+     * При попадании в кэш частичные результаты не передаются.</p>
+     * 
+     * @param request запрос с темой для анализа
+     * @param tokenConsumer получатель фрагментов сгенерированного текста
+     * @param partialConsumer получатель частичных структурированных результатов
+     * @return структурированный ответ с анализом темы
+     */
+    InsightResponse analyzeWithAIStreaming(InsightRequest request, Consumer<String> tokenConsumer,
+                                           Consumer<InsightResponse> partialConsumer);
+    
+    /**
+     * Анализирует несколько тем: попадания в кэш читаются одним пакетным запросом, одинаковые темы
+     * анализируются один раз, остальные запросы отправляются к модели с ограничением параллелизма.
+     * Результаты передаются получателю в порядке готовности - по одному на каждый исходный запрос.
+     * 
+     * @param requests список запросов
+     * @param itemConsumer получатель результатов; вызывается из разных потоков, но не одновременно
+     * @return CompletableFuture, завершающийся после передачи всех результатов
+     */
+    CompletableFuture<Void> analyzeBatch(List<InsightRequest> requests, Consumer<InsightBatchItem> itemConsumer);
+    
     /**
      * Получает кэшированный результат анализа по ключу запроса, если доступен
      * 
@@ -33,4 +81,12 @@ public interface AIService {
      * @return структурированный ответ с анализом темы или null, если кэша нет
      */
     InsightResponse getCachedAnalysis(InsightRequest request);
+    
+    /**
+     * Получает ответ из кэша по отпечатку запроса без обращения к модели
+     * 
+     * @param fingerprint отпечаток запроса (ключ кэша aiResponses)
+     * @return ответ или null, если его нет в кэше или он устарел сверх жесткого TTL
+     */
+    InsightResponse getInsight(String fingerprint);
 }
@@ -0,0 +1,424 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Долговременное хранилище ответов модели в таблице ai_analysis_cache - последний уровень кэша
+ * после памяти процесса и Redis
+ *
+ * <p>Чтение выполняется сразу (только при промахе быстрых уровней). Записи, удаления и статистика обращений
+ * ({@code access_count}, {@code last_accessed_at}) накапливаются в памяти и сбрасываются фоновыми пакетами JDBC
+ * раз в {@code ai.cache.store.flush-interval}: повторные записи одного ключа схлопываются в последнюю,
+ * обращения к ключу - в одно увеличение счетчика. Записи старше {@code ai.cache.store.ttl} по последнему
+ * обращению не возвращаются и периодически удаляются.</p>
+ *
+ * <p>Запись выполняется одним запросом вставки или замены: {@code INSERT ... ON CONFLICT} в PostgreSQL
+ * (MERGE в PostgreSQL есть только с версии 15) и MERGE в остальных базах, в том числе H2.</p>
+ *
+ * <p>Метрики: {@code ai.cache.store.requests{result=hit|miss|error}}, {@code ai.cache.store.pending},
+ * {@code ai.cache.store.flush}, {@code ai.cache.store.flush.errors}, {@code ai.cache.store.dropped}.</p>
+ */
+@Component
+@Slf4j
+public class AnalysisCacheStore {
+
+    private static final String SELECT_SQL = """
+            SELECT cache_key, analysis_content FROM ai_analysis_cache
+            WHERE cache_key IN (:keys) AND last_accessed_at >= :notBefore""";
+
+    /** Вставка или замена записи в H2 и других базах с MERGE по SQL:2003 */
+    private static final String MERGE_UPSERT_SQL = """
+            MERGE INTO ai_analysis_cache t
+            USING (VALUES (CAST(? AS VARCHAR(512)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(50)),
+                           CAST(? AS TEXT), CAST(? AS TIMESTAMP))) AS s (cache_key, topic, language, analysis_content, written_at)
+            ON t.cache_key = s.cache_key
+            WHEN MATCHED THEN UPDATE SET topic = s.topic, language = s.language,
+                analysis_content = s.analysis_content, created_at = s.written_at, last_accessed_at = s.written_at
+            WHEN NOT MATCHED THEN INSERT (cache_key, topic, language, analysis_content, created_at, last_accessed_at, access_count)
+                VALUES (s.cache_key, s.topic, s.language, s.analysis_content, s.written_at, s.written_at, 1)""";
+
+    /**
+     * Вставка или замена записи в PostgreSQL: MERGE появился только в версии 15, ON CONFLICT есть с 9.5.
+     * Параметры те же, что у {@link #MERGE_UPSERT_SQL}; опирается на уникальный индекс по cache_key.
+     */
+    private static final String POSTGRES_UPSERT_SQL = """
+            INSERT INTO ai_analysis_cache (cache_key, topic, language, analysis_content, created_at, last_accessed_at, access_count)
+            SELECT s.cache_key, s.topic, s.language, s.analysis_content, s.written_at, s.written_at, 1
+            FROM (VALUES (CAST(? AS VARCHAR(512)), CAST(? AS VARCHAR(255)), CAST(? AS VARCHAR(50)),
+                          CAST(? AS TEXT), CAST(? AS TIMESTAMP))) AS s (cache_key, topic, language, analysis_content, written_at)
+            ON CONFLICT (cache_key) DO UPDATE SET topic = EXCLUDED.topic, language = EXCLUDED.language,
+                analysis_content = EXCLUDED.analysis_content, created_at = EXCLUDED.created_at,
+                last_accessed_at = EXCLUDED.last_accessed_at""";
+
+    private static final String ACCESS_SQL = """
+            UPDATE ai_analysis_cache SET access_count = access_count + ?, last_accessed_at = ?
+            WHERE cache_key = ?""";
+
+    private static final String DELETE_SQL = "DELETE FROM ai_analysis_cache WHERE cache_key = ?";
+
+    private static final String CLEANUP_SQL = "DELETE FROM ai_analysis_cache WHERE last_accessed_at < ?";
+
+    /** Разделитель темы и языка в ключе кэша (тема_язык) */
+    private static final char LANGUAGE_SEPARATOR = '_';
+    private static final int MAX_TOPIC_LENGTH = 255;
+    private static final int MAX_LANGUAGE_LENGTH = 50;
+    private static final int MAX_KEY_LENGTH = 512;
+
+    /**
+     * Отложенная запись: null в {@code response} означает удаление
+     */
+    private record PendingWrite(InsightResponse response, String content, Instant writtenAt) {
+    }
+
+    /**
+     * Накопленные обращения к ключу
+     */
+    private record PendingAccess(int count, Instant lastAccessedAt) {
+
+        PendingAccess plus(PendingAccess other) {
+            return new PendingAccess(count + other.count,
+                    lastAccessedAt.isAfter(other.lastAccessedAt) ? lastAccessedAt : other.lastAccessedAt);
+        }
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final ConcurrentMap<String, PendingWrite> pendingWrites = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, PendingAccess> pendingAccesses = new ConcurrentHashMap<>();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter errors;
+    private final Counter dropped;
+    private final Counter flushErrors;
+    private final Timer flushTimer;
+
+    /** Запрос вставки или замены для текущей базы; определяется при первом сбросе */
+    private volatile String upsertSql;
+
+    @Value("${ai.cache.store.enabled:true}")
+    private boolean enabled;
+
+    /** Размер пакета JDBC при сбросе */
+    @Value("${ai.cache.store.batch-size:100}")
+    private int batchSize;
+
+    /** Предел накопленных записей; сверх него новые записи отбрасываются до следующего сброса */
+    @Value("${ai.cache.store.max-pending:10000}")
+    private int maxPending;
+
+    /** Срок хранения записи с последнего обращения */
+    @Value("${ai.cache.store.ttl:30d}")
+    private Duration ttl;
+
+    public AnalysisCacheStore(JdbcTemplate jdbcTemplate, ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.namedJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+        this.objectMapper = objectMapper;
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        this.errors = requests(meterRegistry, "error");
+        this.dropped = Counter.builder("ai.cache.store.dropped")
+                .description("Записи, отброшенные из-за переполнения очереди отложенной записи")
+                .register(meterRegistry);
+        this.flushErrors = Counter.builder("ai.cache.store.flush.errors")
+                .description("Неудачные сбросы отложенных записей в ai_analysis_cache")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("ai.cache.store.flush")
+                .description("Длительность сброса отложенных записей в ai_analysis_cache")
+                .register(meterRegistry);
+        Gauge.builder("ai.cache.store.pending", this, store -> store.pendingWrites.size() + store.pendingAccesses.size())
+                .description("Записи и обращения, ожидающие сброса в ai_analysis_cache")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ответ по ключу кэша; найденная запись учитывается как обращение
+     */
+    public Optional<InsightResponse> find(String key) {
+        return Optional.ofNullable(findAll(List.of(key)).get(key));
+    }
+
+    /**
+     * Ответы по нескольким ключам одним запросом; найденные записи учитываются как обращения.
+     * Ошибка базы данных не прерывает запрос и считается промахом.
+     *
+     * @return найденные ответы по ключам; отсутствующие ключи не включаются
+     */
+    public Map<String, InsightResponse> findAll(Collection<String> keys) {
+        Map<String, InsightResponse> result = new HashMap<>();
+        List<String> storedKeys = new ArrayList<>();
+        for (String key : keys) {
+            PendingWrite pending = pendingWrites.get(key);
+            if (pending == null) {
+                storedKeys.add(key);
+            } else if (pending.response() != null) {
+                // запись еще не сброшена в базу
+                result.put(key, pending.response());
+            }
+        }
+        int failed = 0;
+        if (!storedKeys.isEmpty()) {
+            try {
+                MapSqlParameterSource parameters = new MapSqlParameterSource()
+                        .addValue("keys", storedKeys)
+                        .addValue("notBefore", Timestamp.from(Instant.now().minus(ttl)));
+                namedJdbcTemplate.query(SELECT_SQL, parameters, resultSet -> {
+                    String key = resultSet.getString("cache_key");
+                    InsightResponse response = deserialize(key, resultSet.getString("analysis_content"));
+                    if (response != null) {
+                        result.put(key, response);
+                    }
+                });
+            } catch (DataAccessException e) {
+                log.warn("Не удалось прочитать ai_analysis_cache: {}", e.getMessage());
+                failed = storedKeys.size();
+            }
+        }
+
+        Instant now = Instant.now();
+        result.keySet().forEach(key -> pendingAccesses.merge(key, new PendingAccess(1, now), PendingAccess::plus));
+        hits.increment(result.size());
+        errors.increment(failed);
+        misses.increment(keys.size() - result.size() - failed);
+        return result;
+    }
+
+    /**
+     * Откладывает сохранение ответа; повторные сохранения ключа до сброса заменяют друг друга
+     */
+    public void save(String key, InsightResponse response) {
+        if (key.length() > MAX_KEY_LENGTH) {
+            return;
+        }
+        String content;
+        try {
+            content = objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            log.warn("Не удалось сериализовать ответ для ai_analysis_cache по ключу {}: {}", key, e.getMessage());
+            return;
+        }
+        enqueue(key, new PendingWrite(response, content, Instant.now()));
+    }
+
+    /**
+     * Откладывает удаление ответа
+     */
+    public void delete(String key) {
+        enqueue(key, new PendingWrite(null, null, Instant.now()));
+    }
+
+    /**
+     * Удаляет все сохраненные ответы сразу, отменяя накопленные записи
+     */
+    public void deleteAll() {
+        pendingWrites.clear();
+        pendingAccesses.clear();
+        try {
+            jdbcTemplate.update("DELETE FROM ai_analysis_cache");
+        } catch (DataAccessException e) {
+            log.warn("Не удалось очистить ai_analysis_cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Сбрасывает накопленные записи, удаления и обращения пакетами JDBC. Записи, которые не удалось
+     * сохранить, возвращаются в очередь, если ключ не был перезаписан за время сброса.
+     */
+    @Scheduled(fixedDelayString = "${ai.cache.store.flush-interval:PT5S}")
+    public void flush() {
+        if (pendingWrites.isEmpty() && pendingAccesses.isEmpty()) {
+            return;
+        }
+        flushTimer.record(() -> {
+            Map<String, PendingWrite> writes = drain(pendingWrites);
+            Map<String, PendingAccess> accesses = drain(pendingAccesses);
+            flushWrites(writes);
+            flushAccesses(accesses);
+        });
+    }
+
+    /**
+     * Удаляет записи, к которым не обращались дольше срока хранения
+     */
+    @Scheduled(fixedDelayString = "${ai.cache.store.cleanup-interval:PT1H}",
+            initialDelayString = "${ai.cache.store.cleanup-interval:PT1H}")
+    public void cleanup() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int removed = jdbcTemplate.update(CLEANUP_SQL, Timestamp.from(Instant.now().minus(ttl)));
+            if (removed > 0) {
+                log.info("Удалено {} устаревших записей ai_analysis_cache", removed);
+            }
+        } catch (DataAccessException e) {
+            log.warn("Не удалось удалить устаревшие записи ai_analysis_cache: {}", e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    /**
+     * Число ключей, ожидающих записи или удаления
+     */
+    int pendingWriteCount() {
+        return pendingWrites.size();
+    }
+
+    private void enqueue(String key, PendingWrite write) {
+        if (pendingWrites.size() >= maxPending && !pendingWrites.containsKey(key)) {
+            dropped.increment();
+            return;
+        }
+        pendingWrites.put(key, write);
+    }
+
+    private void flushWrites(Map<String, PendingWrite> writes) {
+        List<Map.Entry<String, PendingWrite>> upserts = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        writes.forEach((key, write) -> {
+            if (write.response() == null) {
+                deletes.add(key);
+            } else {
+                upserts.add(Map.entry(key, write));
+            }
+        });
+        try {
+            if (!deletes.isEmpty()) {
+                jdbcTemplate.batchUpdate(DELETE_SQL, deletes, batchSize,
+                        (statement, key) -> statement.setString(1, key));
+            }
+            if (!upserts.isEmpty()) {
+                jdbcTemplate.batchUpdate(upsertSql(), upserts, batchSize, (statement, entry) -> {
+                    PendingWrite write = entry.getValue();
+                    statement.setString(1, entry.getKey());
+                    String topic = write.response().getTopic();
+                    statement.setString(2, truncate(topic != null ? topic : entry.getKey(), MAX_TOPIC_LENGTH));
+                    statement.setString(3, language(entry.getKey()));
+                    statement.setString(4, write.content());
+                    statement.setTimestamp(5, Timestamp.from(write.writtenAt()));
+                });
+            }
+        } catch (DataAccessException e) {
+            flushErrors.increment();
+            log.warn("Не удалось сохранить {} записей в ai_analysis_cache, повтор при следующем сбросе: {}",
+                    writes.size(), e.getMessage());
+            writes.forEach(pendingWrites::putIfAbsent);
+        }
+    }
+
+    private void flushAccesses(Map<String, PendingAccess> accesses) {
+        if (accesses.isEmpty()) {
+            return;
+        }
+        try {
+            jdbcTemplate.batchUpdate(ACCESS_SQL, new ArrayList<>(accesses.entrySet()), batchSize, (statement, entry) -> {
+                statement.setInt(1, entry.getValue().count());
+                statement.setTimestamp(2, Timestamp.from(entry.getValue().lastAccessedAt()));
+                statement.setString(3, entry.getKey());
+            });
+        } catch (DataAccessException e) {
+            // статистика обращений не критична: при ошибке она теряется
+            flushErrors.increment();
+            log.warn("Не удалось обновить статистику обращений ai_analysis_cache: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Запрос вставки или замены по типу базы. Определяется при первой записи, а не при создании:
+     * недоступная при старте база не должна мешать запуску приложения.
+     */
+    private String upsertSql() {
+        String sql = upsertSql;
+        if (sql == null) {
+            String product = jdbcTemplate.execute(
+                    (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName());
+            sql = upsertSql(product);
+            upsertSql = sql;
+        }
+        return sql;
+    }
+
+    static String upsertSql(String databaseProductName) {
+        return "PostgreSQL".equalsIgnoreCase(databaseProductName) ? POSTGRES_UPSERT_SQL : MERGE_UPSERT_SQL;
+    }
+
+    private InsightResponse deserialize(String key, String content) {
+        try {
+            return objectMapper.readValue(content, InsightResponse.class);
+        } catch (JsonProcessingException e) {
+            log.warn("Некорректная запись ai_analysis_cache по ключу {}: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Забирает все накопленные значения; значения, добавленные во время обхода, остаются до следующего сброса
+     */
+    private static <T> Map<String, T> drain(ConcurrentMap<String, T> pending) {
+        Map<String, T> drained = new HashMap<>();
+        for (String key : pending.keySet()) {
+            T value = pending.remove(key);
+            if (value != null) {
+                drained.put(key, value);
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Язык из ключа кэша вида отпечаток_язык (см. {@link InsightFingerprinter})
+     */
+    static String language(String key) {
+        int separator = key.lastIndexOf(LANGUAGE_SEPARATOR);
+        String language = separator >= 0 ? key.substring(separator + 1) : "";
+        return language.isEmpty() || language.length() > MAX_LANGUAGE_LENGTH ? "en" : language;
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.cache.store.requests")
+                .description("Чтения долговременного хранилища ответов ai_analysis_cache")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
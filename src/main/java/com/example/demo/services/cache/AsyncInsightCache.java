@@ -0,0 +1,213 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Асинхронное представление кэша ответов AI в стиле {@code AsyncCache} Caffeine:
+ * значения - {@code CompletableFuture<InsightResponse>}
+ *
+ * <p>Выполняющиеся загрузки хранятся в памяти узла и разделяются одновременными запросами с тем же ключом
+ * (single-flight). Успешно завершенное значение записывается в кэш aiResponses со всеми его уровнями
+ * и затем читается из него как завершенный future. Загрузка, завершившаяся ошибкой, не сохраняется:
+ * резервный ответ формирует вызывающий поверх возвращенного future, поэтому он не попадает в кэш.</p>
+ *
+ * <p>Метрики: {@code ai.requests.in_flight} - выполняющиеся загрузки, {@code ai.requests.coalesced} - запросы,
+ * присоединенные к уже выполняющейся загрузке.</p>
+ */
+@Slf4j
+public class AsyncInsightCache {
+
+    private final Supplier<Cache> cacheSupplier;
+
+    /** Выполняющиеся загрузки по ключу кэша */
+    private final ConcurrentMap<String, CompletableFuture<InsightResponse>> loads = new ConcurrentHashMap<>();
+
+    /** Выполняющиеся фоновые обновления по ключу кэша: не более одного на ключ */
+    private final ConcurrentMap<String, CompletableFuture<InsightResponse>> refreshes = new ConcurrentHashMap<>();
+
+    private final Counter coalescedRequests;
+
+    /** Получатель сохраненных значений: ключ и значение после записи в кэш */
+    private final BiConsumer<String, InsightResponse> storeListener;
+
+    /**
+     * @param cacheSupplier кэш aiResponses; null от поставщика означает, что кэш не настроен
+     *                      и значения не сохраняются между загрузками
+     * @param meterRegistry реестр метрик
+     */
+    public AsyncInsightCache(Supplier<Cache> cacheSupplier, MeterRegistry meterRegistry) {
+        this(cacheSupplier, meterRegistry, (key, value) -> { });
+    }
+
+    /**
+     * @param storeListener вызывается после записи значения в кэш, например чтобы запомнить его ETag
+     */
+    public AsyncInsightCache(Supplier<Cache> cacheSupplier, MeterRegistry meterRegistry,
+                             BiConsumer<String, InsightResponse> storeListener) {
+        this.cacheSupplier = cacheSupplier;
+        this.storeListener = storeListener;
+        this.coalescedRequests = Counter.builder("ai.requests.coalesced")
+                .description("Запросы анализа, присоединенные к уже выполняющемуся запросу с тем же отпечатком")
+                .register(meterRegistry);
+        meterRegistry.gaugeMapSize("ai.requests.in_flight", List.of(), loads);
+    }
+
+    /**
+     * Синхронное представление: кэш, в который записываются завершенные значения
+     *
+     * @return кэш aiResponses или null, если он не настроен
+     */
+    public Cache synchronous() {
+        return cacheSupplier.get();
+    }
+
+    /**
+     * Выполняющаяся загрузка или сохраненное значение. Обращение не учитывается в {@code ai.requests.coalesced}:
+     * вызывающий, который дожидается выполняющейся загрузки, отмечает это через {@link #recordCoalesced()}
+     *
+     * @param key ключ кэша
+     * @return копия выполняющейся загрузки, завершенный future со значением из кэша или null
+     */
+    public CompletableFuture<InsightResponse> getIfPresent(String key) {
+        CompletableFuture<InsightResponse> load = loads.get(key);
+        if (load != null) {
+            // Копия не позволяет одному из вызывающих завершить или отменить общий future
+            return load.copy();
+        }
+        Cache cache = synchronous();
+        InsightResponse value = cache != null ? cache.get(key, InsightResponse.class) : null;
+        return value != null ? CompletableFuture.completedFuture(value) : null;
+    }
+
+    /**
+     * Отмечает запрос, присоединенный к выполняющейся загрузке, полученной из {@link #getIfPresent(String)}
+     */
+    public void recordCoalesced() {
+        coalescedRequests.increment();
+    }
+
+    /**
+     * Возвращает значение или выполняющуюся загрузку, а при их отсутствии запускает загрузку
+     *
+     * @param key    ключ кэша
+     * @param loader загрузка значения; вызывается не более одного раза на ключ за время ее выполнения
+     * @return future значения; завершается ошибкой, если ею завершилась загрузка
+     */
+    public CompletableFuture<InsightResponse> get(String key,
+                                                  Function<String, CompletableFuture<InsightResponse>> loader) {
+        CompletableFuture<InsightResponse> load = loads.get(key);
+        if (load != null) {
+            recordCoalesced();
+            return load.copy();
+        }
+        CompletableFuture<InsightResponse> present = getIfPresent(key);
+        if (present != null) {
+            return present;
+        }
+        CompletableFuture<InsightResponse> pending = new CompletableFuture<>();
+        CompletableFuture<InsightResponse> inFlight = loads.putIfAbsent(key, pending);
+        if (inFlight != null) {
+            coalescedRequests.increment();
+            return inFlight.copy();
+        }
+        start(key, loader).whenComplete((value, error) -> {
+            if (error == null) {
+                store(key, value);
+            }
+            loads.remove(key, pending);
+            complete(pending, value, error);
+        });
+        return pending.copy();
+    }
+
+    /**
+     * Сохраняет значение после его успешного завершения; future, завершившийся ошибкой, игнорируется
+     *
+     * @param key   ключ кэша
+     * @param value future значения
+     */
+    public void put(String key, CompletableFuture<InsightResponse> value) {
+        value.whenComplete((result, error) -> {
+            if (error == null) {
+                store(key, result);
+            }
+        });
+    }
+
+    /**
+     * Загружает новое значение в фоне: до завершения читается прежнее значение, при ошибке оно остается в кэше
+     *
+     * @param key    ключ кэша
+     * @param loader загрузка нового значения
+     * @return future нового значения или null, если обновление ключа уже выполняется
+     */
+    public CompletableFuture<InsightResponse> refresh(String key,
+                                                      Function<String, CompletableFuture<InsightResponse>> loader) {
+        CompletableFuture<InsightResponse> pending = new CompletableFuture<>();
+        if (refreshes.putIfAbsent(key, pending) != null) {
+            return null;
+        }
+        start(key, loader).whenComplete((value, error) -> {
+            if (error == null) {
+                store(key, value);
+            }
+            refreshes.remove(key, pending);
+            complete(pending, value, error);
+        });
+        return pending.copy();
+    }
+
+    /**
+     * Удаляет сохраненное значение; выполняющиеся загрузки не отменяются
+     */
+    public void invalidate(String key) {
+        Cache cache = synchronous();
+        if (cache != null) {
+            cache.evict(key);
+        }
+    }
+
+    private static CompletableFuture<InsightResponse> start(String key,
+                                                            Function<String, CompletableFuture<InsightResponse>> loader) {
+        try {
+            CompletableFuture<InsightResponse> future = loader.apply(key);
+            return future != null ? future : CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void store(String key, InsightResponse value) {
+        Cache cache = synchronous();
+        if (cache == null || value == null) {
+            return;
+        }
+        try {
+            cache.put(key, value);
+            storeListener.accept(key, value);
+        } catch (RuntimeException e) {
+            // Недоступный уровень кэша не должен лишать вызывающих уже полученного ответа
+            log.warn("Не удалось сохранить ответ в кэш по ключу {}: {}", key, e.getMessage());
+        }
+    }
+
+    private static void complete(CompletableFuture<InsightResponse> target, InsightResponse value, Throwable error) {
+        if (error != null) {
+            target.completeExceptionally(error);
+        } else {
+            target.complete(value);
+        }
+    }
+}
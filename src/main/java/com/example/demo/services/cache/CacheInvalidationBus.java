@@ -0,0 +1,87 @@
+package com.example.demo.services.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+
+/**
+ * Рассылка инвалидаций локальных кэшей между узлами через Redis pub/sub
+ *
+ * <p>Каждый узел публикует в канал имя кэша и ключ измененной записи и подписан на тот же канал.
+ * Собственные сообщения узел распознает по идентификатору и пропускает. Ключи передаются строкой,
+ * поэтому в двухуровневых кэшах используются строковые ключи (как и в Redis).</p>
+ */
+@Slf4j
+public class CacheInvalidationBus implements MessageListener {
+
+    /**
+     * Сообщение об инвалидации
+     *
+     * @param origin идентификатор узла-отправителя
+     * @param cache  имя кэша
+     * @param key    ключ или null, если очищен весь кэш
+     */
+    record Invalidation(String origin, String cache, String key) {
+    }
+
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final ChannelTopic topic;
+    private final String nodeId = UUID.randomUUID().toString();
+    private volatile BiConsumer<String, Object> localEvictor = (cache, key) -> { };
+
+    public CacheInvalidationBus(StringRedisTemplate redisTemplate, ObjectMapper objectMapper, String channel) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.topic = new ChannelTopic(channel);
+    }
+
+    public ChannelTopic getTopic() {
+        return topic;
+    }
+
+    /**
+     * Получатель инвалидаций от других узлов: имя кэша и ключ (null - весь кэш)
+     */
+    public void setLocalEvictor(BiConsumer<String, Object> localEvictor) {
+        this.localEvictor = localEvictor;
+    }
+
+    /**
+     * Публикует инвалидацию для остальных узлов. Ошибка публикации не прерывает запись в кэш:
+     * на других узлах значение устареет не дольше TTL локального кэша
+     */
+    public void publish(String cacheName, Object key) {
+        try {
+            String payload = objectMapper.writeValueAsString(
+                    new Invalidation(nodeId, cacheName, key != null ? key.toString() : null));
+            redisTemplate.convertAndSend(topic.getTopic(), payload);
+        } catch (JsonProcessingException | RuntimeException e) {
+            log.warn("Не удалось опубликовать инвалидацию кэша {} по ключу {}: {}", cacheName, key, e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Invalidation invalidation;
+        try {
+            invalidation = objectMapper.readValue(message.getBody(), Invalidation.class);
+        } catch (IOException e) {
+            log.warn("Некорректное сообщение об инвалидации кэша: {}", e.getMessage());
+            return;
+        }
+        if (nodeId.equals(invalidation.origin())) {
+            return;
+        }
+        log.debug("Инвалидация кэша {} по ключу {} от узла {}", invalidation.cache(), invalidation.key(), invalidation.origin());
+        localEvictor.accept(invalidation.cache(), invalidation.key());
+    }
+}
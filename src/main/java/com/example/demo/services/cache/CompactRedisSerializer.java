@@ -0,0 +1,173 @@
+package com.example.demo.services.cache;
+
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.jsontype.impl.LaissezFaireSubTypeValidator;
+import com.fasterxml.jackson.dataformat.smile.databind.SmileMapper;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Компактный сериализатор значений Redis: двоичный JSON (Smile) со сжатием LZ4 крупных значений
+ *
+ * <p>Формат значения: заголовок из трех байт - {@link #MAGIC}, версия формата и флаги ({@link #FLAG_LZ4}),
+ * затем для сжатого значения длина исходных данных (4 байта) и блок LZ4, для несжатого - данные Smile.
+ * Значения без заголовка читаются как JSON прежнего сериализатора ({@link #jsonSerializer()}), поэтому при
+ * поэтапном обновлении узлы с новым кодом читают записи старых; версия формата выше известной отклоняется
+ * с {@link SerializationException}. Запись в прежнем формате включается флагом {@code compactWrites}: узлы
+ * переключаются на компактную запись, когда все они умеют ее читать.</p>
+ *
+ * <p>Блок LZ4 распаковывается проверяющим границы декомпрессором: значение из Redis не считается доверенным,
+ * и поврежденный блок или неверная длина отклоняются с {@link SerializationException}.</p>
+ *
+ * <p>Имена классов в значение не записываются: тип задается при создании, по одному сериализатору на кэш.</p>
+ *
+ * @param <T> тип значений кэша
+ */
+public class CompactRedisSerializer<T> implements RedisSerializer<T> {
+
+    /** Первый байт заголовка; не совпадает с первым байтом JSON и Smile (':') */
+    static final byte MAGIC = (byte) 0xC7;
+
+    /** Текущая версия формата */
+    static final byte VERSION = 1;
+
+    /** Флаг: данные сжаты LZ4 */
+    static final byte FLAG_LZ4 = 0x01;
+
+    private static final int HEADER_LENGTH = 3;
+    private static final int LENGTH_FIELD = Integer.BYTES;
+    private static final int MAX_LZ4_RATIO = 255;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private final Class<T> type;
+    private final int compressionThreshold;
+    private final boolean compactWrites;
+    private final ObjectMapper smileMapper;
+    private final RedisSerializer<Object> legacySerializer;
+    private final LZ4Compressor compressor = LZ4.fastCompressor();
+    private final LZ4SafeDecompressor decompressor = LZ4.safeDecompressor();
+
+    /**
+     * @param type                 тип значений
+     * @param compressionThreshold размер данных Smile в байтах, начиная с которого они сжимаются
+     * @param compactWrites        записывать значения в компактном формате; false - в прежнем JSON
+     */
+    public CompactRedisSerializer(Class<T> type, int compressionThreshold, boolean compactWrites) {
+        this.type = type;
+        this.compressionThreshold = compressionThreshold;
+        this.compactWrites = compactWrites;
+        this.smileMapper = SmileMapper.builder()
+                .findAndAddModules()
+                .build();
+        this.legacySerializer = jsonSerializer();
+    }
+
+    /**
+     * JSON-сериализатор с именами классов в значении (формат по умолчанию в Spring Data Redis)
+     * и поддержкой типов java.time
+     */
+    public static GenericJackson2JsonRedisSerializer jsonSerializer() {
+        ObjectMapper mapper = new ObjectMapper()
+                .findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        GenericJackson2JsonRedisSerializer.registerNullValueSerializer(mapper, null);
+        mapper.activateDefaultTyping(LaissezFaireSubTypeValidator.instance,
+                ObjectMapper.DefaultTyping.EVERYTHING, JsonTypeInfo.As.PROPERTY);
+        return new GenericJackson2JsonRedisSerializer(mapper);
+    }
+
+    @Override
+    public byte[] serialize(T value) throws SerializationException {
+        if (value == null) {
+            return new byte[0];
+        }
+        if (!compactWrites) {
+            return legacySerializer.serialize(value);
+        }
+        byte[] payload;
+        try {
+            payload = smileMapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new SerializationException("Не удалось сериализовать значение " + type.getSimpleName(), e);
+        }
+        if (payload.length >= compressionThreshold) {
+            byte[] compressed = new byte[HEADER_LENGTH + LENGTH_FIELD + compressor.maxCompressedLength(payload.length)];
+            int compressedLength = compressor.compress(payload, 0, payload.length,
+                    compressed, HEADER_LENGTH + LENGTH_FIELD);
+            // Несжимаемые данные сохраняются как есть
+            if (LENGTH_FIELD + compressedLength < payload.length) {
+                ByteBuffer.wrap(compressed)
+                        .put(MAGIC).put(VERSION).put(FLAG_LZ4)
+                        .putInt(payload.length);
+                return Arrays.copyOf(compressed, HEADER_LENGTH + LENGTH_FIELD + compressedLength);
+            }
+        }
+        byte[] result = new byte[HEADER_LENGTH + payload.length];
+        result[0] = MAGIC;
+        result[1] = VERSION;
+        System.arraycopy(payload, 0, result, HEADER_LENGTH, payload.length);
+        return result;
+    }
+
+    @Override
+    public T deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] != MAGIC) {
+            return readLegacy(bytes);
+        }
+        if (bytes.length < HEADER_LENGTH) {
+            throw new SerializationException("Обрезанный заголовок значения кэша");
+        }
+        if (bytes[1] > VERSION || bytes[1] < 1) {
+            throw new SerializationException("Неизвестная версия формата значения кэша: " + bytes[1]);
+        }
+        try {
+            if ((bytes[2] & FLAG_LZ4) != 0) {
+                int length = ByteBuffer.wrap(bytes, HEADER_LENGTH, LENGTH_FIELD).getInt();
+                int blockLength = bytes.length - HEADER_LENGTH - LENGTH_FIELD;
+                // LZ4 сжимает не более чем в 255 раз: большая длина в заголовке - признак поврежденного значения
+                if (length < 0 || (long) length > (long) blockLength * MAX_LZ4_RATIO) {
+                    throw new SerializationException("Неверная длина сжатого значения кэша: " + length);
+                }
+                byte[] payload = new byte[length];
+                int decompressed = decompressor.decompress(bytes, HEADER_LENGTH + LENGTH_FIELD,
+                        blockLength, payload, 0, length);
+                if (decompressed != length) {
+                    throw new SerializationException("Длина распакованного значения кэша " + decompressed
+                            + " не совпадает с заголовком " + length);
+                }
+                return smileMapper.readValue(payload, type);
+            }
+            return smileMapper.readValue(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, type);
+        } catch (IOException | RuntimeException e) {
+            throw new SerializationException("Не удалось прочитать значение " + type.getSimpleName(), e);
+        }
+    }
+
+    @Override
+    public Class<?> getTargetType() {
+        return type;
+    }
+
+    private T readLegacy(byte[] bytes) {
+        Object value = legacySerializer.deserialize(bytes);
+        if (value != null && !type.isInstance(value)) {
+            throw new SerializationException("Значение кэша имеет тип " + value.getClass().getName()
+                    + " вместо " + type.getName());
+        }
+        return type.cast(value);
+    }
+}
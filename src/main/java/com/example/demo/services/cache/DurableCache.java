@@ -0,0 +1,157 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
+
+/**
+ * Кэш ответов модели с долговременным хранилищем ai_analysis_cache в качестве последнего уровня
+ *
+ * <p>Промах быстрых уровней (память процесса, Redis) проверяется в {@link AnalysisCacheStore}; найденный там
+ * ответ возвращается в быстрые уровни. Запись и удаление выполняются в быстрых уровнях сразу, а в хранилище -
+ * отложенно пакетами. Сохраняются только значения {@link InsightResponse}.</p>
+ */
+public class DurableCache implements Cache {
+
+    private final Cache delegate;
+    private final AnalysisCacheStore store;
+
+    public DurableCache(Cache delegate, AnalysisCacheStore store) {
+        this.delegate = delegate;
+        this.store = store;
+    }
+
+    /**
+     * Быстрые уровни кэша
+     */
+    public Cache getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper value = delegate.get(key);
+        if (value != null) {
+            return value;
+        }
+        InsightResponse stored = store.find(key.toString()).orElse(null);
+        if (stored == null) {
+            return null;
+        }
+        delegate.put(key, stored);
+        return () -> stored;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return delegate.get(key, () -> {
+            InsightResponse stored = store.find(key.toString()).orElse(null);
+            if (stored != null) {
+                return (T) stored;
+            }
+            T value = valueLoader.call();
+            save(key, value);
+            return value;
+        });
+    }
+
+    /**
+     * Чтение нескольких ключей: промахи быстрых уровней читаются из хранилища одним запросом
+     * и возвращаются в быстрые уровни
+     *
+     * @param delegateLoader пакетное чтение ключей из быстрых уровней; возвращает только найденные ключи
+     */
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type,
+                                     Function<Collection<String>, Map<String, T>> delegateLoader) {
+        Map<String, T> result = delegateLoader.apply(keys);
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            if (!result.containsKey(key)) {
+                missing.add(key);
+            }
+        }
+        if (missing.isEmpty() || !type.isAssignableFrom(InsightResponse.class)) {
+            return result;
+        }
+        store.findAll(missing).forEach((key, value) -> {
+            delegate.put(key, value);
+            result.put(key, type.cast(value));
+        });
+        return result;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, value);
+        save(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        if (existing == null) {
+            save(key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+        store.delete(key.toString());
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = delegate.evictIfPresent(key);
+        store.delete(key.toString());
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+        store.deleteAll();
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = delegate.invalidate();
+        store.deleteAll();
+        return present;
+    }
+
+    private void save(Object key, Object value) {
+        if (value instanceof InsightResponse response) {
+            store.save(key.toString(), response);
+        }
+    }
+}
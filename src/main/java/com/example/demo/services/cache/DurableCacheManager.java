@@ -0,0 +1,41 @@
+package com.example.demo.services.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Менеджер кэшей, дополняющий выбранные кэши долговременным хранилищем ai_analysis_cache
+ * (см. {@link DurableCache}); остальные кэши возвращаются без изменений
+ */
+public class DurableCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+    private final AnalysisCacheStore store;
+    private final Set<String> durableCacheNames;
+    private final ConcurrentMap<String, DurableCache> caches = new ConcurrentHashMap<>();
+
+    public DurableCacheManager(CacheManager delegate, AnalysisCacheStore store, Set<String> durableCacheNames) {
+        this.delegate = delegate;
+        this.store = store;
+        this.durableCacheNames = durableCacheNames;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = delegate.getCache(name);
+        if (cache == null || !durableCacheNames.contains(name)) {
+            return cache;
+        }
+        return caches.computeIfAbsent(name, cacheName -> new DurableCache(cache, store));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
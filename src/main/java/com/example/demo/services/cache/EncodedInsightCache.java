@@ -0,0 +1,220 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Готовые байты HTTP-ответа для объектов {@link InsightResponse}, которые отдаются многократно
+ *
+ * <p>Ответы из кэша - это одни и те же экземпляры, поэтому байты хранятся рядом с объектом: ключом служит
+ * сам экземпляр (сравнение по ссылке, слабая ссылка). Пока ответ находится в кэше и используется, его JSON
+ * в UTF-8 и сжатая gzip копия вычисляются один раз, а при каждом попадании записываются в ответ как есть,
+ * без сериализации Jackson. Когда ответ вытеснен из кэша и больше не используется, байты удаляются вместе
+ * с ним. Объем байтов ограничен {@code ai.cache.encoded.max-weight}.</p>
+ *
+ * <p>JSON формируется тем же {@link ObjectMapper}, что и тело ответа Spring MVC, поэтому байты совпадают
+ * с обычной сериализацией. Сжатая копия создается для ответов от {@code ai.cache.encoded.gzip-min-size}
+ * байт.</p>
+ *
+ * <p>Вместе с байтами хранится сильный ETag - хэш MurmurHash3 x64 128 от JSON, поэтому проверка
+ * {@code If-None-Match} для ответа из кэша не требует ни сериализации, ни хэширования. Сжатая копия
+ * помечается тем же хэшем с суффиксом {@code -gzip} ({@link EncodedInsight#gzipEtag()}).</p>
+ *
+ * <p>ETag ответов из кэша aiResponses дополнительно запоминается по ключу кэша при записи ответа
+ * ({@link #remember(String, InsightResponse)}) и сверяется с ответом по времени его создания. Экземпляр,
+ * прочитанный из L2, долговременного уровня или снимка, - новый объект, но его ETag берется из валидатора
+ * без повторной сериализации. Число валидаторов ограничено {@code ai.cache.encoded.max-validators}.</p>
+ *
+ * <p>Метрики: {@code ai.cache.encoded.requests{result=hit|miss}} и статистика Caffeine кэша
+ * {@code encodedInsights}.</p>
+ */
+@Component
+public class EncodedInsightCache {
+
+    /**
+     * Байты ответа
+     *
+     * @param json JSON в UTF-8
+     * @param gzip JSON, сжатый gzip, или null, если ответ слишком мал для сжатия
+     * @param etag сильный ETag несжатого JSON в кавычках, например {@code "9f86d081884c7d65..."}
+     */
+    public record EncodedInsight(byte[] json, byte[] gzip, String etag) {
+
+        /**
+         * Сильный ETag сжатой копии: тот же хэш с суффиксом {@code -gzip}, например {@code "9f86d081884c7d65...-gzip"}.
+         * Сильный валидатор должен различаться для разных Content-Encoding, иначе кэш может собрать
+         * ответ на Range-запрос из байтов двух представлений
+         */
+        public String gzipEtag() {
+            return EncodedInsightCache.gzipEtag(etag);
+        }
+    }
+
+    /**
+     * Валидатор ответа, сохраненного в кэше aiResponses под ключом
+     *
+     * @param etag сильный ETag несжатого JSON
+     * @param compressible есть ли у ответа сжатая копия
+     * @param timestamp время создания ответа: по нему валидатор сверяется с текущим значением кэша
+     */
+    public record InsightValidator(String etag, boolean compressible, Instant timestamp) {
+
+        /**
+         * ETag представления: сжатого, если {@code gzip} и сжатая копия есть, иначе несжатого
+         */
+        public String etag(boolean gzip) {
+            return gzip && compressible ? gzipEtag(etag) : etag;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+    private final boolean enabled;
+    private final int gzipMinSize;
+    private final Cache<InsightResponse, EncodedInsight> encoded;
+    private final Cache<String, InsightValidator> validators;
+    private final Counter hits;
+    private final Counter misses;
+
+    public EncodedInsightCache(ObjectMapper objectMapper, MeterRegistry meterRegistry,
+                               @Value("${ai.cache.encoded.enabled:true}") boolean enabled,
+                               @Value("${ai.cache.encoded.max-weight:32MB}") DataSize maxWeight,
+                               @Value("${ai.cache.encoded.gzip-min-size:1024}") int gzipMinSize,
+                               @Value("${ai.cache.encoded.max-validators:50000}") long maxValidators) {
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.gzipMinSize = gzipMinSize;
+        // weakKeys сравнивает ключи по ссылке: байты принадлежат конкретному экземпляру ответа
+        this.encoded = Caffeine.newBuilder()
+                .weakKeys()
+                .maximumWeight(maxWeight.toBytes())
+                .weigher((InsightResponse response, EncodedInsight value) -> value.json().length
+                        + (value.gzip() != null ? value.gzip().length : 0) + value.etag().length())
+                .recordStats()
+                .build();
+        this.validators = Caffeine.newBuilder()
+                .maximumSize(maxValidators)
+                .build();
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        CaffeineCacheMetrics.monitor(meterRegistry, encoded, "encodedInsights");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Байты ответа: сохраненные для этого экземпляра или вычисленные и сохраненные сейчас
+     *
+     * @return байты ответа или null, если хранение байтов отключено
+     */
+    public EncodedInsight get(InsightResponse response) {
+        if (!enabled || response == null) {
+            return null;
+        }
+        EncodedInsight present = encoded.getIfPresent(response);
+        if (present != null) {
+            hits.increment();
+            return present;
+        }
+        misses.increment();
+        return encoded.get(response, this::encode);
+    }
+
+    /**
+     * Вычисляет и запоминает валидатор ответа, сохраняемого в кэш aiResponses под ключом. Вызывается при записи
+     * в кэш, поэтому условные запросы к ответу не требуют сериализации, даже если из L2, долговременного уровня
+     * или снимка прочитан другой экземпляр того же ответа.
+     *
+     * @param key ключ кэша (отпечаток запроса)
+     * @return валидатор ответа
+     */
+    public InsightValidator remember(String key, InsightResponse response) {
+        EncodedInsight bytes = enabled ? get(response) : encode(response);
+        InsightValidator validator = new InsightValidator(bytes.etag(), bytes.gzip() != null, response.getTimestamp());
+        if (response.getTimestamp() != null) {
+            validators.put(key, validator);
+        }
+        return validator;
+    }
+
+    /**
+     * Валидатор ответа из кэша aiResponses: запомненный при записи, если он относится к этому же ответу
+     * (совпадает время создания), иначе вычисленный и запомненный сейчас
+     *
+     * @param key ключ кэша (отпечаток запроса)
+     * @param response текущее значение кэша по ключу
+     */
+    public InsightValidator validator(String key, InsightResponse response) {
+        InsightValidator stored = validators.getIfPresent(key);
+        if (stored != null && stored.timestamp().equals(response.getTimestamp())) {
+            return stored;
+        }
+        return remember(key, response);
+    }
+
+    /**
+     * Число экземпляров ответов с сохраненными байтами
+     */
+    long size() {
+        encoded.cleanUp();
+        return encoded.estimatedSize();
+    }
+
+    /**
+     * Байты ответа без сохранения: для ответов, которые отдаются однократно, или при отключенном хранении
+     */
+    public EncodedInsight encode(InsightResponse response) {
+        byte[] json;
+        try {
+            json = objectMapper.writeValueAsBytes(response);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Не удалось сериализовать ответ по теме " + response.getTopic(), e);
+        }
+        return new EncodedInsight(json, json.length >= gzipMinSize ? gzip(json) : null, etag(json));
+    }
+
+    /**
+     * Сильный ETag сжатой копии: тот же хэш с суффиксом {@code -gzip}
+     */
+    static String gzipEtag(String etag) {
+        return etag.substring(0, etag.length() - 1) + "-gzip\"";
+    }
+
+    private static String etag(byte[] json) {
+        long[] hash = InsightFingerprinter.murmur3x64_128(json, 0);
+        return String.format("\"%016x%016x\"", hash[0], hash[1]);
+    }
+
+    private static byte[] gzip(byte[] json) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(json.length / 2);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.cache.encoded.requests")
+                .description("Обращения к готовым байтам ответов AI")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
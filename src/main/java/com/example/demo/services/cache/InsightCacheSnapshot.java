@@ -0,0 +1,290 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Снимок локального кэша ответов AI в файле для "теплого" перезапуска узла без Redis
+ *
+ * <p>Раз в {@code ai.cache.snapshot.interval} и при остановке содержимое локального кэша aiResponses
+ * записывается в файл {@link InsightSnapshotFile}. При запуске файл только отображается в память; ответы
+ * из него восстанавливаются по одному при промахе локального кэша ({@link SnapshotRestoringCache}).
+ * Каждый ключ восстанавливается не более одного раза: после чтения, записи или удаления ключа в кэше
+ * снимок для него больше не используется, а очистка кэша отключает снимок целиком. Снимок старше
+ * {@code ai.cache.snapshot.max-age} не восстанавливается.</p>
+ *
+ * <p>Еще не восстановленные записи прежнего снимка переносятся в следующий, только если ответ моложе
+ * {@code ai.cache.insights.hard-ttl} и {@code ai.cache.snapshot.max-age} (по его {@code timestamp}), и не более
+ * {@code ai.cache.snapshot.max-carry-over} байт, начиная с новых: иначе ключи, которые никто не читает,
+ * оставались бы в файле навсегда.</p>
+ *
+ * <p>Метрики: {@code ai.cache.snapshot.age} - возраст последнего записанного или восстановленного снимка,
+ * {@code ai.cache.snapshot.restore} - время открытия снимка при запуске, {@code ai.cache.snapshot.write} -
+ * время записи, {@code ai.cache.snapshot.requests{result=hit|miss}} и {@code ai.cache.snapshot.hit_ratio} -
+ * промахи локального кэша, закрытые снимком.</p>
+ */
+@Component
+@Slf4j
+public class InsightCacheSnapshot {
+
+    private static final String CACHE_NAME = "aiResponses";
+
+    private final ObjectProvider<CacheManager> cacheManagerProvider;
+    private final boolean enabled;
+    private final Path path;
+    private final Duration maxAge;
+    private final Duration hardTtl;
+    private final long maxCarryOver;
+    private final CompactRedisSerializer<InsightResponse> serializer =
+            new CompactRedisSerializer<>(InsightResponse.class, 512, true);
+
+    /** Восстановленный снимок; null - снимка нет или он отключен */
+    private volatile InsightSnapshotFile restored;
+
+    /** Ключи снимка, которые больше не восстанавливаются */
+    private final Set<String> consumed = ConcurrentHashMap.newKeySet();
+
+    /** Время создания последнего записанного или восстановленного снимка */
+    private volatile Instant lastSnapshotAt;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Timer restoreTimer;
+    private final Timer writeTimer;
+
+    public InsightCacheSnapshot(ObjectProvider<CacheManager> cacheManagerProvider, MeterRegistry meterRegistry,
+                                @Value("${ai.cache.snapshot.enabled:false}") boolean enabled,
+                                @Value("${ai.cache.snapshot.path:data/insight-cache.snapshot}") Path path,
+                                @Value("${ai.cache.snapshot.max-age:24h}") Duration maxAge,
+                                @Value("${ai.cache.insights.hard-ttl:24h}") Duration hardTtl,
+                                @Value("${ai.cache.snapshot.max-carry-over:16MB}") DataSize maxCarryOver) {
+        this.cacheManagerProvider = cacheManagerProvider;
+        this.enabled = enabled;
+        this.path = path;
+        this.maxAge = maxAge;
+        this.hardTtl = hardTtl;
+        this.maxCarryOver = maxCarryOver.toBytes();
+        this.hits = requests(meterRegistry, "hit");
+        this.misses = requests(meterRegistry, "miss");
+        Gauge.builder("ai.cache.snapshot.hit_ratio", () -> {
+                    double total = hits.count() + misses.count();
+                    return total == 0 ? 0 : hits.count() / total;
+                })
+                .description("Доля промахов локального кэша, закрытых снимком, с момента запуска")
+                .register(meterRegistry);
+        Gauge.builder("ai.cache.snapshot.age", this, snapshot -> snapshot.lastSnapshotAt == null ? Double.NaN
+                        : Duration.between(snapshot.lastSnapshotAt, Instant.now()).toMillis() / 1000.0)
+                .description("Возраст последнего записанного или восстановленного снимка кэша")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+        this.restoreTimer = Timer.builder("ai.cache.snapshot.restore")
+                .description("Время открытия снимка кэша при запуске")
+                .register(meterRegistry);
+        this.writeTimer = Timer.builder("ai.cache.snapshot.write")
+                .description("Время записи снимка кэша")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Отображает в память снимок, оставшийся от предыдущего запуска; записи читаются позже, по ключу
+     */
+    @PostConstruct
+    public void restore() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            InsightSnapshotFile file = InsightSnapshotFile.open(path);
+            if (file.createdAt().isBefore(Instant.now().minus(maxAge))) {
+                log.info("Снимок кэша {} от {} устарел и не восстанавливается", path, file.createdAt());
+                return;
+            }
+            restored = file;
+            lastSnapshotAt = file.createdAt();
+            log.info("Открыт снимок кэша {}: {} записей от {}", path, file.size(), file.createdAt());
+        } catch (NoSuchFileException e) {
+            log.debug("Снимок кэша {} отсутствует", path);
+        } catch (IOException e) {
+            log.warn("Не удалось открыть снимок кэша {}: {}", path, e.getMessage());
+        } finally {
+            restoreTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Восстанавливает ответ из снимка; повторно тот же ключ не восстанавливается
+     *
+     * @return ответ или null, если его нет в снимке или он уже использован
+     */
+    public InsightResponse take(Object key) {
+        InsightSnapshotFile file = restored;
+        if (file == null) {
+            return null;
+        }
+        String snapshotKey = key.toString();
+        InsightResponse response = null;
+        try {
+            // Отсутствующие в снимке ключи не запоминаются, поэтому множество ограничено размером снимка
+            byte[] value = file.find(snapshotKey);
+            if (value != null && consumed.add(snapshotKey)) {
+                response = serializer.deserialize(value);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Не удалось прочитать ответ {} из снимка кэша: {}", snapshotKey, e.getMessage());
+        }
+        (response != null ? hits : misses).increment();
+        return response;
+    }
+
+    /**
+     * Исключает ключ из восстановления: значение в кэше записано заново или удалено
+     */
+    public void discard(Object key) {
+        InsightSnapshotFile file = restored;
+        if (file != null && file.contains(key.toString())) {
+            consumed.add(key.toString());
+        }
+    }
+
+    /**
+     * Отключает восстановление из снимка: кэш очищен
+     */
+    public void discardAll() {
+        restored = null;
+    }
+
+    /**
+     * Записывает содержимое локального кэша и еще не восстановленные записи прежнего снимка
+     */
+    @Scheduled(fixedDelayString = "${ai.cache.snapshot.interval:PT5M}",
+            initialDelayString = "${ai.cache.snapshot.interval:PT5M}")
+    public void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        com.github.benmanes.caffeine.cache.Cache<?, ?> local = localCache();
+        if (local == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        local.asMap().forEach((key, value) -> {
+            if (key instanceof String snapshotKey && value instanceof InsightResponse response) {
+                entries.put(snapshotKey, serializer.serialize(response));
+            }
+        });
+        InsightSnapshotFile file = restored;
+        if (file != null) {
+            carryOver(file, entries);
+        }
+        Instant createdAt = Instant.now();
+        try {
+            InsightSnapshotFile.write(path, entries, createdAt);
+            lastSnapshotAt = createdAt;
+            log.debug("Записан снимок кэша {}: {} записей", path, entries.size());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось записать снимок кэша {}: {}", path, e.getMessage());
+        } finally {
+            writeTimer.record(Duration.ofNanos(System.nanoTime() - start));
+        }
+    }
+
+    /**
+     * Добавляет к записям еще не восстановленные записи прежнего снимка: ответы моложе жесткого TTL и max-age,
+     * от новых к старым, пока их объем не превысит {@code ai.cache.snapshot.max-carry-over}
+     */
+    private void carryOver(InsightSnapshotFile file, Map<String, byte[]> entries) {
+        Instant oldest = Instant.now().minus(hardTtl.compareTo(maxAge) < 0 ? hardTtl : maxAge);
+        List<CarriedEntry> candidates = new ArrayList<>();
+        file.forEach((key, value) -> {
+            if (consumed.contains(key) || entries.containsKey(key)) {
+                return;
+            }
+            Instant timestamp = timestamp(key, value);
+            if (timestamp != null && timestamp.isAfter(oldest)) {
+                candidates.add(new CarriedEntry(key, value, timestamp));
+            }
+        });
+        candidates.sort(Comparator.comparing(CarriedEntry::timestamp).reversed());
+        long remaining = maxCarryOver;
+        for (CarriedEntry candidate : candidates) {
+            if (candidate.value().length <= remaining) {
+                remaining -= candidate.value().length;
+                entries.put(candidate.key(), candidate.value());
+            }
+        }
+    }
+
+    private Instant timestamp(String key, byte[] value) {
+        try {
+            InsightResponse response = serializer.deserialize(value);
+            return response != null ? response.getTimestamp() : null;
+        } catch (RuntimeException e) {
+            log.debug("Запись {} прежнего снимка не читается и не переносится: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Запись прежнего снимка, кандидат на перенос
+     */
+    private record CarriedEntry(String key, byte[] value, Instant timestamp) {
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+
+    private com.github.benmanes.caffeine.cache.Cache<?, ?> localCache() {
+        Cache cache;
+        try {
+            CacheManager cacheManager = cacheManagerProvider.getIfAvailable();
+            cache = cacheManager != null ? cacheManager.getCache(CACHE_NAME) : null;
+        } catch (RuntimeException e) {
+            // При остановке контекста менеджер кэшей может быть уже уничтожен
+            log.warn("Локальный кэш {} недоступен для снимка: {}", CACHE_NAME, e.getMessage());
+            return null;
+        }
+        return cache != null && cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> local
+                ? local : null;
+    }
+
+    private static Counter requests(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ai.cache.snapshot.requests")
+                .description("Промахи локального кэша, проверенные по снимку")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Канонический отпечаток запроса анализа - единый ключ для всех уровней кэша ответов AI,
+ * объединения одинаковых запросов и долговременного хранилища
+ *
+ * <p>В отпечаток входят тема после нормализации (NFKC, свертка регистра, схлопывание пробелов), язык,
+ * maxResults, 128-битный хэш текста для анализа, а также модель Ollama ({@code ollama.model}) и версия
+ * промпта ({@code ai.prompt.version}): после смены модели или промпта прежние ответы перестают находиться
+ * без очистки кэшей. Запросы, различающиеся только регистром, пробелами или формой записи символов темы,
+ * получают один отпечаток.</p>
+ *
+ * <p>Формат: {@code <32 hex-символа MurmurHash3 x64 128>_<язык>}; язык в суффиксе сохраняется для
+ * хранилища ai_analysis_cache и отладки, для запроса без языка используется {@value #NO_LANGUAGE}.</p>
+ */
+@Component
+public class InsightFingerprinter {
+
+    /** Суффикс отпечатка запроса без указания языка */
+    static final String NO_LANGUAGE = "auto";
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+", Pattern.UNICODE_CHARACTER_CLASS);
+
+    /** Разделитель полей канонической формы; не встречается в нормализованных значениях */
+    private static final char SEPARATOR = '\u0000';
+
+    private final String model;
+    private final String promptVersion;
+
+    public InsightFingerprinter(@Value("${ollama.model:llama2}") String model,
+                                @Value("${ai.prompt.version:1}") String promptVersion) {
+        this.model = model;
+        this.promptVersion = promptVersion;
+    }
+
+    /**
+     * Отпечаток запроса - ключ кэша aiResponses и объединения одинаковых запросов
+     *
+     * @param request запрос с непустой темой
+     * @return отпечаток вида {@code <hex>_<язык>}
+     */
+    public String fingerprint(InsightRequest request) {
+        String language = normalizeLanguage(request.getLanguage());
+        String canonical = "v" + promptVersion + SEPARATOR + model + SEPARATOR + language + SEPARATOR
+                + normalizeTopic(request.getTopic()) + SEPARATOR
+                + (request.getMaxResults() != null ? request.getMaxResults() : "") + SEPARATOR
+                + textHash(request.getText());
+        return hex(murmur3x64_128(canonical.getBytes(StandardCharsets.UTF_8), 0)) + "_" + language;
+    }
+
+    /**
+     * Раздел индекса семантического кэша: похожие темы ищутся только среди ответов на том же языке,
+     * той же модели и версии промпта
+     *
+     * @param request запрос
+     * @return имя раздела вида {@code <язык>.<8 hex-символов>}
+     */
+    public String semanticScope(InsightRequest request) {
+        String generation = "v" + promptVersion + SEPARATOR + model;
+        long[] hash = murmur3x64_128(generation.getBytes(StandardCharsets.UTF_8), 0);
+        return normalizeLanguage(request.getLanguage()) + "." + String.format("%08x", (int) (hash[0] >>> 32));
+    }
+
+    /**
+     * Нормализует тему: NFKC, свертка регистра, схлопывание пробельных символов (включая неразрывные)
+     * и удаление пробелов по краям
+     *
+     * @param topic тема запроса
+     * @return нормализованная тема
+     */
+    public static String normalizeTopic(String topic) {
+        String normalized = Normalizer.normalize(topic, Normalizer.Form.NFKC);
+        // Перевод в верхний и обратно в нижний регистр приближает полную свертку регистра Unicode (ß -> ss)
+        normalized = normalized.toUpperCase(Locale.ROOT).toLowerCase(Locale.ROOT);
+        return WHITESPACE.matcher(normalized).replaceAll(" ").trim();
+    }
+
+    private static String normalizeLanguage(String language) {
+        return language == null || language.isBlank() ? NO_LANGUAGE : language.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Хэш текста для анализа; пустой текст равнозначен отсутствующему
+     */
+    private static String textHash(String text) {
+        if (text == null || text.isBlank()) {
+            return "";
+        }
+        return hex(murmur3x64_128(text.trim().getBytes(StandardCharsets.UTF_8), 0));
+    }
+
+    private static String hex(long[] hash) {
+        return String.format("%016x%016x", hash[0], hash[1]);
+    }
+
+    /**
+     * MurmurHash3 x64 128 (некриптографический, совпадает с эталонной реализацией MurmurHash3_x64_128)
+     *
+     * @return две 64-битные половины хэша h1, h2
+     */
+    static long[] murmur3x64_128(byte[] data, int seed) {
+        final long c1 = 0x87c37b91114253d5L;
+        final long c2 = 0x4cf5ad432745937fL;
+        int length = data.length;
+        int blocks = length / 16;
+        long h1 = seed & 0xffffffffL;
+        long h2 = seed & 0xffffffffL;
+
+        for (int i = 0; i < blocks; i++) {
+            long k1 = getLong(data, i * 16);
+            long k2 = getLong(data, i * 16 + 8);
+
+            k1 *= c1;
+            k1 = Long.rotateLeft(k1, 31);
+            k1 *= c2;
+            h1 ^= k1;
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            k2 *= c2;
+            k2 = Long.rotateLeft(k2, 33);
+            k2 *= c1;
+            h2 ^= k2;
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        int tail = blocks * 16;
+        long k1 = 0;
+        long k2 = 0;
+        switch (length & 15) {
+            case 15: k2 ^= (data[tail + 14] & 0xffL) << 48;
+            case 14: k2 ^= (data[tail + 13] & 0xffL) << 40;
+            case 13: k2 ^= (data[tail + 12] & 0xffL) << 32;
+            case 12: k2 ^= (data[tail + 11] & 0xffL) << 24;
+            case 11: k2 ^= (data[tail + 10] & 0xffL) << 16;
+            case 10: k2 ^= (data[tail + 9] & 0xffL) << 8;
+            case 9:
+                k2 ^= data[tail + 8] & 0xffL;
+                k2 *= c2;
+                k2 = Long.rotateLeft(k2, 33);
+                k2 *= c1;
+                h2 ^= k2;
+            case 8: k1 ^= (data[tail + 7] & 0xffL) << 56;
+            case 7: k1 ^= (data[tail + 6] & 0xffL) << 48;
+            case 6: k1 ^= (data[tail + 5] & 0xffL) << 40;
+            case 5: k1 ^= (data[tail + 4] & 0xffL) << 32;
+            case 4: k1 ^= (data[tail + 3] & 0xffL) << 24;
+            case 3: k1 ^= (data[tail + 2] & 0xffL) << 16;
+            case 2: k1 ^= (data[tail + 1] & 0xffL) << 8;
+            case 1:
+                k1 ^= data[tail] & 0xffL;
+                k1 *= c1;
+                k1 = Long.rotateLeft(k1, 31);
+                k1 *= c2;
+                h1 ^= k1;
+            default:
+                break;
+        }
+
+        h1 ^= length;
+        h2 ^= length;
+        h1 += h2;
+        h2 += h1;
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+        h1 += h2;
+        h2 += h1;
+        return new long[]{h1, h2};
+    }
+
+    private static long getLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = (value << 8) | (data[offset + i] & 0xffL);
+        }
+        return value;
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
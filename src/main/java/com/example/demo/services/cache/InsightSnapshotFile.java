@@ -0,0 +1,220 @@
+package com.example.demo.services.cache;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Файл снимка кэша ответов: записи, дописываемые подряд, и хэш-индекс по ключу в конце файла
+ *
+ * <p>Формат: заголовок {@link #HEADER_LENGTH} байт (сигнатура, версия, время создания, число записей,
+ * число слотов индекса, смещение индекса), затем записи {@code [длина ключа][ключ UTF-8][длина значения][значение]},
+ * затем индекс с открытой адресацией - слоты {@code [хэш ключа][смещение записи]}, 0 - пустой слот.
+ * Значения хранятся в том виде, в каком их передал вызывающий (здесь - формат {@link CompactRedisSerializer}).</p>
+ *
+ * <p>Файл отображается в память только для чтения: открытие проверяет лишь заголовок и размер, а запись
+ * находится по индексу при обращении к ключу, поэтому время открытия не зависит от размера снимка.
+ * Новый снимок пишется во временный файл и атомарно заменяет прежний.</p>
+ */
+public final class InsightSnapshotFile {
+
+    static final int MAGIC = 0x41495331; // "AIS1"
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 32;
+    private static final int SLOT_LENGTH = 2 * Long.BYTES;
+
+    private final ByteBuffer buffer;
+    private final Instant createdAt;
+    private final int entryCount;
+    private final int slotCount;
+    private final long indexOffset;
+
+    private InsightSnapshotFile(ByteBuffer buffer, Instant createdAt, int entryCount, int slotCount, long indexOffset) {
+        this.buffer = buffer;
+        this.createdAt = createdAt;
+        this.entryCount = entryCount;
+        this.slotCount = slotCount;
+        this.indexOffset = indexOffset;
+    }
+
+    /**
+     * Записывает снимок: сначала во временный файл рядом с целевым, затем атомарно переименовывает его
+     *
+     * @param target    файл снимка
+     * @param entries   сериализованные значения по ключам
+     * @param createdAt время создания снимка
+     */
+    public static void write(Path target, Map<String, byte[]> entries, Instant createdAt) throws IOException {
+        Path directory = target.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        int slotCount = Integer.highestOneBit(Math.max(2, entries.size() * 2 - 1)) << 1;
+        long[] slots = new long[2 * slotCount];
+        Path temp = Files.createTempFile(directory, target.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                        Channels.newOutputStream(channel), 64 * 1024));
+                // Заголовок дописывается после индекса, когда известно его смещение
+                out.write(new byte[HEADER_LENGTH]);
+                long offset = HEADER_LENGTH;
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                    byte[] value = entry.getValue();
+                    out.writeInt(key.length);
+                    out.write(key);
+                    out.writeInt(value.length);
+                    out.write(value);
+                    long hash = hash(key);
+                    int slot = (int) (hash & (slotCount - 1));
+                    while (slots[2 * slot + 1] != 0) {
+                        slot = (slot + 1) & (slotCount - 1);
+                    }
+                    slots[2 * slot] = hash;
+                    slots[2 * slot + 1] = offset;
+                    offset += 2L * Integer.BYTES + key.length + value.length;
+                }
+                for (long slot : slots) {
+                    out.writeLong(slot);
+                }
+                out.flush();
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH)
+                        .putInt(MAGIC).putInt(VERSION)
+                        .putLong(createdAt.toEpochMilli())
+                        .putInt(entries.size()).putInt(slotCount)
+                        .putLong(offset)
+                        .flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Отображает файл снимка в память и проверяет заголовок
+     *
+     * @throws IOException файл не читается или не является снимком поддерживаемой версии
+     */
+    public static InsightSnapshotFile open(Path path) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                throw new IOException("Недопустимый размер файла снимка: " + size);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("Файл не является снимком кэша: " + path);
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Неподдерживаемая версия снимка кэша: " + buffer.getInt(4));
+        }
+        Instant createdAt = Instant.ofEpochMilli(buffer.getLong(8));
+        int entryCount = buffer.getInt(16);
+        int slotCount = buffer.getInt(20);
+        long indexOffset = buffer.getLong(24);
+        if (slotCount <= 0 || Integer.bitCount(slotCount) != 1 || entryCount < 0 || entryCount >= slotCount
+                || indexOffset < HEADER_LENGTH || indexOffset + (long) slotCount * SLOT_LENGTH != buffer.capacity()) {
+            throw new IOException("Поврежденный заголовок снимка кэша: " + path);
+        }
+        return new InsightSnapshotFile(buffer, createdAt, entryCount, slotCount, indexOffset);
+    }
+
+    public Instant createdAt() {
+        return createdAt;
+    }
+
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Значение по ключу
+     *
+     * @return сериализованное значение или null, если ключа нет в снимке
+     */
+    public byte[] find(String key) {
+        int offset = locate(key.getBytes(StandardCharsets.UTF_8));
+        if (offset < 0) {
+            return null;
+        }
+        int valueOffset = offset + Integer.BYTES + buffer.getInt(offset);
+        byte[] value = new byte[buffer.getInt(valueOffset)];
+        buffer.get(valueOffset + Integer.BYTES, value);
+        return value;
+    }
+
+    /**
+     * Есть ли ключ в снимке; значение не читается
+     */
+    public boolean contains(String key) {
+        return locate(key.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    /**
+     * Последовательно перебирает записи снимка
+     *
+     * @param action получает ключ и сериализованное значение
+     */
+    public void forEach(BiConsumer<String, byte[]> action) {
+        int offset = HEADER_LENGTH;
+        while (offset < indexOffset) {
+            byte[] key = new byte[buffer.getInt(offset)];
+            buffer.get(offset + Integer.BYTES, key);
+            int valueOffset = offset + Integer.BYTES + key.length;
+            byte[] value = new byte[buffer.getInt(valueOffset)];
+            buffer.get(valueOffset + Integer.BYTES, value);
+            action.accept(new String(key, StandardCharsets.UTF_8), value);
+            offset = valueOffset + Integer.BYTES + value.length;
+        }
+    }
+
+    /**
+     * @return смещение записи с ключом или -1
+     */
+    private int locate(byte[] key) {
+        long hash = hash(key);
+        int slot = (int) (hash & (slotCount - 1));
+        for (int probes = 0; probes < slotCount; probes++) {
+            int slotOffset = (int) (indexOffset + (long) slot * SLOT_LENGTH);
+            long offset = buffer.getLong(slotOffset + Long.BYTES);
+            if (offset == 0) {
+                return -1;
+            }
+            if (buffer.getLong(slotOffset) == hash && keyEquals((int) offset, key)) {
+                return (int) offset;
+            }
+            slot = (slot + 1) & (slotCount - 1);
+        }
+        return -1;
+    }
+
+    private boolean keyEquals(int offset, byte[] key) {
+        if (buffer.getInt(offset) != key.length) {
+            return false;
+        }
+        byte[] stored = new byte[key.length];
+        buffer.get(offset + Integer.BYTES, stored);
+        return Arrays.equals(stored, key);
+    }
+
+    private static long hash(byte[] key) {
+        return InsightFingerprinter.murmur3x64_128(key, 0)[0];
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import com.github.benmanes.caffeine.cache.Weigher;
+
+import java.util.List;
+
+/**
+ * Оценка размера записи локального кэша в байтах для ограничения кэша по объему памяти
+ *
+ * <p>Строки учитываются в компактном представлении JVM: один байт на символ для Latin-1 и два байта,
+ * если в строке есть другие символы (например, кириллица), плюс заголовки объектов. Значения других типов
+ * оцениваются фиксированным размером {@link #DEFAULT_WEIGHT}.</p>
+ */
+public class InsightWeigher implements Weigher<Object, Object> {
+
+    /** Оценка записи, размер значения которой не вычисляется */
+    static final int DEFAULT_WEIGHT = 1024;
+
+    /** Заголовок объекта String и его массива byte[] */
+    private static final int STRING_OVERHEAD = 40;
+
+    /** Заголовок объекта с полями-ссылками */
+    private static final int OBJECT_OVERHEAD = 32;
+
+    /** Запись хэш-таблицы Caffeine со ссылками на ключ и значение и служебными полями политики вытеснения */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    @Override
+    public int weigh(Object key, Object value) {
+        long weight = ENTRY_OVERHEAD + (key instanceof String text ? weigh(text) : OBJECT_OVERHEAD);
+        weight += value instanceof InsightResponse response ? weigh(response) : DEFAULT_WEIGHT;
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    static long weigh(InsightResponse response) {
+        long weight = OBJECT_OVERHEAD + weigh(response.getTopic()) + weigh(response.getSummary());
+        // Instant
+        weight += response.getTimestamp() != null ? 24 : 0;
+        List<String> concepts = response.getKeyConcepts();
+        if (concepts != null) {
+            weight += OBJECT_OVERHEAD + 8L * concepts.size();
+            for (String concept : concepts) {
+                weight += weigh(concept);
+            }
+        }
+        List<Recommendation> recommendations = response.getRecommendations();
+        if (recommendations != null) {
+            weight += OBJECT_OVERHEAD + 8L * recommendations.size();
+            for (Recommendation recommendation : recommendations) {
+                if (recommendation != null) {
+                    weight += OBJECT_OVERHEAD + weigh(recommendation.getTitle())
+                            + weigh(recommendation.getDescription());
+                }
+            }
+        }
+        return weight;
+    }
+
+    static long weigh(String text) {
+        if (text == null) {
+            return 0;
+        }
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return STRING_OVERHEAD + 2L * text.length();
+            }
+        }
+        return STRING_OVERHEAD + text.length();
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.demo.services.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
+import org.springframework.cache.Cache;
+import org.springframework.core.Ordered;
+
+/**
+ * Метрики кэшей, хранящих записи в памяти процесса в Caffeine, включая обернутые {@link DurableCache}
+ * и {@link TwoLevelCache}, которые стандартная привязка Spring Boot не распознает
+ *
+ * <p>Кроме стандартных метрик Caffeine ({@code cache.gets}, {@code cache.evictions},
+ * {@code cache.eviction.weight} и др.) регистрирует {@code ai.cache.local.weight{cache}} - суммарный вес
+ * записей в байтах для кэшей, ограниченных по весу.</p>
+ */
+public class LocalCacheMeterBinderProvider implements CacheMeterBinderProvider<Cache>, Ordered {
+
+    @Override
+    public MeterBinder getMeterBinder(Cache cache, Iterable<Tag> tags) {
+        if (!(cache.getNativeCache() instanceof com.github.benmanes.caffeine.cache.Cache<?, ?> local)) {
+            return null;
+        }
+        return registry -> {
+            new CaffeineCacheMetrics<>(local, cache.getName(), tags).bindTo(registry);
+            local.policy().eviction()
+                    .filter(eviction -> eviction.isWeighted())
+                    .ifPresent(eviction -> Gauge.builder("ai.cache.local.weight", local,
+                                    nativeCache -> eviction.weightedSize().orElse(0L))
+                            .description("Оценка объема записей локального кэша в байтах")
+                            .tags(Tags.of(tags).and("cache", cache.getName()))
+                            .baseUnit("bytes")
+                            .register(registry));
+        };
+    }
+
+    /**
+     * Проверяется раньше стандартной привязки кэшей Caffeine, чтобы вес записей учитывался и для них
+     */
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
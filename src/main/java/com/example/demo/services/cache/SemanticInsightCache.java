@@ -0,0 +1,341 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.services.client.AIProvider;
+import com.github.jelmerk.knn.DistanceFunctions;
+import com.github.jelmerk.knn.Item;
+import com.github.jelmerk.knn.SearchResult;
+import com.github.jelmerk.knn.hnsw.HnswIndex;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Семантический уровень кэша ответов модели
+ *
+ * <p>Тема запроса векторизуется моделью эмбеддингов Ollama и ищется в HNSW-индексе своего раздела
+ * (язык, модель и версия промпта, см. {@link InsightFingerprinter#semanticScope}).
+ * Индекс хранит не ответы, а ключи кэша {@code aiResponses}, под которыми сохранены ответы на похожие темы:
+ * если косинусная близость ближайшей темы не ниже {@code ai.semantic-cache.threshold}, запрос обслуживается
+ * ответом на нее. Близость между {@code ai.semantic-cache.near-hit-threshold} и порогом учитывается
+ * как near_hit - это промах, но подсказка для настройки порога.</p>
+ *
+ * <p>Метрики: {@code ai.cache.semantic{result=hit|near_hit|miss|error}}, распределение близости ближайшей темы
+ * {@code ai.cache.semantic.similarity} и размер индекса {@code ai.cache.semantic.entries}.
+ * Индекс сохраняется в {@code ai.semantic-cache.snapshot-dir} периодически и при остановке
+ * и загружается при старте; снимки разных моделей эмбеддингов хранятся раздельно.</p>
+ */
+@Component
+@Slf4j
+public class SemanticInsightCache {
+
+    /** Результаты поиска для метрики ai.cache.semantic */
+    static final String RESULT_HIT = "hit";
+    static final String RESULT_NEAR_HIT = "near_hit";
+    static final String RESULT_MISS = "miss";
+    static final String RESULT_ERROR = "error";
+
+    private static final String SNAPSHOT_EXTENSION = ".hnsw";
+
+    /**
+     * Результат поиска похожей темы
+     *
+     * @param scope      раздел индекса
+     * @param vector     нормализованный эмбеддинг темы или null, если его не удалось получить
+     * @param cacheKey   ключ кэша ответа на похожую тему или null при промахе
+     * @param similarity косинусная близость ближайшей темы или NaN, если индекс пуст
+     */
+    public record Probe(String scope, float[] vector, String cacheKey, double similarity) {
+
+        public boolean isHit() {
+            return cacheKey != null;
+        }
+    }
+
+    /**
+     * Элемент индекса: ключ кэша aiResponses и эмбеддинг темы
+     */
+    record Entry(String id, float[] vector) implements Item<String, float[]> {
+
+        @Override
+        public int dimensions() {
+            return vector.length;
+        }
+    }
+
+    private final AIProvider aiProvider;
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary similaritySummary;
+    private final ConcurrentMap<String, HnswIndex<String, float[], Entry, Float>> indexes = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    @Value("${ai.semantic-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.semantic-cache.threshold:0.92}")
+    private double threshold;
+
+    @Value("${ai.semantic-cache.near-hit-threshold:0.85}")
+    private double nearHitThreshold;
+
+    /** Наибольшее число тем в одном разделе индекса */
+    @Value("${ai.semantic-cache.max-entries:10000}")
+    private int maxEntries;
+
+    /** Ожидание эмбеддинга; по истечении запрос считается промахом и идет к модели */
+    @Value("${ai.semantic-cache.timeout:2s}")
+    private Duration timeout;
+
+    /** Каталог снимков индекса; пустое значение отключает сохранение */
+    @Value("${ai.semantic-cache.snapshot-dir:data/semantic-cache}")
+    private String snapshotDir;
+
+    @Value("${ollama.embedding.model:nomic-embed-text}")
+    private String embeddingModel;
+
+    public SemanticInsightCache(AIProvider aiProvider, MeterRegistry meterRegistry) {
+        this.aiProvider = aiProvider;
+        this.meterRegistry = meterRegistry;
+        this.similaritySummary = DistributionSummary.builder("ai.cache.semantic.similarity")
+                .description("Косинусная близость темы запроса к ближайшей теме в семантическом кэше")
+                .publishPercentiles(0.5, 0.9, 0.99)
+                .register(meterRegistry);
+        Gauge.builder("ai.cache.semantic.entries", this, SemanticInsightCache::size)
+                .description("Количество тем в индексе семантического кэша")
+                .register(meterRegistry);
+        for (String result : List.of(RESULT_HIT, RESULT_NEAR_HIT, RESULT_MISS, RESULT_ERROR)) {
+            meterRegistry.counter("ai.cache.semantic", "result", result);
+        }
+    }
+
+    /**
+     * Включен ли семантический кэш (ai.semantic-cache.enabled)
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Ищет в индексе тему, похожую на тему запроса. Не завершается ошибкой: если эмбеддинг получить
+     * не удалось, возвращается промах без вектора.
+     *
+     * @param topic    тема запроса
+     * @param scope    раздел индекса, в котором ищется тема
+     * @return CompletableFuture с результатом поиска
+     */
+    public CompletableFuture<Probe> probe(String topic, String scope) {
+        String indexKey = indexKey(scope);
+        return aiProvider.embedAsync(normalizeTopic(topic))
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .thenApply(vector -> lookup(indexKey, normalize(vector)))
+                .exceptionally(e -> {
+                    log.debug("Эмбеддинг темы '{}' недоступен, семантический кэш пропущен: {}", topic, e.getMessage());
+                    record(RESULT_ERROR);
+                    return new Probe(indexKey, null, null, Double.NaN);
+                });
+    }
+
+    /**
+     * Запоминает тему запроса: следующие похожие темы будут обслуживаться ответом из кэша по ключу cacheKey
+     *
+     * @param probe    результат поиска, выполненного перед запросом к модели
+     * @param cacheKey ключ кэша aiResponses, под которым сохранен ответ
+     */
+    public void remember(Probe probe, String cacheKey) {
+        if (probe == null || probe.vector() == null) {
+            return;
+        }
+        float[] vector = probe.vector();
+        HnswIndex<String, float[], Entry, Float> index = indexes.compute(probe.scope(), (scope, current) ->
+                current == null || current.getDimensions() != vector.length ? newIndex(vector.length) : current);
+        if (index.size() >= maxEntries) {
+            log.debug("Индекс семантического кэша {} заполнен ({} тем)", probe.scope(), index.size());
+            meterRegistry.counter("ai.cache.semantic.rejected").increment();
+            return;
+        }
+        if (index.add(new Entry(cacheKey, vector))) {
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * Удаляет из индекса тему, ответ на которую больше не найден в кэше
+     */
+    public void forget(Probe probe) {
+        if (probe == null || probe.cacheKey() == null) {
+            return;
+        }
+        HnswIndex<String, float[], Entry, Float> index = indexes.get(probe.scope());
+        if (index != null && index.remove(probe.cacheKey(), 0)) {
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * Количество тем во всех индексах
+     */
+    public int size() {
+        return indexes.values().stream().mapToInt(HnswIndex::size).sum();
+    }
+
+    private Probe lookup(String indexKey, float[] vector) {
+        HnswIndex<String, float[], Entry, Float> index = indexes.get(indexKey);
+        if (index == null || index.size() == 0 || index.getDimensions() != vector.length) {
+            record(RESULT_MISS);
+            return new Probe(indexKey, vector, null, Double.NaN);
+        }
+        List<SearchResult<Entry, Float>> nearest = index.findNearest(vector, 1);
+        if (nearest.isEmpty()) {
+            record(RESULT_MISS);
+            return new Probe(indexKey, vector, null, Double.NaN);
+        }
+        SearchResult<Entry, Float> best = nearest.get(0);
+        // Для нормализованных векторов расстояние inner product равно 1 - cos
+        double similarity = 1.0 - best.distance();
+        similaritySummary.record(similarity);
+        if (similarity >= threshold) {
+            record(RESULT_HIT);
+            log.debug("Семантический кэш: найдена похожая тема {} (близость {})", best.item().id(), similarity);
+            return new Probe(indexKey, vector, best.item().id(), similarity);
+        }
+        record(similarity >= nearHitThreshold ? RESULT_NEAR_HIT : RESULT_MISS);
+        return new Probe(indexKey, vector, null, similarity);
+    }
+
+    private void record(String result) {
+        meterRegistry.counter("ai.cache.semantic", "result", result).increment();
+    }
+
+    private HnswIndex<String, float[], Entry, Float> newIndex(int dimensions) {
+        return HnswIndex.newBuilder(dimensions, DistanceFunctions.FLOAT_INNER_PRODUCT, maxEntries)
+                .withM(16)
+                .withEfConstruction(200)
+                .withEf(64)
+                .withRemoveEnabled()
+                .build();
+    }
+
+    // --- Снимки ---
+
+    /**
+     * Загружает сохраненные индексы модели эмбеддингов ollama.embedding.model
+     */
+    @PostConstruct
+    public void restore() {
+        Path directory = snapshotDirectory();
+        if (!enabled || directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SNAPSHOT_EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String scope = fileName.substring(0, fileName.length() - SNAPSHOT_EXTENSION.length());
+                try {
+                    HnswIndex<String, float[], Entry, Float> index = HnswIndex.load(file, getClass().getClassLoader());
+                    if (index.getMaxItemCount() < maxEntries) {
+                        index.resize(maxEntries);
+                    }
+                    indexes.put(scope, index);
+                } catch (IOException | RuntimeException e) {
+                    log.warn("Не удалось загрузить индекс семантического кэша {}: {}", file, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать каталог семантического кэша {}: {}", directory, e.getMessage());
+        }
+        log.info("Семантический кэш: загружено {} тем из {}", size(), directory);
+    }
+
+    /**
+     * Периодически сохраняет индексы, если они изменились
+     */
+    @Scheduled(fixedDelayString = "${ai.semantic-cache.snapshot-interval:PT5M}",
+            initialDelayString = "${ai.semantic-cache.snapshot-interval:PT5M}")
+    public void snapshot() {
+        Path directory = snapshotDirectory();
+        if (!enabled || directory == null || !dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            for (var entry : indexes.entrySet()) {
+                // Запись во временный файл и атомарная замена: прерванное сохранение не портит снимок
+                Path target = directory.resolve(entry.getKey() + SNAPSHOT_EXTENSION);
+                Path temp = directory.resolve(entry.getKey() + SNAPSHOT_EXTENSION + ".tmp");
+                entry.getValue().save(temp);
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            log.debug("Семантический кэш сохранен в {} ({} тем)", directory, size());
+        } catch (IOException e) {
+            dirty.set(true);
+            log.warn("Не удалось сохранить семантический кэш в {}: {}", directory, e.getMessage());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        snapshot();
+    }
+
+    private Path snapshotDirectory() {
+        if (snapshotDir == null || snapshotDir.isBlank()) {
+            return null;
+        }
+        return Path.of(snapshotDir, safeName(embeddingModel));
+    }
+
+    // --- Нормализация ---
+
+    /**
+     * Тема в той же нормализации, что и в отпечатке запроса
+     */
+    static String normalizeTopic(String topic) {
+        return InsightFingerprinter.normalizeTopic(topic);
+    }
+
+    /**
+     * Вектор единичной длины: косинусная близость сводится к скалярному произведению
+     */
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = vector[i] * scale;
+        }
+        return result;
+    }
+
+    private static String indexKey(String scope) {
+        return scope == null || scope.isBlank() ? "default" : safeName(scope.trim().toLowerCase(Locale.ROOT));
+    }
+
+    private static String safeName(String value) {
+        return value.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.demo.services.cache;
+
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * Локальный кэш, промахи которого дочитываются из снимка предыдущего запуска ({@link InsightCacheSnapshot})
+ *
+ * <p>Найденный в снимке ответ записывается в локальный кэш. Запись и удаление ключа исключают его
+ * из восстановления, чтобы снимок не вернул устаревшее значение.</p>
+ */
+public class SnapshotRestoringCache implements Cache {
+
+    private final Cache delegate;
+    private final InsightCacheSnapshot snapshot;
+
+    public SnapshotRestoringCache(Cache delegate, InsightCacheSnapshot snapshot) {
+        this.delegate = delegate;
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper value = delegate.get(key);
+        if (value != null) {
+            return value;
+        }
+        Object restored = snapshot.take(key);
+        if (restored == null) {
+            return null;
+        }
+        delegate.putIfAbsent(key, restored);
+        return () -> restored;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        return delegate.get(key, () -> {
+            Object restored = snapshot.take(key);
+            return restored != null ? (T) restored : valueLoader.call();
+        });
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        snapshot.discard(key);
+        delegate.put(key, value);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        snapshot.discard(key);
+        return delegate.putIfAbsent(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        snapshot.discard(key);
+        delegate.evict(key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        snapshot.discard(key);
+        return delegate.evictIfPresent(key);
+    }
+
+    @Override
+    public void clear() {
+        snapshot.discardAll();
+        delegate.clear();
+    }
+
+    @Override
+    public boolean invalidate() {
+        snapshot.discardAll();
+        return delegate.invalidate();
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.demo.services.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Двухуровневый кэш: ограниченный кэш в памяти процесса (L1, Caffeine) перед общим кэшем (L2, Redis)
+ *
+ * <p>Чтение сначала обращается к L1, при промахе - к L2, и найденное в L2 значение копируется в L1.
+ * Запись и удаление выполняются в L2 и L1, после чего остальным узлам публикуется сообщение об инвалидации,
+ * чтобы они удалили ключ из своего L1. Доставка сообщений не гарантируется, поэтому устаревание L1
+ * дополнительно ограничено его TTL.</p>
+ *
+ * <p>Метрики по уровням: {@code ai.cache.requests{cache, tier=l1|l2, result=hit|miss}} и
+ * {@code ai.cache.hit_ratio{cache, tier}}. Обращения к L2 учитываются только для промахов L1.</p>
+ */
+@Slf4j
+public class TwoLevelCache implements Cache {
+
+    static final String TIER_LOCAL = "l1";
+    static final String TIER_REMOTE = "l2";
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<Object, Object> local;
+    private final Cache remote;
+    private final BiConsumer<String, Object> invalidationPublisher;
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter remoteHits;
+    private final Counter remoteMisses;
+
+    /**
+     * @param invalidationPublisher публикует инвалидацию для других узлов: имя кэша и ключ (null - весь кэш)
+     */
+    public TwoLevelCache(String name, com.github.benmanes.caffeine.cache.Cache<Object, Object> local, Cache remote,
+                         BiConsumer<String, Object> invalidationPublisher, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.local = local;
+        this.remote = remote;
+        this.invalidationPublisher = invalidationPublisher;
+        this.localHits = requests(meterRegistry, TIER_LOCAL, "hit");
+        this.localMisses = requests(meterRegistry, TIER_LOCAL, "miss");
+        this.remoteHits = requests(meterRegistry, TIER_REMOTE, "hit");
+        this.remoteMisses = requests(meterRegistry, TIER_REMOTE, "miss");
+        hitRatio(meterRegistry, TIER_LOCAL, localHits, localMisses);
+        hitRatio(meterRegistry, TIER_REMOTE, remoteHits, remoteMisses);
+        Gauge.builder("ai.cache.local.size", local, com.github.benmanes.caffeine.cache.Cache::estimatedSize)
+                .description("Число записей в кэше L1")
+                .tag("cache", name)
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return local;
+    }
+
+    /**
+     * Общий кэш L2
+     */
+    public Cache getRemote() {
+        return remote;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object value = local.getIfPresent(key);
+        if (value != null) {
+            localHits.increment();
+            return () -> value;
+        }
+        localMisses.increment();
+        ValueWrapper remoteValue;
+        try {
+            remoteValue = remote.get(key);
+        } catch (SerializationException e) {
+            // Значение, записанное более новой версией формата, не читается этим узлом и считается промахом
+            log.debug("Не удалось прочитать значение L2 {} кэша {}: {}", key, name, e.getMessage());
+            remoteValue = null;
+        }
+        if (remoteValue == null || remoteValue.get() == null) {
+            remoteMisses.increment();
+            return remoteValue;
+        }
+        remoteHits.increment();
+        local.put(key, remoteValue.get());
+        return remoteValue;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper wrapper = get(key);
+        if (wrapper != null) {
+            return (T) wrapper.get();
+        }
+        T value = remote.get(key, valueLoader);
+        if (value != null) {
+            local.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Чтение нескольких ключей: найденные в L1 значения берутся из него, остальные читаются из L2
+     * одним обращением и копируются в L1
+     *
+     * @param remoteLoader пакетное чтение ключей из L2; возвращает только найденные ключи
+     */
+    public <T> Map<String, T> getAll(Collection<String> keys, Class<T> type,
+                                     Function<Collection<String>, Map<String, T>> remoteLoader) {
+        Map<String, T> result = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String key : keys) {
+            Object value = local.getIfPresent(key);
+            if (type.isInstance(value)) {
+                result.put(key, type.cast(value));
+            } else {
+                missing.add(key);
+            }
+        }
+        localHits.increment(result.size());
+        localMisses.increment(missing.size());
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        Map<String, T> remoteValues = remoteLoader.apply(missing);
+        remoteValues.forEach(local::put);
+        remoteHits.increment(remoteValues.size());
+        remoteMisses.increment(missing.size() - remoteValues.size());
+        result.putAll(remoteValues);
+        return result;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remote.put(key, value);
+        putLocal(key, value);
+        invalidationPublisher.accept(name, key);
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = remote.putIfAbsent(key, value);
+        if (existing == null) {
+            putLocal(key, value);
+            invalidationPublisher.accept(name, key);
+        } else {
+            putLocal(key, existing.get());
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        remote.evict(key);
+        local.invalidate(key);
+        invalidationPublisher.accept(name, key);
+    }
+
+    @Override
+    public boolean evictIfPresent(Object key) {
+        boolean present = remote.evictIfPresent(key);
+        local.invalidate(key);
+        invalidationPublisher.accept(name, key);
+        return present;
+    }
+
+    @Override
+    public void clear() {
+        remote.clear();
+        local.invalidateAll();
+        invalidationPublisher.accept(name, null);
+    }
+
+    @Override
+    public boolean invalidate() {
+        boolean present = remote.invalidate();
+        local.invalidateAll();
+        invalidationPublisher.accept(name, null);
+        return present;
+    }
+
+    /**
+     * Удаление ключа только из L1 по сообщению об инвалидации от другого узла
+     *
+     * @param key ключ или null, чтобы очистить весь L1
+     */
+    void evictLocal(Object key) {
+        if (key == null) {
+            local.invalidateAll();
+        } else {
+            local.invalidate(key);
+        }
+    }
+
+    private void putLocal(Object key, Object value) {
+        if (value == null) {
+            local.invalidate(key);
+        } else {
+            local.put(key, value);
+        }
+    }
+
+    private Counter requests(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("ai.cache.requests")
+                .description("Обращения к уровням двухуровневого кэша")
+                .tags("cache", name, "tier", tier, "result", result)
+                .register(meterRegistry);
+    }
+
+    private void hitRatio(MeterRegistry meterRegistry, String tier, Counter hits, Counter misses) {
+        Gauge.builder("ai.cache.hit_ratio", () -> {
+                    double total = hits.count() + misses.count();
+                    return total == 0 ? 0 : hits.count() / total;
+                })
+                .description("Доля попаданий уровня кэша с момента запуска")
+                .tags("cache", name, "tier", tier)
+                .register(meterRegistry);
+    }
+}
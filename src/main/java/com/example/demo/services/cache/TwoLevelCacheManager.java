@@ -0,0 +1,69 @@
+package com.example.demo.services.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Менеджер двухуровневых кэшей: каждый кэш общего менеджера (Redis) дополняется локальным кэшем L1
+ *
+ * <p>Набор кэшей и их настройки (TTL, сериализация) определяет общий менеджер; L1 создается
+ * фабрикой локальных кэшей по имени кэша при первом обращении к нему.</p>
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final CacheManager remoteCacheManager;
+    private final Function<String, com.github.benmanes.caffeine.cache.Cache<Object, Object>> localCacheFactory;
+    private final BiConsumer<String, Object> invalidationPublisher;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param invalidationPublisher публикует инвалидацию для других узлов: имя кэша и ключ (null - весь кэш)
+     */
+    public TwoLevelCacheManager(CacheManager remoteCacheManager,
+                                Function<String, com.github.benmanes.caffeine.cache.Cache<Object, Object>> localCacheFactory,
+                                BiConsumer<String, Object> invalidationPublisher, MeterRegistry meterRegistry) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.localCacheFactory = localCacheFactory;
+        this.invalidationPublisher = invalidationPublisher;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache remote = remoteCacheManager.getCache(name);
+        if (remote == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, cacheName ->
+                new TwoLevelCache(cacheName, localCacheFactory.apply(cacheName), remote, invalidationPublisher, meterRegistry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    /**
+     * Применяет инвалидацию, полученную от другого узла, к локальному уровню кэша
+     *
+     * @param key ключ или null, чтобы очистить весь L1 кэша
+     */
+    public void evictLocal(String cacheName, Object key) {
+        TwoLevelCache cache = caches.get(cacheName);
+        if (cache != null) {
+            cache.evictLocal(key);
+        }
+    }
+}
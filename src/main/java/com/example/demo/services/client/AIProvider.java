@@ -1,6 +1,9 @@
 package com.example.demo.services.client;
 
-import java.util.Map;
+import com.example.demo.exceptions.AIServiceException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс для всех провайдеров искусственного интеллекта
@@ -13,9 +16,54 @@ public interface AIProvider {
      * 
      * @param topic тема для анализа
      * @param language язык ответа (опционально)
-     * @return ответ от API в виде Map
+     * @return ответ модели
+     */
+    AIResponse sendRequest(String topic, String language);
+    
+    /**
+     * Асинхронно отправляет запрос к AI API без блокировки вызывающего потока
+     * 
+     * <p>Реализация по умолчанию выполняет {@link #sendRequest} в общем пуле потоков;
+     * провайдеры с неблокирующим транспортом должны переопределять этот метод.</p>
+     * 
+     * @param topic тема для анализа
+     * @param language язык ответа (опционально)
+     * @return CompletableFuture с ответом модели
+     */
+    default CompletableFuture<AIResponse> sendRequestAsync(String topic, String language) {
+        return CompletableFuture.supplyAsync(() -> sendRequest(topic, language));
+    }
+    
+    /**
+     * Отправляет запрос к AI API в потоковом режиме, передавая фрагменты текста по мере генерации
+     * 
+     * <p>Реализация по умолчанию выполняет обычный запрос и передает весь ответ одним фрагментом.</p>
+     * 
+     * @param topic тема для анализа
+     * @param language язык ответа (опционально)
+     * @param tokenConsumer получатель фрагментов сгенерированного текста
+     * @return итоговый ответ модели (в том же формате, что и {@link #sendRequest})
+     */
+    default AIResponse streamRequest(String topic, String language, Consumer<String> tokenConsumer) {
+        AIResponse response = sendRequest(topic, language);
+        if (response != null && response.content() != null) {
+            tokenConsumer.accept(response.content());
+        }
+        return response;
+    }
+    
+    /**
+     * Асинхронно вычисляет эмбеддинг текста
+     * 
+     * <p>Реализация по умолчанию завершается ошибкой: провайдер не поддерживает эмбеддинги.</p>
+     * 
+     * @param text текст для векторизации
+     * @return CompletableFuture с вектором; при ошибке завершается с AIServiceException
      */
-    Map<String, Object> sendRequest(String topic, String language);
+    default CompletableFuture<float[]> embedAsync(String text) {
+        return CompletableFuture.failedFuture(
+                new AIServiceException("Провайдер " + getProviderName() + " не поддерживает эмбеддинги"));
+    }
     
     /**
      * Получить название провайдера
@@ -0,0 +1,61 @@
+package com.example.demo.services.client;
+
+/**
+ * Ответ модели, возвращаемый провайдером AI
+ *
+ * <p>Поля статистики соответствуют ответу Ollama; значение 0 означает, что провайдер его не сообщил.
+ * Длительности указаны в наносекундах.</p>
+ *
+ * @param model              модель, сгенерировавшая ответ
+ * @param content            текст ответа (для потокового режима - весь собранный текст)
+ * @param done               генерация завершена
+ * @param doneReason         причина завершения генерации (stop, length, load)
+ * @param error              описание ошибки, если провайдер вернул ошибку вместо ответа
+ * @param totalDuration      общее время обработки запроса
+ * @param loadDuration       время загрузки модели в память
+ * @param promptEvalCount    число токенов запроса
+ * @param promptEvalDuration время обработки запроса
+ * @param evalCount          число сгенерированных токенов
+ * @param evalDuration       время генерации
+ */
+public record AIResponse(String model,
+                         String content,
+                         boolean done,
+                         String doneReason,
+                         String error,
+                         long totalDuration,
+                         long loadDuration,
+                         long promptEvalCount,
+                         long promptEvalDuration,
+                         long evalCount,
+                         long evalDuration) {
+
+    /**
+     * Ответ, содержащий только текст, без статистики генерации
+     */
+    public static AIResponse ofContent(String content) {
+        return new AIResponse(null, content, true, null, null, 0, 0, 0, 0, 0, 0);
+    }
+
+    /**
+     * Копия ответа с другим текстом (итог потоковой генерации собирается из фрагментов)
+     */
+    public AIResponse withContent(String newContent) {
+        return new AIResponse(model, newContent, done, doneReason, error, totalDuration, loadDuration,
+                promptEvalCount, promptEvalDuration, evalCount, evalDuration);
+    }
+
+    public boolean hasError() {
+        return error != null;
+    }
+
+    /**
+     * Скорость генерации: eval_count токенов за eval_duration наносекунд (NaN, если статистики нет)
+     */
+    public double tokensPerSecond() {
+        if (evalCount <= 0 || evalDuration <= 0) {
+            return Double.NaN;
+        }
+        return evalCount * 1_000_000_000.0 / evalDuration;
+    }
+}
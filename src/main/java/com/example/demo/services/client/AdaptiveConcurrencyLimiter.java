@@ -0,0 +1,346 @@
+package com.example.demo.services.client;
+
+import com.example.demo.exceptions.AIOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Адаптивное ограничение числа одновременных запросов к Ollama
+ *
+ * <p>Ollama эффективно обрабатывает лишь несколько генераций параллельно: сверх этого задержка растет
+ * у всех запросов. Лимит подбирается автоматически по алгоритму AIMD по наблюдаемой задержке:
+ * пока задержка ответа не превышает базовую (нижняя огибающая скользящей средней) более чем в
+ * {@code ollama.limiter.latency-tolerance} раз, лимит растет примерно на единицу за окно запросов;
+ * при росте задержки или таймауте лимит уменьшается в {@code ollama.limiter.backoff-ratio} раз.</p>
+ *
+ * <p>Запросы сверх лимита ждут в очереди не дольше {@code ollama.limiter.max-queue-wait}; порядок выдачи
+ * освободившихся слотов определяет {@link FairShareScheduler} (взвешенная справедливая очередь по пользователям).
+ * При заполненной общей очереди или очереди пользователя запрос сразу отклоняется с 429,
+ * при истечении ожидания - с 503.</p>
+ */
+@Component
+@Slf4j
+public class AdaptiveConcurrencyLimiter {
+
+    /** Вес нового замера при росте базовой задержки */
+    private static final double BASELINE_RISE_ALPHA = 0.05;
+
+    /** Вес нового замера при снижении базовой задержки: базовая задержка быстрее следует за улучшением */
+    private static final double BASELINE_FALL_ALPHA = 0.3;
+
+    /**
+     * Результат запроса для корректировки лимита
+     */
+    public enum Outcome {
+        /** Ответ получен, задержка учитывается */
+        SUCCESS,
+        /** Таймаут: признак перегрузки, лимит уменьшается */
+        DROPPED,
+        /** Ошибка, не связанная с нагрузкой: задержка не учитывается */
+        IGNORED
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double latencyTolerance;
+    private final double backoffRatio;
+    private final int maxQueueSize;
+    private final Duration maxQueueWait;
+    private final Clock clock;
+
+    private final FairShareScheduler scheduler;
+    private final Counter queueFullRejections;
+    private final Counter timeoutRejections;
+    private final Counter userQueueFullRejections;
+
+    private double limit;
+    private double baselineLatencyMillis = Double.NaN;
+    private int inFlight;
+
+    @Autowired
+    public AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry,
+                                      FairShareScheduler scheduler,
+                                      @Value("${ollama.limiter.initial-limit:4}") int initialLimit,
+                                      @Value("${ollama.limiter.min-limit:1}") int minLimit,
+                                      @Value("${ollama.limiter.max-limit:32}") int maxLimit,
+                                      @Value("${ollama.limiter.latency-tolerance:2.0}") double latencyTolerance,
+                                      @Value("${ollama.limiter.backoff-ratio:0.9}") double backoffRatio,
+                                      @Value("${ollama.limiter.max-queue-size:50}") int maxQueueSize,
+                                      @Value("${ollama.limiter.max-queue-wait:10s}") Duration maxQueueWait) {
+        this(meterRegistry, scheduler, initialLimit, minLimit, maxLimit, latencyTolerance, backoffRatio,
+                maxQueueSize, maxQueueWait, Clock.systemUTC());
+    }
+
+    AdaptiveConcurrencyLimiter(MeterRegistry meterRegistry, FairShareScheduler scheduler, int initialLimit,
+                               int minLimit, int maxLimit, double latencyTolerance, double backoffRatio,
+                               int maxQueueSize, Duration maxQueueWait, Clock clock) {
+        this.scheduler = scheduler;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(Math.max(initialLimit, this.minLimit), this.maxLimit);
+        this.latencyTolerance = latencyTolerance;
+        this.backoffRatio = backoffRatio;
+        this.maxQueueSize = maxQueueSize;
+        this.maxQueueWait = maxQueueWait;
+        this.clock = clock;
+
+        Gauge.builder("ollama.limiter.limit", this, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Текущий адаптивный лимит одновременных запросов к Ollama")
+                .register(meterRegistry);
+        Gauge.builder("ollama.limiter.in_flight", this, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Выполняющиеся запросы к Ollama")
+                .register(meterRegistry);
+        Gauge.builder("ollama.limiter.queue_depth", this, AdaptiveConcurrencyLimiter::getQueueDepth)
+                .description("Запросы, ожидающие свободного слота")
+                .register(meterRegistry);
+        Gauge.builder("ollama.limiter.baseline_latency", this, l -> Double.isNaN(l.getBaselineLatencyMillis()) ? 0.0 : l.getBaselineLatencyMillis())
+                .description("Базовая задержка ответа Ollama, мс")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+        this.queueFullRejections = Counter.builder("ollama.limiter.rejections")
+                .description("Запросы, отклоненные ограничителем")
+                .tag("reason", "queue_full")
+                .register(meterRegistry);
+        this.timeoutRejections = Counter.builder("ollama.limiter.rejections")
+                .description("Запросы, отклоненные ограничителем")
+                .tag("reason", "queue_timeout")
+                .register(meterRegistry);
+        this.userQueueFullRejections = Counter.builder("ollama.limiter.rejections")
+                .description("Запросы, отклоненные ограничителем")
+                .tag("reason", "user_queue_full")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Выполняет синхронный вызов модели в пределах лимита, ожидая свободный слот в вызывающем потоке
+     *
+     * @throws AIOverloadedException если очередь заполнена или слот не освободился вовремя
+     */
+    public <T> T execute(Supplier<T> call) {
+        Permit permit;
+        try {
+            permit = acquire().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+        try {
+            T result = call.get();
+            permit.release(Outcome.SUCCESS);
+            return result;
+        } catch (RuntimeException e) {
+            permit.release(classify(e));
+            throw e;
+        }
+    }
+
+    /**
+     * Выполняет асинхронный вызов модели в пределах лимита. Ожидание слота не занимает поток:
+     * вызов запускается, когда слот освобождается.
+     *
+     * @return CompletableFuture с результатом; при перегрузке завершается с {@link AIOverloadedException}
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletableFuture<T>> call) {
+        return acquire().thenCompose(permit -> {
+            CompletableFuture<T> future;
+            try {
+                future = call.get();
+            } catch (RuntimeException e) {
+                permit.release(Outcome.IGNORED);
+                return CompletableFuture.failedFuture(e);
+            }
+            return future.whenComplete((result, error) ->
+                    permit.release(error == null ? Outcome.SUCCESS : classify(error)));
+        });
+    }
+
+    /**
+     * Резервирует слот для пользователя из текущего контекста безопасности:
+     * сразу, если лимит не исчерпан, иначе после ожидания в очереди
+     */
+    public CompletableFuture<Permit> acquire() {
+        return acquire(scheduler.currentClient());
+    }
+
+    CompletableFuture<Permit> acquire(FairShareScheduler.Client client) {
+        CompletableFuture<Permit> waiter;
+        synchronized (this) {
+            if (inFlight < (int) limit && scheduler.isEmpty()) {
+                inFlight++;
+                return CompletableFuture.completedFuture(new Permit(clock.millis(), inFlight));
+            }
+            if (scheduler.size() >= maxQueueSize) {
+                queueFullRejections.increment();
+                log.warn("Очередь запросов к Ollama заполнена ({} запросов, лимит {}), запрос отклонен", scheduler.size(), (int) limit);
+                return CompletableFuture.failedFuture(new AIOverloadedException(
+                        "Сервис анализа перегружен, повторите запрос позже", HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds()));
+            }
+            waiter = new CompletableFuture<>();
+            if (!scheduler.offer(client, waiter, clock.millis())) {
+                userQueueFullRejections.increment();
+                log.warn("Очередь запросов пользователя {} заполнена, запрос отклонен", client.name());
+                return CompletableFuture.failedFuture(new AIOverloadedException(
+                        "Слишком много ожидающих запросов от пользователя, повторите запрос позже",
+                        HttpStatus.TOO_MANY_REQUESTS, retryAfterSeconds()));
+            }
+        }
+        return waiter
+                .orTimeout(maxQueueWait.toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionallyCompose(error -> {
+                    if (error instanceof TimeoutException) {
+                        synchronized (this) {
+                            scheduler.remove(waiter);
+                        }
+                        timeoutRejections.increment();
+                        log.warn("Запрос к Ollama не дождался свободного слота за {}", maxQueueWait);
+                        return CompletableFuture.failedFuture(new AIOverloadedException(
+                                "Сервис анализа перегружен: превышено время ожидания в очереди",
+                                HttpStatus.SERVICE_UNAVAILABLE, retryAfterSeconds()));
+                    }
+                    return CompletableFuture.failedFuture(error);
+                });
+    }
+
+    /**
+     * Освобождает слот, корректирует лимит и передает освободившиеся слоты ожидающим запросам.
+     * Ожидающие запросы завершаются вне блокировки, так как их продолжения запускают вызов модели.
+     */
+    private void release(Permit permit, Outcome outcome) {
+        List<CompletableFuture<Permit>> granted = new ArrayList<>();
+        synchronized (this) {
+            inFlight--;
+            adjustLimit(clock.millis() - permit.startMillis, permit.inFlightAtStart, outcome);
+            while (inFlight < (int) limit && !scheduler.isEmpty()) {
+                inFlight++;
+                granted.add(scheduler.poll());
+            }
+        }
+        long now = clock.millis();
+        for (CompletableFuture<Permit> waiter : granted) {
+            Permit next;
+            synchronized (this) {
+                next = new Permit(now, inFlight);
+            }
+            if (!waiter.complete(next)) {
+                // Ожидание уже истекло - слот возвращается без учета задержки
+                next.release(Outcome.IGNORED);
+            }
+        }
+    }
+
+    private void adjustLimit(long latencyMillis, int inFlightAtStart, Outcome outcome) {
+        double previousLimit = limit;
+        switch (outcome) {
+            case DROPPED -> limit = Math.max(minLimit, limit * backoffRatio);
+            case SUCCESS -> {
+                double baseline = baselineLatencyMillis;
+                if (Double.isNaN(baseline)) {
+                    baselineLatencyMillis = latencyMillis;
+                } else {
+                    double alpha = latencyMillis < baseline ? BASELINE_FALL_ALPHA : BASELINE_RISE_ALPHA;
+                    baselineLatencyMillis = baseline + alpha * (latencyMillis - baseline);
+                    if (latencyMillis > baseline * latencyTolerance) {
+                        limit = Math.max(minLimit, limit * backoffRatio);
+                    } else if (inFlightAtStart * 2 >= (int) limit) {
+                        // Лимит растет, только если он действительно использовался
+                        limit = Math.min(maxLimit, limit + 1.0 / limit);
+                    }
+                }
+            }
+            case IGNORED -> {
+                // Задержка ошибочного запроса не характеризует нагрузку
+            }
+        }
+        if ((int) previousLimit != (int) limit) {
+            log.info("Лимит одновременных запросов к Ollama изменен: {} -> {} (задержка {} мс, базовая {} мс)",
+                    (int) previousLimit, (int) limit, latencyMillis, Math.round(baselineLatencyMillis));
+        }
+    }
+
+    /**
+     * Таймауты сигнализируют о перегрузке; остальные ошибки на лимит не влияют
+     */
+    static Outcome classify(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof HttpTimeoutException || current instanceof SocketTimeoutException
+                    || current instanceof TimeoutException) {
+                return Outcome.DROPPED;
+            }
+        }
+        return Outcome.IGNORED;
+    }
+
+    /**
+     * Оценка времени до освобождения слота: базовая задержка с учетом очереди
+     */
+    private synchronized long retryAfterSeconds() {
+        double baseline = Double.isNaN(baselineLatencyMillis) ? 1000.0 : baselineLatencyMillis;
+        double rounds = (double) (scheduler.size() + 1) / Math.max(1, (int) limit);
+        return Math.max(1, (long) Math.ceil(baseline * rounds / 1000.0));
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueueDepth() {
+        return scheduler.size();
+    }
+
+    /**
+     * Очереди пользователей с оценкой времени ожидания
+     */
+    public synchronized List<FairShareScheduler.QueueStats> getQueueStats() {
+        double baseline = Double.isNaN(baselineLatencyMillis) ? 1000.0 : baselineLatencyMillis;
+        return scheduler.stats(clock.millis(), baseline / Math.max(1, (int) limit));
+    }
+
+    /**
+     * Базовая задержка ответа, мс (NaN, если замеров еще нет)
+     */
+    public synchronized double getBaselineLatencyMillis() {
+        return baselineLatencyMillis;
+    }
+
+    /**
+     * Зарезервированный слот; освобождается ровно один раз
+     */
+    public final class Permit {
+        private final long startMillis;
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(long startMillis, int inFlightAtStart) {
+            this.startMillis = startMillis;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        public void release(Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release(this, outcome);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.demo.services.client;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Очередь запросов, ожидающих слот модели, со взвешенным справедливым обслуживанием пользователей
+ *
+ * <p>Каждый пользователь (имя из JWT в контексте безопасности) получает собственную очередь ограниченного
+ * размера {@code ai.scheduler.max-queue-per-user}. Освободившийся слот достается не первому пришедшему,
+ * а запросу с наименьшей виртуальной меткой окончания (start-time fair queuing): пользователь с весом
+ * {@code w} получает долю слотов, пропорциональную {@code w}, поэтому один пользователь, отправляющий запросы
+ * скриптом, не может занять все слоты. Вес определяется классом приоритета по ролям пользователя
+ * ({@code ai.scheduler.class-weights}, например {@code ADMIN:4,USER:1,ANONYMOUS:1}).</p>
+ *
+ * <p>Запросы без аутентификации (публичные эндпоинты анализа) относятся к классу {@code ANONYMOUS}
+ * и получают очередь на каждый адрес клиента размером {@code ai.scheduler.anonymous.max-queue-per-client}.
+ * Все анонимные очереди вместе ограничены {@code ai.scheduler.anonymous.max-queue}, поэтому анонимный
+ * трафик не вытесняет аутентифицированных пользователей из общей очереди ограничителя.</p>
+ *
+ * <p>Класс не синхронизирует доступ к очередям сам: вызовы выполняются под блокировкой
+ * {@link AdaptiveConcurrencyLimiter}.</p>
+ */
+@Component
+@Slf4j
+public class FairShareScheduler {
+
+    /** Имя клиента для запросов без аутентификации, если адрес клиента неизвестен */
+    static final String ANONYMOUS = "anonymous";
+
+    /** Класс приоритета запросов без аутентификации */
+    static final String ANONYMOUS_CLASS = "ANONYMOUS";
+
+    /** Класс приоритета для пользователей без настроенных ролей */
+    static final String DEFAULT_CLASS = "DEFAULT";
+
+    private final Map<String, Integer> classWeights;
+    private final int defaultWeight;
+    private final int maxQueuePerUser;
+    private final int maxQueuePerAnonymousClient;
+    private final int maxAnonymousQueue;
+
+    private final Map<String, ClientQueue> queues = new HashMap<>();
+    private double virtualTime;
+    private long sequence;
+    private int size;
+    private int anonymousSize;
+
+    @Autowired
+    public FairShareScheduler(@Value("${ai.scheduler.class-weights:ADMIN:4,USER:1,ANONYMOUS:1}") String[] classWeights,
+                              @Value("${ai.scheduler.default-weight:1}") int defaultWeight,
+                              @Value("${ai.scheduler.max-queue-per-user:10}") int maxQueuePerUser,
+                              @Value("${ai.scheduler.anonymous.max-queue-per-client:3}") int maxQueuePerAnonymousClient,
+                              @Value("${ai.scheduler.anonymous.max-queue:20}") int maxAnonymousQueue) {
+        this.classWeights = parseClassWeights(classWeights);
+        this.defaultWeight = Math.max(1, defaultWeight);
+        this.maxQueuePerUser = Math.max(1, maxQueuePerUser);
+        this.maxQueuePerAnonymousClient = Math.max(1, maxQueuePerAnonymousClient);
+        this.maxAnonymousQueue = Math.max(1, maxAnonymousQueue);
+        log.info("Планировщик запросов к модели: веса классов {}, очередь пользователя до {} запросов, "
+                        + "анонимного клиента - до {}, всех анонимных клиентов - до {}",
+                this.classWeights, this.maxQueuePerUser, this.maxQueuePerAnonymousClient, this.maxAnonymousQueue);
+    }
+
+    /**
+     * Клиент текущего запроса: имя пользователя и класс приоритета с наибольшим весом среди его ролей,
+     * а для запроса без аутентификации - адрес клиента и класс {@code ANONYMOUS}
+     */
+    public Client currentClient() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            String address = remoteAddress(authentication);
+            return new Client(address != null ? ANONYMOUS + ":" + address : ANONYMOUS, ANONYMOUS_CLASS,
+                    classWeights.getOrDefault(ANONYMOUS_CLASS, defaultWeight));
+        }
+        String priorityClass = DEFAULT_CLASS;
+        int weight = defaultWeight;
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            String role = authority.getAuthority();
+            if (role == null) {
+                continue;
+            }
+            role = role.startsWith("ROLE_") ? role.substring(5) : role;
+            Integer roleWeight = classWeights.get(role);
+            if (roleWeight != null && (DEFAULT_CLASS.equals(priorityClass) || roleWeight > weight)) {
+                priorityClass = role;
+                weight = roleWeight;
+            }
+        }
+        return new Client(authentication.getName(), priorityClass, weight);
+    }
+
+    /**
+     * Ставит ожидающий запрос в очередь клиента
+     *
+     * @return false, если очередь клиента заполнена
+     */
+    boolean offer(Client client, CompletableFuture<AdaptiveConcurrencyLimiter.Permit> future, long nowMillis) {
+        boolean anonymous = client.isAnonymous();
+        ClientQueue queue = queues.computeIfAbsent(client.name(), name -> new ClientQueue());
+        if (queue.waiters.size() >= (anonymous ? maxQueuePerAnonymousClient : maxQueuePerUser)
+                || anonymous && anonymousSize >= maxAnonymousQueue) {
+            return false;
+        }
+        // Класс приоритета может измениться (например, пользователю выдали роль) - берем актуальный
+        queue.priorityClass = client.priorityClass();
+        queue.weight = client.weight();
+        double start = Math.max(virtualTime, queue.lastFinish);
+        queue.lastFinish = start + 1.0 / client.weight();
+        queue.waiters.addLast(new Waiter(future, start, queue.lastFinish, sequence++, nowMillis, anonymous));
+        size++;
+        if (anonymous) {
+            anonymousSize++;
+        }
+        return true;
+    }
+
+    /**
+     * Извлекает запрос с наименьшей виртуальной меткой окончания
+     *
+     * @return ожидающий запрос или null, если очередь пуста
+     */
+    CompletableFuture<AdaptiveConcurrencyLimiter.Permit> poll() {
+        ClientQueue best = null;
+        for (ClientQueue queue : queues.values()) {
+            Waiter head = queue.waiters.peekFirst();
+            if (head != null && (best == null || head.isBefore(best.waiters.peekFirst()))) {
+                best = queue;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        Waiter waiter = best.waiters.pollFirst();
+        dequeued(waiter);
+        virtualTime = Math.max(virtualTime, waiter.start);
+        pruneIdleQueues();
+        return waiter.future;
+    }
+
+    /**
+     * Удаляет запрос, не дождавшийся слота
+     */
+    boolean remove(CompletableFuture<AdaptiveConcurrencyLimiter.Permit> future) {
+        for (ClientQueue queue : queues.values()) {
+            Iterator<Waiter> iterator = queue.waiters.iterator();
+            while (iterator.hasNext()) {
+                Waiter waiter = iterator.next();
+                if (waiter.future == future) {
+                    iterator.remove();
+                    dequeued(waiter);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void dequeued(Waiter waiter) {
+        size--;
+        if (waiter.anonymous) {
+            anonymousSize--;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Состояние очередей пользователей. Оценка ожидания исходит из того, что слоты освобождаются
+     * в среднем раз в {@code slotIntervalMillis} и делятся между пользователями с ожидающими запросами
+     * пропорционально их весам.
+     *
+     * @param slotIntervalMillis среднее время между освобождениями слотов, мс
+     */
+    List<QueueStats> stats(long nowMillis, double slotIntervalMillis) {
+        int activeWeight = queues.values().stream()
+                .filter(queue -> !queue.waiters.isEmpty())
+                .mapToInt(queue -> queue.weight)
+                .sum();
+        List<QueueStats> result = new ArrayList<>();
+        queues.forEach((name, queue) -> {
+            if (queue.waiters.isEmpty()) {
+                return;
+            }
+            double share = (double) queue.weight / activeWeight;
+            long estimatedWait = Math.round(queue.waiters.size() * slotIntervalMillis / share);
+            result.add(new QueueStats(name, queue.priorityClass, queue.weight, queue.waiters.size(),
+                    nowMillis - queue.waiters.peekFirst().enqueuedAtMillis, estimatedWait));
+        });
+        result.sort(Comparator.comparingInt(QueueStats::depth).reversed());
+        return result;
+    }
+
+    public Map<String, Integer> getClassWeights() {
+        return classWeights;
+    }
+
+    public int getMaxQueuePerUser() {
+        return maxQueuePerUser;
+    }
+
+    public int getMaxQueuePerAnonymousClient() {
+        return maxQueuePerAnonymousClient;
+    }
+
+    public int getMaxAnonymousQueue() {
+        return maxAnonymousQueue;
+    }
+
+    /**
+     * Адрес клиента без аутентификации: из деталей анонимной аутентификации (доступны и в потоке генерации,
+     * куда передается контекст безопасности), иначе из текущего HTTP-запроса
+     *
+     * @return адрес или null, если запрос выполняется вне HTTP-запроса
+     */
+    private static String remoteAddress(Authentication authentication) {
+        if (authentication != null && authentication.getDetails() instanceof WebAuthenticationDetails details
+                && details.getRemoteAddress() != null) {
+            return details.getRemoteAddress();
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        return attributes instanceof ServletRequestAttributes servletAttributes
+                ? servletAttributes.getRequest().getRemoteAddr() : null;
+    }
+
+    /**
+     * Очереди без ожидающих запросов удаляются, когда виртуальное время догнало их метку:
+     * дальнейшее хранение не влияет на порядок обслуживания
+     */
+    private void pruneIdleQueues() {
+        queues.values().removeIf(queue -> queue.waiters.isEmpty() && queue.lastFinish <= virtualTime);
+    }
+
+    private static Map<String, Integer> parseClassWeights(String[] entries) {
+        Map<String, Integer> weights = new LinkedHashMap<>();
+        Arrays.stream(entries)
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .forEach(entry -> {
+                    int separator = entry.lastIndexOf(':');
+                    if (separator <= 0) {
+                        throw new IllegalStateException("Некорректный вес класса в ai.scheduler.class-weights: " + entry);
+                    }
+                    weights.put(entry.substring(0, separator).trim(),
+                            Math.max(1, Integer.parseInt(entry.substring(separator + 1).trim())));
+                });
+        return weights;
+    }
+
+    /**
+     * Клиент планировщика: пользователь и его класс приоритета
+     */
+    public record Client(String name, String priorityClass, int weight) {
+
+        boolean isAnonymous() {
+            return ANONYMOUS_CLASS.equals(priorityClass);
+        }
+    }
+
+    /**
+     * Состояние очереди одного пользователя
+     *
+     * @param oldestWaitMillis     сколько ждет самый старый запрос, мс
+     * @param estimatedWaitMillis  оценка ожидания последнего запроса в очереди, мс
+     */
+    public record QueueStats(String user, String priorityClass, int weight, int depth,
+                             long oldestWaitMillis, long estimatedWaitMillis) {
+    }
+
+    private static final class ClientQueue {
+        private final Deque<Waiter> waiters = new ArrayDeque<>();
+        private String priorityClass;
+        private int weight = 1;
+        private double lastFinish;
+    }
+
+    private record Waiter(CompletableFuture<AdaptiveConcurrencyLimiter.Permit> future,
+                          double start, double finish, long sequence, long enqueuedAtMillis, boolean anonymous) {
+
+        /**
+         * Порядок обслуживания: меньшая метка окончания, при равенстве - более ранний запрос
+         */
+        boolean isBefore(Waiter other) {
+            return finish < other.finish || (finish == other.finish && sequence < other.sequence);
+        }
+    }
+}
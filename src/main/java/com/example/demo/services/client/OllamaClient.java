@@ -1,26 +1,39 @@
 package com.example.demo.services.client;
 
 import com.example.demo.exceptions.AIServiceException;
-import jakarta.annotation.PostConstruct;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
 
 /**
  * Клиент для взаимодействия с API Ollama
@@ -29,7 +42,36 @@ import java.util.concurrent.atomic.AtomicBoolean;
 @Slf4j
 public class OllamaClient implements AIProvider {
     
+    /** Режим вывода, в котором Ollama ограничивает ответ JSON-схемой {@link #INSIGHT_SCHEMA} */
+    static final String OUTPUT_MODE_STRUCTURED = "structured";
+    
+    private static final String STRUCTURED_SYSTEM_PROMPT =
+            "Вы - помощник, который предоставляет информацию и анализ по различным темам. " +
+            "Ответьте JSON-объектом с полями: summary - краткое описание темы, " +
+            "keyConcepts - массив ключевых концепций, " +
+            "recommendations - массив источников для дальнейшего чтения с полями title и url.";
+    
+    /**
+     * JSON-схема ответа для параметра {@code format}: поля соответствуют InsightResponse
+     */
+    static final Map<String, Object> INSIGHT_SCHEMA = Map.of(
+            "type", "object",
+            "properties", Map.of(
+                    "summary", Map.of("type", "string"),
+                    "keyConcepts", Map.of("type", "array", "items", Map.of("type", "string")),
+                    "recommendations", Map.of(
+                            "type", "array",
+                            "items", Map.of(
+                                    "type", "object",
+                                    "properties", Map.of(
+                                            "title", Map.of("type", "string"),
+                                            "url", Map.of("type", "string")),
+                                    "required", List.of("title", "url")))),
+            "required", List.of("summary", "keyConcepts", "recommendations"));
+    
     private final RestTemplate restTemplate;
+    private final CloseableHttpAsyncClient httpClient;
+    private final ObjectMapper objectMapper;
     
     @Value("${ollama.api.url:http://localhost:11434/api/chat}")
     private String apiUrl;
@@ -37,124 +79,412 @@ public class OllamaClient implements AIProvider {
     @Value("${ollama.model:llama2}")
     private String model;
     
-    private final AtomicBoolean ollamaAvailable = new AtomicBoolean(false);
-    private final AtomicBoolean modelAvailable = new AtomicBoolean(false);
-    
-    @Value("${ollama.healthcheck.enabled:true}")
-    private boolean healthCheckEnabled;
+    @Value("${ollama.api.timeout:120000}")
+    private long apiTimeout;
     
     @Value("${ollama.api.base-url:http://localhost:11434}")
     private String baseUrl;
     
-    public OllamaClient(@Qualifier("ollamaRestTemplate") RestTemplate restTemplate) {
+    @Value("${ollama.model.keep-alive:10m}")
+    private String keepAlive;
+    
+    /**
+     * structured - ответ в JSON по схеме InsightResponse, text - свободный текст с разделами.
+     * Потоковые запросы всегда используют текст: клиенту передаются читаемые фрагменты.
+     */
+    @Value("${ollama.output.mode:structured}")
+    private String outputMode;
+    
+    /**
+     * Модель для эмбеддингов ({@code /api/embed}), используемых семантическим кэшем
+     */
+    @Value("${ollama.embedding.model:nomic-embed-text}")
+    private String embeddingModel;
+    
+    private final OllamaHealthProber healthProber;
+    
+    private final OllamaModelWarmer modelWarmer;
+    
+    public OllamaClient(@Qualifier("ollamaRestTemplate") RestTemplate restTemplate,
+                        @Qualifier("ollamaAsyncHttpClient") CloseableHttpAsyncClient httpClient,
+                        ObjectMapper objectMapper,
+                        OllamaHealthProber healthProber,
+                        OllamaModelWarmer modelWarmer) {
         this.restTemplate = restTemplate;
+        this.httpClient = httpClient;
+        this.objectMapper = objectMapper;
+        this.healthProber = healthProber;
+        this.modelWarmer = modelWarmer;
     }
     
     /**
-     * Инициализация клиента и проверка доступности Ollama
+     * Немедленно перепроверяет доступность Ollama API и указанной модели.
+     * Запросы к модели эту проверку не выполняют - они читают снимок фоновой проверки.
+     * 
+     * @return true если API и модель доступны, иначе false
+     */
+    public boolean checkOllamaAvailability() {
+        return healthProber.probeNow().isHealthy();
+    }
+    
+    /**
+     * Отправляет запрос к API Ollama и получает ответ
+     * 
+     * @param topic тема для анализа
+     * @param language язык ответа (опционально)
+     * @return ответ модели
+     * @throws AIServiceException если Ollama недоступна или запрос завершился ошибкой
      */
-    @PostConstruct
-    public void init() {
-        if (healthCheckEnabled) {
-            checkOllamaAvailability();
+    @Override
+    public AIResponse sendRequest(String topic, String language) {
+        ensureAvailable();
+        
+        try {
+            AIResponse response = postChat(apiUrl, topic, language);
+            log.info("Получен успешный ответ от Ollama API");
+            return response;
+        } catch (AIServiceException e) {
+            // Ошибка не подменяется ответом-заглушкой: он попал бы в кэш, а ограничитель учел бы его как успех
+            log.error("Исключение при выполнении запроса: {} ({})", e.getMessage(), e.getClass().getName(), e);
+            markUnavailableOnConnectFailure(e);
+            throw e;
+        } catch (RuntimeException e) {
+            log.error("Исключение при выполнении запроса: {} ({})", e.getMessage(), e.getClass().getName(), e);
+            throw new AIServiceException("Не удалось получить ответ от Ollama API: " + e.getMessage(), e);
         }
     }
     
     /**
-     * Проверяет доступность Ollama API и указанной модели
+     * Асинхронно отправляет запрос к API Ollama через неблокирующий HttpClient.
+     * Поток вызывающего не удерживается на время генерации: ответ разбирается
+     * в потоке HttpClient после получения тела целиком.
      * 
-     * @return true если API и модель доступны, иначе false
+     * @param topic тема для анализа
+     * @param language язык ответа (опционально)
+     * @return CompletableFuture с ответом модели; при ошибке завершается с AIServiceException
      */
-    public boolean checkOllamaAvailability() {
+    @Override
+    public CompletableFuture<AIResponse> sendRequestAsync(String topic, String language) {
         try {
-            // Проверка базового API
-            String healthUrl = baseUrl + "/api/tags";
-            log.debug("Проверка доступности Ollama по адресу: {}", healthUrl);
+            ensureAvailable();
+        } catch (AIServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return postChatAsync(apiUrl, topic, language)
+                .whenComplete((response, error) -> markUnavailableOnConnectFailure(error));
+    }
+    
+    /**
+     * Отправляет запрос к API Ollama в потоковом режиме ({@code "stream": true}).
+     * Ollama возвращает поток NDJSON: каждая строка содержит очередной фрагмент ответа,
+     * последняя строка помечена {@code "done": true} и содержит статистику генерации.
+     * 
+     * @param topic тема для анализа
+     * @param language язык ответа (опционально)
+     * @param tokenConsumer получатель фрагментов сгенерированного текста
+     * @return итоговый ответ со статистикой генерации и всем собранным текстом
+     */
+    @Override
+    public AIResponse streamRequest(String topic, String language, Consumer<String> tokenConsumer) {
+        ensureAvailable();
+        try {
+            return streamChat(apiUrl, topic, language, tokenConsumer);
+        } catch (AIServiceException e) {
+            markUnavailableOnConnectFailure(e);
+            throw e;
+        }
+    }
+    
+    /**
+     * Вычисляет эмбеддинг текста моделью {@code ollama.embedding.model}
+     * 
+     * @param text текст для векторизации
+     * @return CompletableFuture с вектором; при ошибке завершается с AIServiceException
+     */
+    @Override
+    public CompletableFuture<float[]> embedAsync(String text) {
+        return postEmbedAsync(baseUrl, text)
+                .whenComplete((vector, error) -> markUnavailableOnConnectFailure(error));
+    }
+    
+    /**
+     * Асинхронный запрос к /api/embed указанного узла Ollama
+     * 
+     * @param nodeBaseUrl базовый адрес узла Ollama
+     */
+    CompletableFuture<float[]> postEmbedAsync(String nodeBaseUrl, String text) {
+        try {
+            Map<String, Object> requestBody = Map.of(
+                    "model", embeddingModel,
+                    "input", text,
+                    "keep_alive", keepAlive);
             
-            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
-                    healthUrl, 
-                    HttpMethod.GET, 
-                    null, 
-                    new org.springframework.core.ParameterizedTypeReference<Map<String, Object>>() {});
-                    
-            if (response.getStatusCode().is2xxSuccessful()) {
-                log.info("Ollama API доступен");
-                ollamaAvailable.set(true);
-                
-                // Проверка наличия нужной модели
-                Map<String, Object> body = response.getBody();
-                if (body != null && body.containsKey("models")) {
-                    @SuppressWarnings("unchecked")
-                    List<Map<String, Object>> models = (List<Map<String, Object>>) body.get("models");
-                    boolean found = models.stream()
-                            .anyMatch(m -> model.equals(m.get("name")));
-                            
-                    modelAvailable.set(found);
-                    
-                    if (found) {
-                        log.info("Модель {} найдена и готова к использованию", model);
-                    } else {
-                        log.warn("Модель {} НЕ найдена в Ollama. Доступные модели: {}", 
-                            model, models.stream()
-                                .map(m -> m.get("name"))
-                                .toList());
-                    }
-                }
-                
-                return ollamaAvailable.get() && modelAvailable.get();
-            } else {
-                log.error("Ollama API недоступен. Код ответа: {}", response.getStatusCode());
-                ollamaAvailable.set(false);
-                modelAvailable.set(false);
-                return false;
-            }
+            log.debug("Запрос эмбеддинга к Ollama API, модель: {}, URL: {}", embeddingModel, nodeBaseUrl);
             
+            return postJsonAsync(nodeBaseUrl + "/api/embed", requestBody)
+                    .thenApply(this::readEmbeddingResponse)
+                    .exceptionallyCompose(ex -> CompletableFuture.failedFuture(toAIServiceException(ex)));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(toAIServiceException(e));
+        }
+    }
+    
+    /**
+     * Синхронный запрос к /api/chat указанного узла Ollama без проверки доступности
+     * 
+     * @param chatUrl полный URL эндпоинта /api/chat
+     * @throws AIServiceException при сетевой ошибке или ошибке API
+     */
+    AIResponse postChat(String chatUrl, String topic, String language) {
+        // Настройка заголовков для API запроса
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        
+        Map<String, Object> requestBody = buildRequestBody(topic, language, false);
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+        
+        // Логирование запроса
+        log.info("Отправка запроса к Ollama API, тема: {}, язык: {}, модель: {}, URL: {}", topic, language, model, chatUrl);
+        log.debug("Тело запроса: {}", requestBody);
+        
+        try {
+            // Ответ читается из потока сразу в AIResponse, без промежуточного дерева Map
+            AIResponse response = restTemplate.execute(chatUrl, HttpMethod.POST, restTemplate.httpEntityCallback(entity),
+                    httpResponse -> readResponse(httpResponse.getBody()));
+            modelWarmer.onModelResponse(response);
+            return response;
         } catch (ResourceAccessException e) {
+            log.error("Ошибка сетевого доступа к Ollama API: {}", e.getMessage());
             if (e.getCause() instanceof ConnectException) {
-                log.error("Не удалось подключиться к Ollama. Проверьте, запущен ли Ollama на {}", baseUrl);
-            } else {
-                log.error("Ошибка доступа к ресурсу Ollama: {}", e.getMessage());
+                throw new AIServiceException(
+                    "Не удалось подключиться к Ollama по адресу " + chatUrl, e.getCause());
             }
-            ollamaAvailable.set(false);
-            modelAvailable.set(false);
-            return false;
+            throw new AIServiceException("Проблема доступа к Ollama API: " + e.getMessage(), e);
+        } catch (RestClientException e) {
+            log.error("Ошибка при обращении к Ollama API: {}", e.getMessage(), e);
+            throw new AIServiceException("Не удалось получить ответ от Ollama API: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Асинхронный запрос к /api/chat указанного узла Ollama без проверки доступности
+     * 
+     * @param chatUrl полный URL эндпоинта /api/chat
+     * @return CompletableFuture, завершающийся с AIServiceException при ошибке
+     */
+    CompletableFuture<AIResponse> postChatAsync(String chatUrl, String topic, String language) {
+        try {
+            Map<String, Object> requestBody = buildRequestBody(topic, language, false);
+            
+            log.info("Отправка асинхронного запроса к Ollama API, тема: {}, язык: {}, модель: {}, URL: {}", topic, language, model, chatUrl);
+            
+            return postJsonAsync(chatUrl, requestBody)
+                    .thenApply(this::readAsyncResponse)
+                    .exceptionallyCompose(ex -> CompletableFuture.failedFuture(toAIServiceException(ex)));
         } catch (Exception e) {
-            log.error("Ошибка при проверке доступности Ollama: {}", e.getMessage(), e);
-            ollamaAvailable.set(false);
-            modelAvailable.set(false);
-            return false;
+            return CompletableFuture.failedFuture(toAIServiceException(e));
         }
     }
     
     /**
-     * Отправляет запрос к API Ollama и получает ответ
+     * Потоковый запрос к /api/chat указанного узла Ollama без проверки доступности
      * 
-     * @param topic тема для анализа
-     * @param language язык ответа (опционально)
-     * @return ответ от API в виде Map
+     * @param chatUrl полный URL эндпоинта /api/chat
+     * @throws AIServiceException при сетевой ошибке или ошибке API
      */
-    @Override
-    @SuppressWarnings("unchecked")
-    public Map<String, Object> sendRequest(String topic, String language) {
-        // Проверяем доступность Ollama
-        if (healthCheckEnabled && !ollamaAvailable.get()) {
-            // Пытаемся проверить доступность еще раз
-            if (!checkOllamaAvailability()) {
+    AIResponse streamChat(String chatUrl, String topic, String language, Consumer<String> tokenConsumer) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_NDJSON, MediaType.APPLICATION_JSON));
+        
+        Map<String, Object> requestBody = buildRequestBody(topic, language, true);
+        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
+        
+        log.info("Отправка потокового запроса к Ollama API, тема: {}, язык: {}, модель: {}, URL: {}", topic, language, model, chatUrl);
+        
+        try {
+            return restTemplate.execute(chatUrl, HttpMethod.POST, restTemplate.httpEntityCallback(entity),
+                    response -> readChatStream(response.getBody(), tokenConsumer));
+        } catch (ResourceAccessException e) {
+            log.error("Ошибка сетевого доступа к Ollama API в потоковом режиме: {}", e.getMessage());
+            if (e.getCause() instanceof ConnectException) {
                 throw new AIServiceException(
-                    "Не удалось подключиться к Ollama API. Проверьте, запущена ли Ollama на " + baseUrl);
+                    "Не удалось подключиться к Ollama по адресу " + chatUrl, e.getCause());
             }
+            throw new AIServiceException("Проблема доступа к Ollama API: " + e.getMessage(), e);
+        } catch (RestClientException e) {
+            log.error("Ошибка при потоковом обращении к Ollama API: {}", e.getMessage(), e);
+            throw new AIServiceException("Не удалось получить ответ от Ollama API: " + e.getMessage(), e);
         }
-        
-        // Проверяем доступность модели
-        if (healthCheckEnabled && !modelAvailable.get()) {
+    }
+    
+    /**
+     * Асинхронный POST с JSON-телом через пул неблокирующего клиента
+     */
+    private CompletableFuture<SimpleHttpResponse> postJsonAsync(String url, Object requestBody)
+            throws JsonProcessingException {
+        SimpleHttpRequest request = SimpleRequestBuilder.post(url)
+                .setHeader(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                .setBody(objectMapper.writeValueAsBytes(requestBody), ContentType.APPLICATION_JSON)
+                .setRequestConfig(RequestConfig.custom()
+                        .setResponseTimeout(Timeout.ofMilliseconds(apiTimeout))
+                        .build())
+                .build();
+        CompletableFuture<SimpleHttpResponse> result = new CompletableFuture<>();
+        httpClient.execute(request, new FutureCallback<>() {
+            @Override
+            public void completed(SimpleHttpResponse response) {
+                result.complete(response);
+            }
+            
+            @Override
+            public void failed(Exception ex) {
+                result.completeExceptionally(ex);
+            }
+            
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        return result;
+    }
+    
+    /**
+     * Тело ответа; у пустого ответа HttpClient не создает массив
+     */
+    private static byte[] bodyBytes(SimpleHttpResponse response) {
+        byte[] body = response.getBodyBytes();
+        return body != null ? body : new byte[0];
+    }
+    
+    /**
+     * Разбирает ответ асинхронного запроса к /api/chat
+     */
+    private AIResponse readAsyncResponse(SimpleHttpResponse response) {
+        if (response.getCode() < 200 || response.getCode() >= 300) {
+            String responseBody = new String(bodyBytes(response), StandardCharsets.UTF_8);
+            log.error("Ошибка при обращении к Ollama API. Статус: {}, Тело ответа: {}", response.getCode(), responseBody);
+            throw new AIServiceException("Ollama API вернул статус " + response.getCode());
+        }
+        try {
+            AIResponse body = decode(OllamaResponseDecoder.read(bodyBytes(response)));
+            modelWarmer.onModelResponse(body);
+            log.info("Получен успешный асинхронный ответ от Ollama API");
+            return body;
+        } catch (IOException e) {
+            throw new AIServiceException("Не удалось разобрать ответ Ollama API: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Разбирает ответ запроса к /api/embed
+     */
+    private float[] readEmbeddingResponse(SimpleHttpResponse response) {
+        if (response.getCode() < 200 || response.getCode() >= 300) {
+            log.warn("Ошибка при запросе эмбеддинга. Статус: {}, Тело ответа: {}", response.getCode(),
+                    new String(bodyBytes(response), StandardCharsets.UTF_8));
+            throw new AIServiceException("Ollama API вернул статус " + response.getCode() + " при запросе эмбеддинга");
+        }
+        try {
+            return OllamaResponseDecoder.readEmbedding(bodyBytes(response));
+        } catch (IOException e) {
+            throw new AIServiceException("Не удалось разобрать эмбеддинг Ollama API: " + e.getMessage(), e);
+        }
+    }
+    
+    /**
+     * Разбирает ответ синхронного запроса; некорректный JSON - ошибка ответа, а не сетевая
+     */
+    private AIResponse readResponse(InputStream body) throws IOException {
+        try {
+            return decode(OllamaResponseDecoder.read(body));
+        } catch (JsonProcessingException e) {
+            throw new AIServiceException("Не удалось разобрать ответ Ollama API: " + e.getOriginalMessage(), e);
+        }
+    }
+    
+    /**
+     * Проверяет, что Ollama вернула ответ, а не описание ошибки
+     */
+    private static AIResponse decode(AIResponse response) {
+        if (response.hasError()) {
+            throw new AIServiceException("Ollama вернула ошибку: " + response.error());
+        }
+        return response;
+    }
+    
+    /**
+     * Приводит ошибку асинхронного запроса к AIServiceException
+     */
+    private AIServiceException toAIServiceException(Throwable ex) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof AIServiceException aiServiceException) {
+            return aiServiceException;
+        }
+        if (cause instanceof ConnectException) {
+            log.error("Не удалось подключиться к Ollama при асинхронном запросе: {}", cause.getMessage());
+            return new AIServiceException("Не удалось подключиться к Ollama: " + cause.getMessage(), cause);
+        }
+        log.error("Ошибка при асинхронном обращении к Ollama API: {}", cause.getMessage(), cause);
+        return new AIServiceException("Не удалось получить ответ от Ollama API: " + cause.getMessage(), cause);
+    }
+    
+    /**
+     * Помечает Ollama недоступной, если запрос завершился ошибкой подключения
+     */
+    private void markUnavailableOnConnectFailure(Throwable error) {
+        if (error != null) {
+            healthProber.reportFailure(error);
+        }
+    }
+    
+    /**
+     * Проверяет, вызвана ли ошибка невозможностью подключиться к узлу Ollama
+     */
+    static boolean isConnectFailure(Throwable error) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (current instanceof ConnectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Читает NDJSON-поток /api/chat, передает фрагменты получателю и собирает итоговый ответ
+     */
+    private AIResponse readChatStream(InputStream body, Consumer<String> tokenConsumer) throws IOException {
+        AIResponse result = OllamaResponseDecoder.readStream(body, tokenConsumer);
+        modelWarmer.onModelResponse(result);
+        log.info("Потоковый ответ от Ollama API получен полностью ({} символов)", result.content().length());
+        return result;
+    }
+    
+    /**
+     * Проверяет доступность Ollama и модели перед отправкой запроса по снимку фоновой проверки.
+     * Сетевых запросов не выполняет: при недоступности Ollama запрос сразу отклоняется.
+     */
+    private void ensureAvailable() {
+        if (!healthProber.isEnabled()) {
+            return;
+        }
+        OllamaHealthSnapshot snapshot = healthProber.getSnapshot();
+        if (!snapshot.apiAvailable()) {
+            throw new AIServiceException(
+                "Не удалось подключиться к Ollama API. Проверьте, запущена ли Ollama на " + baseUrl);
+        }
+        if (!snapshot.modelAvailable()) {
             throw new AIServiceException(
                 "Модель '" + model + "' не найдена в Ollama. Убедитесь, что модель установлена.");
         }
-        
-        // Настройка заголовков для API запроса
-        HttpHeaders headers = new HttpHeaders();
-        headers.setContentType(MediaType.APPLICATION_JSON);
-        
+    }
+    
+    /**
+     * Формирует тело запроса к /api/chat
+     */
+    private Map<String, Object> buildRequestBody(String topic, String language, boolean stream) {
         // Формируем тело запроса для Ollama
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", model);
@@ -162,10 +492,12 @@ public class OllamaClient implements AIProvider {
         // Настраиваем сообщения для модели
         List<Map<String, String>> messages = new ArrayList<>();
         
+        boolean structured = !stream && OUTPUT_MODE_STRUCTURED.equalsIgnoreCase(outputMode);
+        
         // Системное сообщение с инструкциями
         Map<String, String> systemMessage = new HashMap<>();
         systemMessage.put("role", "system");
-        systemMessage.put("content", "Вы - помощник, который предоставляет информацию и анализ по различным темам. " +
+        systemMessage.put("content", structured ? STRUCTURED_SYSTEM_PROMPT : "Вы - помощник, который предоставляет информацию и анализ по различным темам. " +
                 "Предоставьте краткое резюме, ключевые концепции и рекомендации для дальнейшего чтения по запрашиваемой теме. " +
                 "Структурируйте ответ в следующем формате:\n\n" +
                 "РЕЗЮМЕ:\n[краткое описание темы]\n\n" +
@@ -181,60 +513,37 @@ public class OllamaClient implements AIProvider {
         messages.add(userMessage);
         
         requestBody.put("messages", messages);
-        requestBody.put("stream", false);
-        
-        HttpEntity<Map<String, Object>> entity = new HttpEntity<>(requestBody, headers);
-        
-        try {
-            // Логирование запроса
-            log.info("Отправка запроса к Ollama API, тема: {}, язык: {}, модель: {}, URL: {}", topic, language, model, apiUrl);
-            log.debug("Тело запроса: {}", requestBody);
-            
-            // Пробуем выполнить запрос и получить ответ
-            try {
-                Map<String, Object> response = restTemplate.postForObject(apiUrl, entity, Map.class);
-                log.info("Получен успешный ответ от Ollama API");
-                return response;
-            } catch (Exception innerEx) {
-                log.error("Исключение при выполнении запроса: {} ({})", innerEx.getMessage(), innerEx.getClass().getName(), innerEx);
-                
-                // Используем тестовый заглушка ответ
-                Map<String, Object> fallbackResponse = new HashMap<>();
-                Map<String, String> messageMap = new HashMap<>();
-                messageMap.put("role", "assistant");
-                messageMap.put("content", "РЕЗЮМЕ:\nЭто тестовый ответ от Ollama для темы: " + topic + ".\n\nКЛЮЧЕВЫЕ КОНЦЕПЦИИ:\n- Тестовый концепт 1\n- Тестовый концепт 2\n\nРЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ:\n- Источник 1\n- Источник 2");
-                fallbackResponse.put("message", messageMap);
-                
-                log.info("Возвращаем заглушка ответ из-за недоступности Ollama API");
-                return fallbackResponse;
-            }
-        } catch (ResourceAccessException e) {
-            log.error("Ошибка сетевого доступа к Ollama API: {}", e.getMessage());
-            if (e.getCause() instanceof ConnectException) {
-                ollamaAvailable.set(false);
-                throw new AIServiceException(
-                    "Не удалось подключиться к Ollama. Проверьте, запущен ли Ollama на " + baseUrl, e);
-            }
-            throw new AIServiceException("Проблема доступа к Ollama API: " + e.getMessage(), e);
-        } catch (RestClientException e) {
-            log.error("Ошибка при обращении к Ollama API: {}", e.getMessage(), e);
-            throw new AIServiceException("Не удалось получить ответ от Ollama API: " + e.getMessage(), e);
+        requestBody.put("stream", stream);
+        // Каждый запрос продлевает время удержания модели в памяти Ollama
+        requestBody.put("keep_alive", keepAlive);
+        if (structured) {
+            // Ollama ограничивает генерацию схемой, ответ разбирается без регулярных выражений
+            requestBody.put("format", INSIGHT_SCHEMA);
         }
+        return requestBody;
+    }
+    
+    /**
+     * Базовый адрес Ollama API
+     */
+    public String getBaseUrl() {
+        return baseUrl;
     }
     
     @Override
     public String getProviderName() {
-        String status = ollamaAvailable.get() ? "доступен" : "недоступен";
-        String modelStatus = modelAvailable.get() ? "доступна" : "недоступна";
+        OllamaHealthSnapshot snapshot = healthProber.getSnapshot();
+        String status = snapshot.apiAvailable() ? "доступен" : "недоступен";
+        String modelStatus = snapshot.modelAvailable() ? "доступна" : "недоступна";
         return "Ollama (" + model + ") - API " + status + ", модель " + modelStatus;
     }
     
     /**
      * Проверяет доступность сервиса Ollama
      * 
-     * @return true если сервис доступен, иначе false
+     * @return true если сервис доступен (или проверка отключена), иначе false
      */
     public boolean isAvailable() {
-        return ollamaAvailable.get() && modelAvailable.get();
+        return !healthProber.isEnabled() || healthProber.getSnapshot().isHealthy();
     }
 }
@@ -0,0 +1,322 @@
+package com.example.demo.services.client;
+
+import com.example.demo.exceptions.AIServiceException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Service;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Провайдер AI, распределяющий запросы между несколькими узлами Ollama
+ *
+ * <p>Каждый запрос отправляется на узел с наименьшим числом выполняющихся запросов
+ * относительно его скорости генерации (токенов в секунду по данным последних ответов)
+ * и состояния здоровья. Узлы, вернувшие несколько ошибок подряд, автоматически исключаются
+ * из балансировки и возвращаются после пробного запроса.</p>
+ *
+ * <p>Включается свойством {@code ollama.cluster.enabled=true}; адреса узлов задаются в
+ * {@code ollama.cluster.nodes} через запятую.</p>
+ */
+@Service
+@Primary
+@ConditionalOnProperty(name = "ollama.cluster.enabled", havingValue = "true")
+@Slf4j
+public class OllamaClusterClient implements AIProvider {
+
+    /** Скорость генерации, принимаемая для узлов без замеров, токенов в секунду */
+    private static final double DEFAULT_THROUGHPUT = 10.0;
+
+    private final OllamaClient ollamaClient;
+    private final List<OllamaNode> nodes;
+    private final int maxAttempts;
+    private final MeterRegistry meterRegistry;
+    private final Clock clock;
+
+    @Autowired
+    public OllamaClusterClient(OllamaClient ollamaClient,
+                               MeterRegistry meterRegistry,
+                               @Value("${ollama.cluster.nodes}") String[] nodeUrls,
+                               @Value("${ollama.cluster.eject-after-failures:3}") int ejectAfterFailures,
+                               @Value("${ollama.cluster.ejection-duration:30s}") Duration ejectionDuration,
+                               @Value("${ollama.cluster.max-ejection-duration:5m}") Duration maxEjectionDuration,
+                               @Value("${ollama.cluster.max-attempts:2}") int maxAttempts) {
+        this(ollamaClient, meterRegistry, nodeUrls, ejectAfterFailures, ejectionDuration,
+                maxEjectionDuration, maxAttempts, Clock.systemUTC());
+    }
+
+    OllamaClusterClient(OllamaClient ollamaClient, MeterRegistry meterRegistry, String[] nodeUrls,
+                        int ejectAfterFailures, Duration ejectionDuration, Duration maxEjectionDuration,
+                        int maxAttempts, Clock clock) {
+        this.ollamaClient = ollamaClient;
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.clock = clock;
+        this.nodes = Arrays.stream(nodeUrls)
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> new OllamaNode(url, ejectAfterFailures, ejectionDuration, maxEjectionDuration))
+                .toList();
+        if (nodes.isEmpty()) {
+            throw new IllegalStateException("Не задан ни один узел Ollama в ollama.cluster.nodes");
+        }
+        nodes.forEach(this::registerNodeMetrics);
+        log.info("Кластер Ollama: {} узлов {}", nodes.size(), nodes.stream().map(OllamaNode::getBaseUrl).toList());
+    }
+
+    @Override
+    public AIResponse sendRequest(String topic, String language) {
+        AIServiceException lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            OllamaNode node = acquireNode();
+            try {
+                AIResponse response = ollamaClient.postChat(node.getChatUrl(), topic, language);
+                onSuccess(node, response);
+                return response;
+            } catch (AIServiceException e) {
+                onFailure(node, e);
+                lastError = e;
+            }
+        }
+        throw lastError;
+    }
+
+    @Override
+    public CompletableFuture<AIResponse> sendRequestAsync(String topic, String language) {
+        return sendAsyncAttempt(topic, language, 1);
+    }
+
+    private CompletableFuture<AIResponse> sendAsyncAttempt(String topic, String language, int attempt) {
+        OllamaNode node;
+        try {
+            node = acquireNode();
+        } catch (AIServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return ollamaClient.postChatAsync(node.getChatUrl(), topic, language)
+                .handle((response, error) -> {
+                    if (error == null) {
+                        onSuccess(node, response);
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    onFailure(node, error);
+                    if (attempt < maxAttempts) {
+                        return sendAsyncAttempt(topic, language, attempt + 1);
+                    }
+                    return CompletableFuture.<AIResponse>failedFuture(error);
+                })
+                .thenCompose(future -> future);
+    }
+
+    /**
+     * Эмбеддинг вычисляется на наименее загруженном узле без повторных попыток:
+     * при ошибке семантический кэш просто считает запрос промахом
+     *
+     * <p>Модели эмбеддингов может не быть на узле, который исправно генерирует ответы, поэтому результат
+     * учитывается отдельно от запросов генерации ({@link OllamaNode#recordEmbedding(boolean)}): он не исключает
+     * узел из балансировки, не сбрасывает счетчик его ошибок и не занимает слот. Узлы, последний запрос
+     * эмбеддинга к которым завершился ошибкой, выбираются, только если исправных по эмбеддингам нет.</p>
+     */
+    @Override
+    public CompletableFuture<float[]> embedAsync(String text) {
+        OllamaNode node = embeddingNode();
+        if (node == null) {
+            return CompletableFuture.failedFuture(
+                    new AIServiceException("Нет доступных узлов Ollama: все узлы исключены из балансировки"));
+        }
+        return ollamaClient.postEmbedAsync(node.getBaseUrl(), text)
+                .whenComplete((vector, error) -> {
+                    node.recordEmbedding(error == null);
+                    meterRegistry.counter("ollama.node.embeddings", "node", node.getBaseUrl(),
+                            "outcome", error == null ? "success" : "failure").increment();
+                    if (error != null) {
+                        log.debug("Ошибка запроса эмбеддинга к узлу Ollama {}: {}", node.getBaseUrl(), error.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * Потоковый запрос повторяется на другом узле, только если клиенту еще не был отправлен ни один фрагмент
+     */
+    @Override
+    public AIResponse streamRequest(String topic, String language, Consumer<String> tokenConsumer) {
+        AIServiceException lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            OllamaNode node = acquireNode();
+            AtomicBoolean tokensSent = new AtomicBoolean();
+            try {
+                AIResponse response = ollamaClient.streamChat(node.getChatUrl(), topic, language, token -> {
+                    tokensSent.set(true);
+                    tokenConsumer.accept(token);
+                });
+                onSuccess(node, response);
+                return response;
+            } catch (AIServiceException e) {
+                onFailure(node, e);
+                lastError = e;
+                if (tokensSent.get()) {
+                    break;
+                }
+            } catch (RuntimeException e) {
+                // Ошибка получателя фрагментов (например, клиент отключился) - узел исправен
+                onSuccess(node, null);
+                throw e;
+            }
+        }
+        throw lastError;
+    }
+
+    @Override
+    public String getProviderName() {
+        long now = clock.millis();
+        long available = nodes.stream().filter(node -> node.getState(now) != OllamaNode.State.EJECTED).count();
+        return "Ollama cluster - доступно узлов: " + available + " из " + nodes.size();
+    }
+
+    /**
+     * Кластер доступен, если хотя бы один узел не исключен из балансировки
+     */
+    @Override
+    public boolean isAvailable() {
+        long now = clock.millis();
+        return nodes.stream().anyMatch(node -> node.getState(now) != OllamaNode.State.EJECTED);
+    }
+
+    /**
+     * Узлы кластера для мониторинга
+     */
+    public List<OllamaNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Текущее время часов кластера (для расчета состояния узлов)
+     */
+    public long currentTimeMillis() {
+        return clock.millis();
+    }
+
+    /**
+     * Выбирает узел с наименьшей взвешенной загрузкой и резервирует на нем слот.
+     * При равной оценке узлы перебираются со случайного смещения, чтобы не перегружать первый.
+     */
+    OllamaNode acquireNode() {
+        long now = clock.millis();
+        double defaultThroughput = defaultThroughput();
+        int offset = ThreadLocalRandom.current().nextInt(nodes.size());
+        // Несколько попыток на случай, если выбранный узел успели занять или исключить
+        for (int round = 0; round < nodes.size(); round++) {
+            OllamaNode best = null;
+            double bestScore = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < nodes.size(); i++) {
+                OllamaNode node = nodes.get((offset + i) % nodes.size());
+                double score = node.loadScore(now, defaultThroughput);
+                if (score < bestScore) {
+                    best = node;
+                    bestScore = score;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            if (best.tryAcquire(now)) {
+                return best;
+            }
+        }
+        throw new AIServiceException("Нет доступных узлов Ollama: все узлы исключены из балансировки");
+    }
+
+    /**
+     * Узел для запроса эмбеддинга: не исключенный из балансировки, предпочтительно без ошибок эмбеддингов подряд,
+     * с наименьшей взвешенной загрузкой. Слот на узле не резервируется.
+     *
+     * @return узел или null, если все узлы исключены
+     */
+    private OllamaNode embeddingNode() {
+        long now = clock.millis();
+        double defaultThroughput = defaultThroughput();
+        int offset = ThreadLocalRandom.current().nextInt(nodes.size());
+        OllamaNode best = null;
+        boolean bestFailing = true;
+        double bestScore = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < nodes.size(); i++) {
+            OllamaNode node = nodes.get((offset + i) % nodes.size());
+            double score = node.loadScore(now, defaultThroughput);
+            if (score == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+            boolean failing = node.getConsecutiveEmbedFailures() > 0;
+            if (best == null || (bestFailing && !failing) || (failing == bestFailing && score < bestScore)) {
+                best = node;
+                bestFailing = failing;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Средняя скорость узлов с замерами; используется для узлов, по которым данных еще нет
+     */
+    private double defaultThroughput() {
+        return nodes.stream()
+                .mapToDouble(OllamaNode::getThroughput)
+                .filter(value -> !Double.isNaN(value))
+                .average()
+                .orElse(DEFAULT_THROUGHPUT);
+    }
+
+    private void onSuccess(OllamaNode node, AIResponse response) {
+        node.releaseSuccess(response != null ? response.tokensPerSecond() : Double.NaN);
+        meterRegistry.counter("ollama.node.requests", "node", node.getBaseUrl(), "outcome", "success").increment();
+    }
+
+    private void onFailure(OllamaNode node, Throwable error) {
+        boolean ejected = node.releaseFailure(clock.millis());
+        meterRegistry.counter("ollama.node.requests", "node", node.getBaseUrl(), "outcome", "failure").increment();
+        if (ejected) {
+            log.warn("Узел Ollama {} исключен из балансировки после {} ошибок подряд: {}",
+                    node.getBaseUrl(), node.getConsecutiveFailures(), error.getMessage());
+        } else {
+            log.warn("Ошибка запроса к узлу Ollama {}: {}", node.getBaseUrl(), error.getMessage());
+        }
+    }
+
+    private void registerNodeMetrics(OllamaNode node) {
+        String url = node.getBaseUrl();
+        Gauge.builder("ollama.node.outstanding", node, OllamaNode::getOutstanding)
+                .description("Выполняющиеся запросы на узле Ollama")
+                .tag("node", url)
+                .register(meterRegistry);
+        Gauge.builder("ollama.node.throughput", node, n -> Double.isNaN(n.getThroughput()) ? 0.0 : n.getThroughput())
+                .description("Скользящая средняя скорость генерации узла, токенов в секунду")
+                .tag("node", url)
+                .register(meterRegistry);
+        Gauge.builder("ollama.node.available", node,
+                        n -> n.getState(clock.millis()) == OllamaNode.State.EJECTED ? 0 : 1)
+                .description("1, если узел участвует в балансировке, 0 если исключен")
+                .tag("node", url)
+                .register(meterRegistry);
+        Gauge.builder("ollama.node.ejections", node, OllamaNode::getEjections)
+                .description("Количество исключений узла из балансировки")
+                .tag("node", url)
+                .register(meterRegistry);
+        Counter.builder("ollama.node.requests").tag("node", url).tag("outcome", "success").register(meterRegistry);
+        Counter.builder("ollama.node.requests").tag("node", url).tag("outcome", "failure").register(meterRegistry);
+        Counter.builder("ollama.node.embeddings").tag("node", url).tag("outcome", "success").register(meterRegistry);
+        Counter.builder("ollama.node.embeddings").tag("node", url).tag("outcome", "failure").register(meterRegistry);
+    }
+}
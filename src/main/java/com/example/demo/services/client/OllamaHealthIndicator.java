@@ -0,0 +1,53 @@
+package com.example.demo.services.client;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * Индикатор здоровья Ollama для /actuator/health
+ *
+ * <p>Возвращает последний снимок {@link OllamaHealthProber} и никогда не обращается к Ollama напрямую,
+ * поэтому частые опросы health-эндпоинта не создают нагрузки на Ollama.</p>
+ */
+@Component("ollama")
+@RequiredArgsConstructor
+public class OllamaHealthIndicator implements HealthIndicator {
+
+    private final OllamaHealthProber healthProber;
+
+    @Override
+    public Health health() {
+        if (!healthProber.isEnabled()) {
+            return Health.unknown().withDetail("reason", "Проверка Ollama отключена (ollama.healthcheck.enabled=false)").build();
+        }
+
+        OllamaHealthSnapshot snapshot = healthProber.getSnapshot();
+        Health.Builder builder;
+        if (snapshot.isHealthy()) {
+            builder = Health.up();
+        } else if (snapshot.apiAvailable()) {
+            // API отвечает, но модель не установлена
+            builder = Health.outOfService();
+        } else if (snapshot.checkedAt() == null) {
+            builder = Health.unknown();
+        } else {
+            builder = Health.down();
+        }
+
+        builder.withDetail("apiAvailable", snapshot.apiAvailable())
+                .withDetail("modelAvailable", snapshot.modelAvailable())
+                .withDetail("consecutiveFailures", snapshot.consecutiveFailures());
+        if (snapshot.checkedAt() != null) {
+            builder.withDetail("checkedAt", snapshot.checkedAt().toString());
+        }
+        if (healthProber.getNextProbeAt() != null) {
+            builder.withDetail("nextProbeAt", healthProber.getNextProbeAt().toString());
+        }
+        if (snapshot.error() != null) {
+            builder.withDetail("error", snapshot.error());
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.demo.services.client;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.ConnectException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Фоновая проверка доступности Ollama API и модели
+ *
+ * <p>Единственный владелец состояния доступности: запросы к модели читают только атомарный
+ * снимок {@link #getSnapshot()} и никогда не выполняют проверку сами. Пока Ollama доступна,
+ * проверка выполняется с интервалом {@code ollama.healthcheck.interval}; после сбоя интервал
+ * растет экспоненциально от {@code ollama.healthcheck.initial-backoff} до
+ * {@code ollama.healthcheck.max-backoff} со случайным разбросом, чтобы не создавать
+ * всплеск запросов к восстанавливающемуся серверу.</p>
+ */
+@Component
+@Slf4j
+public class OllamaHealthProber {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> TAGS_TYPE = new ParameterizedTypeReference<>() {};
+
+    private final RestTemplate restTemplate;
+    private final TaskScheduler taskScheduler;
+
+    private final AtomicReference<OllamaHealthSnapshot> snapshot = new AtomicReference<>(OllamaHealthSnapshot.unknown());
+
+    @Value("${ollama.healthcheck.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ollama.api.base-url:http://localhost:11434}")
+    private String baseUrl;
+
+    @Value("${ollama.model:llama2}")
+    private String model;
+
+    @Value("${ollama.healthcheck.interval:30s}")
+    private Duration interval;
+
+    @Value("${ollama.healthcheck.initial-backoff:2s}")
+    private Duration initialBackoff;
+
+    @Value("${ollama.healthcheck.max-backoff:60s}")
+    private Duration maxBackoff;
+
+    private ScheduledFuture<?> nextProbe;
+    private volatile Instant nextProbeAt;
+
+    public OllamaHealthProber(@Qualifier("ollamaRestTemplate") RestTemplate restTemplate, TaskScheduler taskScheduler) {
+        this.restTemplate = restTemplate;
+        this.taskScheduler = taskScheduler;
+    }
+
+    /**
+     * Запускает фоновую проверку сразу после старта приложения
+     */
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            scheduleNext(Duration.ZERO);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (nextProbe != null) {
+            nextProbe.cancel(false);
+        }
+    }
+
+    /**
+     * Последний снимок состояния Ollama. Не выполняет сетевых запросов.
+     */
+    public OllamaHealthSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Включена ли проверка доступности (ollama.healthcheck.enabled)
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Время следующей запланированной проверки
+     */
+    public Instant getNextProbeAt() {
+        return nextProbeAt;
+    }
+
+    /**
+     * Немедленно проверяет доступность Ollama API и модели и обновляет снимок.
+     * Используется фоновым планировщиком и явной перепроверкой администратором.
+     *
+     * @return обновленный снимок состояния
+     */
+    public synchronized OllamaHealthSnapshot probeNow() {
+        OllamaHealthSnapshot previous = snapshot.get();
+        OllamaHealthSnapshot current = probe(previous);
+        snapshot.set(current);
+        if (current.isHealthy() != previous.isHealthy() || previous.checkedAt() == null) {
+            if (current.isHealthy()) {
+                log.info("Ollama API доступен, модель {} найдена и готова к использованию", model);
+            } else {
+                log.warn("Ollama недоступна ({}): {}", baseUrl, current.error());
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Сообщает о сбое подключения, обнаруженном при обработке запроса. Снимок сразу помечается
+     * недоступным, а следующая фоновая проверка переносится на минимальную задержку отката.
+     * Сама проверка на потоке запроса не выполняется.
+     */
+    public void reportFailure(Throwable error) {
+        if (!enabled || !OllamaClient.isConnectFailure(error)) {
+            return;
+        }
+        OllamaHealthSnapshot previous = snapshot.get();
+        if (!previous.apiAvailable()) {
+            return;
+        }
+        OllamaHealthSnapshot failed = new OllamaHealthSnapshot(false, false, Instant.now(),
+                previous.consecutiveFailures() + 1, "Ошибка подключения: " + error.getMessage());
+        if (snapshot.compareAndSet(previous, failed)) {
+            log.warn("Ollama помечена недоступной после ошибки подключения; перепроверка через {}", initialBackoff);
+            scheduleNext(initialBackoff);
+        }
+    }
+
+    private void runScheduledProbe() {
+        OllamaHealthSnapshot current;
+        try {
+            current = probeNow();
+        } catch (RuntimeException e) {
+            log.error("Непредвиденная ошибка фоновой проверки Ollama: {}", e.getMessage(), e);
+            current = snapshot.get();
+        }
+        scheduleNext(nextDelay(current));
+    }
+
+    private synchronized void scheduleNext(Duration delay) {
+        if (nextProbe != null) {
+            nextProbe.cancel(false);
+        }
+        nextProbeAt = Instant.now().plus(delay);
+        nextProbe = taskScheduler.schedule(this::runScheduledProbe, nextProbeAt);
+    }
+
+    /**
+     * Интервал до следующей проверки: обычный интервал для доступной Ollama,
+     * иначе экспоненциальный откат с разбросом ±20%
+     */
+    Duration nextDelay(OllamaHealthSnapshot current) {
+        if (current.isHealthy()) {
+            return interval;
+        }
+        int exponent = Math.min(Math.max(current.consecutiveFailures() - 1, 0), 20);
+        long backoffMillis = Math.min(initialBackoff.toMillis() << exponent, maxBackoff.toMillis());
+        double jitter = 0.8 + ThreadLocalRandom.current().nextDouble() * 0.4;
+        return Duration.ofMillis((long) (backoffMillis * jitter));
+    }
+
+    /**
+     * Проверяет /api/tags: доступность API и наличие настроенной модели
+     */
+    private OllamaHealthSnapshot probe(OllamaHealthSnapshot previous) {
+        Instant now = Instant.now();
+        int failures = previous.consecutiveFailures() + 1;
+        try {
+            String healthUrl = baseUrl + "/api/tags";
+            log.debug("Проверка доступности Ollama по адресу: {}", healthUrl);
+
+            ResponseEntity<Map<String, Object>> response = restTemplate.exchange(healthUrl, HttpMethod.GET, null, TAGS_TYPE);
+            if (!response.getStatusCode().is2xxSuccessful()) {
+                return new OllamaHealthSnapshot(false, false, now, failures,
+                        "Ollama API недоступен. Код ответа: " + response.getStatusCode());
+            }
+
+            Map<String, Object> body = response.getBody();
+            List<?> models = body != null && body.get("models") instanceof List<?> list ? list : List.of();
+            boolean found = models.stream()
+                    .anyMatch(m -> m instanceof Map<?, ?> entry && model.equals(entry.get("name")));
+            if (found) {
+                return new OllamaHealthSnapshot(true, true, now, 0, null);
+            }
+            List<Object> names = models.stream()
+                    .map(m -> m instanceof Map<?, ?> entry ? entry.get("name") : m)
+                    .toList();
+            return new OllamaHealthSnapshot(true, false, now, failures,
+                    "Модель " + model + " НЕ найдена в Ollama. Доступные модели: " + names);
+        } catch (ResourceAccessException e) {
+            String error = e.getCause() instanceof ConnectException
+                    ? "Не удалось подключиться к Ollama. Проверьте, запущен ли Ollama на " + baseUrl
+                    : "Ошибка доступа к ресурсу Ollama: " + e.getMessage();
+            return new OllamaHealthSnapshot(false, false, now, failures, error);
+        } catch (Exception e) {
+            log.debug("Ошибка при проверке доступности Ollama: {}", e.getMessage(), e);
+            return new OllamaHealthSnapshot(false, false, now, failures,
+                    "Ошибка при проверке доступности Ollama: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.demo.services.client;
+
+import java.time.Instant;
+
+/**
+ * Неизменяемый снимок состояния Ollama по результатам последней фоновой проверки
+ *
+ * @param apiAvailable        Ollama API отвечает
+ * @param modelAvailable      настроенная модель установлена в Ollama
+ * @param checkedAt           время последней проверки (null, если проверок еще не было)
+ * @param consecutiveFailures число неуспешных проверок подряд
+ * @param error               описание последней ошибки (null, если проверка успешна)
+ */
+public record OllamaHealthSnapshot(boolean apiAvailable,
+                                   boolean modelAvailable,
+                                   Instant checkedAt,
+                                   int consecutiveFailures,
+                                   String error) {
+
+    /**
+     * Начальное состояние до первой проверки
+     */
+    public static OllamaHealthSnapshot unknown() {
+        return new OllamaHealthSnapshot(false, false, null, 0, "Проверка еще не выполнялась");
+    }
+
+    /**
+     * Ollama доступна и модель установлена
+     */
+    public boolean isHealthy() {
+        return apiAvailable && modelAvailable;
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.demo.services.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прогрев модели Ollama и удержание ее в памяти
+ *
+ * <p>После старта приложения модель {@code ollama.model} загружается на каждом узле пустым запросом
+ * к {@code /api/generate}; пока модель не загружена хотя бы на одном узле, приложение не сообщает о готовности
+ * ({@link OllamaWarmupHealthIndicator} входит в группу readiness). Недоступный узел кластера не задерживает
+ * готовность: загрузка на нем повторяется в фоне каждые {@code ollama.warmup.check-interval}, а запросы
+ * до этого обслуживают остальные узлы. Пока есть трафик, модель удерживается
+ * в памяти: каждый запрос передает {@code keep_alive}, а если запросов не было дольше
+ * {@code ollama.warmup.ping-interval}, узлам отправляется пинг с тем же {@code keep_alive}.
+ * После {@code ollama.warmup.idle-timeout} без трафика пинги прекращаются и Ollama может выгрузить модель.</p>
+ *
+ * <p>Время загрузки модели ({@code load_duration}) из каждого ответа записывается в метрику
+ * {@code ollama.model.load_duration}; загрузки дольше {@code ollama.warmup.cold-load-threshold}
+ * считаются холодными ({@code ollama.model.cold_loads}).</p>
+ */
+@Component
+@Slf4j
+public class OllamaModelWarmer {
+
+    /** Источник загрузки модели в метриках: прогрев/пинг или обычный запрос */
+    static final String SOURCE_WARMUP = "warmup";
+    static final String SOURCE_REQUEST = "request";
+
+    private final RestTemplate restTemplate;
+    private final TaskScheduler taskScheduler;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ollama.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ollama.model:llama2}")
+    private String model;
+
+    @Value("${ollama.model.keep-alive:10m}")
+    private String keepAlive;
+
+    @Value("${ollama.api.base-url:http://localhost:11434}")
+    private String baseUrl;
+
+    @Value("${ollama.cluster.enabled:false}")
+    private boolean clusterEnabled;
+
+    @Value("${ollama.cluster.nodes:}")
+    private String[] clusterNodes;
+
+    @Value("${ollama.warmup.check-interval:30s}")
+    private Duration checkInterval;
+
+    @Value("${ollama.warmup.ping-interval:5m}")
+    private Duration pingInterval;
+
+    @Value("${ollama.warmup.idle-timeout:60m}")
+    private Duration idleTimeout;
+
+    @Value("${ollama.warmup.cold-load-threshold:1s}")
+    private Duration coldLoadThreshold;
+
+    private volatile boolean warmedUp;
+    private volatile Instant warmedUpAt;
+    private volatile Instant lastTrafficAt;
+    private volatile Instant lastModelActivityAt;
+    private volatile String lastError;
+
+    /** Узлы, на которых модель загружена */
+    private final Set<String> warmNodes = ConcurrentHashMap.newKeySet();
+
+    public OllamaModelWarmer(@Qualifier("ollamaRestTemplate") RestTemplate restTemplate,
+                             TaskScheduler taskScheduler,
+                             MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.taskScheduler = taskScheduler;
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Запускает прогрев и периодическую проверку после полной инициализации приложения
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            log.info("Прогрев модели Ollama отключен (ollama.warmup.enabled=false)");
+            return;
+        }
+        taskScheduler.scheduleWithFixedDelay(this::tick, Instant.now(), checkInterval);
+    }
+
+    /**
+     * Периодическая проверка: прогрев, пока он не удался, затем пинги при наличии трафика
+     * и повторная загрузка на узлах, где модель еще не загружена
+     */
+    void tick() {
+        try {
+            if (!warmedUp) {
+                warmUp();
+            } else if (shouldPing(Instant.now())) {
+                log.debug("Запросов к модели не было {}; отправляем keep-alive пинг", pingInterval);
+                preloadAllNodes();
+            } else {
+                preloadColdNodes();
+            }
+        } catch (RuntimeException e) {
+            log.error("Непредвиденная ошибка прогрева модели Ollama: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Загружает модель на узлах, где она еще не загружена
+     *
+     * @return true если модель загружена хотя бы на одном узле: приложение готово обслуживать запросы
+     */
+    public boolean warmUp() {
+        long startNanos = System.nanoTime();
+        preloadColdNodes();
+        if (warmNodes.isEmpty()) {
+            return false;
+        }
+        warmedUp = true;
+        warmedUpAt = Instant.now();
+        log.info("Модель {} прогрета на {} из {} узлов за {} мс и удерживается в памяти (keep_alive={})",
+                model, warmNodes.size(), nodes().size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), keepAlive);
+        return true;
+    }
+
+    /**
+     * Пинг нужен, если модель давно не использовалась, но трафик был в пределах idle-timeout
+     */
+    boolean shouldPing(Instant now) {
+        Instant lastTraffic = lastTrafficAt;
+        Instant lastActivity = lastModelActivityAt;
+        if (lastTraffic == null || lastTraffic.plus(idleTimeout).isBefore(now)) {
+            return false;
+        }
+        return lastActivity == null || !lastActivity.plus(pingInterval).isAfter(now);
+    }
+
+    /**
+     * Учитывает ответ модели на пользовательский запрос: отметка трафика и время загрузки модели
+     */
+    public void onModelResponse(AIResponse response) {
+        Instant now = Instant.now();
+        lastTrafficAt = now;
+        lastModelActivityAt = now;
+        recordLoadDuration(response, SOURCE_REQUEST);
+    }
+
+    private void preloadAllNodes() {
+        nodes().forEach(this::preloadNode);
+    }
+
+    private void preloadColdNodes() {
+        nodes().stream().filter(node -> !warmNodes.contains(node)).forEach(this::preloadNode);
+    }
+
+    /**
+     * Загружает модель на узле и отмечает результат: узел с ошибкой загрузки повторяется при следующей проверке
+     */
+    private void preloadNode(String node) {
+        if (!preload(node)) {
+            warmNodes.remove(node);
+            return;
+        }
+        lastModelActivityAt = Instant.now();
+        if (warmNodes.add(node) && warmedUp) {
+            log.info("Модель {} загружена на узле {}", model, node);
+        }
+        if (warmNodes.size() == nodes().size()) {
+            lastError = null;
+        }
+    }
+
+    /**
+     * Пустой запрос к /api/generate загружает модель в память без генерации
+     */
+    private boolean preload(String node) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.setAccept(List.of(MediaType.APPLICATION_JSON));
+        Map<String, Object> body = new HashMap<>();
+        body.put("model", model);
+        body.put("keep_alive", keepAlive);
+        try {
+            AIResponse response = restTemplate.execute(node + "/api/generate", HttpMethod.POST,
+                    restTemplate.httpEntityCallback(new HttpEntity<>(body, headers)),
+                    httpResponse -> OllamaResponseDecoder.read(httpResponse.getBody()));
+            if (response == null || response.hasError()) {
+                lastError = "Узел " + node + ": " + (response != null ? response.error() : "пустой ответ");
+                log.warn("Не удалось загрузить модель {} на узле {}: {}", model, node, lastError);
+                return false;
+            }
+            recordLoadDuration(response, SOURCE_WARMUP);
+            return true;
+        } catch (RestClientException e) {
+            lastError = "Узел " + node + ": " + e.getMessage();
+            log.warn("Не удалось загрузить модель {} на узле {}: {}", model, node, e.getMessage());
+            return false;
+        }
+    }
+
+    private void recordLoadDuration(AIResponse response, String source) {
+        if (response == null || response.loadDuration() <= 0) {
+            return;
+        }
+        long nanos = response.loadDuration();
+        Timer.builder("ollama.model.load_duration")
+                .description("Время загрузки модели Ollama по данным ответа (load_duration)")
+                .tag("model", model)
+                .tag("source", source)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        if (nanos >= coldLoadThreshold.toNanos()) {
+            Counter.builder("ollama.model.cold_loads")
+                    .description("Ответы, для которых модель загружалась в память заново")
+                    .tag("model", model)
+                    .tag("source", source)
+                    .register(meterRegistry)
+                    .increment();
+            log.info("Холодная загрузка модели {} ({}): {} мс", model, source, TimeUnit.NANOSECONDS.toMillis(nanos));
+        }
+    }
+
+    private List<String> nodes() {
+        if (clusterEnabled && clusterNodes.length > 0) {
+            return Arrays.stream(clusterNodes)
+                    .map(String::trim)
+                    .filter(url -> !url.isEmpty())
+                    .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                    .toList();
+        }
+        return List.of(baseUrl);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isWarmedUp() {
+        return warmedUp;
+    }
+
+    /**
+     * Узлы, на которых модель еще не загружена
+     */
+    public List<String> getColdNodes() {
+        return nodes().stream().filter(node -> !warmNodes.contains(node)).toList();
+    }
+
+    public Instant getWarmedUpAt() {
+        return warmedUpAt;
+    }
+
+    public Instant getLastTrafficAt() {
+        return lastTrafficAt;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public String getModel() {
+        return model;
+    }
+}
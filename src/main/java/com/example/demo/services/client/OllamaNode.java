@@ -0,0 +1,213 @@
+package com.example.demo.services.client;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Состояние одного узла Ollama в кластере: число выполняющихся запросов,
+ * скользящая оценка скорости генерации и состояние здоровья с автоматическим исключением
+ */
+public class OllamaNode {
+
+    /**
+     * Состояние здоровья узла
+     */
+    public enum State {
+        /** Узел отвечает без ошибок */
+        HEALTHY,
+        /** Последние запросы завершились ошибкой, но порог исключения не достигнут */
+        DEGRADED,
+        /** Узел исключен из балансировки до истечения времени исключения */
+        EJECTED,
+        /** Время исключения истекло, узел принимает один пробный запрос */
+        PROBING
+    }
+
+    /** Вес нового замера в скользящей средней скорости генерации */
+    private static final double THROUGHPUT_EWMA_ALPHA = 0.3;
+
+    private final String baseUrl;
+    private final String chatUrl;
+    private final int ejectAfterFailures;
+    private final Duration baseEjection;
+    private final Duration maxEjection;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong successes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong ejections = new AtomicLong();
+    private final AtomicInteger consecutiveEmbedFailures = new AtomicInteger();
+    private final AtomicLong embedSuccesses = new AtomicLong();
+    private final AtomicLong embedFailures = new AtomicLong();
+
+    private volatile double throughput = Double.NaN;
+    private volatile long ejectedUntilMillis;
+    private volatile int ejectionStreak;
+
+    public OllamaNode(String baseUrl, int ejectAfterFailures, Duration baseEjection, Duration maxEjection) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        this.chatUrl = this.baseUrl + "/api/chat";
+        this.ejectAfterFailures = ejectAfterFailures;
+        this.baseEjection = baseEjection;
+        this.maxEjection = maxEjection;
+    }
+
+    /**
+     * Текущее состояние узла на момент {@code nowMillis}
+     */
+    public State getState(long nowMillis) {
+        if (ejectedUntilMillis > nowMillis) {
+            return State.EJECTED;
+        }
+        int failuresInRow = consecutiveFailures.get();
+        if (ejectionStreak > 0 && failuresInRow >= ejectAfterFailures) {
+            return State.PROBING;
+        }
+        return failuresInRow > 0 ? State.DEGRADED : State.HEALTHY;
+    }
+
+    /**
+     * Оценка загрузки для выбора узла: меньше - лучше.
+     * Число выполняющихся запросов (с учетом нового) делится на вес узла,
+     * равный скорости генерации с поправкой на состояние здоровья.
+     *
+     * @param defaultThroughput скорость, принимаемая для узла без замеров
+     */
+    double loadScore(long nowMillis, double defaultThroughput) {
+        double speed = Double.isNaN(throughput) ? defaultThroughput : throughput;
+        double healthFactor = switch (getState(nowMillis)) {
+            case HEALTHY -> 1.0;
+            case DEGRADED -> 0.5;
+            case PROBING -> 0.25;
+            case EJECTED -> 0.0;
+        };
+        double weight = Math.max(speed, 1e-3) * healthFactor;
+        return weight == 0.0 ? Double.POSITIVE_INFINITY : (outstanding.get() + 1) / weight;
+    }
+
+    /**
+     * Резервирует слот для запроса. Узел в состоянии PROBING принимает только один запрос одновременно.
+     *
+     * @return true если запрос можно отправить на узел
+     */
+    boolean tryAcquire(long nowMillis) {
+        return switch (getState(nowMillis)) {
+            case EJECTED -> false;
+            case PROBING -> outstanding.compareAndSet(0, 1);
+            default -> {
+                outstanding.incrementAndGet();
+                yield true;
+            }
+        };
+    }
+
+    /**
+     * Освобождает слот и учитывает успешный ответ
+     *
+     * @param tokensPerSecond скорость генерации по данным ответа или NaN, если она неизвестна
+     */
+    void releaseSuccess(double tokensPerSecond) {
+        outstanding.decrementAndGet();
+        successes.incrementAndGet();
+        consecutiveFailures.set(0);
+        ejectionStreak = 0;
+        if (!Double.isNaN(tokensPerSecond) && tokensPerSecond > 0) {
+            double previous = throughput;
+            throughput = Double.isNaN(previous)
+                    ? tokensPerSecond
+                    : THROUGHPUT_EWMA_ALPHA * tokensPerSecond + (1 - THROUGHPUT_EWMA_ALPHA) * previous;
+        }
+    }
+
+    /**
+     * Освобождает слот и учитывает ошибку. После {@code ejectAfterFailures} ошибок подряд
+     * узел исключается; каждое следующее исключение подряд вдвое длиннее предыдущего.
+     *
+     * @return true если узел был исключен в результате этой ошибки
+     */
+    synchronized boolean releaseFailure(long nowMillis) {
+        outstanding.decrementAndGet();
+        failures.incrementAndGet();
+        if (consecutiveFailures.incrementAndGet() < ejectAfterFailures) {
+            return false;
+        }
+        long ejectionMillis = Math.min(
+                baseEjection.toMillis() << Math.min(ejectionStreak, 16),
+                maxEjection.toMillis());
+        ejectionStreak++;
+        ejectedUntilMillis = nowMillis + ejectionMillis;
+        ejections.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Учитывает результат запроса эмбеддинга. Эмбеддинги считает отдельная модель, которой на узле может
+     * не быть, поэтому их результат не влияет ни на здоровье узла, ни на число выполняющихся запросов генерации.
+     */
+    void recordEmbedding(boolean success) {
+        if (success) {
+            embedSuccesses.incrementAndGet();
+            consecutiveEmbedFailures.set(0);
+        } else {
+            embedFailures.incrementAndGet();
+            consecutiveEmbedFailures.incrementAndGet();
+        }
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String getChatUrl() {
+        return chatUrl;
+    }
+
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * Скользящая средняя скорости генерации, токенов в секунду (NaN, если замеров еще нет)
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    public int getConsecutiveFailures() {
+        return consecutiveFailures.get();
+    }
+
+    public long getSuccesses() {
+        return successes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public long getEjections() {
+        return ejections.get();
+    }
+
+    public int getConsecutiveEmbedFailures() {
+        return consecutiveEmbedFailures.get();
+    }
+
+    public long getEmbedSuccesses() {
+        return embedSuccesses.get();
+    }
+
+    public long getEmbedFailures() {
+        return embedFailures.get();
+    }
+
+    /**
+     * Момент окончания текущего исключения или null, если узел не исключен
+     */
+    public Instant getEjectedUntil(long nowMillis) {
+        return ejectedUntilMillis > nowMillis ? Instant.ofEpochMilli(ejectedUntilMillis) : null;
+    }
+}
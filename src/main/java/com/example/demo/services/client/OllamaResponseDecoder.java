@@ -0,0 +1,244 @@
+package com.example.demo.services.client;
+
+import com.example.demo.exceptions.AIServiceException;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Потоковое чтение ответов Ollama ({@code /api/chat}, {@code /api/generate}) в {@link AIResponse}
+ *
+ * <p>Ответ читается JsonParser за один проход без построения дерева Map. Значения неизвестных полей
+ * пропускаются без создания объектов, строки создаются только для используемых полей.</p>
+ */
+final class OllamaResponseDecoder {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private OllamaResponseDecoder() {
+    }
+
+    /**
+     * Читает одиночный ответ из потока
+     */
+    static AIResponse read(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return readRoot(parser);
+        }
+    }
+
+    /**
+     * Читает одиночный ответ из массива байт
+     */
+    static AIResponse read(byte[] body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            return readRoot(parser);
+        }
+    }
+
+    /**
+     * Читает NDJSON-поток: передает фрагменты текста получателю по мере поступления
+     * и возвращает последний фрагмент (со статистикой генерации) с полным собранным текстом
+     *
+     * @throws AIServiceException если Ollama передала ошибку в потоке или поток закончился
+     *                             без завершающего фрагмента {@code "done": true}
+     */
+    static AIResponse readStream(InputStream body, Consumer<String> tokenConsumer) throws IOException {
+        StringBuilder content = new StringBuilder();
+        AIResponse last = null;
+        // Строки NDJSON - последовательность корневых JSON-значений, читаемая одним парсером
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                AIResponse chunk = readObject(parser);
+                if (chunk.hasError()) {
+                    throw new AIServiceException("Ollama вернула ошибку в потоке: " + chunk.error());
+                }
+                String token = chunk.content();
+                if (token != null && !token.isEmpty()) {
+                    content.append(token);
+                    tokenConsumer.accept(token);
+                }
+                last = chunk;
+                if (chunk.done()) {
+                    break;
+                }
+            }
+        }
+        // Соединение, закрытое между строками NDJSON, выглядит как обычный конец потока:
+        // без фрагмента done=true ответ обрезан и не должен считаться успешным
+        if (last == null || !last.done()) {
+            throw new AIServiceException("Поток Ollama оборвался до завершения генерации (получено "
+                    + content.length() + " символов)");
+        }
+        return last.withContent(content.toString());
+    }
+
+    /**
+     * Читает первый вектор из ответа {@code /api/embed} ({@code "embeddings": [[...]]})
+     * или {@code /api/embeddings} ({@code "embedding": [...]})
+     *
+     * @throws AIServiceException если Ollama вернула ошибку
+     */
+    static float[] readEmbedding(byte[] body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Ответ Ollama не является JSON-объектом");
+            }
+            float[] embedding = null;
+            String error = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "embeddings" -> embedding = readFirstVector(parser, value);
+                    case "embedding" -> embedding = value == JsonToken.START_ARRAY ? readVector(parser) : skip(parser);
+                    case "error" -> error = text(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            if (error != null) {
+                throw new AIServiceException("Ollama вернула ошибку: " + error);
+            }
+            if (embedding == null || embedding.length == 0) {
+                throw new IOException("Ответ Ollama не содержит эмбеддинга");
+            }
+            return embedding;
+        }
+    }
+
+    /**
+     * Из пакета векторов нужен только первый, остальные пропускаются
+     */
+    private static float[] readFirstVector(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return null;
+        }
+        float[] first = null;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null) {
+                throw new IOException("Ответ Ollama обрывается внутри массива эмбеддингов");
+            }
+            if (token == JsonToken.START_ARRAY && first == null) {
+                first = readVector(parser);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Читает массив чисел; парсер должен стоять на START_ARRAY и останавливается на END_ARRAY
+     */
+    private static float[] readVector(JsonParser parser) throws IOException {
+        float[] vector = new float[256];
+        int size = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (token == null || !token.isNumeric()) {
+                throw new IOException("Эмбеддинг содержит нечисловое значение");
+            }
+            if (size == vector.length) {
+                vector = Arrays.copyOf(vector, size * 2);
+            }
+            vector[size++] = parser.getFloatValue();
+        }
+        return size == vector.length ? vector : Arrays.copyOf(vector, size);
+    }
+
+    private static float[] skip(JsonParser parser) throws IOException {
+        parser.skipChildren();
+        return null;
+    }
+
+    private static AIResponse readRoot(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IOException("Ответ Ollama не является JSON-объектом");
+        }
+        return readObject(parser);
+    }
+
+    /**
+     * Читает объект ответа; парсер должен стоять на START_OBJECT
+     */
+    private static AIResponse readObject(JsonParser parser) throws IOException {
+        String model = null;
+        String content = null;
+        String doneReason = null;
+        String error = null;
+        boolean done = false;
+        long totalDuration = 0;
+        long loadDuration = 0;
+        long promptEvalCount = 0;
+        long promptEvalDuration = 0;
+        long evalCount = 0;
+        long evalDuration = 0;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "model" -> model = text(parser, value);
+                case "message" -> content = messageContent(parser, value);
+                // /api/generate возвращает текст в поле response
+                case "response" -> content = text(parser, value);
+                case "done" -> done = value == JsonToken.VALUE_TRUE;
+                case "done_reason" -> doneReason = text(parser, value);
+                case "error" -> error = text(parser, value);
+                case "total_duration" -> totalDuration = number(parser, value);
+                case "load_duration" -> loadDuration = number(parser, value);
+                case "prompt_eval_count" -> promptEvalCount = number(parser, value);
+                case "prompt_eval_duration" -> promptEvalDuration = number(parser, value);
+                case "eval_count" -> evalCount = number(parser, value);
+                case "eval_duration" -> evalDuration = number(parser, value);
+                default -> parser.skipChildren();
+            }
+        }
+        return new AIResponse(model, content, done, doneReason, error, totalDuration, loadDuration,
+                promptEvalCount, promptEvalDuration, evalCount, evalDuration);
+    }
+
+    /**
+     * Из объекта message нужен только content; role и прочие поля пропускаются
+     */
+    private static String messageContent(JsonParser parser, JsonToken value) throws IOException {
+        if (value != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return null;
+        }
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken fieldValue = parser.nextToken();
+            if ("content".equals(field)) {
+                content = text(parser, fieldValue);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+
+    private static String text(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_STRING) {
+            return parser.getText();
+        }
+        parser.skipChildren();
+        return null;
+    }
+
+    private static long number(JsonParser parser, JsonToken value) throws IOException {
+        if (value != null && value.isNumeric()) {
+            return parser.getLongValue();
+        }
+        parser.skipChildren();
+        return 0;
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.demo.services.client;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Готовность модели Ollama к обслуживанию запросов без холодной загрузки
+ *
+ * <p>Входит в группу readiness ({@code management.endpoint.health.group.readiness.include}),
+ * поэтому приложение начинает принимать трафик только после прогрева модели хотя бы на одном узле.
+ * Узлы, на которых модель еще не загружена, перечислены в {@code coldNodes}.</p>
+ */
+@Component("ollamaWarmup")
+@RequiredArgsConstructor
+public class OllamaWarmupHealthIndicator implements HealthIndicator {
+
+    private final OllamaModelWarmer modelWarmer;
+
+    @Override
+    public Health health() {
+        if (!modelWarmer.isEnabled()) {
+            return Health.up().withDetail("reason", "Прогрев модели отключен (ollama.warmup.enabled=false)").build();
+        }
+        Health.Builder builder = modelWarmer.isWarmedUp() ? Health.up() : Health.outOfService();
+        builder.withDetail("model", modelWarmer.getModel());
+        if (modelWarmer.getWarmedUpAt() != null) {
+            builder.withDetail("warmedUpAt", modelWarmer.getWarmedUpAt().toString());
+        }
+        if (modelWarmer.getLastTrafficAt() != null) {
+            builder.withDetail("lastTrafficAt", modelWarmer.getLastTrafficAt().toString());
+        }
+        List<String> coldNodes = modelWarmer.getColdNodes();
+        if (!coldNodes.isEmpty()) {
+            builder.withDetail("coldNodes", coldNodes);
+        }
+        if (modelWarmer.getLastError() != null) {
+            builder.withDetail("error", modelWarmer.getLastError());
+        }
+        return builder.build();
+    }
+}
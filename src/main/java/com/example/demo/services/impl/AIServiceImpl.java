@@ -1,24 +1,44 @@
 package com.example.demo.services.impl;
 
+import com.example.demo.dto.insight.InsightBatchItem;
 import com.example.demo.dto.insight.InsightRequest;
 import com.example.demo.dto.insight.InsightResponse;
 import com.example.demo.dto.insight.Recommendation;
-import com.example.demo.dto.insight.ResourceLink;
+import com.example.demo.exceptions.AIOverloadedException;
 import com.example.demo.exceptions.AIServiceException;
 import com.example.demo.services.AIService;
+import com.example.demo.services.cache.AsyncInsightCache;
+import com.example.demo.services.cache.EncodedInsightCache;
+import com.example.demo.services.cache.InsightFingerprinter;
+import com.example.demo.services.cache.SemanticInsightCache;
 import com.example.demo.services.client.AIProvider;
-import lombok.RequiredArgsConstructor;
+import com.example.demo.services.client.AIResponse;
+import com.example.demo.services.client.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.security.core.Authentication;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
+import java.io.IOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Реализация сервиса для работы с AI-анализом
@@ -27,23 +47,116 @@ import java.util.regex.Pattern;
  * Реализация сервиса для работы с AI-анализом
  */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class AIServiceImpl implements AIService {
 
+    private static final String AI_RESPONSES_CACHE = "aiResponses";
+    
+    /** Режимы разбора ответа модели для метрики ai.response.parse */
+    private static final String PARSE_MODE_JSON = "json";
+    private static final String PARSE_MODE_TEXT = "text";
+
     // Используем интерфейс AIProvider вместо конкретной реализации
     private final AIProvider ollamaClient;
+    
+    private final CacheManager cacheManager;
+    
+    private final AdaptiveConcurrencyLimiter concurrencyLimiter;
+    
+    /**
+     * Асинхронное представление кэша aiResponses: одновременные одинаковые запросы разделяют один вызов модели,
+     * в кэш попадают только успешные ответы модели
+     */
+    private final AsyncInsightCache insightCache;
+    
+    private final ObjectProvider<RedisConnectionFactory> redisConnectionFactory;
+    
+    private final MeterRegistry meterRegistry;
+    
+    private final SemanticInsightCache semanticCache;
+    
+    private final InsightFingerprinter fingerprinter;
+    
+    /**
+     * Проверка ограничений InsightRequest для элементов пакета: в отличие от /ai/analyze,
+     * элементы списка не проверяются через @Valid
+     */
+    private final Validator validator;
+    
+    /**
+     * Максимальное число одновременных запросов к модели из одного пакетного запроса
+     */
+    @Value("${ai.batch.max-parallelism:4}")
+    private int batchParallelism;
+    
+    /**
+     * Возраст ответа в кэше, после которого он отдается сразу, но обновляется в фоне (stale-while-revalidate)
+     */
+    @Value("${ai.cache.insights.soft-ttl:1h}")
+    private Duration softTtl = Duration.ofHours(1);
+    
+    /**
+     * Возраст ответа в кэше, после которого он не используется и удаляется
+     */
+    @Value("${ai.cache.insights.hard-ttl:24h}")
+    private Duration hardTtl = Duration.ofHours(24);
+    
+    private final Counter staleServes;
+    
+    private final Counter expiredEntries;
+    
+    public AIServiceImpl(AIProvider ollamaClient, CacheManager cacheManager,
+                         AdaptiveConcurrencyLimiter concurrencyLimiter, MeterRegistry meterRegistry,
+                         ObjectProvider<RedisConnectionFactory> redisConnectionFactory,
+                         SemanticInsightCache semanticCache, InsightFingerprinter fingerprinter,
+                         Validator validator, EncodedInsightCache encodedInsights) {
+        this.ollamaClient = ollamaClient;
+        this.validator = validator;
+        this.semanticCache = semanticCache;
+        this.fingerprinter = fingerprinter;
+        this.cacheManager = cacheManager;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.redisConnectionFactory = redisConnectionFactory;
+        this.meterRegistry = meterRegistry;
+        // ETag сохраняемого ответа вычисляется один раз при записи: условные запросы к /ai/insights его не сериализуют
+        this.insightCache = new AsyncInsightCache(() -> cacheManager.getCache(AI_RESPONSES_CACHE), meterRegistry,
+                encodedInsights::remember);
+        this.staleServes = Counter.builder("ai.cache.insights.stale")
+                .description("Ответы, отданные из кэша после мягкого TTL с запуском фонового обновления")
+                .register(meterRegistry);
+        this.expiredEntries = Counter.builder("ai.cache.insights.expired")
+                .description("Ответы, найденные в кэше после жесткого TTL и удаленные")
+                .register(meterRegistry);
+    }
 
     @Override
-    @Cacheable(value = "aiResponses", key = "#request.topic + '_' + #request.language")
     public InsightResponse analyzeWithAI(InsightRequest request) {
         log.debug("Начало синхронного анализа темы: {}", request.getTopic());
         validateRequest(request);
         
+        String cacheKey = cacheKey(request);
+        InsightResponse cachedResult = readCached(cacheKey, request);
+        if (cachedResult != null) {
+            log.debug("Найден кэшированный результат для темы: {}", request.getTopic());
+            return cachedResult;
+        }
+        
+        SemanticInsightCache.Probe probe = probeSemanticCache(request);
+        InsightResponse similar = findSimilar(probe, request);
+        if (similar != null) {
+            return similar;
+        }
+        
         try {
             // Получаем ответ от AI API
-            Map<String, Object> response = ollamaClient.sendRequest(request.getTopic(), request.getLanguage());
+            AIResponse response = concurrencyLimiter.execute(
+                    () -> ollamaClient.sendRequest(request.getTopic(), request.getLanguage()));
             InsightResponse result = processAIResponse(response, request.getTopic());
+            if (result == null) {
+                return generateFallbackResponse(request);
+            }
+            insightCache.put(cacheKey, CompletableFuture.completedFuture(result));
+            rememberTopic(probe, cacheKey);
             log.debug("Завершен синхронный анализ темы: {}", request.getTopic());
             return result;
         } catch (AIServiceException e) {
@@ -57,69 +170,423 @@ public class AIServiceImpl implements AIService {
     
     @Override
     public CompletableFuture<InsightResponse> analyzeWithAIAsync(InsightRequest request) {
+        return analyzeWithAIAsyncKeyed(request).thenApply(KeyedInsight::insight);
+    }
+    
+    @Override
+    public CompletableFuture<KeyedInsight> analyzeWithAIAsyncKeyed(InsightRequest request) {
+        try {
+            validateRequest(request);
+        } catch (Exception e) {
+            log.error("Ошибка при подготовке асинхронного анализа: {}", e.getMessage(), e);
+            return CompletableFuture.completedFuture(new KeyedInsight(generateFallbackResponse(request), null));
+        }
         log.debug("Начало асинхронного анализа темы: {}", request.getTopic());
         
-        // Проверяем, есть ли результат в кэше
-        InsightResponse cachedResult = getCachedAnalysis(request);
-        if (cachedResult != null) {
-            log.debug("Найден кэшированный результат для темы: {}", request.getTopic());
-            return CompletableFuture.completedFuture(cachedResult);
+        // Готовый ответ возвращается с учетом его возраста, к выполняющемуся запросу - присоединяемся
+        String cacheKey = cacheKey(request);
+        CompletableFuture<InsightResponse> cached = insightCache.getIfPresent(cacheKey);
+        if (cached != null && cached.isDone() && !cached.isCompletedExceptionally()) {
+            InsightResponse fresh = checkFreshness(cacheKey, request, cached.join());
+            if (fresh != null) {
+                log.debug("Найден кэшированный результат для темы: {}", request.getTopic());
+                return CompletableFuture.completedFuture(new KeyedInsight(fresh, cacheKey));
+            }
+        } else if (cached != null) {
+            log.debug("Запрос по теме '{}' присоединен к выполняющемуся запросу", request.getTopic());
+            insightCache.recordCoalesced();
+            return withFallback(cached, request, cacheKey);
         }
         
+        return analyzeUncached(request);
+    }
+    
+    /**
+     * Асинхронный анализ после промаха кэша: проверка доступности модели
+     * и загрузка через асинхронный кэш с объединением одинаковых одновременных запросов
+     */
+    private CompletableFuture<KeyedInsight> analyzeUncached(InsightRequest request) {
         // Сохраняем текущий контекст аутентификации
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        
-        try {
-            // Выполняем валидацию запроса
-            validateRequest(request);
-            
-            log.debug("Пользователь {} инициировал асинхронный запрос",
-                      authentication != null ? authentication.getName() : "неизвестен");
-        } catch (Exception e) {
-            log.error("Ошибка при подготовке асинхронного анализа: {}", e.getMessage(), e);
-            return CompletableFuture.completedFuture(generateFallbackResponse(request));
-        }
+        log.debug("Пользователь {} инициировал асинхронный запрос",
+                  authentication != null ? authentication.getName() : "неизвестен");
         
         // Проверяем доступность Ollama клиента и используем fallback если не доступен
         if (!ollamaClient.isAvailable()) {
             log.warn("Ollama API недоступен, используем резервный ответ для темы: {}", request.getTopic());
-            return CompletableFuture.completedFuture(generateFallbackResponse(request));
+            return CompletableFuture.completedFuture(new KeyedInsight(generateFallbackResponse(request), null));
         }
-            
-        try {
-            // Если Ollama доступен, отправляем запрос с четкими инструкциями
-            String enhancedTopic = "Проанализируй тему: " + request.getTopic() + ". \n\n"
-                + "Предоставь развернутый ответ, который обязательно должен включать следующие разделы: \n"
-                + "1. КРАТКОЕ РЕЗЮМЕ: подробное описание темы на 5-10 предложений \n"
-                + "2. КЛЮЧЕВЫЕ КОНЦЕПЦИИ: предоставь 5-8 основных концепций, используя нумерованный список (1., 2., 3., ...) \n"
-                + "3. РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ: список 3-5 источников с полными URL адресами. Используй формат: 'Название: https://...' или 'Название - https://...'"
-                + "Дай подробный и качественный ответ со всеми указанными разделами.";
-            
-            Map<String, Object> initialResponse = ollamaClient.sendRequest(enhancedTopic, request.getLanguage());
-            return CompletableFuture.supplyAsync(() -> {
-                try {
-                    // Просто обрабатываем результат, полученный в основном потоке
-                    InsightResponse result = processAIResponse(initialResponse, request.getTopic());
+        
+        String cacheKey = cacheKey(request);
+        return withFallback(insightCache.get(cacheKey, key -> requestModel(request)), request, cacheKey);
+    }
+    
+    /**
+     * Заменяет ошибку анализа резервным ответом, кроме перегрузки: она возвращается клиенту как 429/503.
+     * Резервный ответ формируется после асинхронного кэша и поэтому в нем не сохраняется - ключ кэша
+     * сообщается только для ответа из кэша.
+     */
+    private CompletableFuture<KeyedInsight> withFallback(CompletableFuture<InsightResponse> analysis,
+                                                         InsightRequest request, String cacheKey) {
+        return analysis.thenApply(response -> new KeyedInsight(response, cacheKey)).exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof AIOverloadedException overloaded) {
+                throw overloaded;
+            }
+            log.error("Ошибка при асинхронном анализе с помощью AI: {}", e.getMessage(), e);
+            return new KeyedInsight(generateFallbackResponse(request), null);
+        });
+    }
+    
+    /**
+     * Обслуживает запрос ответом на похожую тему из семантического кэша, а если такой нет - запросом к модели
+     */
+    private CompletableFuture<InsightResponse> requestModel(InsightRequest request) {
+        if (!semanticCacheEnabled()) {
+            return generate(request, null);
+        }
+        // Поиск завершается в потоке HttpClient, а планировщик определяет очередь пользователя
+        // по контексту безопасности - контекст вызывающего восстанавливается перед запросом к модели
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        return semanticCache.probe(request.getTopic(), fingerprinter.semanticScope(request))
+                .thenCompose(probe -> {
+                    InsightResponse similar = findSimilar(probe, request);
+                    if (similar != null) {
+                        return CompletableFuture.completedFuture(similar);
+                    }
+                    SecurityContext previous = SecurityContextHolder.getContext();
+                    SecurityContextHolder.setContext(securityContext);
+                    try {
+                        return generate(request, probe);
+                    } finally {
+                        SecurityContextHolder.setContext(previous);
+                    }
+                });
+    }
+    
+    /**
+     * Отправляет асинхронный запрос к модели в пределах лимита одновременных запросов и преобразует ответ.
+     * Ответ без содержимого завершает future ошибкой, чтобы он не попал в кэш.
+     * 
+     * @param probe результат поиска в семантическом кэше; тема запоминается в нем после ответа модели
+     */
+    private CompletableFuture<InsightResponse> generate(InsightRequest request, SemanticInsightCache.Probe probe) {
+        // Если Ollama доступен, отправляем запрос с четкими инструкциями.
+        // Запрос выполняется неблокирующим клиентом: поток вызывающего освобождается сразу
+        String enhancedTopic = buildEnhancedTopic(request);
+        return concurrencyLimiter.executeAsync(() -> ollamaClient.sendRequestAsync(enhancedTopic, request.getLanguage()))
+                .thenApply(response -> {
+                    InsightResponse result = processAIResponse(response, request.getTopic());
+                    if (result == null) {
+                        throw new AIServiceException("Модель не вернула анализ темы: " + request.getTopic());
+                    }
+                    rememberTopic(probe, cacheKey(request));
                     log.debug("Завершен асинхронный анализ темы: {}", request.getTopic());
                     return result;
-                } catch (Exception e) {
-                    log.error("Ошибка при асинхронном анализе с помощью AI: {}", e.getMessage(), e);
-                    return generateFallbackResponse(request);
-                }
-            });
-            
+                });
+    }
+    
+    /**
+     * Ответ из кэша с учетом возраста: после жесткого TTL ответ удаляется и не используется,
+     * после мягкого TTL - возвращается, а в фоне запускается его обновление
+     * 
+     * @return ответ или null, если его нет в кэше или он устарел сверх жесткого TTL
+     */
+    private InsightResponse readCached(String cacheKey, InsightRequest request) {
+        Cache cache = insightCache.synchronous();
+        InsightResponse cached = cache != null ? cache.get(cacheKey, InsightResponse.class) : null;
+        return cached != null ? checkFreshness(cacheKey, request, cached) : null;
+    }
+    
+    private InsightResponse checkFreshness(String cacheKey, InsightRequest request, InsightResponse cached) {
+        Duration age = age(cached);
+        if (age.compareTo(hardTtl) > 0) {
+            expiredEntries.increment();
+            insightCache.invalidate(cacheKey);
+            return null;
+        }
+        if (age.compareTo(softTtl) > 0) {
+            staleServes.increment();
+            refreshInBackground(request, cacheKey);
+        }
+        return cached;
+    }
+    
+    /**
+     * Обновляет устаревший ответ запросом к модели. Одновременно выполняется не более одного обновления ключа;
+     * при ошибке в кэше остается прежний ответ.
+     */
+    private void refreshInBackground(InsightRequest request, String cacheKey) {
+        if (!ollamaClient.isAvailable()) {
+            recordRefresh("skipped");
+            return;
+        }
+        CompletableFuture<InsightResponse> refresh = insightCache.refresh(cacheKey, key -> generate(request, null));
+        if (refresh == null) {
+            return;
+        }
+        log.debug("Фоновое обновление устаревшего ответа по теме: {}", request.getTopic());
+        refresh.whenComplete((result, error) -> {
+            if (error != null) {
+                log.warn("Не удалось обновить ответ по теме '{}', остается прежний: {}", request.getTopic(), error.getMessage());
+                recordRefresh("failure");
+            } else {
+                recordRefresh("success");
+            }
+        });
+    }
+    
+    private void recordRefresh(String outcome) {
+        meterRegistry.counter("ai.cache.insights.refresh", "outcome", outcome).increment();
+    }
+    
+    private static Duration age(InsightResponse response) {
+        return response.getTimestamp() != null ? Duration.between(response.getTimestamp(), Instant.now()) : Duration.ZERO;
+    }
+    
+    @Override
+    public InsightResponse analyzeWithAIStreaming(InsightRequest request, Consumer<String> tokenConsumer,
+                                                  Consumer<InsightResponse> partialConsumer) {
+        validateRequest(request);
+        log.debug("Начало потокового анализа темы: {}", request.getTopic());
+        
+        String cacheKey = cacheKey(request);
+        InsightResponse cachedResult = readCached(cacheKey, request);
+        if (cachedResult != null) {
+            log.debug("Найден кэшированный результат для потокового запроса по теме: {}", request.getTopic());
+            return cachedResult;
+        }
+        
+        SemanticInsightCache.Probe probe = probeSemanticCache(request);
+        InsightResponse similar = findSimilar(probe, request);
+        if (similar != null) {
+            return similar;
+        }
+        
+        try {
+            IncrementalInsightParser partialParser = new IncrementalInsightParser(request.getTopic(), partialConsumer);
+            AIResponse response = concurrencyLimiter.execute(() -> ollamaClient.streamRequest(
+                    buildEnhancedTopic(request), request.getLanguage(), tokenConsumer.andThen(partialParser)));
+            partialParser.finish();
+            InsightResponse result = processAIResponse(response, request.getTopic());
+            if (result == null) {
+                return generateFallbackResponse(request);
+            }
+            insightCache.put(cacheKey, CompletableFuture.completedFuture(result));
+            rememberTopic(probe, cacheKey);
+            log.debug("Завершен потоковый анализ темы: {}", request.getTopic());
+            return result;
+        } catch (AIServiceException e) {
+            throw e;
         } catch (Exception e) {
-            log.error("Ошибка при инициализации запроса к Ollama: {}", e.getMessage(), e);
-            return CompletableFuture.completedFuture(generateFallbackResponse(request));
+            log.error("Ошибка при потоковом анализе с помощью AI: {}", e.getMessage(), e);
+            throw new AIServiceException("Произошла ошибка при анализе темы: " + e.getMessage(), e);
+        }
+    }
+    
+    @Override
+    public CompletableFuture<Void> analyzeBatch(List<InsightRequest> requests, Consumer<InsightBatchItem> itemConsumer) {
+        log.debug("Начало пакетного анализа: {} запросов", requests.size());
+        // Получатель вызывается из потоков завершения запросов - вызовы сериализуются
+        Consumer<InsightBatchItem> emit = item -> {
+            synchronized (itemConsumer) {
+                itemConsumer.accept(item);
+            }
+        };
+        
+        // Одинаковые темы (по нормализованному отпечатку) анализируются один раз
+        Map<String, List<Integer>> indicesByFingerprint = new LinkedHashMap<>();
+        Map<String, InsightRequest> requestByFingerprint = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            InsightRequest request = requests.get(i);
+            try {
+                validateBatchItem(request);
+            } catch (IllegalArgumentException e) {
+                emit.accept(batchError(i, request, e));
+                continue;
+            }
+            String fingerprint = cacheKey(request);
+            indicesByFingerprint.computeIfAbsent(fingerprint, key -> new ArrayList<>()).add(i);
+            requestByFingerprint.putIfAbsent(fingerprint, request);
+        }
+        
+        // Попадания в кэш читаются одним пакетным запросом и отправляются сразу
+        Cache cache = insightCache.synchronous();
+        List<String> cacheKeys = List.copyOf(requestByFingerprint.keySet());
+        RedisConnectionFactory connectionFactory = redisConnectionFactory != null ? redisConnectionFactory.getIfAvailable() : null;
+        Map<String, InsightResponse> cached = CacheMultiGet.getAll(cache, cacheKeys, InsightResponse.class, connectionFactory);
+        
+        Deque<String> misses = new ArrayDeque<>();
+        indicesByFingerprint.forEach((fingerprint, indices) -> {
+            InsightRequest request = requestByFingerprint.get(fingerprint);
+            InsightResponse hit = cached.containsKey(fingerprint)
+                    ? checkFreshness(fingerprint, request, cached.get(fingerprint)) : null;
+            if (hit != null) {
+                indices.forEach(index -> emit.accept(batchResult(index, requests.get(index), hit, true)));
+            } else {
+                misses.add(fingerprint);
+            }
+        });
+        log.debug("Пакетный анализ: {} уникальных тем, из кэша {}, к модели {}",
+                indicesByFingerprint.size(), indicesByFingerprint.size() - misses.size(), misses.size());
+        
+        // Промахи отправляются к модели: одновременно не более batchParallelism запросов,
+        // следующий запрос запускается по завершении предыдущего
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        if (misses.isEmpty()) {
+            done.complete(null);
+            return done;
+        }
+        SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+        securityContext.setAuthentication(SecurityContextHolder.getContext().getAuthentication());
+        AtomicInteger remaining = new AtomicInteger(misses.size());
+        Runnable launchNext = new Runnable() {
+            @Override
+            public void run() {
+                String fingerprint;
+                synchronized (misses) {
+                    fingerprint = misses.poll();
+                }
+                if (fingerprint == null) {
+                    return;
+                }
+                InsightRequest request = requestByFingerprint.get(fingerprint);
+                List<Integer> indices = indicesByFingerprint.get(fingerprint);
+                CompletableFuture<InsightResponse> analysis;
+                try {
+                    analysis = analyzeUncached(request).thenApply(KeyedInsight::insight);
+                } catch (RuntimeException e) {
+                    analysis = CompletableFuture.failedFuture(e);
+                }
+                analysis.whenComplete((result, error) -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    indices.forEach(index -> emit.accept(cause == null
+                            ? batchResult(index, requests.get(index), result, false)
+                            : batchError(index, requests.get(index), cause)));
+                    if (remaining.decrementAndGet() == 0) {
+                        done.complete(null);
+                    } else {
+                        // Контекст безопасности нужен планировщику для определения очереди пользователя
+                        new DelegatingSecurityContextRunnable(this, securityContext).run();
+                    }
+                });
+            }
+        };
+        int initial = Math.min(Math.max(1, batchParallelism), misses.size());
+        for (int i = 0; i < initial; i++) {
+            launchNext.run();
         }
+        return done;
+    }
+    
+    private InsightBatchItem batchResult(int index, InsightRequest request, InsightResponse response, boolean cached) {
+        return InsightBatchItem.builder()
+                .index(index)
+                .topic(request.getTopic())
+                .language(request.getLanguage())
+                .status(InsightBatchItem.STATUS_OK)
+                .cached(cached)
+                .insight(response)
+                .build();
+    }
+    
+    private InsightBatchItem batchError(int index, InsightRequest request, Throwable error) {
+        return InsightBatchItem.builder()
+                .index(index)
+                .topic(request != null ? request.getTopic() : null)
+                .language(request != null ? request.getLanguage() : null)
+                .status(InsightBatchItem.STATUS_ERROR)
+                .error(error.getMessage())
+                .build();
     }
     
     @Override
-    @Cacheable(value = "aiResponses", key = "#request.topic + '_' + #request.language")
     public InsightResponse getCachedAnalysis(InsightRequest request) {
-        // Этот метод всегда вернёт null при первом вызове, так как аннотация @Cacheable 
-        // будет работать только после того, как метод analyzeWithAI заполнит кэш
-        return null;
+        if (request == null || request.getTopic() == null || request.getTopic().isBlank()) {
+            return null;
+        }
+        // Выполняющаяся загрузка не ожидается: метод возвращает только готовый ответ
+        CompletableFuture<InsightResponse> cached = insightCache.getIfPresent(cacheKey(request));
+        return cached != null ? cached.getNow(null) : null;
+    }
+    
+    @Override
+    public InsightResponse getInsight(String fingerprint) {
+        Cache cache = insightCache.synchronous();
+        InsightResponse cached = cache != null ? cache.get(fingerprint, InsightResponse.class) : null;
+        if (cached == null) {
+            return null;
+        }
+        // Исходного запроса нет, поэтому устаревший после мягкого TTL ответ отдается без фонового обновления
+        if (age(cached).compareTo(hardTtl) > 0) {
+            expiredEntries.increment();
+            insightCache.invalidate(fingerprint);
+            return null;
+        }
+        return cached;
+    }
+    
+    private boolean semanticCacheEnabled() {
+        return semanticCache != null && semanticCache.isEnabled();
+    }
+    
+    /**
+     * Синхронный поиск похожей темы в семантическом кэше; null, если кэш отключен
+     */
+    private SemanticInsightCache.Probe probeSemanticCache(InsightRequest request) {
+        return semanticCacheEnabled()
+                ? semanticCache.probe(request.getTopic(), fingerprinter.semanticScope(request)).join()
+                : null;
+    }
+    
+    /**
+     * Ответ на похожую тему из кэша aiResponses с темой текущего запроса. Ответ сохраняется и под ключом
+     * текущего запроса, чтобы повтор той же темы обслуживался без эмбеддинга.
+     * 
+     * @return ответ или null, если похожей темы нет или ответ на нее уже вытеснен из кэша
+     */
+    private InsightResponse findSimilar(SemanticInsightCache.Probe probe, InsightRequest request) {
+        if (probe == null || !probe.isHit()) {
+            return null;
+        }
+        Cache cache = insightCache.synchronous();
+        InsightResponse similar = cache != null ? cache.get(probe.cacheKey(), InsightResponse.class) : null;
+        if (similar == null || age(similar).compareTo(hardTtl) > 0) {
+            semanticCache.forget(probe);
+            return null;
+        }
+        log.debug("Тема '{}' обслужена ответом на похожую тему {} (близость {})",
+                request.getTopic(), probe.cacheKey(), probe.similarity());
+        InsightResponse result = new InsightResponse(request.getTopic(), similar.getSummary(),
+                similar.getKeyConcepts(), similar.getRecommendations(), similar.getTimestamp());
+        insightCache.put(cacheKey(request), CompletableFuture.completedFuture(result));
+        return result;
+    }
+    
+    private void rememberTopic(SemanticInsightCache.Probe probe, String cacheKey) {
+        if (probe != null) {
+            semanticCache.remember(probe, cacheKey);
+        }
+    }
+    
+    /**
+     * Канонический отпечаток запроса: ключ кэша aiResponses на всех уровнях и ключ объединения одинаковых
+     * запросов. Единственный источник ключа - {@link InsightFingerprinter}
+     */
+    private String cacheKey(InsightRequest request) {
+        return fingerprinter.fingerprint(request);
+    }
+    
+    /**
+     * Формирует расширенный запрос к модели с явными инструкциями по структуре ответа
+     */
+    private String buildEnhancedTopic(InsightRequest request) {
+        return "Проанализируй тему: " + request.getTopic() + ". \n\n"
+            + "Предоставь развернутый ответ, который обязательно должен включать следующие разделы: \n"
+            + "1. КРАТКОЕ РЕЗЮМЕ: подробное описание темы на 5-10 предложений \n"
+            + "2. КЛЮЧЕВЫЕ КОНЦЕПЦИИ: предоставь 5-8 основных концепций, используя нумерованный список (1., 2., 3., ...) \n"
+            + "3. РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ: список 3-5 источников с полными URL адресами. Используй формат: 'Название: https://...' или 'Название - https://...'"
+            + "Дай подробный и качественный ответ со всеми указанными разделами.";
     }
     
     /**
@@ -131,222 +598,92 @@ public class AIServiceImpl implements AIService {
         }
     }
     
+    /**
+     * Проверяет элемент пакета по тем же ограничениям, что и запрос /ai/analyze:
+     * длина темы и текста, число результатов и язык
+     */
+    private void validateBatchItem(InsightRequest request) {
+        validateRequest(request);
+        Set<ConstraintViolation<InsightRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(ConstraintViolation::getMessage)
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+    }
+    
     /**
      * Обрабатывает ответ от AI API
+     * 
+     * @return разобранный ответ или null, если модель не вернула текста или его не удалось разобрать;
+     *         вызывающий заменяет null резервным ответом, который не сохраняется в кэш
      */
-    private InsightResponse processAIResponse(Map<String, Object> response, String topic) {
+    private InsightResponse processAIResponse(AIResponse response, String topic) {
         try {
             log.info("Обработка ответа от AI API: {}", response != null ? "ответ получен" : "ответ пустой");
             
             if (response == null) {
                 log.warn("Получен пустой ответ от AI API");
-                return generateFallbackResponse(InsightRequest.builder().topic(topic).build());
+                return null;
             }
 
-            if (response.containsKey("message")) {
-                log.info("Поле 'message' найдено в ответе AI API");
-                try {
-                    @SuppressWarnings("unchecked")
-                    Map<String, Object> message = (Map<String, Object>) response.get("message");
-                    
-                    if (message != null && message.containsKey("content")) {
-                        String content = (String) message.get("content");
-                        log.info("Успешно получено содержимое ответа от AI");
-                        return parseAIResponse(content, topic);
-                    } else {
-                        log.warn("Поле 'content' не найдено в ответе AI API");
-                    }
-                } catch (ClassCastException e) {
-                    log.error("Ошибка при приведении типов для поля 'message': {}", e.getMessage(), e);
-                }
-            } else {
-                log.warn("Поле 'message' не найдено в ответе AI API");
+            if (response.content() != null) {
+                log.info("Успешно получено содержимое ответа от AI");
+                return parseContent(response.content(), topic);
             }
             
             // Если дошли до этой точки, значит что-то пошло не так
-            log.warn("Некорректный формат ответа от AI API, используем резервный ответ");
-            return generateFallbackResponse(InsightRequest.builder().topic(topic).build());
+            log.warn("Ответ AI API не содержит текста{}, используем резервный ответ",
+                    response.hasError() ? " (ошибка: " + response.error() + ")" : "");
+            return null;
         } catch (Exception e) {
             log.error("Непредвиденная ошибка при обработке ответа AI: {} ({})", e.getMessage(), e.getClass().getName(), e);
-            return generateFallbackResponse(InsightRequest.builder().topic(topic).build());
+            return null;
         }
     }
     
     /**
-     * Парсит содержимое ответа AI и преобразует в структурированный объект InsightResponse
+     * Разбирает содержимое ответа модели: JSON структурированного режима читается потоковым парсером,
+     * свободный текст (или JSON, который не удалось разобрать) - регулярными выражениями
      */
-    private InsightResponse parseAIResponse(String content, String topic) {
-        String summary = "";
-        List<String> keyConcepts = new ArrayList<>();
-        List<ResourceLink> resourceLinks = new ArrayList<>();
-        
-        // Паттерн для извлечения резюме, с более строгой обработкой заголовков секций
-        Pattern summaryPattern = Pattern.compile("(?i)(?:РЕЗЮМЕ|КРАТКОЕ РЕЗЮМЕ|SUMMARY):?\\s*([\\s\\S]*?)(?=\\s*(?:КЛЮЧЕВЫЕ КОНЦЕПЦИИ|KEY CONCEPTS):|\\s*(?:РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ|RECOMMENDED SOURCES):|$)");
-        Matcher summaryMatcher = summaryPattern.matcher(content);
-        
-        if (summaryMatcher.find()) {
-            summary = summaryMatcher.group(1).trim();
-            // Удаляем возможные заголовки "КЛЮЧЕВЫЕ КОНЦЕПЦИИ" внутри резюме
-            summary = summary.replaceAll("(?i)\\s*(?:КЛЮЧЕВЫЕ КОНЦЕПЦИИ|КЛЮЧЕВЫЕ КОНЦЕПЦИО|KEY CONCEPTS):?.*$", "");
-        }
-        
-        // Паттерн для извлечения ключевых концепций с поддержкой различных вариантов написания
-        Pattern conceptsPattern = Pattern.compile("(?i)(?:КЛЮЧЕВЫЕ КОНЦЕПЦИИ|КЛЮЧЕВЫЕ КОНЦЕПЦИО|KEY CONCEPTS):?\\s*([\\s\\S]*?)(?=\\s*(?:РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ|RECOMMENDED SOURCES):|$)");
-        Matcher conceptsMatcher = conceptsPattern.matcher(content);
-        
-        if (conceptsMatcher.find()) {
-            String conceptsBlock = conceptsMatcher.group(1).trim();
-            // Разбиваем блок концепций по маркерам списка (дефисы или нумерованные пункты)
-            // Ищем строки, начинающиеся с дефиса или с цифры, за которой следует точка или скобка
-            Pattern listItemPattern = Pattern.compile("(?m)^\\s*(?:(?:-|\\*|•|\\d+[\\.\\)]|[a-zA-Z][\\.\\)])|(?:[А-Я][а-я]*\\.)\\s+)(.+)$");
-            Matcher listItemMatcher = listItemPattern.matcher(conceptsBlock);
-            
-            while (listItemMatcher.find()) {
-                String conceptText = listItemMatcher.group(1).trim();
-                if (!conceptText.isEmpty()) {
-                    // Очищаем от потенциальных префиксов маркеров вложенных списков
-                    conceptText = conceptText.replaceAll("^\\s*(?:-|\\*|•|\\d+[\\.\\)]|[a-zA-Z][\\.\\)])\\s+", "");
-                    keyConcepts.add(conceptText);
-                }
-            }
-            
-            // Если шаблон не нашел никаких элементов списка, разбиваем по строкам
-            if (keyConcepts.isEmpty()) {
-                String[] lines = conceptsBlock.split("\\n");
-                for (String line : lines) {
-                    String trimmedLine = line.trim();
-                    if (!trimmedLine.isEmpty()) {
-                        // Удаляем возможные префиксы нумерации
-                        trimmedLine = trimmedLine.replaceAll("^\\s*(?:\\d+\\.\\s+|[a-zA-Z]\\.\\s+|-\\s+|\\*\\s+)", "");
-                        keyConcepts.add(trimmedLine);
-                    }
-                }
-            }
-        }
-        
-        // Паттерн для извлечения рекомендуемых источников с поддержкой различных вариантов написания
-        Pattern resourcesPattern = Pattern.compile("(?i)(?:РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ|RECOMMENDED SOURCES|ИСТОЧНИКИ|SOURCES):?\\s*([\\s\\S]*)$");
-        Matcher resourcesMatcher = resourcesPattern.matcher(content);
-        
-        if (resourcesMatcher.find()) {
-            String resourcesBlock = resourcesMatcher.group(1).trim();
-            // Разбиваем блок источников по маркерам списка (дефисы или нумерованные пункты)
-            // Ищем строки, начинающиеся с дефиса или с цифры, за которой следует точка
-            Pattern resourceItemPattern = Pattern.compile("(?m)^\\s*(?:(?:-|\\*|•|\\d+[\\.\\)]|[a-zA-Z][\\.\\)])\\s+)(.+)$");
-            Matcher resourceItemMatcher = resourceItemPattern.matcher(resourcesBlock);
-            
-            List<String> resourceLinesList = new ArrayList<>();
-            while (resourceItemMatcher.find()) {
-                resourceLinesList.add(resourceItemMatcher.group(1).trim());
-            }
-            
-            // Если шаблон не нашел никаких элементов списка, разбиваем по строкам
-            if (resourceLinesList.isEmpty()) {
-                String[] lines = resourcesBlock.split("\\n");
-                for (String line : lines) {
-                    String trimmedLine = line.trim();
-                    if (!trimmedLine.isEmpty()) {
-                        // Удаляем возможные префиксы нумерации
-                        trimmedLine = trimmedLine.replaceAll("^\\s*(?:\\d+\\.\\s+|[a-zA-Z]\\.\\s+|-\\s+|\\*\\s+)", "");
-                        resourceLinesList.add(trimmedLine);
-                    }
-                }
-            }
-            
-            String[] resourceLines = resourceLinesList.toArray(new String[0]);
-            
-            for (String line : resourceLines) {
-                String trimmedLine = line.trim();
-                if (!trimmedLine.isEmpty()) {
-                    // Пытаемся извлечь URL и заголовок из строки рекомендации
-                    String title;
-                    String url = "";
-                    
-                    // Попытка 1: Ищем URL в формате: Название: http://... или Название - http://...
-                    Pattern urlPattern1 = Pattern.compile("(?i)(.+?)(?::|\\s-\\s)\\s*(https?://\\S+)");
-                    Matcher urlMatcher1 = urlPattern1.matcher(trimmedLine);
-                    
-                    // Попытка 2: Ищем URL в формате: [Название](URL) или [Название][URL] или в квадратных скобках
-                    Pattern urlPattern2 = Pattern.compile("(?i)\\[([^\\]]+)\\](?:\\(|\\[)(https?://[^\\)\\]]+)(?:\\)|\\])");
-                    Matcher urlMatcher2 = urlPattern2.matcher(trimmedLine);
-                    
-                    // Попытка 3: Просто ищем URL в тексте
-                    Pattern urlPattern3 = Pattern.compile("(?i)(https?://\\S+)");
-                    Matcher urlMatcher3 = urlPattern3.matcher(trimmedLine);
-                    
-                    if (urlMatcher1.find()) {
-                        title = urlMatcher1.group(1).trim();
-                        url = urlMatcher1.group(2).trim();
-                        // Удаляем возможные скобки вокруг URL
-                        url = url.replaceAll("^\\[|\\]$|\\($|\\)$", "");
-                    } else if (urlMatcher2.find()) {
-                        title = urlMatcher2.group(1).trim();
-                        url = urlMatcher2.group(2).trim();
-                    } else if (urlMatcher3.find()) {
-                        // Если нашли только URL, используем текст до URL как название
-                        url = urlMatcher3.group(1);
-                        int urlStart = trimmedLine.indexOf(url);
-                        if (urlStart > 0) {
-                            title = trimmedLine.substring(0, urlStart).trim();
-                            // Удаляем двоеточие или дефис в конце заголовка
-                            title = title.replaceAll(":\\s*$|\\s*-\\s*$", "");
-                        } else {
-                            // Если URL в начале строки, пробуем получить название из домена
-                            String domain = url.replaceAll("^https?://(?:www\\.)?([^/]+).*$", "$1");
-                            title = "Resource from " + domain;
-                        }
-                    } else {
-                        // Если URL не найден, используем весь текст как название
-                        title = trimmedLine.trim();
-                        // Удаляем любые цифры с точкой в начале (например, "1.") и очищаем от номеров
-                        title = title.replaceAll("^\\d+\\.\\s+", "");
-                        // Создаем URL для поиска по теме и заголовку
-                        url = "https://www.google.com/search?q=" + topic.replace(" ", "+") + 
-                              "+" + title.replace(" ", "+");
-                    }
-                    
-                    // Очистка URL от любых остаточных квадратных скобок или круглых скобок
-                    url = url.replaceAll("\\[|\\]|\\(|\\)$", "");
-                    // Удаляем запятые или точки в конце URL
-                    url = url.replaceAll("[,.\"]$", "");
-                    
-                    resourceLinks.add(new ResourceLink(title, url));
-                }
+    private InsightResponse parseContent(String content, String topic) {
+        if (StructuredInsightParser.looksLikeJson(content)) {
+            try {
+                InsightResponse result = StructuredInsightParser.parse(content, topic);
+                recordParseOutcome(PARSE_MODE_JSON, true);
+                return result;
+            } catch (IOException e) {
+                recordParseOutcome(PARSE_MODE_JSON, false);
+                log.warn("Не удалось разобрать JSON-ответ модели, разбираем как текст: {}", e.getMessage());
             }
         }
-        
-        // Если не удалось извлечь резюме, используем тему как резюме
-        if (summary.isEmpty()) {
-            summary = "Анализ темы: " + topic;
-        }
-        
-        // Если не найдены ключевые концепции, добавляем заглушки
-        if (keyConcepts.isEmpty()) {
-            keyConcepts.add("Основные принципы " + topic);
-            keyConcepts.add("Практическое применение");
-            keyConcepts.add("Современные тренды и развитие");
-        }
-        
-        // Если не найдены источники, добавляем заглушки
-        if (resourceLinks.isEmpty()) {
-            resourceLinks.add(new ResourceLink("Руководство по " + topic, 
-                    "https://example.com/guides/" + topic.toLowerCase().replace(" ", "-")));
-            resourceLinks.add(new ResourceLink("Научные публикации", 
-                    "https://scholar.google.com/scholar?q=" + topic.replace(" ", "+")));
-        }
-        
-        List<Recommendation> recommendations = new ArrayList<>();
-        for (ResourceLink link : resourceLinks) {
-            recommendations.add(new Recommendation(link.getTitle(), link.getUrl()));
+        return parseAIResponse(content, topic);
+    }
+    
+    /**
+     * Учитывает результат разбора ответа: success - разделы извлечены,
+     * fallback - пришлось перейти к следующему способу разбора или к заглушкам
+     */
+    private void recordParseOutcome(String mode, boolean success) {
+        meterRegistry.counter("ai.response.parse", "mode", mode, "outcome", success ? "success" : "fallback")
+                .increment();
+    }
+    
+    /**
+     * Парсит содержимое ответа AI и преобразует в структурированный объект InsightResponse
+     * 
+     * @return ответ или null, если в тексте нет ни резюме, ни ключевых концепций: ответ из одних заглушек
+     *         не должен попасть в кэш, вызывающий заменяет его резервным ответом
+     */
+    private InsightResponse parseAIResponse(String content, String topic) {
+        InsightTextParser.Result result = InsightTextParser.parse(content, topic);
+        recordParseOutcome(PARSE_MODE_TEXT, result.sectionsFound());
+        if (!result.contentFound()) {
+            log.warn("В ответе модели по теме '{}' не найдено ни одного раздела", topic);
+            return null;
         }
-        
-        return InsightResponse.builder()
-                .topic(topic)
-                .summary(summary)
-                .keyConcepts(keyConcepts)
-                .recommendations(recommendations)
-                .timestamp(Instant.now())
-                .build();
+        return result.insight();
     }
     
     /**
@@ -0,0 +1,104 @@
+package com.example.demo.services.impl;
+
+import com.example.demo.services.cache.DurableCache;
+import com.example.demo.services.cache.TwoLevelCache;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.cache.RedisCache;
+import org.springframework.data.redis.cache.RedisCacheConfiguration;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.util.ByteUtils;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтение нескольких ключей кэша за одно обращение
+ *
+ * <p>Абстракция Spring Cache не поддерживает пакетное чтение, поэтому для известных реализаций
+ * используется хранилище напрямую: для кэшей в памяти - один проход по карте, для Redis - одна команда MGET,
+ * для двухуровневого кэша - локальный уровень, а затем одна команда MGET для промахов; промахи всех уровней
+ * дочитываются из долговременного хранилища одним запросом.
+ * Для остальных реализаций ключи читаются по одному.</p>
+ */
+@Slf4j
+final class CacheMultiGet {
+
+    private CacheMultiGet() {
+    }
+
+    /**
+     * @param connectionFactory фабрика подключений Redis или null, если Redis не используется
+     * @return найденные значения по ключам; отсутствующие ключи не включаются
+     */
+    static <T> Map<String, T> getAll(Cache cache, Collection<String> keys, Class<T> type,
+                                     RedisConnectionFactory connectionFactory) {
+        Map<String, T> result = new HashMap<>();
+        if (cache == null || keys.isEmpty()) {
+            return result;
+        }
+        if (cache instanceof DurableCache durableCache) {
+            return durableCache.getAll(keys, type,
+                    fastKeys -> getAll(durableCache.getDelegate(), fastKeys, type, connectionFactory));
+        }
+        if (cache instanceof TwoLevelCache twoLevelCache) {
+            return twoLevelCache.getAll(keys, type,
+                    missing -> getAll(twoLevelCache.getRemote(), missing, type, connectionFactory));
+        }
+        try {
+            if (cache.getNativeCache() instanceof Map<?, ?> store) {
+                for (String key : keys) {
+                    Object value = store.get(key);
+                    if (type.isInstance(value)) {
+                        result.put(key, type.cast(value));
+                    }
+                }
+                return result;
+            }
+            if (cache instanceof RedisCache redisCache && connectionFactory != null) {
+                return redisMultiGet(redisCache, new ArrayList<>(keys), type, connectionFactory);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Пакетное чтение кэша {} не удалось, читаем ключи по одному: {}", cache.getName(), e.getMessage());
+        }
+        for (String key : keys) {
+            T value = cache.get(key, type);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    private static <T> Map<String, T> redisMultiGet(RedisCache cache, List<String> keys, Class<T> type,
+                                                    RedisConnectionFactory connectionFactory) {
+        RedisCacheConfiguration configuration = cache.getCacheConfiguration();
+        String prefix = configuration.usePrefix() ? configuration.getKeyPrefixFor(cache.getName()) : "";
+        byte[][] rawKeys = keys.stream()
+                .map(key -> ByteUtils.getBytes(configuration.getKeySerializationPair().write(prefix + key)))
+                .toArray(byte[][]::new);
+
+        List<byte[]> rawValues;
+        try (RedisConnection connection = connectionFactory.getConnection()) {
+            rawValues = connection.stringCommands().mGet(rawKeys);
+        }
+
+        Map<String, T> result = new HashMap<>();
+        for (int i = 0; rawValues != null && i < keys.size(); i++) {
+            byte[] rawValue = rawValues.get(i);
+            if (rawValue == null) {
+                continue;
+            }
+            Object value = configuration.getValueSerializationPair().read(ByteBuffer.wrap(rawValue));
+            if (type.isInstance(value)) {
+                result.put(keys.get(i), type.cast(value));
+            }
+        }
+        return result;
+    }
+}
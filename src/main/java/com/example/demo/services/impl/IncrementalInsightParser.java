@@ -0,0 +1,227 @@
+package com.example.demo.services.impl;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static com.example.demo.services.impl.InsightTextParser.isSpace;
+import static com.example.demo.services.impl.InsightTextParser.listMarkerEnd;
+import static com.example.demo.services.impl.InsightTextParser.skipSpaces;
+import static com.example.demo.services.impl.InsightTextParser.startsWithIgnoreCase;
+
+/**
+ * Разбор ответа модели по мере генерации: резюме, каждая ключевая концепция и каждый источник
+ * передаются получателю сразу после того, как полностью получены
+ *
+ * <p>Фрагменты текста разбираются построчно. Парсер хранит только текущую незавершенную строку
+ * и текст резюме до его завершения, поэтому память не растет с длиной ответа сверх самого резюме.
+ * Каждое обновление - частичный {@link InsightResponse}, в котором заполнено только новое значение:
+ * {@code summary}, один элемент {@code keyConcepts} или один элемент {@code recommendations}.</p>
+ *
+ * <p>Заголовком раздела считается строка, в которой название раздела стоит в начале (после разметки
+ * и не более чем пары слов) и за ним следует двоеточие или конец строки. Это строже, чем итоговый разбор
+ * {@link InsightTextParser}, поэтому промежуточные обновления - предварительный результат, а точным
+ * остается итоговый ответ, собираемый из полного текста.</p>
+ */
+final class IncrementalInsightParser implements Consumer<String> {
+
+    private enum Section { PREAMBLE, SUMMARY, CONCEPTS, SOURCES }
+
+    /** Наибольшая длина текста перед названием раздела в строке заголовка («КРАТКОЕ », «**Recommended ») */
+    private static final int MAX_HEADER_PREFIX = 24;
+
+    private final String topic;
+    private final Consumer<InsightResponse> partialConsumer;
+    private final StringBuilder line = new StringBuilder();
+    private final StringBuilder summary = new StringBuilder();
+    private Section section = Section.PREAMBLE;
+    private boolean afterCarriageReturn;
+
+    IncrementalInsightParser(String topic, Consumer<InsightResponse> partialConsumer) {
+        this.topic = topic;
+        this.partialConsumer = partialConsumer;
+    }
+
+    /**
+     * Принимает очередной фрагмент текста модели
+     */
+    @Override
+    public void accept(String chunk) {
+        for (int i = 0; i < chunk.length(); i++) {
+            char c = chunk.charAt(i);
+            if (c == '\n' && afterCarriageReturn) {
+                // Вторая половина \r\n, в том числе пришедшая в следующем фрагменте
+                afterCarriageReturn = false;
+                appendSummaryBreak(c);
+            } else if (c == '\n' || c == '\r') {
+                afterCarriageReturn = c == '\r';
+                completeLine(c);
+            } else {
+                afterCarriageReturn = false;
+                line.append(c);
+            }
+        }
+    }
+
+    /**
+     * Завершает разбор: обрабатывает последнюю строку без перевода строки и незавершенное резюме
+     */
+    void finish() {
+        if (!line.isEmpty()) {
+            completeLine((char) 0);
+        }
+        if (section == Section.SUMMARY) {
+            emitSummary();
+        }
+    }
+
+    private void completeLine(char lineBreak) {
+        String text = line.toString();
+        line.setLength(0);
+        if (!tryHeader(text)) {
+            switch (section) {
+                case SUMMARY -> summary.append(text);
+                case CONCEPTS -> readConcept(text);
+                case SOURCES -> readSource(text);
+                default -> {
+                    // текст до первого раздела не используется
+                }
+            }
+        }
+        if (lineBreak != 0) {
+            appendSummaryBreak(lineBreak);
+        }
+    }
+
+    private void appendSummaryBreak(char lineBreak) {
+        if (section == Section.SUMMARY) {
+            summary.append(lineBreak);
+        }
+    }
+
+    /**
+     * Переключает раздел, если строка - заголовок следующего раздела; текст после двоеточия
+     * в строке заголовка резюме становится началом резюме
+     */
+    private boolean tryHeader(String text) {
+        if (section == Section.PREAMBLE) {
+            int contentStart = headerContentStart(text, InsightTextParser.SUMMARY_RU, InsightTextParser.SUMMARY_EN, false);
+            if (contentStart >= 0) {
+                section = Section.SUMMARY;
+                summary.append(text, skipSpaces(text, contentStart, text.length()), text.length());
+                return true;
+            }
+        }
+        if (section == Section.PREAMBLE || section == Section.SUMMARY) {
+            int contentStart = headerContentStart(text, InsightTextParser.CONCEPTS_RU_STEM, InsightTextParser.CONCEPTS_EN, true);
+            if (contentStart >= 0) {
+                if (section == Section.SUMMARY) {
+                    emitSummary();
+                }
+                section = Section.CONCEPTS;
+                readConcept(text.substring(contentStart));
+                return true;
+            }
+        }
+        if (section != Section.SOURCES) {
+            int contentStart = headerContentStart(text, InsightTextParser.SOURCES_RU, InsightTextParser.SOURCES_EN, false);
+            if (contentStart >= 0) {
+                if (section == Section.SUMMARY) {
+                    emitSummary();
+                }
+                section = Section.SOURCES;
+                readSource(text.substring(contentStart));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Позиция после названия раздела и двоеточия или -1, если строка - не заголовок.
+     * Русское название сравнивается точно, английское - без учета регистра.
+     *
+     * @param russianEnding после русского названия допускается окончание «И» или «О» (основа «КЛЮЧЕВЫЕ КОНЦЕПЦИ»)
+     */
+    private static int headerContentStart(String text, String russian, String english, boolean russianEnding) {
+        int limit = Math.min(text.length(), MAX_HEADER_PREFIX + 1);
+        for (int i = 0; i < limit; i++) {
+            if (i > 0 && Character.isLetter(text.charAt(i - 1))) {
+                continue;
+            }
+            int end = -1;
+            if (text.startsWith(russian, i)) {
+                end = i + russian.length();
+                if (russianEnding && end < text.length()
+                        && (text.charAt(end) == 'И' || text.charAt(end) == 'О')) {
+                    end++;
+                }
+            } else if (startsWithIgnoreCase(text, english, i)) {
+                end = i + english.length();
+            }
+            if (end < 0 || (end < text.length() && Character.isLetter(text.charAt(end)))) {
+                continue;
+            }
+            // После названия - двоеточие или только разметка до конца строки
+            int position = end;
+            while (position < text.length() && isHeaderDecoration(text.charAt(position))) {
+                position++;
+            }
+            if (position == text.length()) {
+                return position;
+            }
+            if (text.charAt(position) == ':') {
+                return position + 1;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isHeaderDecoration(char c) {
+        return c == '*' || c == '#' || c == '_' || c == ' ' || c == '\t';
+    }
+
+    private void readConcept(String text) {
+        int itemStart = skipSpaces(text, 0, text.length());
+        if (itemStart >= text.length()) {
+            return;
+        }
+        int markerEnd = listMarkerEnd(text, itemStart, text.length());
+        if (markerEnd >= 0 && markerEnd < text.length()) {
+            String concept = InsightTextParser.conceptText(text.substring(markerEnd));
+            if (!concept.isEmpty()) {
+                emit(InsightResponse.builder().keyConcepts(List.of(concept)));
+            }
+        }
+    }
+
+    private void readSource(String text) {
+        int itemStart = skipSpaces(text, 0, text.length());
+        if (itemStart >= text.length()) {
+            return;
+        }
+        int markerEnd = listMarkerEnd(text, itemStart, text.length());
+        if (markerEnd >= 0 && markerEnd < text.length() && isSpace(text.charAt(markerEnd))) {
+            String source = text.substring(markerEnd).trim();
+            if (!source.isEmpty()) {
+                InsightTextParser.Link link = InsightTextParser.parseLink(source, topic);
+                emit(InsightResponse.builder().recommendations(List.of(new Recommendation(link.title(), link.url()))));
+            }
+        }
+    }
+
+    private void emitSummary() {
+        String text = summary.toString().trim();
+        summary.setLength(0);
+        if (!text.isEmpty()) {
+            emit(InsightResponse.builder().summary(text));
+        }
+    }
+
+    private void emit(InsightResponse.InsightResponseBuilder partial) {
+        partialConsumer.accept(partial.topic(topic).timestamp(Instant.now()).build());
+    }
+}
@@ -0,0 +1,693 @@
+package com.example.demo.services.impl;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Разбор свободного текста ответа модели с разделами РЕЗЮМЕ / КЛЮЧЕВЫЕ КОНЦЕПЦИИ / РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ
+ *
+ * <p>Результат совпадает с прежним разбором регулярными выражениями, включая его особенности:
+ * заголовки ищутся по первому вхождению во всем тексте, латинские заголовки - без учета регистра,
+ * кириллические - точно. Заголовки находятся за один проход по тексту, после чего строки разделов
+ * разбираются посимвольно, без компиляции шаблонов и промежуточных строк на каждую строку.</p>
+ *
+ * <p>Переводы строк - {@code \n}, {@code \r} и {@code \r\n}; пробельные символы - те же, что {@code \s}
+ * в java.util.regex.</p>
+ */
+final class InsightTextParser {
+
+    /**
+     * Результат разбора
+     *
+     * @param insight       ответ с заглушками вместо ненайденных разделов
+     * @param sectionsFound в тексте найдены резюме и ключевые концепции
+     * @param contentFound  в тексте найдено резюме или ключевые концепции; иначе ответ состоит только из заглушек
+     */
+    record Result(InsightResponse insight, boolean sectionsFound, boolean contentFound) {
+    }
+
+    /**
+     * Ссылка из раздела источников: название и URL
+     */
+    record Link(String title, String url) {
+    }
+
+    static final String SUMMARY_RU = "РЕЗЮМЕ";
+    static final String SUMMARY_EN = "summary";
+    /** Общая часть заголовков «КЛЮЧЕВЫЕ КОНЦЕПЦИИ» и опечатки «КЛЮЧЕВЫЕ КОНЦЕПЦИО» */
+    static final String CONCEPTS_RU_STEM = "КЛЮЧЕВЫЕ КОНЦЕПЦИ";
+    static final String CONCEPTS_EN = "key concepts";
+    private static final String SOURCES_RU_FULL = "РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ";
+    private static final String SOURCES_EN_FULL = "recommended sources";
+    static final String SOURCES_RU = "ИСТОЧНИКИ";
+    static final String SOURCES_EN = "sources";
+
+    private static final String SEARCH_URL = "https://www.google.com/search?q=";
+
+    private InsightTextParser() {
+    }
+
+    static Result parse(String content, String topic) {
+        int length = content.length();
+
+        // Единственный проход по тексту: первые вхождения заголовков и заголовки с двоеточием,
+        // на которых заканчиваются разделы резюме и концепций
+        int summaryHeaderEnd = -1;
+        int conceptsHeaderEnd = -1;
+        int sourcesHeaderEnd = -1;
+        int[] summaryStops = new int[4];
+        int summaryStopCount = 0;
+        int[] conceptsStops = new int[4];
+        int conceptsStopCount = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = content.charAt(i);
+            switch (c) {
+                case 'Р' -> {
+                    if (summaryHeaderEnd < 0 && content.startsWith(SUMMARY_RU, i)) {
+                        summaryHeaderEnd = i + SUMMARY_RU.length();
+                    } else if (content.startsWith(SOURCES_RU_FULL, i)
+                            && charAt(content, i + SOURCES_RU_FULL.length()) == ':') {
+                        summaryStops = append(summaryStops, summaryStopCount++, i);
+                        conceptsStops = append(conceptsStops, conceptsStopCount++, i);
+                    }
+                }
+                case 'К' -> {
+                    int end = conceptsRuHeaderEnd(content, i);
+                    if (end > 0) {
+                        if (conceptsHeaderEnd < 0) {
+                            conceptsHeaderEnd = end;
+                        }
+                        if (content.charAt(end - 1) == 'И' && charAt(content, end) == ':') {
+                            summaryStops = append(summaryStops, summaryStopCount++, i);
+                        }
+                    }
+                }
+                case 'И' -> {
+                    if (sourcesHeaderEnd < 0 && content.startsWith(SOURCES_RU, i)) {
+                        sourcesHeaderEnd = i + SOURCES_RU.length();
+                    }
+                }
+                case 'S', 's' -> {
+                    if (summaryHeaderEnd < 0 && startsWithIgnoreCase(content, SUMMARY_EN, i)) {
+                        summaryHeaderEnd = i + SUMMARY_EN.length();
+                    } else if (sourcesHeaderEnd < 0 && startsWithIgnoreCase(content, SOURCES_EN, i)) {
+                        sourcesHeaderEnd = i + SOURCES_EN.length();
+                    }
+                }
+                case 'K', 'k' -> {
+                    if (startsWithIgnoreCase(content, CONCEPTS_EN, i)) {
+                        if (conceptsHeaderEnd < 0) {
+                            conceptsHeaderEnd = i + CONCEPTS_EN.length();
+                        }
+                        if (charAt(content, i + CONCEPTS_EN.length()) == ':') {
+                            summaryStops = append(summaryStops, summaryStopCount++, i);
+                        }
+                    }
+                }
+                case 'R', 'r' -> {
+                    if (startsWithIgnoreCase(content, SOURCES_EN_FULL, i)
+                            && charAt(content, i + SOURCES_EN_FULL.length()) == ':') {
+                        summaryStops = append(summaryStops, summaryStopCount++, i);
+                        conceptsStops = append(conceptsStops, conceptsStopCount++, i);
+                    }
+                }
+                default -> {
+                    // не начало заголовка
+                }
+            }
+        }
+
+        String summary = "";
+        if (summaryHeaderEnd >= 0) {
+            int start = sectionStart(content, summaryHeaderEnd);
+            int end = firstAtOrAfter(summaryStops, summaryStopCount, start, length);
+            summary = stripTrailingConceptsHeader(content.substring(start, end).trim());
+        }
+
+        List<String> keyConcepts = new ArrayList<>();
+        if (conceptsHeaderEnd >= 0) {
+            int start = sectionStart(content, conceptsHeaderEnd);
+            int end = firstAtOrAfter(conceptsStops, conceptsStopCount, start, length);
+            readConcepts(content.substring(start, end).trim(), keyConcepts);
+        }
+
+        List<Link> links = new ArrayList<>();
+        if (sourcesHeaderEnd >= 0) {
+            readSources(content.substring(sectionStart(content, sourcesHeaderEnd)).trim(), topic, links);
+        }
+
+        boolean sectionsFound = !summary.isEmpty() && !keyConcepts.isEmpty();
+        boolean contentFound = !summary.isEmpty() || !keyConcepts.isEmpty();
+        return new Result(buildResponse(topic, summary, keyConcepts, links), sectionsFound, contentFound);
+    }
+
+    /**
+     * Собирает InsightResponse, подставляя заглушки вместо ненайденных разделов
+     */
+    static InsightResponse buildResponse(String topic, String summary, List<String> keyConcepts, List<Link> links) {
+        if (summary.isEmpty()) {
+            summary = "Анализ темы: " + topic;
+        }
+        if (keyConcepts.isEmpty()) {
+            keyConcepts.add("Основные принципы " + topic);
+            keyConcepts.add("Практическое применение");
+            keyConcepts.add("Современные тренды и развитие");
+        }
+        if (links.isEmpty()) {
+            links.add(new Link("Руководство по " + topic,
+                    "https://example.com/guides/" + topic.toLowerCase().replace(" ", "-")));
+            links.add(new Link("Научные публикации",
+                    "https://scholar.google.com/scholar?q=" + topic.replace(" ", "+")));
+        }
+
+        List<Recommendation> recommendations = new ArrayList<>(links.size());
+        for (Link link : links) {
+            recommendations.add(new Recommendation(link.title(), link.url()));
+        }
+        return InsightResponse.builder()
+                .topic(topic)
+                .summary(summary)
+                .keyConcepts(keyConcepts)
+                .recommendations(recommendations)
+                .timestamp(Instant.now())
+                .build();
+    }
+
+    // --- Разделы ---
+
+    /**
+     * Начало раздела: после заголовка пропускаются необязательное двоеточие и пробельные символы
+     */
+    private static int sectionStart(String content, int headerEnd) {
+        int position = headerEnd;
+        if (charAt(content, position) == ':') {
+            position++;
+        }
+        return skipSpaces(content, position, content.length());
+    }
+
+    /**
+     * Заголовок концепций, оказавшийся в последней строке резюме, удаляется вместе с остатком строки
+     */
+    private static String stripTrailingConceptsHeader(String summary) {
+        int lastLineStart = Math.max(summary.lastIndexOf('\n'), summary.lastIndexOf('\r')) + 1;
+        for (int i = lastLineStart; i < summary.length(); i++) {
+            char c = summary.charAt(i);
+            boolean header = (c == 'К' && conceptsRuHeaderEnd(summary, i) > 0)
+                    || ((c == 'K' || c == 'k') && startsWithIgnoreCase(summary, CONCEPTS_EN, i));
+            if (header) {
+                int cut = i;
+                while (cut > 0 && isSpace(summary.charAt(cut - 1))) {
+                    cut--;
+                }
+                return summary.substring(0, cut);
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Элементы списка концепций: маркер (-, *, •, 1., 1), a., a)) и текст до конца строки,
+     * либо слово с заглавной кириллической буквы с точкой и пробелом после него
+     */
+    static void readConcepts(String block, List<String> target) {
+        int length = block.length();
+        int position = 0;
+        while (position < length) {
+            int lineEnd = lineEnd(block, position);
+            int next = nextLineStart(block, lineEnd);
+            int itemStart = skipSpaces(block, position, lineEnd);
+            if (itemStart < lineEnd) {
+                int markerEnd = listMarkerEnd(block, itemStart, lineEnd);
+                if (markerEnd >= 0 && markerEnd < lineEnd) {
+                    addConcept(block, markerEnd, lineEnd, target);
+                } else {
+                    int wordEnd = cyrillicAbbreviationEnd(block, itemStart, lineEnd);
+                    if (wordEnd >= 0 && wordEnd < length && isSpace(block.charAt(wordEnd))) {
+                        // Пробелы после маркера могут переходить на следующие строки
+                        int textStart = skipSpaces(block, wordEnd, length);
+                        if (textStart < length) {
+                            int textEnd = lineEnd(block, textStart);
+                            addConcept(block, textStart, textEnd, target);
+                            next = nextLineStart(block, textEnd);
+                        }
+                    }
+                }
+            }
+            position = next;
+        }
+
+        // Если элементов списка не нашлось, каждая непустая строка - отдельная концепция
+        if (target.isEmpty()) {
+            readPlainLines(block, target);
+        }
+    }
+
+    private static void addConcept(String block, int start, int end, List<String> target) {
+        String concept = conceptText(block.substring(start, end));
+        if (!concept.isEmpty()) {
+            target.add(concept);
+        }
+    }
+
+    /**
+     * Текст концепции без пробелов по краям и маркера вложенного списка в начале
+     */
+    static String conceptText(String item) {
+        String concept = item.trim();
+        if (concept.isEmpty()) {
+            return concept;
+        }
+        int markerEnd = listMarkerEnd(concept, 0, concept.length());
+        if (markerEnd >= 0 && markerEnd < concept.length() && isSpace(concept.charAt(markerEnd))) {
+            concept = concept.substring(skipSpaces(concept, markerEnd, concept.length()));
+        }
+        return concept;
+    }
+
+    /**
+     * Источники: маркер списка, пробел и строка с названием и URL
+     */
+    static void readSources(String block, String topic, List<Link> target) {
+        List<String> lines = new ArrayList<>();
+        int length = block.length();
+        int position = 0;
+        while (position < length) {
+            int lineEnd = lineEnd(block, position);
+            int next = nextLineStart(block, lineEnd);
+            int itemStart = skipSpaces(block, position, lineEnd);
+            if (itemStart < lineEnd) {
+                int markerEnd = listMarkerEnd(block, itemStart, lineEnd);
+                if (markerEnd >= 0 && markerEnd < length && isSpace(block.charAt(markerEnd))) {
+                    int textStart = skipSpaces(block, markerEnd, length);
+                    if (textStart < length) {
+                        int textEnd = lineEnd(block, textStart);
+                        lines.add(block.substring(textStart, textEnd).trim());
+                        next = nextLineStart(block, textEnd);
+                    }
+                }
+            }
+            position = next;
+        }
+
+        if (lines.isEmpty()) {
+            readPlainLines(block, lines);
+        }
+
+        for (String line : lines) {
+            if (!line.isEmpty()) {
+                target.add(parseLink(line, topic));
+            }
+        }
+    }
+
+    /**
+     * Непустые строки блока без префикса нумерации («1. », «a. », «- », «* »)
+     */
+    private static void readPlainLines(String block, List<String> target) {
+        int length = block.length();
+        int position = 0;
+        while (position <= length) {
+            int lineEnd = block.indexOf('\n', position);
+            if (lineEnd < 0) {
+                lineEnd = length;
+            }
+            String line = block.substring(position, lineEnd).trim();
+            if (!line.isEmpty()) {
+                target.add(line.substring(plainPrefixEnd(line)));
+            }
+            position = lineEnd + 1;
+        }
+    }
+
+    private static int plainPrefixEnd(String line) {
+        int length = line.length();
+        int position = 0;
+        char first = line.charAt(0);
+        if (isDigit(first)) {
+            while (position < length && isDigit(line.charAt(position))) {
+                position++;
+            }
+            if (charAt(line, position) != '.') {
+                return 0;
+            }
+            position++;
+        } else if (isAsciiLetter(first) && charAt(line, 1) == '.') {
+            position = 2;
+        } else if (first == '-' || first == '*') {
+            position = 1;
+        } else {
+            return 0;
+        }
+        return position < length && isSpace(line.charAt(position)) ? skipSpaces(line, position, length) : 0;
+    }
+
+    // --- Ссылки ---
+
+    /**
+     * Название и URL из строки источника. Форматы по убыванию приоритета:
+     * «Название: URL» или «Название - URL», «[Название](URL)», URL в любом месте строки, строка без URL.
+     */
+    static Link parseLink(String line, String topic) {
+        String title = null;
+        String url = null;
+        int length = line.length();
+
+        // «Название: URL» или «Название - URL»: самое короткое название, за которым следует разделитель и URL
+        for (int i = 1; i < length && url == null; i++) {
+            int separatorEnd;
+            char c = line.charAt(i);
+            if (c == ':') {
+                separatorEnd = i + 1;
+            } else if (isSpace(c) && charAt(line, i + 1) == '-' && i + 2 < length && isSpace(line.charAt(i + 2))) {
+                separatorEnd = i + 3;
+            } else {
+                continue;
+            }
+            int urlStart = skipSpaces(line, separatorEnd, length);
+            int urlEnd = urlEnd(line, urlStart);
+            if (urlEnd > 0) {
+                title = line.substring(0, i).trim();
+                url = stripEnclosingBrackets(line.substring(urlStart, urlEnd));
+            }
+        }
+
+        // «[Название](URL)» или «[Название][URL]»
+        if (url == null) {
+            for (int open = line.indexOf('['); open >= 0; open = line.indexOf('[', open + 1)) {
+                int close = line.indexOf(']', open + 1);
+                if (close < 0) {
+                    break;
+                }
+                char after = charAt(line, close + 1);
+                if (close == open + 1 || (after != '(' && after != '[')) {
+                    continue;
+                }
+                int schemeEnd = schemeEnd(line, close + 2);
+                if (schemeEnd < 0) {
+                    continue;
+                }
+                int end = schemeEnd;
+                while (end < length && line.charAt(end) != ')' && line.charAt(end) != ']') {
+                    end++;
+                }
+                if (end > schemeEnd && end < length) {
+                    title = line.substring(open + 1, close).trim();
+                    url = line.substring(close + 2, end).trim();
+                    break;
+                }
+            }
+        }
+
+        // URL в любом месте строки
+        if (url == null) {
+            for (int i = 0; i < length; i++) {
+                int urlEnd = urlEnd(line, i);
+                if (urlEnd > 0) {
+                    url = line.substring(i, urlEnd);
+                    title = i > 0 ? stripTrailingSeparator(line.substring(0, i).trim()) : "Resource from " + domain(url);
+                    break;
+                }
+            }
+        }
+
+        // Без URL - ссылка на поиск по теме и названию
+        if (url == null) {
+            title = line.substring(numberPrefixEnd(line));
+            url = SEARCH_URL + topic.replace(" ", "+") + "+" + title.replace(" ", "+");
+        }
+
+        return new Link(title, cleanUrl(url));
+    }
+
+    /**
+     * Конец URL (http:// или https:// без учета регистра и хотя бы один непробельный символ)
+     * или -1, если в позиции {@code start} URL не начинается
+     */
+    private static int urlEnd(String line, int start) {
+        int position = schemeEnd(line, start);
+        if (position < 0 || position >= line.length() || isSpace(line.charAt(position))) {
+            return -1;
+        }
+        while (position < line.length() && !isSpace(line.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static int schemeEnd(String line, int start) {
+        if (!startsWithIgnoreCase(line, "http", start)) {
+            return -1;
+        }
+        int position = start + 4;
+        if ((charAt(line, position) | 0x20) == 's') {
+            position++;
+        }
+        return line.startsWith("://", position) ? position + 3 : -1;
+    }
+
+    /**
+     * Удаляет «[» в начале и один из символов «]», «(», «)» в конце
+     */
+    private static String stripEnclosingBrackets(String url) {
+        int start = url.startsWith("[") ? 1 : 0;
+        int end = url.length();
+        if (end > start) {
+            char last = url.charAt(end - 1);
+            if (last == ']' || last == '(' || last == ')') {
+                end--;
+            }
+        }
+        return url.substring(start, end);
+    }
+
+    /**
+     * Удаляет двоеточие или дефис (с пробелами перед ним) в конце названия
+     */
+    private static String stripTrailingSeparator(String title) {
+        int length = title.length();
+        if (length == 0) {
+            return title;
+        }
+        char last = title.charAt(length - 1);
+        if (last == ':') {
+            return title.substring(0, length - 1);
+        }
+        if (last == '-') {
+            int cut = length - 1;
+            while (cut > 0 && isSpace(title.charAt(cut - 1))) {
+                cut--;
+            }
+            return title.substring(0, cut);
+        }
+        return title;
+    }
+
+    /**
+     * Домен URL без «www.»; если URL не удается разобрать, возвращается сам URL
+     */
+    private static String domain(String url) {
+        int start;
+        if (url.startsWith("https://")) {
+            start = 8;
+        } else if (url.startsWith("http://")) {
+            start = 7;
+        } else {
+            return url;
+        }
+        int hostStart = start;
+        if (url.startsWith("www.", start) && start + 4 < url.length() && url.charAt(start + 4) != '/') {
+            hostStart = start + 4;
+        }
+        int hostEnd = url.indexOf('/', hostStart);
+        if (hostEnd < 0) {
+            hostEnd = url.length();
+        }
+        return hostEnd > hostStart ? url.substring(hostStart, hostEnd) : url;
+    }
+
+    private static int numberPrefixEnd(String line) {
+        int position = 0;
+        while (position < line.length() && isDigit(line.charAt(position))) {
+            position++;
+        }
+        if (position == 0 || charAt(line, position) != '.' || position + 1 >= line.length()
+                || !isSpace(line.charAt(position + 1))) {
+            return 0;
+        }
+        return skipSpaces(line, position + 1, line.length());
+    }
+
+    /**
+     * Удаляет все «[», «]», «(», «)» в конце URL и затем одну завершающую запятую, точку или кавычку
+     */
+    private static String cleanUrl(String url) {
+        int length = url.length();
+        boolean dropClosingParenthesis = length > 0 && url.charAt(length - 1) == ')';
+        StringBuilder cleaned = null;
+        for (int i = 0; i < length; i++) {
+            char c = url.charAt(i);
+            boolean drop = c == '[' || c == ']' || c == '(' || (dropClosingParenthesis && i == length - 1);
+            if (drop && cleaned == null) {
+                cleaned = new StringBuilder(length).append(url, 0, i);
+            } else if (!drop && cleaned != null) {
+                cleaned.append(c);
+            }
+        }
+        String result = cleaned != null ? cleaned.toString() : url;
+        int end = result.length();
+        if (end > 0) {
+            char last = result.charAt(end - 1);
+            if (last == ',' || last == '.' || last == '"') {
+                return result.substring(0, end - 1);
+            }
+        }
+        return result;
+    }
+
+    // --- Символы и строки ---
+
+    /**
+     * Конец маркера списка (-, *, •, цифры с «.» или «)», латинская буква с «.» или «)») или -1
+     */
+    static int listMarkerEnd(String text, int start, int limit) {
+        char c = text.charAt(start);
+        if (c == '-' || c == '*' || c == '•') {
+            return start + 1;
+        }
+        if (isDigit(c)) {
+            int position = start + 1;
+            while (position < limit && isDigit(text.charAt(position))) {
+                position++;
+            }
+            return position < limit && isMarkerTerminator(text.charAt(position)) ? position + 1 : -1;
+        }
+        if (isAsciiLetter(c) && start + 1 < limit && isMarkerTerminator(text.charAt(start + 1))) {
+            return start + 2;
+        }
+        return -1;
+    }
+
+    /**
+     * Конец слова вида «Слово.» (заглавная кириллическая буква, строчные, точка) или -1
+     */
+    private static int cyrillicAbbreviationEnd(String text, int start, int limit) {
+        char c = text.charAt(start);
+        if (c < 'А' || c > 'Я') {
+            return -1;
+        }
+        int position = start + 1;
+        while (position < limit && text.charAt(position) >= 'а' && text.charAt(position) <= 'я') {
+            position++;
+        }
+        return position < limit && text.charAt(position) == '.' ? position + 1 : -1;
+    }
+
+    /**
+     * Конец заголовка «КЛЮЧЕВЫЕ КОНЦЕПЦИИ» или «КЛЮЧЕВЫЕ КОНЦЕПЦИО» в позиции {@code start} или -1
+     */
+    private static int conceptsRuHeaderEnd(String text, int start) {
+        if (!text.startsWith(CONCEPTS_RU_STEM, start)) {
+            return -1;
+        }
+        char ending = charAt(text, start + CONCEPTS_RU_STEM.length());
+        return ending == 'И' || ending == 'О' ? start + CONCEPTS_RU_STEM.length() + 1 : -1;
+    }
+
+    private static boolean isMarkerTerminator(char c) {
+        return c == '.' || c == ')';
+    }
+
+    static int lineEnd(String text, int start) {
+        int position = start;
+        while (position < text.length() && !isLineBreak(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    static int nextLineStart(String text, int lineEnd) {
+        if (lineEnd >= text.length()) {
+            return text.length();
+        }
+        if (text.charAt(lineEnd) == '\r' && lineEnd + 1 < text.length() && text.charAt(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    static int skipSpaces(String text, int start, int limit) {
+        int position = start;
+        while (position < limit && isSpace(text.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Совпадение латинского слова без учета регистра; {@code lowerCaseWord} задается строчными буквами.
+     * Как и флаг (?i) без UNICODE_CASE, регистр учитывается только для ASCII.
+     */
+    static boolean startsWithIgnoreCase(String text, String lowerCaseWord, int start) {
+        if (start < 0 || start + lowerCaseWord.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < lowerCaseWord.length(); i++) {
+            char c = text.charAt(start + i);
+            if (c >= 'A' && c <= 'Z') {
+                c = (char) (c + ('a' - 'A'));
+            }
+            if (c != lowerCaseWord.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Символ в позиции или 0 за пределами строки
+     */
+    private static char charAt(String text, int index) {
+        return index >= 0 && index < text.length() ? text.charAt(index) : 0;
+    }
+
+    /**
+     * Пробельные символы класса {@code \s}: пробел, \t, \n, \u000B, \f, \r
+     */
+    static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    private static boolean isLineBreak(char c) {
+        return c == '\n' || c == '\r';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static int firstAtOrAfter(int[] positions, int count, int from, int fallback) {
+        for (int i = 0; i < count; i++) {
+            if (positions[i] >= from) {
+                return positions[i];
+            }
+        }
+        return fallback;
+    }
+
+    private static int[] append(int[] positions, int index, int value) {
+        int[] target = index < positions.length ? positions : Arrays.copyOf(positions, positions.length * 2);
+        target[index] = value;
+        return target;
+    }
+}
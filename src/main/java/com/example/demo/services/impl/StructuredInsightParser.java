@@ -0,0 +1,145 @@
+package com.example.demo.services.impl;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Разбор структурированного ответа модели (режим {@code ollama.output.mode=structured})
+ *
+ * <p>Ответ читается потоковым JsonParser за один проход сразу в поля {@link InsightResponse},
+ * без промежуточного дерева. Неизвестные поля пропускаются. Если JSON некорректен
+ * или в нем нет резюме и ключевых концепций, выбрасывается исключение -
+ * вызывающий код переходит к разбору текста регулярными выражениями.</p>
+ */
+final class StructuredInsightParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private StructuredInsightParser() {
+    }
+
+    /**
+     * Похоже ли содержимое ответа на JSON-объект (с учетом обрамления ```json)
+     */
+    static boolean looksLikeJson(String content) {
+        return content != null && stripCodeFence(content).startsWith("{");
+    }
+
+    /**
+     * Разбирает JSON-ответ модели в InsightResponse
+     *
+     * @param content содержимое сообщения модели
+     * @param topic тема запроса
+     * @throws IOException если JSON некорректен или не содержит обязательных разделов
+     */
+    static InsightResponse parse(String content, String topic) throws IOException {
+        String summary = null;
+        List<String> keyConcepts = new ArrayList<>();
+        List<Recommendation> recommendations = new ArrayList<>();
+
+        try (JsonParser parser = JSON_FACTORY.createParser(stripCodeFence(content))) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Ожидался JSON-объект");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "summary" -> summary = value == JsonToken.VALUE_STRING ? parser.getText().trim() : null;
+                    case "keyConcepts" -> readStrings(parser, value, keyConcepts);
+                    case "recommendations" -> readRecommendations(parser, value, recommendations, topic);
+                    default -> parser.skipChildren();
+                }
+            }
+
+            if (summary == null || summary.isEmpty() || keyConcepts.isEmpty()) {
+                throw new JsonParseException(parser, "В ответе нет резюме или ключевых концепций");
+            }
+        }
+
+        return InsightResponse.builder()
+                .topic(topic)
+                .summary(summary)
+                .keyConcepts(keyConcepts)
+                .recommendations(recommendations)
+                .timestamp(Instant.now())
+                .build();
+    }
+
+    private static void readStrings(JsonParser parser, JsonToken value, List<String> target) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                String item = parser.getText().trim();
+                if (!item.isEmpty()) {
+                    target.add(item);
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+    }
+
+    private static void readRecommendations(JsonParser parser, JsonToken value, List<Recommendation> target,
+                                            String topic) throws IOException {
+        if (value != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            String title = null;
+            String url = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken fieldValue = parser.nextToken();
+                if (fieldValue != JsonToken.VALUE_STRING) {
+                    parser.skipChildren();
+                } else if ("title".equals(field)) {
+                    title = parser.getText().trim();
+                } else if ("url".equals(field) || "description".equals(field)) {
+                    url = parser.getText().trim();
+                }
+            }
+            if (title == null || title.isEmpty()) {
+                continue;
+            }
+            if (url == null || url.isEmpty()) {
+                // Как и при разборе текста: без URL даем ссылку на поиск по теме и названию
+                url = "https://www.google.com/search?q=" + topic.replace(" ", "+") + "+" + title.replace(" ", "+");
+            }
+            target.add(new Recommendation(title, url));
+        }
+    }
+
+    /**
+     * Убирает обрамление ```json ... ```, которое некоторые модели добавляют вокруг JSON
+     */
+    private static String stripCodeFence(String content) {
+        String trimmed = content.trim();
+        if (!trimmed.startsWith("```")) {
+            return trimmed;
+        }
+        int firstLineEnd = trimmed.indexOf('\n');
+        int closingFence = trimmed.lastIndexOf("```");
+        if (firstLineEnd < 0 || closingFence <= firstLineEnd) {
+            return trimmed;
+        }
+        return trimmed.substring(firstLineEnd + 1, closingFence).trim();
+    }
+}
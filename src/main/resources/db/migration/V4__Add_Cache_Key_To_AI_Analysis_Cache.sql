@@ -0,0 +1,6 @@
+-- Key of the cached analysis (same as the key in the in-memory and Redis caches)
+
+ALTER TABLE ai_analysis_cache ADD COLUMN cache_key VARCHAR(512);
+
+-- One row per cache key; required for upserts from the write-behind store
+CREATE UNIQUE INDEX uq_ai_analysis_cache_key ON ai_analysis_cache (cache_key);
@@ -0,0 +1,255 @@
+package com.example.demo.controllers;
+
+import com.example.demo.dto.insight.InsightRequest;
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.exceptions.BadRequestException;
+import com.example.demo.exceptions.ResourceNotFoundException;
+import com.example.demo.services.AIService;
+import com.example.demo.services.cache.EncodedInsightCache;
+import com.example.demo.services.cache.InsightFingerprinter;
+import com.example.demo.services.client.AdaptiveConcurrencyLimiter;
+import com.example.demo.services.client.FairShareScheduler;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тесты записи готовых байтов ответа и условных запросов к ответам из кэша в AIController
+ */
+@ExtendWith(MockitoExtension.class)
+public class AIControllerEncodingTest {
+
+    @Mock
+    private AIService aiService;
+
+    @Mock
+    private AsyncTaskExecutor aiTaskExecutor;
+
+    @Mock
+    private AdaptiveConcurrencyLimiter concurrencyLimiter;
+
+    @Mock
+    private FairShareScheduler fairShareScheduler;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final InsightFingerprinter fingerprinter = new InsightFingerprinter("llama2", "1");
+
+    private ObjectMapper serializer;
+    private AIController controller;
+    private InsightRequest request;
+    private InsightResponse cached;
+
+    @BeforeEach
+    public void setup() {
+        serializer = spy(objectMapper);
+        EncodedInsightCache encodedInsights = new EncodedInsightCache(serializer, new SimpleMeterRegistry(),
+                true, DataSize.ofMegabytes(1), 512, 1000);
+        controller = new AIController(aiService, aiTaskExecutor, concurrencyLimiter, fairShareScheduler,
+                objectMapper, encodedInsights);
+        request = InsightRequest.builder().topic("Kafka").language("ru").build();
+        cached = InsightResponse.builder()
+                .topic("Kafka")
+                .summary("Kafka - распределенный журнал сообщений. ".repeat(30))
+                .timestamp(Instant.now())
+                .build();
+    }
+
+    @Test
+    public void testAnalyze_WritesEncodedJsonWithContentLength() throws Exception {
+        // Подготовка
+        when(aiService.analyzeWithAIAsyncKeyed(request)).thenReturn(CompletableFuture.completedFuture(keyed(cached)));
+
+        // Выполнение
+        ResponseEntity<?> response = controller.analyzeWithAI(request, null).join();
+
+        // Проверка
+        assertThat(response.getBody()).isInstanceOf(byte[].class);
+        byte[] body = (byte[]) response.getBody();
+        assertThat(body).isEqualTo(objectMapper.writeValueAsBytes(cached));
+        assertThat(response.getHeaders().getContentLength()).isEqualTo(body.length);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(response.getHeaders().getVary()).contains(HttpHeaders.ACCEPT_ENCODING);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_LOCATION))
+                .isEqualTo("/ai/insights/" + fingerprinter.fingerprint(request));
+    }
+
+    @Test
+    public void testAnalyze_GzipForClientsAcceptingIt() {
+        // Подготовка - ответ из кэша: каждый раз тот же экземпляр
+        when(aiService.analyzeWithAIAsyncKeyed(request)).thenReturn(CompletableFuture.completedFuture(keyed(cached)));
+
+        // Выполнение
+        ResponseEntity<?> gzip = controller.analyzeWithAI(request, "br, gzip;q=0.8").join();
+        ResponseEntity<?> identity = controller.analyzeWithAI(request, "gzip;q=0, br").join();
+
+        // Проверка - повторный запрос отдает те же байты без повторной сериализации
+        assertThat(gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzip.getHeaders().getContentLength()).isEqualTo(((byte[]) gzip.getBody()).length);
+        assertThat(identity.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isNull();
+        assertThat(controller.analyzeWithAI(request, "gzip").join().getBody()).isSameAs(gzip.getBody());
+    }
+
+    @Test
+    public void testAnalyze_FallbackResponseWithoutContentLocation() throws Exception {
+        // Подготовка - резервный ответ сервиса не хранится в кэше и приходит без ключа
+        InsightResponse fallback = InsightResponse.builder().topic("Kafka").summary("Резервный ответ").build();
+        when(aiService.analyzeWithAIAsyncKeyed(request))
+                .thenReturn(CompletableFuture.completedFuture(new AIService.KeyedInsight(fallback, null)));
+
+        // Выполнение
+        ResponseEntity<?> response = controller.analyzeWithAI(request, "gzip").join();
+
+        // Проверка - ссылки на ресурс, который всегда ответит 404, нет; байты не сохраняются
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getFirst(HttpHeaders.CONTENT_LOCATION)).isNull();
+        assertThat(response.getBody()).isSameAs(fallback);
+        verify(serializer, never()).writeValueAsBytes(fallback);
+    }
+
+    @Test
+    public void testAcceptsGzip_ParsesAcceptEncoding() {
+        // Проверка
+        assertThat(AIController.acceptsGzip("gzip, deflate")).isTrue();
+        assertThat(AIController.acceptsGzip("*")).isTrue();
+        assertThat(AIController.acceptsGzip("GZIP;q=0.5")).isTrue();
+        assertThat(AIController.acceptsGzip("gzip;q=0")).isFalse();
+        assertThat(AIController.acceptsGzip("identity")).isFalse();
+        assertThat(AIController.acceptsGzip(null)).isFalse();
+    }
+
+    @Test
+    public void testGetInsight_ReturnsBodyWithStrongEtagAndCacheControl() throws Exception {
+        // Подготовка - ответ создан 15 минут назад, мягкий TTL по умолчанию - 1 час
+        String fingerprint = fingerprinter.fingerprint(request);
+        cached.setTimestamp(Instant.now().minus(Duration.ofMinutes(15)));
+        when(aiService.getInsight(fingerprint)).thenReturn(cached);
+
+        // Выполнение
+        ResponseEntity<?> response = controller.getInsight(fingerprint, null, null);
+
+        // Проверка
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat((byte[]) response.getBody()).isEqualTo(objectMapper.writeValueAsBytes(cached));
+        assertThat(response.getHeaders().getETag()).matches("\"[0-9a-f]{32}\"");
+        long maxAge = Long.parseLong(response.getHeaders().getCacheControl().replaceAll(".*max-age=(\\d+).*", "$1"));
+        assertThat(maxAge).isBetween(Duration.ofMinutes(44).toSeconds(), Duration.ofMinutes(45).toSeconds());
+        assertThat(response.getHeaders().getCacheControl()).contains("public");
+    }
+
+    @Test
+    public void testGetInsight_MatchingIfNoneMatchReturnsNotModifiedWithoutSerialization() throws Exception {
+        // Подготовка
+        String fingerprint = fingerprinter.fingerprint(request);
+        when(aiService.getInsight(fingerprint)).thenReturn(cached);
+        String etag = controller.getInsight(fingerprint, null, null).getHeaders().getETag();
+
+        // Выполнение
+        ResponseEntity<?> notModified = controller.getInsight(fingerprint, "\"other\", W/" + etag, "gzip");
+        ResponseEntity<?> modified = controller.getInsight(fingerprint, "\"other\"", null);
+
+        // Проверка - ответ сериализован один раз, при первом запросе
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModified.getBody()).isNull();
+        assertThat(notModified.getHeaders().getETag()).isEqualTo(etag);
+        assertThat(notModified.getHeaders().getCacheControl()).contains("max-age=");
+        assertThat(modified.getStatusCode()).isEqualTo(HttpStatus.OK);
+        verify(serializer, times(1)).writeValueAsBytes(cached);
+        verify(aiService, never()).analyzeWithAIAsyncKeyed(request);
+    }
+
+    @Test
+    public void testGetInsight_EtagDiffersBetweenContentEncodings() {
+        // Подготовка
+        String fingerprint = fingerprinter.fingerprint(request);
+        when(aiService.getInsight(fingerprint)).thenReturn(cached);
+
+        // Выполнение
+        String identityEtag = controller.getInsight(fingerprint, null, null).getHeaders().getETag();
+        ResponseEntity<?> gzip = controller.getInsight(fingerprint, null, "gzip");
+        String gzipEtag = gzip.getHeaders().getETag();
+
+        // Проверка - у сжатого представления свой сильный ETag
+        assertThat(gzip.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        assertThat(gzipEtag).isEqualTo(identityEtag.substring(0, identityEtag.length() - 1) + "-gzip\"");
+        assertThat(controller.getInsight(fingerprint, gzipEtag, "gzip").getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        // Несжатая копия подходит клиенту с gzip: 304 возвращается с ее тегом
+        ResponseEntity<?> identityRevalidated = controller.getInsight(fingerprint, identityEtag, "gzip");
+        assertThat(identityRevalidated.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(identityRevalidated.getHeaders().getETag()).isEqualTo(identityEtag);
+        // Сжатая копия не подходит клиенту без gzip: отдается несжатое тело
+        ResponseEntity<?> identity = controller.getInsight(fingerprint, gzipEtag, null);
+        assertThat(identity.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(identity.getHeaders().getETag()).isEqualTo(identityEtag);
+    }
+
+    @Test
+    public void testGetInsight_RevalidationWithoutSerializationForReadCopyAndDisabledEncoding() throws Exception {
+        // Подготовка - хранение байтов отключено; ETag запомнен при записи ответа в кэш,
+        // а из L2 прочитан другой экземпляр того же ответа
+        EncodedInsightCache disabled = new EncodedInsightCache(serializer, new SimpleMeterRegistry(),
+                false, DataSize.ofMegabytes(1), 512, 1000);
+        controller = new AIController(aiService, aiTaskExecutor, concurrencyLimiter, fairShareScheduler,
+                objectMapper, disabled);
+        String fingerprint = fingerprinter.fingerprint(request);
+        String etag = disabled.remember(fingerprint, cached).etag();
+        InsightResponse fromRemote = objectMapper.readValue(objectMapper.writeValueAsBytes(cached), InsightResponse.class);
+        when(aiService.getInsight(fingerprint)).thenReturn(fromRemote);
+
+        // Выполнение
+        ResponseEntity<?> notModified = controller.getInsight(fingerprint, etag, null);
+
+        // Проверка - сериализация выполнена один раз, при записи
+        assertThat(notModified.getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED);
+        assertThat(notModified.getHeaders().getETag()).isEqualTo(etag);
+        verify(serializer, times(1)).writeValueAsBytes(any());
+    }
+
+    @Test
+    public void testGetInsight_MissingOrMalformedFingerprint() {
+        // Выполнение и проверка
+        assertThatThrownBy(() -> controller.getInsight(fingerprinter.fingerprint(request), null, null))
+                .isInstanceOf(ResourceNotFoundException.class);
+        assertThatThrownBy(() -> controller.getInsight("kafka", null, null))
+                .isInstanceOf(BadRequestException.class);
+    }
+
+    @Test
+    public void testEtagMatches_ParsesIfNoneMatch() {
+        // Проверка
+        assertThat(AIController.etagMatches("\"abc\"", "\"abc\"")).isTrue();
+        assertThat(AIController.etagMatches("\"x\", W/\"abc\"", "\"abc\"")).isTrue();
+        assertThat(AIController.etagMatches("*", "\"abc\"")).isTrue();
+        assertThat(AIController.etagMatches("\"abcd\"", "\"abc\"")).isFalse();
+        assertThat(AIController.etagMatches(null, "\"abc\"")).isFalse();
+    }
+
+    private AIService.KeyedInsight keyed(InsightResponse response) {
+        return new AIService.KeyedInsight(response, fingerprinter.fingerprint(request));
+    }
+}
@@ -1,32 +1,48 @@
 package com.example.demo.services;
 
+import com.example.demo.dto.insight.InsightBatchItem;
 import com.example.demo.dto.insight.InsightRequest;
 import com.example.demo.dto.insight.InsightResponse;
 import com.example.demo.dto.insight.Recommendation;
 import com.example.demo.dto.insight.ResourceLink;
 import com.example.demo.exceptions.AIServiceException;
+import com.example.demo.services.cache.EncodedInsightCache;
+import com.example.demo.services.cache.InsightFingerprinter;
+import com.example.demo.services.cache.SemanticInsightCache;
+import com.example.demo.services.client.AIResponse;
+import com.example.demo.services.client.AdaptiveConcurrencyLimiter;
+import com.example.demo.services.client.FairShareScheduler;
 import com.example.demo.services.client.OllamaClient;
 import com.example.demo.services.impl.AIServiceImpl;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.concurrent.ConcurrentMapCache;
 
-import java.util.HashMap;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
 import static org.mockito.Mockito.*;
 
 /**
@@ -40,6 +56,25 @@ public class AIServiceImplTest {
     
     @Mock
     private CacheManager cacheManager;
+    
+    @Mock
+    private SemanticInsightCache semanticCache;
+    
+    @Mock
+    private EncodedInsightCache encodedInsights;
+    
+    @Spy
+    private InsightFingerprinter fingerprinter = new InsightFingerprinter("llama2", "1");
+    
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    
+    @Spy
+    private AdaptiveConcurrencyLimiter concurrencyLimiter = new AdaptiveConcurrencyLimiter(
+            new SimpleMeterRegistry(), new FairShareScheduler(new String[]{"ADMIN:4", "USER:1"}, 1, 10, 3, 20), 4, 1, 32, 2.0, 0.9, 50, Duration.ofSeconds(10));
+
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
 
     @InjectMocks
     private AIServiceImpl aiService;
@@ -72,13 +107,9 @@ public class AIServiceImplTest {
                 - Spring Framework Guru: https://springframework.guru
                 """;
 
-        Map<String, Object> messageMap = new HashMap<>();
-        messageMap.put("content", aiResponse);
-
-        Map<String, Object> responseMap = new HashMap<>();
-        responseMap.put("message", messageMap);
+        AIResponse answer = AIResponse.ofContent(aiResponse);
 
-        when(ollamaClient.sendRequest(anyString(), anyString())).thenReturn(responseMap);
+        when(ollamaClient.sendRequest(anyString(), anyString())).thenReturn(answer);
 
         // Выполнение
         InsightResponse response = aiService.analyzeWithAI(testRequest);
@@ -166,13 +197,9 @@ public class AIServiceImplTest {
         // Подготовка - только резюме без других секций
         String incompleteResponse = "РЕЗЮМЕ:\nSpring Boot - это фреймворк для разработки.";
 
-        Map<String, Object> messageMap = new HashMap<>();
-        messageMap.put("content", incompleteResponse);
+        AIResponse answer = AIResponse.ofContent(incompleteResponse);
 
-        Map<String, Object> responseMap = new HashMap<>();
-        responseMap.put("message", messageMap);
-
-        when(ollamaClient.sendRequest(anyString(), anyString())).thenReturn(responseMap);
+        when(ollamaClient.sendRequest(anyString(), anyString())).thenReturn(answer);
 
         // Выполнение
         InsightResponse response = aiService.analyzeWithAI(testRequest);
@@ -185,11 +212,58 @@ public class AIServiceImplTest {
         assertThat(response.getRecommendations()).isNotEmpty();
     }
 
+    @Test
+    public void testAnalyzeWithAI_StructuredJsonResponse() {
+        // Подготовка - ответ структурированного режима с неизвестным полем и источником без URL
+        String jsonContent = """
+                {"summary": "Spring Boot - фреймворк для Java.",
+                 "confidence": {"score": 0.9},
+                 "keyConcepts": ["Автоконфигурация", "Стартеры"],
+                 "recommendations": [
+                   {"title": "Официальная документация", "url": "https://spring.io/projects/spring-boot"},
+                   {"title": "Spring Boot в действии"}
+                 ]}
+                """;
+        when(ollamaClient.sendRequest(anyString(), anyString()))
+                .thenReturn(AIResponse.ofContent(jsonContent));
+
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAI(testRequest);
+
+        // Проверка
+        assertThat(response.getTopic()).isEqualTo("Spring Boot");
+        assertThat(response.getSummary()).isEqualTo("Spring Boot - фреймворк для Java.");
+        assertThat(response.getKeyConcepts()).containsExactly("Автоконфигурация", "Стартеры");
+        assertThat(response.getRecommendations()).extracting(Recommendation::getDescription)
+                .containsExactly("https://spring.io/projects/spring-boot",
+                        "https://www.google.com/search?q=Spring+Boot+Spring+Boot+в+действии");
+        assertThat(meterRegistry.counter("ai.response.parse", "mode", "json", "outcome", "success").count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.find("ai.response.parse").tag("mode", "text").counter()).isNull();
+    }
+
+    @Test
+    public void testAnalyzeWithAI_MalformedJsonFallsBackToText() {
+        // Подготовка - модель оборвала JSON, но в тексте есть разделы
+        String content = "{\"summary\": \"РЕЗЮМЕ: Spring Boot - фреймворк.\nКЛЮЧЕВЫЕ КОНЦЕПЦИИ:\n- Стартеры\n";
+        when(ollamaClient.sendRequest(anyString(), anyString()))
+                .thenReturn(AIResponse.ofContent(content));
+
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAI(testRequest);
+
+        // Проверка
+        assertThat(response.getKeyConcepts()).containsExactly("Стартеры");
+        assertThat(meterRegistry.counter("ai.response.parse", "mode", "json", "outcome", "fallback").count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.counter("ai.response.parse", "mode", "text", "outcome", "success").count())
+                .isEqualTo(1.0);
+    }
+
     @Test
     public void testAnalyzeWithAI_InvalidJsonStructure() {
-        // Подготовка - некорректная структура ответа
-        Map<String, Object> invalidResponse = new HashMap<>();
-        invalidResponse.put("error", "Invalid request");
+        // Подготовка - ответ без текста, только с описанием ошибки
+        AIResponse invalidResponse = new AIResponse(null, null, true, null, "Invalid request", 0, 0, 0, 0, 0, 0);
         
         when(ollamaClient.sendRequest(anyString(), anyString())).thenReturn(invalidResponse);
 
@@ -221,13 +295,9 @@ public class AIServiceImplTest {
                 - Официальный сайт Spring: https://spring.io
                 """;
 
-        Map<String, Object> messageMap = new HashMap<>();
-        messageMap.put("content", responseWithLinks);
-
-        Map<String, Object> responseMap = new HashMap<>();
-        responseMap.put("message", messageMap);
+        AIResponse answer = AIResponse.ofContent(responseWithLinks);
 
-        when(ollamaClient.sendRequest(anyString(), anyString())).thenReturn(responseMap);
+        when(ollamaClient.sendRequest(anyString(), anyString())).thenReturn(answer);
 
         // Выполнение
         InsightResponse response = aiService.analyzeWithAI(testRequest);
@@ -268,13 +338,10 @@ public class AIServiceImplTest {
                 - Spring Framework Guru: https://springframework.guru
                 """;
 
-        Map<String, Object> messageMap = new HashMap<>();
-        messageMap.put("content", aiResponse);
-
-        Map<String, Object> responseMap = new HashMap<>();
-        responseMap.put("message", messageMap);
+        AIResponse answer = AIResponse.ofContent(aiResponse);
 
-        when(ollamaClient.sendRequest(anyString(), anyString())).thenReturn(responseMap);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru"))).thenReturn(CompletableFuture.completedFuture(answer));
 
         // Выполнение
         CompletableFuture<InsightResponse> futureResponse = aiService.analyzeWithAIAsync(testRequest);
@@ -286,8 +353,210 @@ public class AIServiceImplTest {
         assertThat(response.getKeyConcepts()).hasSize(3);
         assertThat(response.getKeyConcepts()).contains("Автоконфигурация");
         
-        // Проверка вызовов mock-объектов
-        verify(ollamaClient, times(1)).sendRequest(eq("Spring Boot"), eq("ru"));
+        // Проверка вызовов mock-объектов: асинхронный путь не использует блокирующий sendRequest
+        verify(ollamaClient, times(1)).sendRequestAsync(contains("Spring Boot"), eq("ru"));
+        verify(ollamaClient, never()).sendRequest(anyString(), anyString());
+    }
+    
+    @Test
+    public void testAnalyzeWithAIAsync_SecondIdenticalRequestServedFromCache() throws Exception {
+        // Подготовка
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru"))).thenReturn(CompletableFuture.completedFuture(
+                AIResponse.ofContent("РЕЗЮМЕ:\nSpring Boot - это фреймворк.")));
+        
+        // Выполнение
+        InsightResponse first = aiService.analyzeWithAIAsync(testRequest).get(5, TimeUnit.SECONDS);
+        clearInvocations(ollamaClient);
+        InsightResponse second = aiService.analyzeWithAIAsync(testRequest).get(5, TimeUnit.SECONDS);
+        
+        // Проверка - повторный запрос не обращается к Ollama
+        assertThat(second).isSameAs(first);
+        verifyNoInteractions(ollamaClient);
+    }
+    
+    @Test
+    public void testAnalyzeWithAIAsync_FallbackNotCached() throws Exception {
+        // Подготовка - модель вернула ответ без текста
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru")))
+                .thenReturn(CompletableFuture.completedFuture(new AIResponse(null, null, true, null, "Invalid request", 0, 0, 0, 0, 0, 0)))
+                .thenReturn(CompletableFuture.completedFuture(AIResponse.ofContent("РЕЗЮМЕ:\nОтвет модели.")));
+        
+        // Выполнение
+        InsightResponse fallback = aiService.analyzeWithAIAsync(testRequest).get(5, TimeUnit.SECONDS);
+        InsightResponse retried = aiService.analyzeWithAIAsync(testRequest).get(5, TimeUnit.SECONDS);
+        
+        // Проверка - резервный ответ не сохранен, повторный запрос обратился к модели и закэшировал ее ответ
+        assertThat(fallback.getSummary()).contains("Не удалось получить анализ темы");
+        assertThat(retried.getSummary()).isEqualTo("Ответ модели.");
+        assertThat(aiResponses.get(fingerprinter.fingerprint(testRequest), InsightResponse.class)).isSameAs(retried);
+        verify(ollamaClient, times(2)).sendRequestAsync(anyString(), eq("ru"));
+    }
+    
+    @Test
+    public void testAnalyzeWithAIAsyncKeyed_CacheKeyOnlyForCachedResponses() throws Exception {
+        // Подготовка - первый запрос к модели завершается ошибкой, второй - ответом
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru")))
+                .thenReturn(CompletableFuture.failedFuture(new AIServiceException("Ollama недоступен")))
+                .thenReturn(CompletableFuture.completedFuture(AIResponse.ofContent("РЕЗЮМЕ:\nОтвет модели.")));
+        
+        // Выполнение
+        AIService.KeyedInsight fallback = aiService.analyzeWithAIAsyncKeyed(testRequest).get(5, TimeUnit.SECONDS);
+        AIService.KeyedInsight generated = aiService.analyzeWithAIAsyncKeyed(testRequest).get(5, TimeUnit.SECONDS);
+        AIService.KeyedInsight cached = aiService.analyzeWithAIAsyncKeyed(testRequest).get(5, TimeUnit.SECONDS);
+        
+        // Проверка - ключ сообщается только для ответа, который хранится в aiResponses
+        String fingerprint = fingerprinter.fingerprint(testRequest);
+        assertThat(fallback.cacheKey()).isNull();
+        assertThat(fallback.insight().getSummary()).contains("Не удалось получить анализ темы");
+        assertThat(generated.cacheKey()).isEqualTo(fingerprint);
+        assertThat(cached.cacheKey()).isEqualTo(fingerprint);
+        assertThat(cached.insight()).isSameAs(generated.insight());
+        assertThat(aiService.getInsight(fingerprint)).isSameAs(generated.insight());
+        // ETag сохраненного ответа запоминается при записи в кэш
+        verify(encodedInsights).remember(fingerprint, generated.insight());
+    }
+    
+    @Test
+    public void testAnalyzeWithAIAsync_AnswerWithoutSectionsNotCached() throws Exception {
+        // Подготовка - модель ответила текстом без разделов: результат состоял бы из одних заглушек
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(
+                AIResponse.ofContent("Не могу ответить на этот вопрос.")));
+        
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAIAsync(testRequest).get(5, TimeUnit.SECONDS);
+        
+        // Проверка - клиент получает резервный ответ, кэш остается пустым
+        assertThat(response.getSummary()).contains("Не удалось получить анализ темы");
+        assertThat(aiResponses.get(fingerprinter.fingerprint(testRequest))).isNull();
+    }
+    
+    @Test
+    public void testAnalyzeWithAI_AnswerWithoutSectionsNotCached() {
+        // Подготовка
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        when(ollamaClient.sendRequest(anyString(), anyString()))
+                .thenReturn(AIResponse.ofContent("Не могу ответить на этот вопрос."));
+        
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAI(testRequest);
+        
+        // Проверка
+        assertThat(response.getSummary()).contains("Не удалось получить анализ темы");
+        assertThat(response.getSummary()).doesNotContain("Анализ темы: ");
+        assertThat(aiResponses.get(fingerprinter.fingerprint(testRequest))).isNull();
+    }
+    
+    @Test
+    public void testAnalyzeWithAIAsync_SemanticHitSkipsModel() throws Exception {
+        // Подготовка - в кэше есть ответ на похожую тему
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        InsightResponse similarResponse = InsightResponse.builder()
+                .topic("Spring Boot")
+                .summary("Spring Boot - это фреймворк")
+                .keyConcepts(List.of("Автоконфигурация"))
+                .build();
+        aiResponses.put("Spring Boot_ru", similarResponse);
+        
+        InsightRequest request = InsightRequest.builder().topic("spring boot framework").language("ru").build();
+        SemanticInsightCache.Probe probe = new SemanticInsightCache.Probe("ru", new float[]{1f}, "Spring Boot_ru", 0.96);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(semanticCache.isEnabled()).thenReturn(true);
+        when(semanticCache.probe("spring boot framework", fingerprinter.semanticScope(request))).thenReturn(CompletableFuture.completedFuture(probe));
+        
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAIAsync(request).get(5, TimeUnit.SECONDS);
+        
+        // Проверка - ответ взят из кэша с темой текущего запроса и сохранен под ее ключом
+        assertThat(response.getTopic()).isEqualTo("spring boot framework");
+        assertThat(response.getSummary()).isEqualTo("Spring Boot - это фреймворк");
+        assertThat(aiResponses.get(fingerprinter.fingerprint(request), InsightResponse.class)).isSameAs(response);
+        verify(ollamaClient, never()).sendRequestAsync(anyString(), anyString());
+    }
+    
+    @Test
+    public void testAnalyzeWithAIAsync_SemanticMissRemembersTopic() throws Exception {
+        // Подготовка - похожей темы нет
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        SemanticInsightCache.Probe probe = new SemanticInsightCache.Probe("ru", new float[]{1f}, null, 0.5);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru"))).thenReturn(CompletableFuture.completedFuture(
+                AIResponse.ofContent("РЕЗЮМЕ:\nSpring Boot\n\nКЛЮЧЕВЫЕ КОНЦЕПЦИИ:\n- Стартеры\n")));
+        when(semanticCache.isEnabled()).thenReturn(true);
+        when(semanticCache.probe("Spring Boot", fingerprinter.semanticScope(testRequest))).thenReturn(CompletableFuture.completedFuture(probe));
+        
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAIAsync(testRequest).get(5, TimeUnit.SECONDS);
+        
+        // Проверка - тема запомнена под ключом сохраненного ответа
+        assertThat(response.getKeyConcepts()).containsExactly("Стартеры");
+        verify(semanticCache).remember(probe, fingerprinter.fingerprint(testRequest));
+    }
+    
+    @Test
+    public void testAnalyzeWithAIAsync_SemanticHitEvictedFallsThroughToModel() throws Exception {
+        // Подготовка - индекс указывает на ответ, которого в кэше уже нет
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        SemanticInsightCache.Probe probe = new SemanticInsightCache.Probe("ru", new float[]{1f}, "Spring_ru", 0.97);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru"))).thenReturn(CompletableFuture.completedFuture(
+                AIResponse.ofContent("РЕЗЮМЕ:\nSpring Boot\n\nКЛЮЧЕВЫЕ КОНЦЕПЦИИ:\n- Стартеры\n")));
+        when(semanticCache.isEnabled()).thenReturn(true);
+        when(semanticCache.probe("Spring Boot", fingerprinter.semanticScope(testRequest))).thenReturn(CompletableFuture.completedFuture(probe));
+        
+        // Выполнение
+        aiService.analyzeWithAIAsync(testRequest).get(5, TimeUnit.SECONDS);
+        
+        // Проверка
+        verify(semanticCache).forget(probe);
+        verify(ollamaClient, times(1)).sendRequestAsync(anyString(), eq("ru"));
+    }
+    
+    @Test
+    public void testAnalyzeWithAIAsync_CoalescesIdenticalInFlightRequests() throws Exception {
+        // Подготовка - ответ модели еще не получен
+        CompletableFuture<AIResponse> modelResponse = new CompletableFuture<>();
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), anyString())).thenReturn(modelResponse);
+        
+        InsightRequest sameTopicDifferentCase = new InsightRequest();
+        sameTopicDifferentCase.setTopic("  spring   BOOT ");
+        sameTopicDifferentCase.setLanguage("ru");
+        sameTopicDifferentCase.setMaxResults(3);
+        
+        // Выполнение - два одинаковых запроса, пока первый еще выполняется
+        CompletableFuture<InsightResponse> first = aiService.analyzeWithAIAsync(testRequest);
+        CompletableFuture<InsightResponse> second = aiService.analyzeWithAIAsync(sameTopicDifferentCase);
+        
+        AIResponse answer = AIResponse.ofContent("РЕЗЮМЕ:\nОбщий ответ.");
+        modelResponse.complete(answer);
+        
+        // Проверка - одна генерация на оба запроса
+        assertThat(first.get(5, TimeUnit.SECONDS).getSummary()).isEqualTo("Общий ответ.");
+        assertThat(second.get(5, TimeUnit.SECONDS).getSummary()).isEqualTo("Общий ответ.");
+        verify(ollamaClient, times(1)).sendRequestAsync(anyString(), anyString());
+        assertThat(meterRegistry.get("ai.requests.coalesced").counter().count()).isEqualTo(1.0);
+        
+        // После завершения запрос больше не считается выполняющимся
+        when(ollamaClient.sendRequestAsync(anyString(), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(answer));
+        aiService.analyzeWithAIAsync(testRequest).get(5, TimeUnit.SECONDS);
+        verify(ollamaClient, times(2)).sendRequestAsync(anyString(), anyString());
     }
     
     @Test
@@ -304,19 +573,210 @@ public class AIServiceImplTest {
                 .hasMessageContaining("An error occurred during async AI analysis");
     }
     
+    @Test
+    public void testAnalyzeWithAIStreaming_RelaysTokensAndCachesResult() {
+        // Подготовка - клиент отдает ответ двумя фрагментами
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        
+        String part1 = "РЕЗЮМЕ:\nSpring Boot - это фреймворк.\n\n";
+        String part2 = "КЛЮЧЕВЫЕ КОНЦЕПЦИИ:\n- Автоконфигурация\n";
+        
+        AIResponse answer = AIResponse.ofContent(part1 + part2);
+        
+        when(ollamaClient.streamRequest(anyString(), eq("ru"), any())).thenAnswer(invocation -> {
+            Consumer<String> consumer = invocation.getArgument(2);
+            consumer.accept(part1);
+            consumer.accept(part2);
+            return answer;
+        });
+        
+        List<String> tokens = new ArrayList<>();
+        List<InsightResponse> partials = new ArrayList<>();
+        
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAIStreaming(testRequest, tokens::add, partials::add);
+        
+        // Проверка
+        assertThat(tokens).containsExactly(part1, part2);
+        assertThat(partials).extracting(InsightResponse::getSummary)
+                .containsExactly("Spring Boot - это фреймворк.", null);
+        assertThat(partials.get(1).getKeyConcepts()).containsExactly("Автоконфигурация");
+        assertThat(response.getSummary()).contains("Spring Boot - это фреймворк");
+        assertThat(response.getKeyConcepts()).contains("Автоконфигурация");
+        assertThat(aiResponses.get(fingerprinter.fingerprint(testRequest), InsightResponse.class)).isSameAs(response);
+    }
+    
+    @Test
+    public void testAnalyzeWithAIStreaming_CacheHitSkipsModel() {
+        // Подготовка - результат уже в кэше
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        InsightResponse cachedResponse = InsightResponse.builder().summary("Cached").build();
+        aiResponses.put(fingerprinter.fingerprint(testRequest), cachedResponse);
+        
+        List<String> tokens = new ArrayList<>();
+        List<InsightResponse> partials = new ArrayList<>();
+        
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAIStreaming(testRequest, tokens::add, partials::add);
+        
+        // Проверка
+        assertThat(response).isSameAs(cachedResponse);
+        assertThat(tokens).isEmpty();
+        assertThat(partials).isEmpty();
+        verify(ollamaClient, never()).streamRequest(anyString(), anyString(), any());
+    }
+
+    @Test
+    public void testAnalyzeWithAIStreaming_StaleHitServedAndRefreshedOnce() {
+        // Подготовка - ответ старше мягкого TTL, обновление еще не завершено
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        InsightResponse staleResponse = InsightResponse.builder()
+                .summary("Stale").timestamp(Instant.now().minus(Duration.ofHours(2))).build();
+        aiResponses.put(fingerprinter.fingerprint(testRequest), staleResponse);
+        CompletableFuture<AIResponse> refresh = new CompletableFuture<>();
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru"))).thenReturn(refresh);
+
+        // Выполнение - два запроса, пока обновление выполняется
+        InsightResponse first = aiService.analyzeWithAIStreaming(testRequest, token -> { }, partial -> { });
+        InsightResponse second = aiService.analyzeWithAIStreaming(testRequest, token -> { }, partial -> { });
+
+        // Проверка - оба получили прежний ответ без ожидания модели, обновление запущено один раз
+        assertThat(first).isSameAs(staleResponse);
+        assertThat(second).isSameAs(staleResponse);
+        verify(ollamaClient, times(1)).sendRequestAsync(anyString(), eq("ru"));
+        verify(ollamaClient, never()).streamRequest(anyString(), anyString(), any());
+
+        // Выполнение - обновление завершено
+        refresh.complete(AIResponse.ofContent("РЕЗЮМЕ:\nСвежий ответ."));
+
+        // Проверка
+        assertThat(aiResponses.get(fingerprinter.fingerprint(testRequest), InsightResponse.class).getSummary())
+                .isEqualTo("Свежий ответ.");
+        assertThat(meterRegistry.get("ai.cache.insights.stale").counter().count()).isEqualTo(2.0);
+        assertThat(meterRegistry.get("ai.cache.insights.refresh").tag("outcome", "success").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    public void testAnalyzeWithAIStreaming_FailedRefreshKeepsStaleResponse() {
+        // Подготовка
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        InsightResponse staleResponse = InsightResponse.builder()
+                .summary("Stale").timestamp(Instant.now().minus(Duration.ofHours(2))).build();
+        aiResponses.put(fingerprinter.fingerprint(testRequest), staleResponse);
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru")))
+                .thenReturn(CompletableFuture.failedFuture(new AIServiceException("Ollama недоступна")));
+
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAIStreaming(testRequest, token -> { }, partial -> { });
+
+        // Проверка
+        assertThat(response).isSameAs(staleResponse);
+        assertThat(aiResponses.get(fingerprinter.fingerprint(testRequest), InsightResponse.class)).isSameAs(staleResponse);
+        assertThat(meterRegistry.get("ai.cache.insights.refresh").tag("outcome", "failure").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    public void testAnalyzeWithAIStreaming_HardExpiredEntryRegenerated() {
+        // Подготовка - ответ старше жесткого TTL
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        aiResponses.put(fingerprinter.fingerprint(testRequest), InsightResponse.builder()
+                .summary("Expired").timestamp(Instant.now().minus(Duration.ofDays(2))).build());
+        when(ollamaClient.streamRequest(anyString(), eq("ru"), any()))
+                .thenReturn(AIResponse.ofContent("РЕЗЮМЕ:\nНовый ответ."));
+
+        // Выполнение
+        InsightResponse response = aiService.analyzeWithAIStreaming(testRequest, token -> { }, partial -> { });
+
+        // Проверка
+        assertThat(response.getSummary()).isEqualTo("Новый ответ.");
+        assertThat(meterRegistry.get("ai.cache.insights.expired").counter().count()).isEqualTo(1.0);
+        verify(ollamaClient, never()).sendRequestAsync(anyString(), anyString());
+    }
+
+    @Test
+    public void testAnalyzeBatch_CacheHitsDeduplicationAndMisses() throws Exception {
+        // Подготовка - одна тема в кэше, одна тема повторяется дважды с разным регистром
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        InsightResponse cachedResponse = InsightResponse.builder().topic("Kafka").summary("Cached").build();
+        aiResponses.put(fingerprinter.fingerprint(InsightRequest.builder().topic("Kafka").language("ru").build()),
+                cachedResponse);
+        
+        AIResponse answer = AIResponse.ofContent("РЕЗЮМЕ:\nОтвет модели");
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), eq("ru"))).thenReturn(CompletableFuture.completedFuture(answer));
+        
+        List<InsightRequest> requests = List.of(
+                InsightRequest.builder().topic("Spring Boot").language("ru").build(),
+                InsightRequest.builder().topic("Kafka").language("ru").build(),
+                InsightRequest.builder().topic("spring  boot").language("ru").build(),
+                InsightRequest.builder().topic(" ").language("ru").build());
+        List<InsightBatchItem> items = new ArrayList<>();
+        
+        // Выполнение
+        aiService.analyzeBatch(requests, items::add).get(5, TimeUnit.SECONDS);
+        
+        // Проверка - результат из кэша отправлен первым, модель вызвана один раз для двух одинаковых тем
+        assertThat(items).hasSize(4);
+        assertThat(items).extracting(InsightBatchItem::getIndex).containsExactlyInAnyOrder(0, 1, 2, 3);
+        assertThat(items.get(0).getStatus()).isEqualTo(InsightBatchItem.STATUS_ERROR);
+        assertThat(items.get(1).getIndex()).isEqualTo(1);
+        assertThat(items.get(1).isCached()).isTrue();
+        assertThat(items.get(1).getInsight()).isSameAs(cachedResponse);
+        assertThat(items.subList(2, 4)).allSatisfy(item -> {
+            assertThat(item.getStatus()).isEqualTo(InsightBatchItem.STATUS_OK);
+            assertThat(item.isCached()).isFalse();
+            assertThat(item.getInsight().getSummary()).isEqualTo("Ответ модели");
+        });
+        verify(ollamaClient, times(1)).sendRequestAsync(anyString(), eq("ru"));
+        assertThat(aiResponses.get(fingerprinter.fingerprint(requests.get(0)), InsightResponse.class)).isNotNull();
+    }
+    
+    @Test
+    public void testAnalyzeBatch_InvalidItemsRejectedPerIndex() throws Exception {
+        // Подготовка - ограничения InsightRequest, которые /ai/analyze проверяет через @Valid
+        List<InsightRequest> requests = List.of(
+                InsightRequest.builder().topic("K".repeat(201)).language("ru").build(),
+                InsightRequest.builder().topic("Kafka").text("x".repeat(5001)).build(),
+                InsightRequest.builder().topic("Kafka").language("'; DROP TABLE").build(),
+                InsightRequest.builder().topic("Kafka").maxResults(500).build());
+        List<InsightBatchItem> items = new ArrayList<>();
+        
+        // Выполнение
+        aiService.analyzeBatch(requests, items::add).get(5, TimeUnit.SECONDS);
+        
+        // Проверка - каждый элемент отклонен со своей ошибкой, модель и кэш не используются
+        assertThat(items).extracting(InsightBatchItem::getIndex).containsExactly(0, 1, 2, 3);
+        assertThat(items).allSatisfy(item -> assertThat(item.getStatus()).isEqualTo(InsightBatchItem.STATUS_ERROR));
+        assertThat(items.get(0).getError()).contains("от 2 до 200 символов");
+        assertThat(items.get(1).getError()).contains("5000 символов");
+        assertThat(items.get(2).getError()).contains("Поддерживаемые языки");
+        assertThat(items.get(3).getError()).contains("50");
+        verifyNoInteractions(ollamaClient);
+    }
+    
     @Test
     public void testGetCachedAnalysis_CacheHit() {
         // Подготовка - моделируем кэш
-        ConcurrentMapCache insightCache = new ConcurrentMapCache("insightCache");
-        when(cacheManager.getCache("insightCache")).thenReturn(insightCache);
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
         
         // Создаем результат для кэширования
         InsightResponse cachedResponse = new InsightResponse();
         cachedResponse.setSummary("Cached summary for Spring Boot");
         
         // Ключ кэша должен соответствовать тому, что используется в сервисе
-        String cacheKey = "Spring Boot:ru";
-        insightCache.put(cacheKey, cachedResponse);
+        String cacheKey = fingerprinter.fingerprint(testRequest);
+        aiResponses.put(cacheKey, cachedResponse);
         
         // Выполнение
         InsightResponse result = aiService.getCachedAnalysis(testRequest);
@@ -329,11 +789,23 @@ public class AIServiceImplTest {
         verify(ollamaClient, never()).sendRequest(anyString(), anyString());
     }
     
+    @Test
+    public void testGetCachedAnalysis_InFlightRequestNotCountedAsCoalesced() {
+        // Подготовка - ответ модели еще не получен
+        when(ollamaClient.isAvailable()).thenReturn(true);
+        when(ollamaClient.sendRequestAsync(anyString(), anyString())).thenReturn(new CompletableFuture<>());
+        aiService.analyzeWithAIAsync(testRequest);
+        
+        // Выполнение и проверка - выполняющийся запрос не ожидается и не считается объединенным
+        assertThat(aiService.getCachedAnalysis(testRequest)).isNull();
+        assertThat(meterRegistry.get("ai.requests.coalesced").counter().count()).isZero();
+    }
+    
     @Test
     public void testGetCachedAnalysis_CacheMiss() {
         // Подготовка - моделируем пустой кэш
-        ConcurrentMapCache insightCache = new ConcurrentMapCache("insightCache");
-        when(cacheManager.getCache("insightCache")).thenReturn(insightCache);
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
         
         // Выполнение и проверка
         assertThat(aiService.getCachedAnalysis(testRequest)).isNull();
@@ -341,4 +813,38 @@ public class AIServiceImplTest {
         // Проверяем, что API не вызывался при промахе кэша
         verify(ollamaClient, never()).sendRequest(anyString(), anyString());
     }
+    
+    @Test
+    public void testGetInsight_ReturnsCachedResponseByFingerprint() {
+        // Подготовка
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        InsightResponse cachedResponse = InsightResponse.builder()
+                .summary("Cached").timestamp(Instant.now().minus(Duration.ofHours(2))).build();
+        aiResponses.put(fingerprinter.fingerprint(testRequest), cachedResponse);
+        
+        // Выполнение
+        InsightResponse result = aiService.getInsight(fingerprinter.fingerprint(testRequest));
+        
+        // Проверка - ответ после мягкого TTL отдается без фонового обновления
+        assertThat(result).isSameAs(cachedResponse);
+        assertThat(aiService.getInsight("00000000000000000000000000000000_ru")).isNull();
+        verifyNoInteractions(ollamaClient);
+    }
+    
+    @Test
+    public void testGetInsight_HardExpiredEntryRemoved() {
+        // Подготовка
+        ConcurrentMapCache aiResponses = new ConcurrentMapCache("aiResponses");
+        when(cacheManager.getCache("aiResponses")).thenReturn(aiResponses);
+        String fingerprint = fingerprinter.fingerprint(testRequest);
+        aiResponses.put(fingerprint, InsightResponse.builder()
+                .summary("Expired").timestamp(Instant.now().minus(Duration.ofDays(2))).build());
+        
+        // Выполнение и проверка
+        assertThat(aiService.getInsight(fingerprint)).isNull();
+        assertThat(aiResponses.get(fingerprint)).isNull();
+        assertThat(meterRegistry.get("ai.cache.insights.expired").counter().count()).isEqualTo(1.0);
+        verifyNoInteractions(ollamaClient);
+    }
 }
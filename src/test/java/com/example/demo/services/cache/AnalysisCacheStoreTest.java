@@ -0,0 +1,197 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты для AnalysisCacheStore и DurableCache на H2 со схемой из миграций Flyway
+ */
+@JdbcTest
+public class AnalysisCacheStoreTest {
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private AnalysisCacheStore store;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        store = newStore(meterRegistry);
+    }
+
+    @Test
+    public void testSave_WrittenOnFlushOnly() {
+        // Подготовка
+        store.save("Spring Boot_ru", response("Spring Boot"));
+        store.save("Kafka_en", response("Kafka"));
+        store.save("Redis_de", response("Redis"));
+
+        // Проверка - до сброса запись в базу не выполнялась, но ответ уже доступен
+        assertThat(rowCount()).isZero();
+        assertThat(store.find("Kafka_en")).map(InsightResponse::getSummary).contains("О Kafka");
+
+        // Выполнение
+        store.flush();
+
+        // Проверка
+        assertThat(rowCount()).isEqualTo(3);
+        assertThat(jdbcTemplate.queryForObject(
+                "SELECT language FROM ai_analysis_cache WHERE cache_key = 'Redis_de'", String.class)).isEqualTo("de");
+        assertThat(store.pendingWriteCount()).isZero();
+    }
+
+    @Test
+    public void testRepeatedSaves_CoalescedIntoLatest() {
+        // Подготовка
+        store.save("Spring Boot_ru", response("Spring Boot"));
+        store.flush();
+
+        // Выполнение
+        InsightResponse updated = response("Spring Boot");
+        updated.setSummary("Обновленное резюме");
+        store.save("Spring Boot_ru", response("Spring Boot"));
+        store.save("Spring Boot_ru", updated);
+        store.flush();
+
+        // Проверка
+        assertThat(rowCount()).isEqualTo(1);
+        assertThat(freshStore().find("Spring Boot_ru")).map(InsightResponse::getSummary).contains("Обновленное резюме");
+    }
+
+    @Test
+    public void testHits_CoalescedIntoOneAccessCountUpdate() {
+        // Подготовка
+        store.save("Spring Boot_ru", response("Spring Boot"));
+        store.flush();
+
+        // Выполнение
+        for (int i = 0; i < 5; i++) {
+            assertThat(store.find("Spring Boot_ru")).isPresent();
+        }
+        assertThat(accessCount()).isEqualTo(1);
+        store.flush();
+
+        // Проверка
+        assertThat(accessCount()).isEqualTo(6);
+        assertThat(meterRegistry.counter("ai.cache.store.requests", "result", "hit").count()).isEqualTo(5);
+    }
+
+    @Test
+    public void testDelete_RemovesRowOnFlush() {
+        // Подготовка
+        store.save("Spring Boot_ru", response("Spring Boot"));
+        store.flush();
+
+        // Выполнение
+        store.delete("Spring Boot_ru");
+
+        // Проверка
+        assertThat(store.find("Spring Boot_ru")).isEmpty();
+        store.flush();
+        assertThat(rowCount()).isZero();
+    }
+
+    @Test
+    public void testExpiredRows_NotReturnedAndCleanedUp() {
+        // Подготовка
+        store.save("Spring Boot_ru", response("Spring Boot"));
+        store.flush();
+        jdbcTemplate.update("UPDATE ai_analysis_cache SET last_accessed_at = ?",
+                Timestamp.from(Instant.now().minus(Duration.ofDays(31))));
+
+        // Выполнение и проверка
+        assertThat(store.find("Spring Boot_ru")).isEmpty();
+        store.cleanup();
+        assertThat(rowCount()).isZero();
+    }
+
+    @Test
+    public void testUpsertSql_OnConflictForPostgresAndMergeOtherwise() {
+        // Выполнение и проверка - MERGE в PostgreSQL доступен только с версии 15
+        assertThat(AnalysisCacheStore.upsertSql("PostgreSQL"))
+                .startsWith("INSERT INTO ai_analysis_cache")
+                .contains("ON CONFLICT (cache_key) DO UPDATE")
+                .doesNotContain("MERGE");
+        assertThat(AnalysisCacheStore.upsertSql("H2")).startsWith("MERGE INTO ai_analysis_cache");
+    }
+
+    @Test
+    public void testDurableCache_FallsBackToStoreAndRefillsFastTier() {
+        // Подготовка - ответ сохранен до перезапуска, быстрый уровень пуст
+        store.save("Spring Boot_ru", response("Spring Boot"));
+        store.save("Kafka_ru", response("Kafka"));
+        store.flush();
+        ConcurrentMapCache memory = new ConcurrentMapCache("aiResponses");
+        DurableCache cache = new DurableCache(memory, freshStore());
+
+        // Выполнение
+        InsightResponse single = cache.get("Spring Boot_ru", InsightResponse.class);
+        Map<String, InsightResponse> batch = cache.getAll(List.of("Spring Boot_ru", "Kafka_ru", "Redis_ru"),
+                InsightResponse.class, keys -> {
+                    Map<String, InsightResponse> found = new HashMap<>();
+                    keys.forEach(key -> {
+                        InsightResponse value = memory.get(key, InsightResponse.class);
+                        if (value != null) {
+                            found.put(key, value);
+                        }
+                    });
+                    return found;
+                });
+
+        // Проверка
+        assertThat(single.getTopic()).isEqualTo("Spring Boot");
+        assertThat(batch).containsOnlyKeys("Spring Boot_ru", "Kafka_ru");
+        assertThat(memory.get("Kafka_ru", InsightResponse.class)).isNotNull();
+    }
+
+    /**
+     * Хранилище после перезапуска: без накопленных в памяти записей
+     */
+    private AnalysisCacheStore freshStore() {
+        return newStore(new SimpleMeterRegistry());
+    }
+
+    private AnalysisCacheStore newStore(SimpleMeterRegistry registry) {
+        AnalysisCacheStore analysisCacheStore = new AnalysisCacheStore(jdbcTemplate,
+                new ObjectMapper().findAndRegisterModules(), registry);
+        ReflectionTestUtils.setField(analysisCacheStore, "enabled", true);
+        ReflectionTestUtils.setField(analysisCacheStore, "batchSize", 2);
+        ReflectionTestUtils.setField(analysisCacheStore, "maxPending", 100);
+        ReflectionTestUtils.setField(analysisCacheStore, "ttl", Duration.ofDays(30));
+        return analysisCacheStore;
+    }
+
+    private int rowCount() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ai_analysis_cache", Integer.class);
+    }
+
+    private int accessCount() {
+        return jdbcTemplate.queryForObject(
+                "SELECT access_count FROM ai_analysis_cache WHERE cache_key = 'Spring Boot_ru'", Integer.class);
+    }
+
+    private static InsightResponse response(String topic) {
+        return new InsightResponse(topic, "О " + topic, List.of("Концепция"),
+                List.of(new Recommendation("Документация", "https://example.com")), Instant.now());
+    }
+}
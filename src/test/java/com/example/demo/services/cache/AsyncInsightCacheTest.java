@@ -0,0 +1,139 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.exceptions.AIServiceException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты для AsyncInsightCache
+ */
+public class AsyncInsightCacheTest {
+
+    private ConcurrentMapCache backing;
+    private SimpleMeterRegistry meterRegistry;
+    private AsyncInsightCache cache;
+
+    @BeforeEach
+    public void setup() {
+        backing = new ConcurrentMapCache("aiResponses");
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new AsyncInsightCache(() -> backing, meterRegistry);
+    }
+
+    @Test
+    public void testGet_ConcurrentCallersShareOneLoadAndValueIsStored() {
+        // Подготовка
+        CompletableFuture<InsightResponse> load = new CompletableFuture<>();
+        AtomicInteger loads = new AtomicInteger();
+
+        // Выполнение - второй запрос приходит, пока первая загрузка выполняется
+        CompletableFuture<InsightResponse> first = cache.get("kafka_ru", key -> {
+            loads.incrementAndGet();
+            return load;
+        });
+        CompletableFuture<InsightResponse> second = cache.get("kafka_ru", key -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(response("Другой ответ"));
+        });
+        assertThat(meterRegistry.get("ai.requests.in_flight").gauge().value()).isEqualTo(1.0);
+        InsightResponse value = response("Kafka");
+        load.complete(value);
+
+        // Проверка
+        assertThat(loads).hasValue(1);
+        assertThat(first.join()).isSameAs(value);
+        assertThat(second.join()).isSameAs(value);
+        assertThat(backing.get("kafka_ru", InsightResponse.class)).isSameAs(value);
+        assertThat(cache.getIfPresent("kafka_ru")).isCompletedWithValue(value);
+        assertThat(meterRegistry.get("ai.requests.coalesced").counter().count()).isEqualTo(1.0);
+        assertThat(meterRegistry.get("ai.requests.in_flight").gauge().value()).isZero();
+    }
+
+    @Test
+    public void testGetIfPresent_PeekAtInFlightLoadNotCountedAsCoalesced() {
+        // Подготовка
+        CompletableFuture<InsightResponse> load = new CompletableFuture<>();
+        cache.get("kafka_ru", key -> load);
+
+        // Выполнение
+        CompletableFuture<InsightResponse> peek = cache.getIfPresent("kafka_ru");
+
+        // Проверка - только просмотр выполняющейся загрузки, без ожидания ее результата
+        assertThat(peek).isNotDone();
+        assertThat(meterRegistry.get("ai.requests.coalesced").counter().count()).isZero();
+    }
+
+    @Test
+    public void testGet_FailedLoadNotStored() {
+        // Выполнение
+        CompletableFuture<InsightResponse> failed = cache.get("kafka_ru",
+                key -> CompletableFuture.failedFuture(new AIServiceException("Модель не ответила")));
+
+        // Проверка - ошибка передана вызывающему, следующий запрос загружает значение заново
+        assertThat(failed).isCompletedExceptionally();
+        assertThat(cache.getIfPresent("kafka_ru")).isNull();
+        InsightResponse value = response("Kafka");
+        assertThat(cache.get("kafka_ru", key -> CompletableFuture.completedFuture(value)).join()).isSameAs(value);
+    }
+
+    @Test
+    public void testRefresh_ServesOldValueUntilLoadedAndRunsOncePerKey() {
+        // Подготовка
+        InsightResponse old = response("Старый ответ");
+        backing.put("kafka_ru", old);
+        CompletableFuture<InsightResponse> reload = new CompletableFuture<>();
+
+        // Выполнение
+        CompletableFuture<InsightResponse> refresh = cache.refresh("kafka_ru", key -> reload);
+        CompletableFuture<InsightResponse> duplicate = cache.refresh("kafka_ru",
+                key -> CompletableFuture.completedFuture(response("Лишний ответ")));
+
+        // Проверка - пока обновление выполняется, читается прежнее значение
+        assertThat(duplicate).isNull();
+        assertThat(cache.getIfPresent("kafka_ru")).isCompletedWithValue(old);
+        InsightResponse fresh = response("Новый ответ");
+        reload.complete(fresh);
+        assertThat(refresh.join()).isSameAs(fresh);
+        assertThat(backing.get("kafka_ru", InsightResponse.class)).isSameAs(fresh);
+    }
+
+    @Test
+    public void testRefresh_FailureKeepsOldValue() {
+        // Подготовка
+        InsightResponse old = response("Старый ответ");
+        backing.put("kafka_ru", old);
+
+        // Выполнение
+        CompletableFuture<InsightResponse> refresh = cache.refresh("kafka_ru",
+                key -> CompletableFuture.failedFuture(new AIServiceException("Модель не ответила")));
+
+        // Проверка
+        assertThat(refresh).isCompletedExceptionally();
+        assertThat(backing.get("kafka_ru", InsightResponse.class)).isSameAs(old);
+        assertThat(cache.refresh("kafka_ru", key -> CompletableFuture.completedFuture(old))).isNotNull();
+    }
+
+    @Test
+    public void testMissingBackingCache_LoadsWithoutStoring() {
+        // Подготовка - кэш aiResponses не настроен
+        AsyncInsightCache uncached = new AsyncInsightCache(() -> null, new SimpleMeterRegistry());
+        InsightResponse value = response("Kafka");
+
+        // Выполнение и проверка
+        assertThat(uncached.get("kafka_ru", key -> CompletableFuture.completedFuture(value)).join()).isSameAs(value);
+        assertThat(uncached.getIfPresent("kafka_ru")).isNull();
+    }
+
+    private static InsightResponse response(String summary) {
+        return InsightResponse.builder().topic("Kafka").summary(summary).timestamp(Instant.now()).build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.demo.services.cache;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Тесты для CacheInvalidationBus
+ */
+public class CacheInvalidationBusTest {
+
+    private static final String CHANNEL = "ai-insight:cache-invalidation";
+
+    private StringRedisTemplate redisTemplate;
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    public void setup() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        objectMapper = new ObjectMapper();
+    }
+
+    @Test
+    public void testPublishedInvalidation_AppliedOnOtherNodeOnly() {
+        // Подготовка
+        CacheInvalidationBus sender = new CacheInvalidationBus(redisTemplate, objectMapper, CHANNEL);
+        CacheInvalidationBus receiver = new CacheInvalidationBus(redisTemplate, objectMapper, CHANNEL);
+        List<String> senderEvictions = new ArrayList<>();
+        List<String> receiverEvictions = new ArrayList<>();
+        sender.setLocalEvictor((cache, key) -> senderEvictions.add(cache + ":" + key));
+        receiver.setLocalEvictor((cache, key) -> receiverEvictions.add(cache + ":" + key));
+
+        // Выполнение
+        sender.publish("aiResponses", "Spring Boot_ru");
+        sender.publish("aiResponses", null);
+        ArgumentCaptor<String> payload = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate, times(2)).convertAndSend(eq(CHANNEL), payload.capture());
+        for (String body : payload.getAllValues()) {
+            sender.onMessage(message(body), null);
+            receiver.onMessage(message(body), null);
+        }
+
+        // Проверка - узел пропускает собственные сообщения
+        assertThat(senderEvictions).isEmpty();
+        assertThat(receiverEvictions).containsExactly("aiResponses:Spring Boot_ru", "aiResponses:null");
+    }
+
+    @Test
+    public void testPublishFailure_DoesNotPropagate() {
+        // Подготовка
+        CacheInvalidationBus bus = new CacheInvalidationBus(redisTemplate, objectMapper, CHANNEL);
+        doThrow(new IllegalStateException("Redis недоступен")).when(redisTemplate).convertAndSend(eq(CHANNEL), anyString());
+
+        // Выполнение и проверка - исключение не выбрасывается
+        assertThatCode(() -> bus.publish("aiResponses", "Spring Boot_ru")).doesNotThrowAnyException();
+    }
+
+    @Test
+    public void testMalformedMessage_Ignored() {
+        // Подготовка
+        CacheInvalidationBus bus = new CacheInvalidationBus(redisTemplate, objectMapper, CHANNEL);
+        List<String> evictions = new ArrayList<>();
+        bus.setLocalEvictor((cache, key) -> evictions.add(cache + ":" + key));
+
+        // Выполнение
+        bus.onMessage(message("not json"), null);
+
+        // Проверка
+        assertThat(evictions).isEmpty();
+    }
+
+    private static Message message(String body) {
+        return new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тесты для CompactRedisSerializer
+ */
+public class CompactRedisSerializerTest {
+
+    private final CompactRedisSerializer<InsightResponse> serializer =
+            new CompactRedisSerializer<>(InsightResponse.class, 512, true);
+
+    @Test
+    public void testSmallValue_StoredUncompressedWithHeader() {
+        // Подготовка
+        InsightResponse response = response(1);
+
+        // Выполнение
+        byte[] bytes = serializer.serialize(response);
+
+        // Проверка
+        assertThat(bytes.length).isLessThan(512);
+        assertThat(bytes[0]).isEqualTo(CompactRedisSerializer.MAGIC);
+        assertThat(bytes[1]).isEqualTo(CompactRedisSerializer.VERSION);
+        assertThat(bytes[2]).isZero();
+        assertThat(serializer.deserialize(bytes)).isEqualTo(response);
+    }
+
+    @Test
+    public void testLargeValue_CompressedAndSmallerThanJson() {
+        // Подготовка - типичный ответ модели из нескольких КБ кириллического текста
+        InsightResponse response = response(20);
+
+        // Выполнение
+        byte[] compact = serializer.serialize(response);
+        byte[] json = CompactRedisSerializer.jsonSerializer().serialize(response);
+
+        // Проверка
+        assertThat(compact[2] & CompactRedisSerializer.FLAG_LZ4).isEqualTo(CompactRedisSerializer.FLAG_LZ4);
+        assertThat(compact.length).isLessThan(json.length / 2);
+        assertThat(serializer.deserialize(compact)).isEqualTo(response);
+    }
+
+    @Test
+    public void testLegacyJsonValue_ReadDuringRollingUpgrade() {
+        // Подготовка - запись узла, который еще пишет JSON
+        InsightResponse response = response(3);
+        byte[] json = new CompactRedisSerializer<>(InsightResponse.class, 512, false).serialize(response);
+
+        // Выполнение и проверка
+        assertThat(json[0]).isEqualTo((byte) '{');
+        assertThat(serializer.deserialize(json)).isEqualTo(response);
+    }
+
+    @Test
+    public void testNewerFormatVersion_Rejected() {
+        // Подготовка
+        byte[] bytes = serializer.serialize(response(1));
+        bytes[1] = CompactRedisSerializer.VERSION + 1;
+
+        // Выполнение и проверка
+        assertThatThrownBy(() -> serializer.deserialize(bytes)).isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    public void testCorruptedCompressedValue_Rejected() {
+        // Подготовка - длина в заголовке больше фактической и поврежденный блок LZ4
+        byte[] compact = serializer.serialize(response(20));
+        byte[] wrongLength = compact.clone();
+        ByteBuffer.wrap(wrongLength, 3, Integer.BYTES).putInt(Integer.MAX_VALUE);
+        byte[] truncated = Arrays.copyOf(compact, compact.length / 2);
+
+        // Выполнение и проверка
+        assertThatThrownBy(() -> serializer.deserialize(wrongLength)).isInstanceOf(SerializationException.class);
+        assertThatThrownBy(() -> serializer.deserialize(truncated)).isInstanceOf(SerializationException.class);
+    }
+
+    @Test
+    public void testEmptyBytes_ReadAsNull() {
+        assertThat(serializer.deserialize(new byte[0])).isNull();
+        assertThat(serializer.deserialize(null)).isNull();
+    }
+
+    private static InsightResponse response(int concepts) {
+        List<String> keyConcepts = new ArrayList<>();
+        for (int i = 1; i <= concepts; i++) {
+            keyConcepts.add(i + ". Автоконфигурация настраивает бины в зависимости от классов в classpath");
+        }
+        return new InsightResponse("Spring Boot", "Spring Boot - фреймворк для быстрого создания приложений на Java.",
+                keyConcepts, List.of(new Recommendation("Документация", "https://spring.io/projects/spring-boot")),
+                Instant.now().truncatedTo(ChronoUnit.MILLIS));
+    }
+}
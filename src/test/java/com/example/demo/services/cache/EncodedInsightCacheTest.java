@@ -0,0 +1,133 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты для EncodedInsightCache
+ */
+public class EncodedInsightCacheTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .findAndRegisterModules()
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void testGet_SameInstanceEncodedOnce() throws IOException {
+        // Подготовка
+        EncodedInsightCache cache = cache(true, 1024);
+        InsightResponse response = response("Kafka - распределенный брокер сообщений. ".repeat(40));
+
+        // Выполнение
+        EncodedInsightCache.EncodedInsight first = cache.get(response);
+        EncodedInsightCache.EncodedInsight second = cache.get(response);
+
+        // Проверка - байты совпадают с сериализацией ObjectMapper и переиспользуются
+        assertThat(second).isSameAs(first);
+        assertThat(first.json()).isEqualTo(objectMapper.writeValueAsBytes(response));
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(first.gzip()))) {
+            assertThat(in.readAllBytes()).isEqualTo(first.json());
+        }
+        assertThat(first.gzip().length).isLessThan(first.json().length);
+        assertThat(meterRegistry.get("ai.cache.encoded.requests").tag("result", "hit").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    public void testGet_EqualButDistinctInstancesEncodedSeparately() {
+        // Подготовка - равные по equals ответы, но разные экземпляры
+        EncodedInsightCache cache = cache(true, 1024);
+        Instant timestamp = Instant.now();
+        InsightResponse first = response("Kafka", timestamp);
+        InsightResponse second = response("Kafka", timestamp);
+
+        // Выполнение и проверка
+        assertThat(first).isEqualTo(second);
+        assertThat(cache.get(first)).isNotSameAs(cache.get(second));
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void testGet_StrongEtagDependsOnContent() {
+        // Подготовка
+        EncodedInsightCache cache = cache(true, 1024);
+        Instant timestamp = Instant.now();
+
+        // Выполнение
+        String etag = cache.get(response("Kafka", timestamp)).etag();
+
+        // Проверка - равное содержимое дает тот же ETag, измененное - другой
+        assertThat(etag).matches("\"[0-9a-f]{32}\"");
+        assertThat(cache.get(response("Kafka", timestamp)).gzipEtag()).isEqualTo(etag.replaceAll("\"$", "-gzip\""));
+        assertThat(cache.get(response("Kafka", timestamp)).etag()).isEqualTo(etag);
+        assertThat(cache.get(response("Kafka Streams", timestamp)).etag()).isNotEqualTo(etag);
+        assertThat(cache(false, 1024).encode(response("Kafka", timestamp)).etag()).isEqualTo(etag);
+    }
+
+    @Test
+    public void testGet_SmallResponseNotCompressed() {
+        // Выполнение
+        EncodedInsightCache.EncodedInsight encoded = cache(true, 1024).get(response("Kafka"));
+
+        // Проверка
+        assertThat(encoded.json()).isNotEmpty();
+        assertThat(encoded.gzip()).isNull();
+    }
+
+    @Test
+    public void testGet_DisabledReturnsNull() {
+        // Выполнение и проверка
+        assertThat(cache(false, 1024).get(response("Kafka"))).isNull();
+    }
+
+    @Test
+    public void testValidator_RememberedAtPutReusedForOtherInstances() {
+        // Подготовка
+        EncodedInsightCache cache = cache(true, 1024);
+        Instant timestamp = Instant.now();
+        InsightResponse stored = response("Kafka - распределенный брокер сообщений. ".repeat(40), timestamp);
+        EncodedInsightCache.InsightValidator remembered = cache.remember("key_ru", stored);
+
+        // Выполнение - другой экземпляр того же ответа (например, прочитанный из L2) и обновленный ответ
+        EncodedInsightCache.InsightValidator sameEntry = cache.validator("key_ru",
+                response("Kafka - распределенный брокер сообщений. ".repeat(40), timestamp));
+        EncodedInsightCache.InsightValidator refreshed = cache.validator("key_ru",
+                response("Kafka - обновленный ответ", timestamp.plusSeconds(60)));
+
+        // Проверка - валидатор того же ответа не пересчитывается, обновленного - пересчитывается
+        assertThat(sameEntry).isSameAs(remembered);
+        assertThat(remembered.etag()).isEqualTo(cache.get(stored).etag());
+        assertThat(remembered.compressible()).isTrue();
+        assertThat(remembered.etag(true)).isEqualTo(cache.get(stored).gzipEtag());
+        assertThat(refreshed.etag()).isNotEqualTo(remembered.etag());
+        assertThat(refreshed.etag(true)).isEqualTo(refreshed.etag());
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    private EncodedInsightCache cache(boolean enabled, int gzipMinSize) {
+        return new EncodedInsightCache(objectMapper, meterRegistry, enabled, DataSize.ofMegabytes(1), gzipMinSize, 1000);
+    }
+
+    private static InsightResponse response(String summary) {
+        return response(summary, Instant.now());
+    }
+
+    private static InsightResponse response(String summary, Instant timestamp) {
+        return new InsightResponse("Kafka", summary, List.of("Топики", "Партиции"),
+                List.of(new Recommendation("Документация", "https://kafka.apache.org")), timestamp);
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тесты для InsightCacheSnapshot и SnapshotRestoringCache
+ */
+public class InsightCacheSnapshotTest {
+
+    @TempDir
+    Path directory;
+
+    private Path path;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setup() {
+        path = directory.resolve("insight-cache.snapshot");
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @Test
+    public void testRestartRestoresEntriesLazilyOnMiss() {
+        // Подготовка - первый запуск заполняет кэш и пишет снимок при остановке
+        Node first = new Node();
+        InsightResponse kafka = response("Kafka");
+        first.cache.put("kafka_ru", kafka);
+        first.cache.put("redis_ru", response("Redis"));
+        first.snapshot.shutdown();
+
+        // Выполнение - второй запуск с пустым кэшем
+        Node second = new Node();
+
+        // Проверка - записи не загружаются при запуске, а читаются по ключу при промахе
+        assertThat(second.local.estimatedSize()).isZero();
+        assertThat(second.cache.get("kafka_ru", InsightResponse.class)).isEqualTo(kafka);
+        assertThat(second.local.estimatedSize()).isEqualTo(1);
+        assertThat(second.cache.get("unknown_ru")).isNull();
+        assertThat(meterRegistry.get("ai.cache.snapshot.requests").tag("result", "hit").counter().count())
+                .isEqualTo(1.0);
+        assertThat(meterRegistry.get("ai.cache.snapshot.hit_ratio").gauge().value()).isEqualTo(0.5);
+        assertThat(meterRegistry.get("ai.cache.snapshot.age").gauge().value()).isNotNaN();
+        assertThat(meterRegistry.get("ai.cache.snapshot.restore").timer().count()).isEqualTo(2);
+    }
+
+    @Test
+    public void testEvictedKeyAndClearedCacheAreNotRestored() {
+        // Подготовка
+        Node first = new Node();
+        first.cache.put("kafka_ru", response("Старый ответ"));
+        first.cache.put("redis_ru", response("Redis"));
+        first.snapshot.shutdown();
+        Node second = new Node();
+
+        // Выполнение
+        second.cache.evict("kafka_ru");
+        second.cache.clear();
+
+        // Проверка - удаленный ключ и, после очистки кэша, весь снимок больше не используются
+        assertThat(second.cache.get("kafka_ru")).isNull();
+        assertThat(second.cache.get("redis_ru")).isNull();
+    }
+
+    @Test
+    public void testNextSnapshotKeepsEntriesNotYetRestored() throws IOException {
+        // Подготовка
+        Node first = new Node();
+        first.cache.put("kafka_ru", response("Kafka"));
+        first.cache.put("redis_ru", response("Redis"));
+        first.snapshot.shutdown();
+        Node second = new Node();
+        second.cache.put("kafka_ru", response("Новый ответ"));
+
+        // Выполнение
+        second.snapshot.snapshot();
+
+        // Проверка
+        InsightSnapshotFile file = InsightSnapshotFile.open(path);
+        assertThat(file.size()).isEqualTo(2);
+        Node third = new Node();
+        assertThat(third.cache.get("kafka_ru", InsightResponse.class).getSummary()).isEqualTo("Новый ответ");
+        assertThat(third.cache.get("redis_ru", InsightResponse.class).getSummary()).isEqualTo("Redis");
+    }
+
+    @Test
+    public void testCarryOverSkipsExpiredEntriesAndIsCapped() throws IOException {
+        // Подготовка - прежний снимок свежий, но один из ответов в нем старше жесткого TTL
+        CompactRedisSerializer<InsightResponse> serializer =
+                new CompactRedisSerializer<>(InsightResponse.class, 512, true);
+        Instant now = Instant.now();
+        byte[] newest = serializer.serialize(response("Kafka", now.minusSeconds(60)));
+        byte[] older = serializer.serialize(response("Redis", now.minus(Duration.ofHours(1))));
+        byte[] expired = serializer.serialize(response("Postgres", now.minus(Duration.ofDays(2))));
+        InsightSnapshotFile.write(path, Map.of("kafka_ru", newest, "redis_ru", older, "postgres_ru", expired), now);
+        Node node = new Node(DataSize.ofBytes(newest.length + older.length - 1));
+
+        // Выполнение
+        node.snapshot.snapshot();
+
+        // Проверка - устаревший ответ не перенесен, из остальных в лимит поместился только более новый
+        InsightSnapshotFile file = InsightSnapshotFile.open(path);
+        assertThat(file.contains("postgres_ru")).isFalse();
+        assertThat(file.contains("redis_ru")).isFalse();
+        assertThat(file.contains("kafka_ru")).isTrue();
+    }
+
+    @Test
+    public void testExpiredSnapshotIsIgnored() throws IOException {
+        // Подготовка
+        CompactRedisSerializer<InsightResponse> serializer =
+                new CompactRedisSerializer<>(InsightResponse.class, 512, true);
+        InsightSnapshotFile.write(path, Map.of("kafka_ru", serializer.serialize(response("Kafka"))),
+                Instant.now().minus(Duration.ofDays(2)));
+
+        // Выполнение
+        Node node = new Node();
+
+        // Проверка
+        assertThat(node.cache.get("kafka_ru")).isNull();
+    }
+
+    /**
+     * Узел приложения: локальный кэш aiResponses со снимком в общем файле
+     */
+    private class Node {
+
+        final com.github.benmanes.caffeine.cache.Cache<Object, Object> local =
+                Caffeine.newBuilder().maximumSize(100).build();
+        final InsightCacheSnapshot snapshot;
+        final org.springframework.cache.Cache cache;
+
+        Node() {
+            this(DataSize.ofMegabytes(16));
+        }
+
+        @SuppressWarnings("unchecked")
+        Node(DataSize maxCarryOver) {
+            CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+            cacheManager.registerCustomCache("aiResponses", local);
+            ObjectProvider<CacheManager> provider = mock(ObjectProvider.class);
+            when(provider.getIfAvailable()).thenReturn(cacheManager);
+            snapshot = new InsightCacheSnapshot(provider, meterRegistry, true, path, Duration.ofHours(24),
+                    Duration.ofHours(24), maxCarryOver);
+            snapshot.restore();
+            cache = new SnapshotRestoringCache(cacheManager.getCache("aiResponses"), snapshot);
+        }
+    }
+
+    private static InsightResponse response(String summary) {
+        return response(summary, Instant.now());
+    }
+
+    private static InsightResponse response(String summary, Instant timestamp) {
+        return InsightResponse.builder().topic("Kafka").summary(summary).timestamp(timestamp).build();
+    }
+}
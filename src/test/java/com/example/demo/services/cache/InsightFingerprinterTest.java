@@ -0,0 +1,86 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightRequest;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты для InsightFingerprinter
+ */
+public class InsightFingerprinterTest {
+
+    private final InsightFingerprinter fingerprinter = new InsightFingerprinter("llama2:latest", "1");
+
+    @Test
+    public void testEquivalentTopics_SameFingerprint() {
+        // Подготовка - регистр, пробелы (включая неразрывный), полноширинные символы и ß
+        InsightRequest plain = request("Spring Boot Straße", "ru");
+        InsightRequest variant = request("  ＳＰＲＩＮＧ boot\t STRASSE ", "RU");
+
+        // Выполнение и проверка
+        assertThat(fingerprinter.fingerprint(variant)).isEqualTo(fingerprinter.fingerprint(plain));
+        assertThat(fingerprinter.fingerprint(plain)).matches("[0-9a-f]{32}_ru");
+    }
+
+    @Test
+    public void testDifferentParameters_DifferentFingerprints() {
+        // Подготовка
+        InsightRequest base = request("Spring Boot", "ru");
+        InsightRequest withText = request("Spring Boot", "ru");
+        withText.setText("Автоконфигурация и стартеры");
+        InsightRequest withMaxResults = request("Spring Boot", "ru");
+        withMaxResults.setMaxResults(5);
+
+        // Выполнение
+        String fingerprint = fingerprinter.fingerprint(base);
+
+        // Проверка - текст, maxResults, язык, модель и версия промпта входят в отпечаток
+        assertThat(fingerprinter.fingerprint(withText)).isNotEqualTo(fingerprint);
+        assertThat(fingerprinter.fingerprint(withMaxResults)).isNotEqualTo(fingerprint);
+        assertThat(fingerprinter.fingerprint(request("Spring Boot", "en"))).isNotEqualTo(fingerprint);
+        assertThat(new InsightFingerprinter("mistral", "1").fingerprint(base)).isNotEqualTo(fingerprint);
+        assertThat(new InsightFingerprinter("llama2:latest", "2").fingerprint(base)).isNotEqualTo(fingerprint);
+    }
+
+    @Test
+    public void testMissingLanguageAndBlankText_Normalized() {
+        // Подготовка
+        InsightRequest withoutLanguage = request("Kafka", null);
+        InsightRequest blankLanguageAndText = request("Kafka", " ");
+        blankLanguageAndText.setText("   ");
+
+        // Выполнение и проверка
+        assertThat(fingerprinter.fingerprint(withoutLanguage)).endsWith("_" + InsightFingerprinter.NO_LANGUAGE);
+        assertThat(fingerprinter.fingerprint(blankLanguageAndText)).isEqualTo(fingerprinter.fingerprint(withoutLanguage));
+    }
+
+    @Test
+    public void testSemanticScope_SeparatesModelsAndPromptVersions() {
+        // Подготовка
+        InsightRequest request = request("Kafka", "ru");
+
+        // Выполнение
+        String scope = fingerprinter.semanticScope(request);
+
+        // Проверка
+        assertThat(scope).matches("ru\\.[0-9a-f]{8}");
+        assertThat(fingerprinter.semanticScope(request("Redis", "ru"))).isEqualTo(scope);
+        assertThat(new InsightFingerprinter("mistral", "1").semanticScope(request)).isNotEqualTo(scope);
+        assertThat(new InsightFingerprinter("llama2:latest", "2").semanticScope(request)).isNotEqualTo(scope);
+    }
+
+    @Test
+    public void testMurmur3_MatchesReferenceVectors() {
+        // Проверка - значения эталонной реализации MurmurHash3_x64_128 с seed 0
+        assertThat(InsightFingerprinter.murmur3x64_128(new byte[0], 0)).containsExactly(0L, 0L);
+        assertThat(InsightFingerprinter.murmur3x64_128("hello".getBytes(StandardCharsets.UTF_8), 0))
+                .containsExactly(0xcbd8a7b341bd9b02L, 0x5b1e906a48ae1d19L);
+    }
+
+    private static InsightRequest request(String topic, String language) {
+        return InsightRequest.builder().topic(topic).language(language).build();
+    }
+}
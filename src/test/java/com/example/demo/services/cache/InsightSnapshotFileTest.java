@@ -0,0 +1,83 @@
+package com.example.demo.services.cache;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Тесты для InsightSnapshotFile
+ */
+public class InsightSnapshotFileTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testWriteAndOpen_FindsEveryKeyByIndex() throws IOException {
+        // Подготовка
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        for (int i = 0; i < 500; i++) {
+            entries.put("key" + i + "_ru", ("Ответ " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        Instant createdAt = Instant.ofEpochMilli(1_700_000_000_000L);
+        Path path = directory.resolve("insights.snapshot");
+
+        // Выполнение
+        InsightSnapshotFile.write(path, entries, createdAt);
+        InsightSnapshotFile file = InsightSnapshotFile.open(path);
+
+        // Проверка
+        assertThat(file.size()).isEqualTo(500);
+        assertThat(file.createdAt()).isEqualTo(createdAt);
+        entries.forEach((key, value) -> assertThat(file.find(key)).isEqualTo(value));
+        assertThat(file.find("missing_ru")).isNull();
+        assertThat(file.contains("key7_ru")).isTrue();
+        assertThat(file.contains("key7_en")).isFalse();
+        assertThat(directory.toFile().list()).containsExactly("insights.snapshot");
+    }
+
+    @Test
+    public void testForEach_ReadsRecordsInWriteOrder() throws IOException {
+        // Подготовка
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("b_ru", new byte[]{1, 2});
+        entries.put("a_en", new byte[0]);
+        Path path = directory.resolve("insights.snapshot");
+        InsightSnapshotFile.write(path, entries, Instant.now());
+        Map<String, byte[]> read = new LinkedHashMap<>();
+
+        // Выполнение
+        InsightSnapshotFile.open(path).forEach(read::put);
+
+        // Проверка
+        assertThat(read).containsOnlyKeys("b_ru", "a_en");
+        assertThat(read.keySet()).containsExactly("b_ru", "a_en");
+        assertThat(read.get("b_ru")).containsExactly(1, 2);
+    }
+
+    @Test
+    public void testOpen_RejectsForeignOrTruncatedFile() throws IOException {
+        // Подготовка
+        Path foreign = directory.resolve("foreign.snapshot");
+        Files.writeString(foreign, "{\"not\": \"a snapshot\", \"padding\": \"...........\"}");
+        Path truncated = directory.resolve("truncated.snapshot");
+        InsightSnapshotFile.write(truncated, Map.of("key_ru", new byte[100]), Instant.now());
+        byte[] content = Files.readAllBytes(truncated);
+        Files.write(truncated, Arrays.copyOf(content, content.length - 8));
+
+        // Выполнение и проверка
+        assertThatThrownBy(() -> InsightSnapshotFile.open(foreign)).isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> InsightSnapshotFile.open(truncated)).isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты для InsightWeigher
+ */
+public class InsightWeigherTest {
+
+    private final InsightWeigher weigher = new InsightWeigher();
+
+    @Test
+    public void testWeigh_GrowsWithResponseContent() {
+        // Подготовка
+        InsightResponse small = response("Kafka", "Брокер сообщений", 1);
+        InsightResponse large = response("Kafka", "Брокер сообщений ".repeat(100), 10);
+
+        // Выполнение
+        int smallWeight = weigher.weigh("key_ru", small);
+        int largeWeight = weigher.weigh("key_ru", large);
+
+        // Проверка - оценка не меньше объема символов резюме
+        assertThat(smallWeight).isPositive();
+        assertThat(largeWeight).isGreaterThan(smallWeight + 2 * 1700);
+    }
+
+    @Test
+    public void testWeigh_NonLatinTextCountsTwoBytesPerChar() {
+        // Выполнение
+        long latin = InsightWeigher.weigh("a".repeat(100));
+        long cyrillic = InsightWeigher.weigh("ж".repeat(100));
+
+        // Проверка
+        assertThat(cyrillic - latin).isEqualTo(100);
+        assertThat(InsightWeigher.weigh((String) null)).isZero();
+    }
+
+    @Test
+    public void testWeigh_OtherValuesUseDefaultEstimate() {
+        // Выполнение и проверка
+        assertThat(weigher.weigh("user", new Object())).isGreaterThanOrEqualTo(InsightWeigher.DEFAULT_WEIGHT);
+        assertThat(weigher.weigh("key", new InsightResponse())).isLessThan(InsightWeigher.DEFAULT_WEIGHT);
+    }
+
+    private static InsightResponse response(String topic, String summary, int items) {
+        List<String> concepts = IntStream.range(0, items)
+                .mapToObj(i -> "Концепция " + i).toList();
+        List<Recommendation> recommendations = IntStream.range(0, items)
+                .mapToObj(i -> new Recommendation("Источник " + i, "https://example.com/" + i)).toList();
+        return new InsightResponse(topic, summary, concepts, recommendations, Instant.now());
+    }
+}
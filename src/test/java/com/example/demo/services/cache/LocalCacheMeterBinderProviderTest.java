@@ -0,0 +1,78 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты для LocalCacheMeterBinderProvider
+ */
+public class LocalCacheMeterBinderProviderTest {
+
+    private final LocalCacheMeterBinderProvider provider = new LocalCacheMeterBinderProvider();
+
+    @Test
+    public void testWeightedCache_ReportsWeightAndEvictions() {
+        // Подготовка - кэш вмещает около двух ответов
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> local = Caffeine.newBuilder()
+                .maximumWeight(1500)
+                .weigher(new InsightWeigher())
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        TwoLevelCache cache = new TwoLevelCache("aiResponses", local, new ConcurrentMapCache("aiResponses"),
+                (name, key) -> { }, new SimpleMeterRegistry());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        // Выполнение
+        MeterBinder binder = provider.getMeterBinder(cache, Tags.of("cache.manager", "cacheManager"));
+        binder.bindTo(registry);
+        for (int i = 0; i < 10; i++) {
+            local.put("key" + i, response("Ответ " + i));
+        }
+        local.cleanUp();
+
+        // Проверка
+        assertThat(registry.get("ai.cache.local.weight").tag("cache", "aiResponses").gauge().value())
+                .isPositive()
+                .isLessThanOrEqualTo(1500);
+        assertThat(registry.get("cache.evictions").tag("cache", "aiResponses").functionCounter().count())
+                .isPositive();
+        assertThat(registry.get("cache.eviction.weight").tag("cache", "aiResponses").functionCounter().count())
+                .isPositive();
+    }
+
+    @Test
+    public void testSizeBoundedCache_HasNoWeightGauge() {
+        // Подготовка
+        CaffeineCache cache = new CaffeineCache("userProfiles",
+                Caffeine.newBuilder().maximumSize(10).recordStats().build());
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+        // Выполнение
+        provider.getMeterBinder(cache, Tags.empty()).bindTo(registry);
+
+        // Проверка
+        assertThat(registry.find("cache.gets").tag("cache", "userProfiles").meters()).isNotEmpty();
+        assertThat(registry.find("ai.cache.local.weight").meters()).isEmpty();
+    }
+
+    @Test
+    public void testNonCaffeineCache_NotBound() {
+        // Выполнение и проверка
+        assertThat(provider.getMeterBinder(new ConcurrentMapCache("insightCache"), Tags.empty())).isNull();
+    }
+
+    private static InsightResponse response(String summary) {
+        return InsightResponse.builder().topic("Kafka").summary(summary.repeat(20)).timestamp(Instant.now()).build();
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.demo.services.cache;
+
+import com.example.demo.exceptions.AIServiceException;
+import com.example.demo.services.client.AIProvider;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Тесты для SemanticInsightCache
+ */
+public class SemanticInsightCacheTest {
+
+    @TempDir
+    Path snapshotDir;
+
+    private AIProvider aiProvider;
+    private SimpleMeterRegistry meterRegistry;
+    private SemanticInsightCache cache;
+
+    @BeforeEach
+    public void setup() {
+        aiProvider = mock(AIProvider.class);
+        meterRegistry = new SimpleMeterRegistry();
+        cache = newCache();
+
+        // Эмбеддинги тем: первые две почти совпадают, третья близка умеренно, четвертая не похожа
+        embed("spring boot caching", 1f, 0.1f, 0f);
+        embed("caching in spring boot", 1f, 0.12f, 0.01f);
+        embed("spring boot testing", 1f, 0.5f, 0.2f);
+        embed("борщ", 0f, 0f, 1f);
+    }
+
+    @Test
+    public void testProbe_SimilarTopicHits() {
+        // Подготовка
+        remember("Spring Boot caching", "ru", "Spring Boot caching_ru");
+
+        // Выполнение - регистр и пробелы темы не влияют на эмбеддинг
+        SemanticInsightCache.Probe probe = cache.probe("  Caching in   Spring Boot", "ru").join();
+
+        // Проверка
+        assertThat(probe.isHit()).isTrue();
+        assertThat(probe.cacheKey()).isEqualTo("Spring Boot caching_ru");
+        assertThat(probe.similarity()).isGreaterThan(0.99);
+        assertThat(count(SemanticInsightCache.RESULT_HIT)).isEqualTo(1);
+        verify(aiProvider).embedAsync("caching in spring boot");
+    }
+
+    @Test
+    public void testProbe_ModeratelySimilarTopicIsNearHit() {
+        // Подготовка
+        remember("spring boot caching", "ru", "spring boot caching_ru");
+
+        // Выполнение
+        SemanticInsightCache.Probe probe = cache.probe("spring boot testing", "ru").join();
+
+        // Проверка
+        assertThat(probe.isHit()).isFalse();
+        assertThat(probe.similarity()).isBetween(0.85, 0.92);
+        assertThat(count(SemanticInsightCache.RESULT_NEAR_HIT)).isEqualTo(1);
+    }
+
+    @Test
+    public void testProbe_DifferentTopicOrLanguageMisses() {
+        // Подготовка
+        remember("spring boot caching", "ru", "spring boot caching_ru");
+
+        // Выполнение
+        SemanticInsightCache.Probe otherTopic = cache.probe("борщ", "ru").join();
+        SemanticInsightCache.Probe otherLanguage = cache.probe("caching in spring boot", "en").join();
+
+        // Проверка
+        assertThat(otherTopic.isHit()).isFalse();
+        assertThat(otherLanguage.isHit()).isFalse();
+        assertThat(otherLanguage.vector()).isNotNull();
+        // третий промах - проба перед запоминанием в пустом индексе
+        assertThat(count(SemanticInsightCache.RESULT_MISS)).isEqualTo(3);
+    }
+
+    @Test
+    public void testProbe_EmbeddingFailureIsMissWithoutVector() {
+        // Подготовка
+        when(aiProvider.embedAsync("kafka")).thenReturn(
+                CompletableFuture.failedFuture(new AIServiceException("model not found")));
+
+        // Выполнение
+        SemanticInsightCache.Probe probe = cache.probe("Kafka", "ru").join();
+
+        // Проверка - без вектора тема не будет запомнена
+        assertThat(probe.isHit()).isFalse();
+        assertThat(probe.vector()).isNull();
+        cache.remember(probe, "Kafka_ru");
+        assertThat(cache.size()).isZero();
+        assertThat(count(SemanticInsightCache.RESULT_ERROR)).isEqualTo(1);
+    }
+
+    @Test
+    public void testForget_RemovesTopic() {
+        // Подготовка
+        remember("spring boot caching", "ru", "spring boot caching_ru");
+        SemanticInsightCache.Probe hit = cache.probe("caching in spring boot", "ru").join();
+
+        // Выполнение
+        cache.forget(hit);
+
+        // Проверка
+        assertThat(cache.size()).isZero();
+        assertThat(cache.probe("caching in spring boot", "ru").join().isHit()).isFalse();
+    }
+
+    @Test
+    public void testSnapshot_RestoredAfterRestart() {
+        // Подготовка
+        remember("spring boot caching", "ru", "spring boot caching_ru");
+        remember("борщ", "ru", "борщ_ru");
+
+        // Выполнение
+        cache.shutdown();
+        SemanticInsightCache restarted = newCache();
+        restarted.restore();
+
+        // Проверка
+        assertThat(restarted.size()).isEqualTo(2);
+        assertThat(restarted.probe("caching in spring boot", "ru").join().cacheKey()).isEqualTo("spring boot caching_ru");
+        assertThat(snapshotDir.resolve("nomic-embed-text").resolve("ru.hnsw")).exists();
+    }
+
+    private SemanticInsightCache newCache() {
+        SemanticInsightCache semanticCache = new SemanticInsightCache(aiProvider, meterRegistry);
+        ReflectionTestUtils.setField(semanticCache, "enabled", true);
+        ReflectionTestUtils.setField(semanticCache, "threshold", 0.92);
+        ReflectionTestUtils.setField(semanticCache, "nearHitThreshold", 0.85);
+        ReflectionTestUtils.setField(semanticCache, "maxEntries", 100);
+        ReflectionTestUtils.setField(semanticCache, "timeout", Duration.ofSeconds(1));
+        ReflectionTestUtils.setField(semanticCache, "snapshotDir", snapshotDir.toString());
+        ReflectionTestUtils.setField(semanticCache, "embeddingModel", "nomic-embed-text");
+        return semanticCache;
+    }
+
+    private void embed(String topic, float... vector) {
+        when(aiProvider.embedAsync(topic)).thenReturn(CompletableFuture.completedFuture(vector));
+    }
+
+    private void remember(String topic, String language, String cacheKey) {
+        cache.remember(cache.probe(topic, language).join(), cacheKey);
+    }
+
+    private double count(String result) {
+        return meterRegistry.counter("ai.cache.semantic", "result", result).count();
+    }
+}
@@ -0,0 +1,165 @@
+package com.example.demo.services.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты для TwoLevelCache и TwoLevelCacheManager
+ */
+public class TwoLevelCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ConcurrentMapCacheManager remoteCacheManager;
+    private List<String> published;
+    private TwoLevelCacheManager cacheManager;
+    private TwoLevelCache cache;
+    private ConcurrentMapCache remote;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        remoteCacheManager = new ConcurrentMapCacheManager("aiResponses");
+        published = new ArrayList<>();
+        cacheManager = new TwoLevelCacheManager(remoteCacheManager,
+                name -> Caffeine.newBuilder().maximumSize(100).build(),
+                (cacheName, key) -> published.add(cacheName + ":" + key), meterRegistry);
+        cache = (TwoLevelCache) cacheManager.getCache("aiResponses");
+        remote = (ConcurrentMapCache) remoteCacheManager.getCache("aiResponses");
+    }
+
+    @Test
+    public void testGet_RemoteHitIsPromotedToLocal() {
+        // Подготовка - значение записано другим узлом прямо в L2
+        remote.put("Spring Boot_ru", "ответ");
+
+        // Выполнение
+        String first = cache.get("Spring Boot_ru", String.class);
+        remote.evict("Spring Boot_ru");
+        String second = cache.get("Spring Boot_ru", String.class);
+
+        // Проверка - второе чтение обслужено L1 без обращения к L2
+        assertThat(first).isEqualTo("ответ");
+        assertThat(second).isEqualTo("ответ");
+        assertThat(requests("l1", "hit")).isEqualTo(1);
+        assertThat(requests("l1", "miss")).isEqualTo(1);
+        assertThat(requests("l2", "hit")).isEqualTo(1);
+        assertThat(hitRatio("l1")).isEqualTo(0.5);
+        assertThat(hitRatio("l2")).isEqualTo(1.0);
+    }
+
+    @Test
+    public void testGet_UnreadableRemoteValueIsMiss() {
+        // Подготовка - значение в L2 записано форматом, который этот узел не читает
+        TwoLevelCache unreadable = new TwoLevelCache("aiResponses", Caffeine.newBuilder().build(),
+                new ConcurrentMapCache("aiResponses") {
+                    @Override
+                    public ValueWrapper get(Object key) {
+                        throw new SerializationException("Неизвестная версия формата значения кэша: 2");
+                    }
+                }, (cacheName, key) -> { }, new SimpleMeterRegistry());
+
+        // Выполнение и проверка
+        assertThat(unreadable.get("Spring Boot_ru")).isNull();
+    }
+
+    @Test
+    public void testGet_MissInBothTiers() {
+        // Выполнение
+        Object result = cache.get("Kafka_ru");
+
+        // Проверка
+        assertThat(result).isNull();
+        assertThat(requests("l1", "miss")).isEqualTo(1);
+        assertThat(requests("l2", "miss")).isEqualTo(1);
+    }
+
+    @Test
+    public void testPut_WritesThroughAndPublishesInvalidation() {
+        // Выполнение
+        cache.put("Spring Boot_ru", "ответ");
+
+        // Проверка
+        assertThat(remote.get("Spring Boot_ru", String.class)).isEqualTo("ответ");
+        assertThat(cache.get("Spring Boot_ru", String.class)).isEqualTo("ответ");
+        assertThat(requests("l1", "hit")).isEqualTo(1);
+        assertThat(published).containsExactly("aiResponses:Spring Boot_ru");
+    }
+
+    @Test
+    public void testEvictLocal_RemoteInvalidationDropsOnlyLocalCopy() {
+        // Подготовка
+        cache.put("Spring Boot_ru", "старый ответ");
+        // другой узел обновил значение в L2
+        remote.put("Spring Boot_ru", "новый ответ");
+
+        // Выполнение
+        cacheManager.evictLocal("aiResponses", "Spring Boot_ru");
+
+        // Проверка - следующее чтение получает новое значение из L2
+        assertThat(cache.get("Spring Boot_ru", String.class)).isEqualTo("новый ответ");
+        assertThat(published).hasSize(1);
+    }
+
+    @Test
+    public void testClear_PublishesInvalidationOfWholeCache() {
+        // Подготовка
+        cache.put("Spring Boot_ru", "ответ");
+
+        // Выполнение
+        cache.clear();
+
+        // Проверка
+        assertThat(cache.get("Spring Boot_ru")).isNull();
+        assertThat(published).containsExactly("aiResponses:Spring Boot_ru", "aiResponses:null");
+    }
+
+    @Test
+    public void testGetAll_ReadsMissingKeysFromRemoteInOneCall() {
+        // Подготовка
+        cache.put("Spring Boot_ru", "ответ 1");
+        remote.put("Kafka_ru", "ответ 2");
+        List<List<String>> remoteCalls = new ArrayList<>();
+
+        // Выполнение
+        Map<String, String> result = cache.getAll(List.of("Spring Boot_ru", "Kafka_ru", "Redis_ru"), String.class,
+                missing -> {
+                    remoteCalls.add(List.copyOf(missing));
+                    return Map.of("Kafka_ru", (String) remote.get("Kafka_ru").get());
+                });
+
+        // Проверка
+        assertThat(result).containsOnly(Map.entry("Spring Boot_ru", "ответ 1"), Map.entry("Kafka_ru", "ответ 2"));
+        assertThat(remoteCalls).containsExactly(List.of("Kafka_ru", "Redis_ru"));
+        assertThat(requests("l1", "hit")).isEqualTo(1);
+        assertThat(requests("l2", "hit")).isEqualTo(1);
+        assertThat(requests("l2", "miss")).isEqualTo(1);
+        assertThat(cache.get("Kafka_ru", String.class)).isEqualTo("ответ 2");
+        assertThat(requests("l1", "hit")).isEqualTo(2);
+    }
+
+    @Test
+    public void testGetCache_UnknownRemoteCacheIsNull() {
+        // Выполнение и проверка
+        assertThat(cacheManager.getCache("userProfiles")).isNull();
+        assertThat(cacheManager.getCache("aiResponses")).isSameAs(cache);
+    }
+
+    private double requests(String tier, String result) {
+        return meterRegistry.counter("ai.cache.requests", "cache", "aiResponses", "tier", tier, "result", result).count();
+    }
+
+    private double hitRatio(String tier) {
+        return meterRegistry.get("ai.cache.hit_ratio").tags("cache", "aiResponses", "tier", tier).gauge().value();
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.demo.services.client;
+
+import com.example.demo.exceptions.AIOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.net.http.HttpTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class AdaptiveConcurrencyLimiterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private MutableClock clock;
+
+    @BeforeEach
+    public void setup() {
+        meterRegistry = new SimpleMeterRegistry();
+        clock = new MutableClock();
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit, int maxQueueSize, Duration maxQueueWait) {
+        FairShareScheduler scheduler = new FairShareScheduler(new String[]{"ADMIN:4", "USER:1"}, 1, 100, 3, 20);
+        return new AdaptiveConcurrencyLimiter(meterRegistry, scheduler, initialLimit, 1, 16, 2.0, 0.5,
+                maxQueueSize, maxQueueWait, clock);
+    }
+
+    @Test
+    public void testStableLatencyUnderFullLoad_LimitGrows() {
+        // Подготовка
+        AdaptiveConcurrencyLimiter limiter = limiter(2, 10, Duration.ofSeconds(1));
+
+        // Выполнение - запросы выполняются парами с постоянной задержкой 1 с
+        for (int i = 0; i < 20; i++) {
+            AdaptiveConcurrencyLimiter.Permit first = limiter.acquire().join();
+            AdaptiveConcurrencyLimiter.Permit second = limiter.acquire().join();
+            clock.advance(1000);
+            first.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+            second.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+        }
+
+        // Проверка
+        assertThat(limiter.getLimit()).isGreaterThan(2);
+        assertThat(limiter.getInFlight()).isZero();
+        assertThat(meterRegistry.get("ollama.limiter.limit").gauge().value()).isEqualTo(limiter.getLimit());
+    }
+
+    @Test
+    public void testLatencySpikeOrTimeout_LimitDecreases() {
+        // Подготовка
+        AdaptiveConcurrencyLimiter limiter = limiter(8, 10, Duration.ofSeconds(1));
+        AdaptiveConcurrencyLimiter.Permit warmUp = limiter.acquire().join();
+        clock.advance(1000);
+        warmUp.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+
+        // Выполнение - задержка выросла в 5 раз
+        AdaptiveConcurrencyLimiter.Permit slow = limiter.acquire().join();
+        clock.advance(5000);
+        slow.release(AdaptiveConcurrencyLimiter.Outcome.SUCCESS);
+
+        // Проверка
+        assertThat(limiter.getLimit()).isEqualTo(4);
+
+        // Выполнение - таймаут запроса
+        AdaptiveConcurrencyLimiter.Permit timedOut = limiter.acquire().join();
+        timedOut.release(AdaptiveConcurrencyLimiter.classify(new HttpTimeoutException("request timed out")));
+
+        // Проверка
+        assertThat(limiter.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    public void testLimitReached_WaiterGetsSlotOnRelease() {
+        // Подготовка
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 10, Duration.ofSeconds(5));
+        AdaptiveConcurrencyLimiter.Permit busy = limiter.acquire().join();
+
+        // Выполнение
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiting = limiter.acquire();
+
+        // Проверка
+        assertThat(waiting).isNotDone();
+        assertThat(limiter.getQueueDepth()).isEqualTo(1);
+        assertThat(meterRegistry.get("ollama.limiter.queue_depth").gauge().value()).isEqualTo(1.0);
+
+        busy.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED);
+
+        assertThat(waiting).isCompleted();
+        assertThat(limiter.getQueueDepth()).isZero();
+        assertThat(limiter.getInFlight()).isEqualTo(1);
+    }
+
+    @Test
+    public void testQueueFull_RejectedWithTooManyRequests() {
+        // Подготовка
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 1, Duration.ofSeconds(5));
+        limiter.acquire().join();
+        limiter.acquire();
+
+        // Выполнение
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> rejected = limiter.acquire();
+
+        // Проверка
+        assertThatThrownBy(rejected::join)
+                .hasCauseInstanceOf(AIOverloadedException.class)
+                .satisfies(e -> assertThat(((AIOverloadedException) e.getCause()).getStatus())
+                        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+        assertThat(meterRegistry.get("ollama.limiter.rejections").tag("reason", "queue_full").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    public void testQueueWaitExpired_RejectedWithServiceUnavailable() {
+        // Подготовка
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 10, Duration.ofMillis(50));
+        limiter.acquire().join();
+
+        // Выполнение
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> waiting = limiter.acquire();
+
+        // Проверка
+        assertThatThrownBy(() -> waiting.get(5, TimeUnit.SECONDS))
+                .isInstanceOf(ExecutionException.class)
+                .satisfies(e -> assertThat(((AIOverloadedException) e.getCause()).getStatus())
+                        .isEqualTo(HttpStatus.SERVICE_UNAVAILABLE));
+        assertThat(limiter.getQueueDepth()).isZero();
+        assertThat(meterRegistry.get("ollama.limiter.rejections").tag("reason", "queue_timeout").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    public void testExecuteAsync_ReleasesSlotWhenCallCompletes() {
+        // Подготовка
+        AdaptiveConcurrencyLimiter limiter = limiter(1, 10, Duration.ofSeconds(5));
+        CompletableFuture<String> response = new CompletableFuture<>();
+
+        // Выполнение
+        CompletableFuture<String> first = limiter.executeAsync(() -> response);
+        CompletableFuture<String> second = limiter.executeAsync(() -> CompletableFuture.completedFuture("second"));
+
+        // Проверка - второй вызов ждет освобождения слота
+        assertThat(second).isNotDone();
+        response.complete("first");
+        assertThat(first.join()).isEqualTo("first");
+        assertThat(second.join()).isEqualTo("second");
+        assertThat(limiter.getInFlight()).isZero();
+    }
+
+    /**
+     * Часы, управляемые тестом
+     */
+    private static class MutableClock extends Clock {
+        private long millis = 1_000_000L;
+
+        void advance(long deltaMillis) {
+            millis += deltaMillis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneId.of("UTC");
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
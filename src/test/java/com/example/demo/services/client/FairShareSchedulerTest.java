@@ -0,0 +1,174 @@
+package com.example.demo.services.client;
+
+import com.example.demo.exceptions.AIOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.WebAuthenticationDetails;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FairShareSchedulerTest {
+
+    private final FairShareScheduler scheduler = new FairShareScheduler(new String[]{"ADMIN:4", "USER:1", "ANONYMOUS:1"}, 1, 5, 2, 3);
+
+    @AfterEach
+    public void clearContext() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    public void testCurrentClient_UsesJwtUsernameAndHighestPriorityClass() {
+        // Подготовка
+        SecurityContextHolder.getContext().setAuthentication(new UsernamePasswordAuthenticationToken(
+                "alice", null, List.of(new SimpleGrantedAuthority("ROLE_USER"), new SimpleGrantedAuthority("ROLE_ADMIN"))));
+
+        // Выполнение
+        FairShareScheduler.Client client = scheduler.currentClient();
+
+        // Проверка
+        assertThat(client.name()).isEqualTo("alice");
+        assertThat(client.priorityClass()).isEqualTo("ADMIN");
+        assertThat(client.weight()).isEqualTo(4);
+    }
+
+    @Test
+    public void testCurrentClient_NoAuthentication_Anonymous() {
+        // Выполнение
+        FairShareScheduler.Client client = scheduler.currentClient();
+
+        // Проверка
+        assertThat(client.name()).isEqualTo(FairShareScheduler.ANONYMOUS);
+        assertThat(client.priorityClass()).isEqualTo(FairShareScheduler.ANONYMOUS_CLASS);
+        assertThat(client.weight()).isEqualTo(1);
+    }
+
+    @Test
+    public void testCurrentClient_AnonymousKeyedByRemoteAddress() {
+        // Подготовка - анонимная аутентификация публичного эндпоинта с адресом клиента
+        AnonymousAuthenticationToken authentication = new AnonymousAuthenticationToken("key", "anonymousUser",
+                AuthorityUtils.createAuthorityList("ROLE_ANONYMOUS"));
+        authentication.setDetails(new WebAuthenticationDetails("203.0.113.7", null));
+        SecurityContextHolder.getContext().setAuthentication(authentication);
+
+        // Выполнение
+        FairShareScheduler.Client client = scheduler.currentClient();
+
+        // Проверка
+        assertThat(client.name()).isEqualTo("anonymous:203.0.113.7");
+        assertThat(client.priorityClass()).isEqualTo(FairShareScheduler.ANONYMOUS_CLASS);
+    }
+
+    @Test
+    public void testAnonymousClients_SeparateQueuesWithSharedCap() {
+        // Подготовка
+        FairShareScheduler.Client first = new FairShareScheduler.Client("anonymous:203.0.113.7", "ANONYMOUS", 1);
+        FairShareScheduler.Client second = new FairShareScheduler.Client("anonymous:203.0.113.8", "ANONYMOUS", 1);
+        FairShareScheduler.Client user = new FairShareScheduler.Client("alice", "USER", 1);
+
+        // Выполнение и проверка - очередь клиента ограничена 2 запросами, все анонимные очереди - 3
+        assertThat(scheduler.offer(first, new CompletableFuture<>(), 0)).isTrue();
+        assertThat(scheduler.offer(first, new CompletableFuture<>(), 0)).isTrue();
+        assertThat(scheduler.offer(first, new CompletableFuture<>(), 0)).isFalse();
+        assertThat(scheduler.offer(second, new CompletableFuture<>(), 0)).isTrue();
+        assertThat(scheduler.offer(second, new CompletableFuture<>(), 0)).isFalse();
+        assertThat(scheduler.offer(user, new CompletableFuture<>(), 0)).isTrue();
+
+        // Освободившееся место в общем пределе снова доступно анонимным клиентам
+        scheduler.poll();
+        assertThat(scheduler.offer(second, new CompletableFuture<>(), 0)).isTrue();
+        assertThat(scheduler.size()).isEqualTo(4);
+    }
+
+    @Test
+    public void testHeavyUserBacklog_LateLightUserServedNext() {
+        // Подготовка - тяжелый пользователь поставил в очередь 5 запросов раньше легкого
+        FairShareScheduler.Client heavy = new FairShareScheduler.Client("heavy", "USER", 1);
+        FairShareScheduler.Client light = new FairShareScheduler.Client("light", "USER", 1);
+        List<CompletableFuture<AdaptiveConcurrencyLimiter.Permit>> heavyRequests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<AdaptiveConcurrencyLimiter.Permit> future = new CompletableFuture<>();
+            scheduler.offer(heavy, future, 0);
+            heavyRequests.add(future);
+        }
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> lightRequest = new CompletableFuture<>();
+        scheduler.offer(light, lightRequest, 0);
+
+        // Выполнение и проверка - легкий пользователь обслуживается вторым, а не шестым
+        assertThat(scheduler.poll()).isSameAs(heavyRequests.get(0));
+        assertThat(scheduler.poll()).isSameAs(lightRequest);
+        assertThat(scheduler.poll()).isSameAs(heavyRequests.get(1));
+        assertThat(scheduler.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void testWeightedClasses_AdminGetsProportionalShare() {
+        // Подготовка
+        FairShareScheduler.Client admin = new FairShareScheduler.Client("admin", "ADMIN", 4);
+        FairShareScheduler.Client user = new FairShareScheduler.Client("user", "USER", 1);
+        List<CompletableFuture<AdaptiveConcurrencyLimiter.Permit>> adminRequests = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            CompletableFuture<AdaptiveConcurrencyLimiter.Permit> userFuture = new CompletableFuture<>();
+            scheduler.offer(user, userFuture, 0);
+            CompletableFuture<AdaptiveConcurrencyLimiter.Permit> adminFuture = new CompletableFuture<>();
+            scheduler.offer(admin, adminFuture, 0);
+            adminRequests.add(adminFuture);
+        }
+
+        // Выполнение - первые 5 выданных слотов
+        int adminServed = 0;
+        for (int i = 0; i < 5; i++) {
+            if (adminRequests.contains(scheduler.poll())) {
+                adminServed++;
+            }
+        }
+
+        // Проверка - администратор с весом 4 получает 4 слота из 5
+        assertThat(adminServed).isEqualTo(4);
+    }
+
+    @Test
+    public void testUserQueueFull_LimiterRejectsWithTooManyRequests() {
+        // Подготовка
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(meterRegistry, scheduler, 1, 1, 1,
+                2.0, 0.9, 100, Duration.ofSeconds(5), Clock.systemUTC());
+        FairShareScheduler.Client heavy = new FairShareScheduler.Client("heavy", "USER", 1);
+        limiter.acquire(heavy).join();
+        for (int i = 0; i < 5; i++) {
+            limiter.acquire(heavy);
+        }
+
+        // Выполнение
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> rejected = limiter.acquire(heavy);
+        CompletableFuture<AdaptiveConcurrencyLimiter.Permit> otherUser =
+                limiter.acquire(new FairShareScheduler.Client("other", "USER", 1));
+
+        // Проверка - очередь другого пользователя не затронута
+        assertThatThrownBy(rejected::join)
+                .hasCauseInstanceOf(AIOverloadedException.class)
+                .satisfies(e -> assertThat(((AIOverloadedException) e.getCause()).getStatus())
+                        .isEqualTo(HttpStatus.TOO_MANY_REQUESTS));
+        assertThat(otherUser).isNotDone();
+        assertThat(meterRegistry.get("ollama.limiter.rejections").tag("reason", "user_queue_full").counter().count())
+                .isEqualTo(1.0);
+
+        List<FairShareScheduler.QueueStats> stats = limiter.getQueueStats();
+        assertThat(stats).extracting(FairShareScheduler.QueueStats::user).containsExactly("heavy", "other");
+        assertThat(stats.get(0).depth()).isEqualTo(5);
+        assertThat(stats.get(0).estimatedWaitMillis()).isGreaterThan(stats.get(1).estimatedWaitMillis());
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.demo.services.client;
+
+import com.example.demo.exceptions.AIServiceException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Тесты OllamaClient с эмуляцией Ollama API через MockWebServer
+ */
+public class OllamaClientTest {
+
+    private MockWebServer mockWebServer;
+    
+    private PoolingAsyncClientConnectionManager connectionManager;
+    
+    private CloseableHttpAsyncClient httpClient;
+    
+    private OllamaClient ollamaClient;
+    
+    @BeforeEach
+    public void setup() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        connectionManager = PoolingAsyncClientConnectionManagerBuilder.create().build();
+        httpClient = HttpAsyncClients.custom().setConnectionManager(connectionManager).build();
+        httpClient.start();
+        
+        ollamaClient = new OllamaClient(new RestTemplate(), httpClient, new ObjectMapper(),
+                mock(OllamaHealthProber.class), mock(OllamaModelWarmer.class));
+        ReflectionTestUtils.setField(ollamaClient, "apiUrl", mockWebServer.url("/api/chat").toString());
+        ReflectionTestUtils.setField(ollamaClient, "baseUrl", mockWebServer.url("/").toString());
+        ReflectionTestUtils.setField(ollamaClient, "model", "llama2-test");
+        ReflectionTestUtils.setField(ollamaClient, "apiTimeout", 5000L);
+        ReflectionTestUtils.setField(ollamaClient, "keepAlive", "10m");
+        ReflectionTestUtils.setField(ollamaClient, "outputMode", "structured");
+        ReflectionTestUtils.setField(ollamaClient, "embeddingModel", "nomic-embed-text");
+    }
+    
+    @AfterEach
+    public void tearDown() throws IOException {
+        mockWebServer.shutdown();
+        httpClient.close();
+    }
+    
+    @Test
+    public void testStreamRequest_RelaysNdjsonChunks() throws InterruptedException {
+        // Подготовка - поток NDJSON в формате /api/chat
+        String ndjson = """
+                {"model":"llama2-test","message":{"role":"assistant","content":"РЕЗЮМЕ:\\n"},"done":false}
+                {"model":"llama2-test","message":{"role":"assistant","content":"Spring Boot"},"done":false}
+                {"model":"llama2-test","message":{"role":"assistant","content":""},"done":true,"eval_count":42}
+                """;
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/x-ndjson")
+                .setBody(ndjson));
+        
+        List<String> tokens = new ArrayList<>();
+        
+        // Выполнение
+        AIResponse response = ollamaClient.streamRequest("Spring Boot", "ru", tokens::add);
+        
+        // Проверка
+        assertThat(tokens).containsExactly("РЕЗЮМЕ:\n", "Spring Boot");
+        assertThat(response.content()).isEqualTo("РЕЗЮМЕ:\nSpring Boot");
+        assertThat(response.evalCount()).isEqualTo(42);
+        
+        RecordedRequest recorded = mockWebServer.takeRequest();
+        assertThat(recorded.getPath()).isEqualTo("/api/chat");
+        String requestBody = recorded.getBody().readUtf8();
+        assertThat(requestBody).contains("\"stream\":true");
+        // Потоковый запрос остается текстовым и в структурированном режиме
+        assertThat(requestBody).doesNotContain("\"format\"");
+    }
+    
+    @Test
+    public void testStreamRequest_TruncatedStreamThrows() {
+        // Подготовка - соединение закрывается между строками NDJSON до фрагмента done=true
+        String ndjson = """
+                {"model":"llama2-test","message":{"role":"assistant","content":"РЕЗЮМЕ:\\n"},"done":false}
+                {"model":"llama2-test","message":{"role":"assistant","content":"Spring"},"done":false}
+                """;
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/x-ndjson")
+                .setBody(ndjson));
+        
+        List<String> tokens = new ArrayList<>();
+        
+        // Выполнение и проверка - обрезанный ответ не возвращается как успешный
+        assertThatThrownBy(() -> ollamaClient.streamRequest("Spring Boot", "ru", tokens::add))
+                .isInstanceOf(AIServiceException.class)
+                .hasMessageContaining("оборвался");
+        assertThat(tokens).containsExactly("РЕЗЮМЕ:\n", "Spring");
+    }
+    
+    @Test
+    public void testSendRequestAsync_ParsesResponse() throws Exception {
+        // Подготовка - обычный (непотоковый) ответ /api/chat
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody("{\"message\":{\"role\":\"assistant\",\"content\":\"РЕЗЮМЕ:\\nТест\"},\"done\":true}"));
+        
+        // Выполнение
+        AIResponse response = ollamaClient.sendRequestAsync("Spring Boot", "ru").get(5, TimeUnit.SECONDS);
+        
+        // Проверка
+        assertThat(response.content()).isEqualTo("РЕЗЮМЕ:\nТест");
+        String requestBody = mockWebServer.takeRequest().getBody().readUtf8();
+        assertThat(requestBody).contains("\"stream\":false");
+        assertThat(requestBody).contains("\"keep_alive\":\"10m\"");
+        assertThat(requestBody).contains("\"format\":{").contains("\"keyConcepts\"");
+    }
+    
+    @Test
+    public void testPostChat_DecodesTimingsAndSkipsUnknownFields() {
+        // Подготовка - ответ с вложенными полями, которые клиенту не нужны
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody("""
+                        {"model":"llama2-test","created_at":"2024-01-01T00:00:00Z",
+                         "message":{"role":"assistant","content":"РЕЗЮМЕ:\\nТест","images":null,
+                                    "tool_calls":[{"function":{"name":"x","arguments":{"a":[1,2]}}}]},
+                         "context":[1,2,3],"done":true,"done_reason":"stop",
+                         "total_duration":5000000000,"load_duration":2000000,
+                         "prompt_eval_count":26,"prompt_eval_duration":130000000,
+                         "eval_count":290,"eval_duration":2000000000}
+                        """));
+        
+        // Выполнение
+        AIResponse response = ollamaClient.postChat(mockWebServer.url("/api/chat").toString(), "Spring Boot", "ru");
+        
+        // Проверка
+        assertThat(response.content()).isEqualTo("РЕЗЮМЕ:\nТест");
+        assertThat(response.doneReason()).isEqualTo("stop");
+        assertThat(response.loadDuration()).isEqualTo(2_000_000L);
+        assertThat(response.promptEvalCount()).isEqualTo(26);
+        assertThat(response.evalCount()).isEqualTo(290);
+        assertThat(response.tokensPerSecond()).isEqualTo(145.0);
+    }
+    
+    @Test
+    public void testPostChat_ErrorFieldThrows() {
+        // Подготовка - Ollama сообщает об ошибке в теле успешного ответа
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody("{\"error\":\"model 'llama2-test' not found\"}"));
+        
+        // Выполнение и проверка
+        assertThatThrownBy(() -> ollamaClient.postChat(mockWebServer.url("/api/chat").toString(), "Spring Boot", "ru"))
+                .isInstanceOf(AIServiceException.class)
+                .hasMessageContaining("not found");
+    }
+    
+    @Test
+    public void testSendRequest_ServerErrorThrowsInsteadOfStubResponse() {
+        // Подготовка - Ollama возвращает ошибку
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500).setBody("model crashed"));
+        
+        // Выполнение и проверка - ошибка не подменяется ответом-заглушкой
+        assertThatThrownBy(() -> ollamaClient.sendRequest("Spring Boot", "ru"))
+                .isInstanceOf(AIServiceException.class)
+                .hasMessageContaining("Ollama API");
+    }
+    
+    @Test
+    public void testSendRequestAsync_ServerErrorCompletesExceptionally() {
+        // Подготовка - Ollama возвращает ошибку
+        mockWebServer.enqueue(new MockResponse().setResponseCode(500).setBody("model crashed"));
+        
+        // Выполнение и проверка
+        assertThatThrownBy(() -> ollamaClient.sendRequestAsync("Spring Boot", "ru").get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(AIServiceException.class);
+    }
+    
+    @Test
+    public void testSendRequestAsync_ReusesPooledConnection() throws Exception {
+        // Подготовка - два последовательных ответа /api/chat
+        for (int i = 0; i < 2; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .setBody("{\"message\":{\"role\":\"assistant\",\"content\":\"РЕЗЮМЕ:\\nТест\"},\"done\":true}"));
+        }
+        
+        // Выполнение
+        ollamaClient.sendRequestAsync("Spring Boot", "ru").get(5, TimeUnit.SECONDS);
+        ollamaClient.sendRequestAsync("Spring Boot", "ru").get(5, TimeUnit.SECONDS);
+        
+        // Проверка - второй запрос идет по тому же соединению, которое затем возвращается в пул
+        assertThat(mockWebServer.takeRequest().getSequenceNumber()).isZero();
+        assertThat(mockWebServer.takeRequest().getSequenceNumber()).isEqualTo(1);
+        // Соединение освобождается после обратного вызова, завершившего future
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (connectionManager.getTotalStats().getLeased() > 0 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(connectionManager.getTotalStats().getLeased()).isZero();
+        assertThat(connectionManager.getTotalStats().getAvailable()).isEqualTo(1);
+    }
+    
+    @Test
+    public void testEmbedAsync_ReadsFirstVector() throws Exception {
+        // Подготовка - ответ /api/embed с пакетом из двух векторов
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody("""
+                        {"model":"nomic-embed-text","embeddings":[[0.5,-1.25,3],[9,9,9]],
+                         "total_duration":14143917,"load_duration":1019500,"prompt_eval_count":8}
+                        """));
+        
+        // Выполнение
+        float[] vector = ollamaClient.embedAsync("spring boot caching").get(5, TimeUnit.SECONDS);
+        
+        // Проверка
+        assertThat(vector).containsExactly(0.5f, -1.25f, 3f);
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getPath()).endsWith("/api/embed");
+        assertThat(request.getBody().readUtf8())
+                .contains("\"model\":\"nomic-embed-text\"")
+                .contains("\"input\":\"spring boot caching\"");
+    }
+    
+    @Test
+    public void testEmbedAsync_ModelNotFoundCompletesExceptionally() {
+        // Подготовка
+        mockWebServer.enqueue(new MockResponse()
+                .setResponseCode(404)
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody("{\"error\":\"model \\\"nomic-embed-text\\\" not found\"}"));
+        
+        // Выполнение и проверка
+        assertThatThrownBy(() -> ollamaClient.embedAsync("spring boot").get(5, TimeUnit.SECONDS))
+                .hasCauseInstanceOf(AIServiceException.class)
+                .hasMessageContaining("404");
+    }
+}
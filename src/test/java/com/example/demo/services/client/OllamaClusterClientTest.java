@@ -0,0 +1,243 @@
+package com.example.demo.services.client;
+
+import com.example.demo.exceptions.AIServiceException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Тесты балансировки OllamaClusterClient на нескольких локальных MockWebServer
+ */
+public class OllamaClusterClientTest {
+
+    private MockWebServer fastNode;
+    private MockWebServer slowNode;
+    private OllamaClient ollamaClient;
+    private SimpleMeterRegistry meterRegistry;
+    private CloseableHttpAsyncClient httpClient;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        fastNode = new MockWebServer();
+        slowNode = new MockWebServer();
+        fastNode.start();
+        slowNode.start();
+        httpClient = HttpAsyncClients.createDefault();
+        httpClient.start();
+
+        ollamaClient = new OllamaClient(new RestTemplate(), httpClient, new ObjectMapper(),
+                mock(OllamaHealthProber.class), mock(OllamaModelWarmer.class));
+        ReflectionTestUtils.setField(ollamaClient, "model", "llama2-test");
+        ReflectionTestUtils.setField(ollamaClient, "apiTimeout", 5000L);
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        fastNode.shutdown();
+        slowNode.shutdown();
+        httpClient.close();
+    }
+
+    @Test
+    public void testRoutesToNodeWithHigherThroughput() {
+        // Подготовка - быстрый узел генерирует 100 токенов/с, медленный 10 токенов/с
+        fastNode.setDispatcher(chatResponse(100, 1_000_000_000L));
+        slowNode.setDispatcher(chatResponse(10, 1_000_000_000L));
+        OllamaClusterClient cluster = cluster(3, fastNode, slowNode);
+
+        // Первые запросы собирают замеры скорости с обоих узлов
+        while (fastNode.getRequestCount() == 0 || slowNode.getRequestCount() == 0) {
+            cluster.sendRequest("Spring Boot", "ru");
+        }
+        int slowBefore = slowNode.getRequestCount();
+
+        // Выполнение
+        for (int i = 0; i < 5; i++) {
+            cluster.sendRequest("Spring Boot", "ru");
+        }
+
+        // Проверка - при равной загрузке выбирается более быстрый узел
+        assertThat(slowNode.getRequestCount()).isEqualTo(slowBefore);
+        assertThat(cluster.getNodes().get(0).getThroughput()).isEqualTo(100.0);
+        assertThat(meterRegistry.get("ollama.node.throughput").tag("node", cluster.getNodes().get(1).getBaseUrl())
+                .gauge().value()).isEqualTo(10.0);
+    }
+
+    @Test
+    public void testFailingNodeIsEjectedAndRequestsFailOver() throws Exception {
+        // Подготовка - один из узлов всегда возвращает ошибку
+        fastNode.setDispatcher(chatResponse(50, 1_000_000_000L));
+        slowNode.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                return new MockResponse().setResponseCode(500).setBody("{\"error\":\"model crashed\"}");
+            }
+        });
+        OllamaClusterClient cluster = cluster(1, fastNode, slowNode);
+
+        // Выполнение - каждый запрос успешен благодаря повтору на исправном узле.
+        // Пока скорость узлов одинакова, узел выбирается случайно: ждем первого обращения к неисправному
+        for (int i = 0; i < 100 && slowNode.getRequestCount() == 0; i++) {
+            assertThat(cluster.sendRequestAsync("Spring Boot", "ru").get(5, TimeUnit.SECONDS).content()).isNotNull();
+        }
+        int fastBefore = fastNode.getRequestCount();
+        for (int i = 0; i < 10; i++) {
+            assertThat(cluster.sendRequestAsync("Spring Boot", "ru").get(5, TimeUnit.SECONDS).content()).isNotNull();
+        }
+
+        // Проверка - неисправный узел исключен после ошибки и больше не получает запросов
+        OllamaNode failing = cluster.getNodes().get(1);
+        long now = cluster.currentTimeMillis();
+        assertThat(failing.getState(now)).isEqualTo(OllamaNode.State.EJECTED);
+        assertThat(slowNode.getRequestCount()).isEqualTo(1);
+        assertThat(fastNode.getRequestCount()).isEqualTo(fastBefore + 10);
+        assertThat(cluster.isAvailable()).isTrue();
+        assertThat(meterRegistry.get("ollama.node.available").tag("node", failing.getBaseUrl()).gauge().value())
+                .isZero();
+    }
+
+    @Test
+    public void testAllNodesEjected() {
+        // Подготовка - оба узла недоступны
+        Dispatcher failing = new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                return new MockResponse().setResponseCode(503);
+            }
+        };
+        fastNode.setDispatcher(failing);
+        slowNode.setDispatcher(failing);
+        OllamaClusterClient cluster = cluster(1, fastNode, slowNode);
+
+        // Выполнение и проверка
+        assertThatThrownBy(() -> cluster.sendRequest("Spring Boot", "ru")).isInstanceOf(AIServiceException.class);
+        assertThat(cluster.isAvailable()).isFalse();
+        assertThatThrownBy(() -> cluster.sendRequest("Spring Boot", "ru"))
+                .isInstanceOf(AIServiceException.class)
+                .hasMessageContaining("Нет доступных узлов");
+    }
+
+    @Test
+    public void testEmbeddingFailuresDoNotEjectNode() throws Exception {
+        // Подготовка - на медленном узле нет модели эмбеддингов, но генерация работает
+        slowNode.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                if (request.getPath().endsWith("/api/embed")) {
+                    return new MockResponse().setResponseCode(404).setBody("{\"error\":\"model not found\"}");
+                }
+                return chatMockResponse(50, 1_000_000_000L);
+            }
+        });
+        fastNode.setDispatcher(new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                if (request.getPath().endsWith("/api/embed")) {
+                    return new MockResponse().setResponseCode(200).setHeader("Content-Type", "application/json")
+                            .setBody("{\"embeddings\":[[0.1,0.2,0.3]]}");
+                }
+                return chatMockResponse(50, 1_000_000_000L);
+            }
+        });
+        ReflectionTestUtils.setField(ollamaClient, "embeddingModel", "nomic-embed-text");
+        ReflectionTestUtils.setField(ollamaClient, "keepAlive", "30m");
+        OllamaClusterClient cluster = cluster(1, fastNode, slowNode);
+        OllamaNode noEmbeddings = cluster.getNodes().get(1);
+
+        // Выполнение - узел выбирается случайно, пока у него нет ошибок эмбеддингов
+        for (int i = 0; i < 100 && noEmbeddings.getEmbedFailures() == 0; i++) {
+            assertThatCode(() -> cluster.embedAsync("Spring Boot").exceptionally(e -> null).get(5, TimeUnit.SECONDS))
+                    .doesNotThrowAnyException();
+        }
+        long slowEmbedsBefore = slowNode.getRequestCount();
+        for (int i = 0; i < 5; i++) {
+            assertThat(cluster.embedAsync("Spring Boot").get(5, TimeUnit.SECONDS)).hasSize(3);
+        }
+
+        // Проверка - узел не исключен, слоты не заняты, эмбеддинги идут на узел с моделью
+        long now = cluster.currentTimeMillis();
+        assertThat(noEmbeddings.getEmbedFailures()).isEqualTo(1);
+        assertThat(noEmbeddings.getState(now)).isEqualTo(OllamaNode.State.HEALTHY);
+        assertThat(noEmbeddings.getConsecutiveFailures()).isZero();
+        assertThat(noEmbeddings.getOutstanding()).isZero();
+        assertThat(slowNode.getRequestCount()).isEqualTo(slowEmbedsBefore);
+        assertThat(meterRegistry.get("ollama.node.embeddings").tag("node", noEmbeddings.getBaseUrl())
+                .tag("outcome", "failure").counter().count()).isEqualTo(1.0);
+        assertThat(cluster.sendRequest("Spring Boot", "ru").content()).isNotNull();
+    }
+
+    @Test
+    public void testEmbeddingSuccessDoesNotResetChatFailures() {
+        // Подготовка - генерация на узле сломана, эмбеддинги работают
+        OllamaNode node = new OllamaNode("http://localhost:11434", 3, Duration.ofMinutes(1), Duration.ofMinutes(5));
+        long now = System.currentTimeMillis();
+        node.tryAcquire(now);
+        node.releaseFailure(now);
+        node.tryAcquire(now);
+        node.releaseFailure(now);
+
+        // Выполнение
+        node.recordEmbedding(true);
+        node.tryAcquire(now);
+        boolean ejected = node.releaseFailure(now);
+
+        // Проверка - третья ошибка генерации подряд исключает узел
+        assertThat(ejected).isTrue();
+        assertThat(node.getState(now)).isEqualTo(OllamaNode.State.EJECTED);
+        assertThat(node.getEmbedSuccesses()).isEqualTo(1);
+    }
+
+    private OllamaClusterClient cluster(int ejectAfterFailures, MockWebServer... servers) {
+        String[] urls = new String[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            urls[i] = servers[i].url("/").toString();
+        }
+        return new OllamaClusterClient(ollamaClient, meterRegistry, urls, ejectAfterFailures,
+                Duration.ofMinutes(1), Duration.ofMinutes(5), 2, Clock.systemUTC());
+    }
+
+    private static Dispatcher chatResponse(int evalCount, long evalDurationNanos) {
+        return new Dispatcher() {
+            @NotNull
+            @Override
+            public MockResponse dispatch(@NotNull RecordedRequest request) {
+                return chatMockResponse(evalCount, evalDurationNanos);
+            }
+        };
+    }
+
+    private static MockResponse chatMockResponse(int evalCount, long evalDurationNanos) {
+        String body = "{\"message\":{\"role\":\"assistant\",\"content\":\"РЕЗЮМЕ:\\nТест\"},\"done\":true,"
+                + "\"eval_count\":" + evalCount + ",\"eval_duration\":" + evalDurationNanos + "}";
+        return new MockResponse()
+                .setResponseCode(200)
+                .setHeader("Content-Type", "application/json")
+                .setBody(body);
+    }
+}
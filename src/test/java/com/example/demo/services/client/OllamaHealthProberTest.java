@@ -0,0 +1,139 @@
+package com.example.demo.services.client;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class OllamaHealthProberTest {
+
+    private static final String TAGS_WITH_MODEL = "{\"models\":[{\"name\":\"llama2-test\"},{\"name\":\"mistral\"}]}";
+
+    private MockWebServer mockWebServer;
+    private TaskScheduler taskScheduler;
+    private OllamaHealthProber prober;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+
+        taskScheduler = mock(TaskScheduler.class);
+        prober = new OllamaHealthProber(new RestTemplate(), taskScheduler);
+        ReflectionTestUtils.setField(prober, "enabled", true);
+        ReflectionTestUtils.setField(prober, "baseUrl", mockWebServer.url("").toString().replaceAll("/$", ""));
+        ReflectionTestUtils.setField(prober, "model", "llama2-test");
+        ReflectionTestUtils.setField(prober, "interval", Duration.ofSeconds(30));
+        ReflectionTestUtils.setField(prober, "initialBackoff", Duration.ofSeconds(2));
+        ReflectionTestUtils.setField(prober, "maxBackoff", Duration.ofSeconds(60));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testProbeNow_ModelInstalled_SnapshotHealthy() {
+        // Подготовка
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody(TAGS_WITH_MODEL));
+
+        // Выполнение
+        OllamaHealthSnapshot snapshot = prober.probeNow();
+
+        // Проверка
+        assertThat(snapshot.isHealthy()).isTrue();
+        assertThat(snapshot.consecutiveFailures()).isZero();
+        assertThat(snapshot.checkedAt()).isNotNull();
+        assertThat(prober.getSnapshot()).isSameAs(snapshot);
+        assertThat(prober.nextDelay(snapshot)).isEqualTo(Duration.ofSeconds(30));
+    }
+
+    @Test
+    public void testProbeNow_ModelMissing_ApiAvailableButUnhealthy() {
+        // Подготовка
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody("{\"models\":[{\"name\":\"mistral\"}]}"));
+
+        // Выполнение
+        OllamaHealthSnapshot snapshot = prober.probeNow();
+
+        // Проверка
+        assertThat(snapshot.apiAvailable()).isTrue();
+        assertThat(snapshot.modelAvailable()).isFalse();
+        assertThat(snapshot.error()).contains("llama2-test");
+    }
+
+    @Test
+    public void testProbeNow_RepeatedFailures_BackoffGrowsUpToMaximum() throws IOException {
+        // Подготовка - сервер остановлен, подключение невозможно
+        mockWebServer.shutdown();
+
+        // Выполнение
+        OllamaHealthSnapshot first = prober.probeNow();
+        OllamaHealthSnapshot second = prober.probeNow();
+        OllamaHealthSnapshot third = prober.probeNow();
+
+        // Проверка - откат 2с, 4с, 8с с разбросом ±20%
+        assertThat(third.apiAvailable()).isFalse();
+        assertThat(third.consecutiveFailures()).isEqualTo(3);
+        assertThat(prober.nextDelay(first).toMillis()).isBetween(1600L, 2400L);
+        assertThat(prober.nextDelay(second).toMillis()).isBetween(3200L, 4800L);
+        assertThat(prober.nextDelay(third).toMillis()).isBetween(6400L, 9600L);
+
+        OllamaHealthSnapshot longOutage = new OllamaHealthSnapshot(false, false, Instant.now(), 30, "down");
+        assertThat(prober.nextDelay(longOutage).toMillis()).isBetween(48000L, 72000L);
+    }
+
+    @Test
+    public void testReportFailure_ConnectError_MarksUnavailableAndReschedules() {
+        // Подготовка
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody(TAGS_WITH_MODEL));
+        prober.probeNow();
+
+        // Выполнение
+        prober.reportFailure(new RuntimeException("wrapped", new ConnectException("Connection refused")));
+        prober.reportFailure(new RuntimeException("wrapped", new ConnectException("Connection refused")));
+
+        // Проверка - снимок недоступен, перепроверка запланирована один раз
+        assertThat(prober.getSnapshot().isHealthy()).isFalse();
+        assertThat(prober.getSnapshot().consecutiveFailures()).isEqualTo(1);
+        verify(taskScheduler, times(1)).schedule(any(Runnable.class), any(Instant.class));
+    }
+
+    @Test
+    public void testReportFailure_NonConnectError_KeepsSnapshot() {
+        // Подготовка
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody(TAGS_WITH_MODEL));
+        prober.probeNow();
+
+        // Выполнение
+        prober.reportFailure(new IllegalStateException("model error"));
+
+        // Проверка
+        assertThat(prober.getSnapshot().isHealthy()).isTrue();
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.demo.services.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.http.HttpHeaders;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class OllamaModelWarmerTest {
+
+    private MockWebServer mockWebServer;
+    private SimpleMeterRegistry meterRegistry;
+    private OllamaModelWarmer warmer;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        mockWebServer = new MockWebServer();
+        mockWebServer.start();
+        meterRegistry = new SimpleMeterRegistry();
+
+        warmer = new OllamaModelWarmer(new RestTemplate(), mock(TaskScheduler.class), meterRegistry);
+        ReflectionTestUtils.setField(warmer, "enabled", true);
+        ReflectionTestUtils.setField(warmer, "model", "llama2-test");
+        ReflectionTestUtils.setField(warmer, "keepAlive", "10m");
+        ReflectionTestUtils.setField(warmer, "baseUrl", mockWebServer.url("").toString().replaceAll("/$", ""));
+        ReflectionTestUtils.setField(warmer, "clusterNodes", new String[0]);
+        ReflectionTestUtils.setField(warmer, "pingInterval", Duration.ofMinutes(5));
+        ReflectionTestUtils.setField(warmer, "idleTimeout", Duration.ofMinutes(60));
+        ReflectionTestUtils.setField(warmer, "coldLoadThreshold", Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        mockWebServer.shutdown();
+    }
+
+    @Test
+    public void testWarmUp_PreloadsModelAndRecordsColdLoad() throws InterruptedException {
+        // Подготовка - первая загрузка модели занимает 12 секунд
+        mockWebServer.enqueue(new MockResponse()
+                .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .setBody("{\"model\":\"llama2-test\",\"response\":\"\",\"done\":true,\"load_duration\":12000000000}"));
+        OllamaWarmupHealthIndicator indicator = new OllamaWarmupHealthIndicator(warmer);
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+
+        // Выполнение
+        boolean warmedUp = warmer.warmUp();
+
+        // Проверка
+        assertThat(warmedUp).isTrue();
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+
+        RecordedRequest request = mockWebServer.takeRequest();
+        assertThat(request.getPath()).isEqualTo("/api/generate");
+        assertThat(request.getBody().readUtf8()).contains("\"keep_alive\":\"10m\"").contains("\"model\":\"llama2-test\"");
+
+        assertThat(meterRegistry.get("ollama.model.load_duration").tag("source", "warmup").timer()
+                .totalTime(TimeUnit.SECONDS)).isEqualTo(12.0);
+        assertThat(meterRegistry.get("ollama.model.cold_loads").tag("source", "warmup").counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    public void testWarmUp_OllamaUnavailable_NotReady() throws IOException {
+        // Подготовка
+        mockWebServer.shutdown();
+
+        // Выполнение
+        boolean warmedUp = warmer.warmUp();
+
+        // Проверка
+        assertThat(warmedUp).isFalse();
+        assertThat(warmer.isWarmedUp()).isFalse();
+        assertThat(new OllamaWarmupHealthIndicator(warmer).health().getDetails()).containsKey("error");
+    }
+
+    @Test
+    public void testWarmUp_ClusterReadyWhenOneNodeLoadedAndRetriesOthers() throws IOException {
+        // Подготовка - второй узел кластера недоступен
+        MockWebServer deadNode = new MockWebServer();
+        deadNode.start();
+        String deadUrl = deadNode.url("").toString().replaceAll("/$", "");
+        deadNode.shutdown();
+        String liveUrl = mockWebServer.url("").toString().replaceAll("/$", "");
+        ReflectionTestUtils.setField(warmer, "clusterEnabled", true);
+        ReflectionTestUtils.setField(warmer, "clusterNodes", new String[]{liveUrl, deadUrl});
+        for (int i = 0; i < 3; i++) {
+            mockWebServer.enqueue(new MockResponse()
+                    .setHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                    .setBody("{\"model\":\"llama2-test\",\"response\":\"\",\"done\":true}"));
+        }
+        OllamaWarmupHealthIndicator indicator = new OllamaWarmupHealthIndicator(warmer);
+
+        // Выполнение
+        boolean warmedUp = warmer.warmUp();
+        warmer.tick();
+
+        // Проверка - приложение готово, недоступный узел повторяется в фоне, загруженный - нет
+        assertThat(warmedUp).isTrue();
+        assertThat(indicator.health().getStatus()).isEqualTo(Status.UP);
+        assertThat(indicator.health().getDetails()).containsEntry("coldNodes", List.of(deadUrl));
+        assertThat(warmer.getColdNodes()).containsExactly(deadUrl);
+        assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testOnModelResponse_WarmModel_RecordsLoadWithoutColdLoad() {
+        // Выполнение
+        warmer.onModelResponse(new AIResponse("llama2-test", "", true, "stop", null, 0, 3_000_000L, 0, 0, 0, 0));
+
+        // Проверка
+        assertThat(meterRegistry.get("ollama.model.load_duration").tag("source", "request").timer().count()).isEqualTo(1);
+        assertThat(meterRegistry.find("ollama.model.cold_loads").counter()).isNull();
+    }
+
+    @Test
+    public void testShouldPing_OnlyWhileTrafficIsRecentAndModelIdle() {
+        // Без трафика пинги не нужны
+        assertThat(warmer.shouldPing(Instant.now())).isFalse();
+
+        // Подготовка - пользовательский запрос только что обработан
+        warmer.onModelResponse(AIResponse.ofContent(""));
+        Instant now = Instant.now();
+
+        // Проверка
+        assertThat(warmer.shouldPing(now.plusSeconds(60))).isFalse();
+        assertThat(warmer.shouldPing(now.plus(Duration.ofMinutes(6)))).isTrue();
+        assertThat(warmer.shouldPing(now.plus(Duration.ofMinutes(61)))).isFalse();
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.demo.services.impl;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Тесты для IncrementalInsightParser
+ */
+public class IncrementalInsightParserTest {
+
+    private static final String TOPIC = "Spring Boot";
+
+    @Test
+    public void testCorpus_PartialsMatchFinalParse() {
+        // В de заголовок «ИСТОЧНИКИ:» без «РЕКОМЕНДУЕМЫЕ» не завершает концепции при итоговом разборе
+        for (String language : List.of("ru", "es", "fr")) {
+            // Подготовка
+            String text = InsightCorpus.load(language);
+            List<InsightResponse> partials = new ArrayList<>();
+
+            // Выполнение
+            IncrementalInsightParser parser = new IncrementalInsightParser(TOPIC, partials::add);
+            parser.accept(text);
+            parser.finish();
+
+            // Проверка - частичные результаты совпадают с итоговым разбором полного текста
+            InsightResponse expected = InsightTextParser.parse(text, TOPIC).insight();
+            assertThat(partials).as(language).allMatch(partial -> TOPIC.equals(partial.getTopic()));
+            assertThat(summaries(partials)).as(language).containsExactly(expected.getSummary());
+            assertThat(concepts(partials)).as(language).isEqualTo(expected.getKeyConcepts());
+            assertThat(recommendations(partials)).as(language).isEqualTo(expected.getRecommendations());
+        }
+    }
+
+    @Test
+    public void testRandomChunks_EmitSamePartials() {
+        Random random = new Random(7);
+        for (String language : InsightCorpus.LANGUAGES) {
+            for (String text : List.of(InsightCorpus.load(language), InsightCorpus.load(language).replace("\n", "\r\n"))) {
+                // Подготовка - эталон: весь текст одним фрагментом
+                List<InsightResponse> expected = new ArrayList<>();
+                IncrementalInsightParser whole = new IncrementalInsightParser(TOPIC, expected::add);
+                whole.accept(text);
+                whole.finish();
+
+                // Выполнение - тот же текст фрагментами по 1-8 символов
+                List<InsightResponse> actual = new ArrayList<>();
+                IncrementalInsightParser chunked = new IncrementalInsightParser(TOPIC, actual::add);
+                int position = 0;
+                while (position < text.length()) {
+                    int end = Math.min(text.length(), position + 1 + random.nextInt(8));
+                    chunked.accept(text.substring(position, end));
+                    position = end;
+                }
+                chunked.finish();
+
+                // Проверка
+                assertThat(actual).as(language)
+                        .usingRecursiveFieldByFieldElementComparatorIgnoringFields("timestamp")
+                        .isEqualTo(expected);
+            }
+        }
+    }
+
+    @Test
+    public void testSummary_EmittedAsSoonAsConceptsHeaderArrives() {
+        // Подготовка
+        List<InsightResponse> partials = new ArrayList<>();
+        IncrementalInsightParser parser = new IncrementalInsightParser(TOPIC, partials::add);
+
+        // Выполнение - генерация еще не дошла до концепций
+        parser.accept("Summary: Spring Boot упрощает\nсоздание приложений.\n\n## Key Concepts\n- Автоконфиг");
+
+        // Проверка
+        assertThat(summaries(partials)).containsExactly("Spring Boot упрощает\nсоздание приложений.");
+        assertThat(concepts(partials)).isEmpty();
+
+        // Выполнение - концепция завершается переводом строки
+        parser.accept("урация\n");
+
+        // Проверка
+        assertThat(concepts(partials)).containsExactly("Автоконфигурация");
+    }
+
+    @Test
+    public void testHeaderWordsInsideText_DoNotSwitchSection() {
+        // Подготовка
+        List<InsightResponse> partials = new ArrayList<>();
+        IncrementalInsightParser parser = new IncrementalInsightParser(TOPIC, partials::add);
+
+        // Выполнение
+        parser.accept("SUMMARY:\nOperators manage custom resources and open sources.\nKEY CONCEPTS:\n1. Pods\n");
+        parser.accept("Sources:\n- Docs: https://kubernetes.io/docs\n");
+        parser.finish();
+
+        // Проверка
+        assertThat(summaries(partials)).containsExactly("Operators manage custom resources and open sources.");
+        assertThat(concepts(partials)).containsExactly("Pods");
+        assertThat(recommendations(partials)).containsExactly(new Recommendation("Docs", "https://kubernetes.io/docs"));
+    }
+
+    @Test
+    public void testUnfinishedSummary_EmittedOnFinish() {
+        // Подготовка
+        List<InsightResponse> partials = new ArrayList<>();
+        IncrementalInsightParser parser = new IncrementalInsightParser(TOPIC, partials::add);
+
+        // Выполнение
+        parser.accept("РЕЗЮМЕ: Генерация оборвалась");
+
+        // Проверка
+        assertThat(partials).isEmpty();
+        parser.finish();
+        assertThat(summaries(partials)).containsExactly("Генерация оборвалась");
+    }
+
+    private static List<String> summaries(List<InsightResponse> partials) {
+        return partials.stream().map(InsightResponse::getSummary).filter(Objects::nonNull).toList();
+    }
+
+    private static List<String> concepts(List<InsightResponse> partials) {
+        return partials.stream().filter(partial -> partial.getKeyConcepts() != null)
+                .flatMap(partial -> partial.getKeyConcepts().stream()).toList();
+    }
+
+    private static List<Recommendation> recommendations(List<InsightResponse> partials) {
+        return partials.stream().filter(partial -> partial.getRecommendations() != null)
+                .flatMap(partial -> partial.getRecommendations().stream()).toList();
+    }
+}
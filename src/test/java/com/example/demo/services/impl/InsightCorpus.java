@@ -0,0 +1,48 @@
+package com.example.demo.services.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Корпус типичных ответов модели (ru, en, es, fr, de) для тестов и бенчмарков разбора
+ */
+final class InsightCorpus {
+
+    static final List<String> LANGUAGES = List.of("ru", "en", "es", "fr", "de");
+
+    private static final List<String> HEADER_WORDS = List.of(
+            "резюме", "концепци", "источники", "summary", "concepts", "sources");
+
+    private InsightCorpus() {
+    }
+
+    static String load(String language) {
+        try (InputStream in = InsightCorpus.class.getResourceAsStream("/insight-corpus/" + language + ".txt")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Нет корпуса для языка " + language);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Увеличивает ответ в {@code factor} раз: каждая непустая строка, кроме заголовков разделов, повторяется
+     */
+    static String scale(String text, int factor) {
+        StringBuilder result = new StringBuilder(text.length() * factor);
+        for (String line : text.split("\n", -1)) {
+            boolean header = HEADER_WORDS.stream().anyMatch(line.toLowerCase(Locale.ROOT)::contains);
+            int copies = line.isBlank() || header ? 1 : factor;
+            for (int i = 0; i < copies; i++) {
+                result.append(line).append('\n');
+            }
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.demo.services.impl;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Проверка эквивалентности InsightTextParser прежнему разбору регулярными выражениями
+ */
+public class InsightTextParserTest {
+
+    private static final String TOPIC = "Spring Boot";
+
+    /** Фрагменты, из которых собираются случайные ответы модели */
+    private static final List<String> FRAGMENTS = List.of(
+            "РЕЗЮМЕ:", "КРАТКОЕ РЕЗЮМЕ:", "Summary", "**SUMMARY:**", "summary:",
+            "КЛЮЧЕВЫЕ КОНЦЕПЦИИ:", "КЛЮЧЕВЫЕ КОНЦЕПЦИИ", "КЛЮЧЕВЫЕ КОНЦЕПЦИО:", "Key Concepts:", "key concepts",
+            "РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ:", "ИСТОЧНИКИ:", "Recommended Sources:", "SOURCES", "open sources",
+            "- ", "* ", "• ", "1. ", "12) ", "a) ", "B. ", "Т. ", "Авто. ", "-", "1.5 ",
+            "Текст концепции", "Docs: https://docs.spring.io/a.", "Guide - http://spring.io/guides,",
+            "[Baeldung](https://www.baeldung.com/x)", "[Ref][HTTPS://example.org/ref]", "(https://x.org/y)",
+            "https://www.", "https://www.site.org/path", "HTTP://UPPER.ORG", "Книга без ссылки", "Title:-",
+            "[пусто]", "word", ":", " - ", "\"quoted\"", "https://a.b/c)]", "[https://a.b", "2. Title: ",
+            " ", "  ", "\t", "\n", "\n", "\n", "\r\n", "\n\n");
+
+    @Test
+    public void testCorpus_MatchesRegexParser() {
+        for (String language : InsightCorpus.LANGUAGES) {
+            String text = InsightCorpus.load(language);
+            for (int factor : new int[]{1, 4, 16}) {
+                String scaled = InsightCorpus.scale(text, factor);
+                assertEquivalent(scaled);
+                assertEquivalent(scaled.replace("\n", "\r\n"));
+            }
+        }
+    }
+
+    @Test
+    public void testCorpus_ExtractsSections() {
+        // Подготовка
+        String text = InsightCorpus.load("ru");
+
+        // Выполнение
+        InsightTextParser.Result result = InsightTextParser.parse(text, TOPIC);
+
+        // Проверка
+        assertThat(result.sectionsFound()).isTrue();
+        assertThat(result.contentFound()).isTrue();
+        InsightResponse insight = result.insight();
+        assertThat(insight.getSummary()).startsWith("Spring Boot — это фреймворк на базе Spring")
+                .endsWith("через свойства и профили.");
+        assertThat(insight.getKeyConcepts()).hasSize(6)
+                .first().isEqualTo("**Автоконфигурация** — Spring Boot настраивает бины в зависимости от классов в classpath и заданных свойств.");
+        assertThat(insight.getRecommendations()).containsExactly(
+                new Recommendation("Официальная документация", "https://docs.spring.io/spring-boot/docs/current/reference/html/"),
+                new Recommendation("Spring Guides", "https://spring.io/guides"),
+                new Recommendation("Baeldung: Spring Boot", "https://www.baeldung.com/spring-boot"),
+                new Recommendation("Книга «Spring Boot в действии» (Крейг Уоллс)",
+                        "https://www.google.com/search?q=Spring+Boot+Книга+«Spring+Boot+в+действии»+Крейг+Уоллс"),
+                new Recommendation("Resource from github.com", "https://github.com/spring-projects/spring-boot"));
+    }
+
+    @Test
+    public void testNoSections_UsesPlaceholders() {
+        // Выполнение
+        InsightTextParser.Result result = InsightTextParser.parse("Модель ответила без разделов", TOPIC);
+
+        // Проверка
+        assertThat(result.sectionsFound()).isFalse();
+        assertThat(result.contentFound()).isFalse();
+        assertThat(result.insight().getSummary()).isEqualTo("Анализ темы: Spring Boot");
+        assertThat(result.insight().getKeyConcepts()).hasSize(3);
+        assertEquivalent("Модель ответила без разделов");
+    }
+
+    @Test
+    public void testRandomOutputs_MatchRegexParser() {
+        Random random = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            StringBuilder text = new StringBuilder();
+            int parts = 1 + random.nextInt(40);
+            for (int j = 0; j < parts; j++) {
+                text.append(FRAGMENTS.get(random.nextInt(FRAGMENTS.size())));
+            }
+            assertEquivalent(text.toString());
+        }
+    }
+
+    private static void assertEquivalent(String content) {
+        InsightResponse expected = LegacyInsightTextParser.parse(content, TOPIC);
+        InsightResponse actual = InsightTextParser.parse(content, TOPIC).insight();
+        assertThat(actual)
+                .as("Разбор текста:%n%s", content)
+                .usingRecursiveComparison()
+                .ignoringFields("timestamp")
+                .isEqualTo(expected);
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.demo.services.impl;
+
+import com.example.demo.dto.insight.InsightResponse;
+import com.example.demo.dto.insight.Recommendation;
+import com.example.demo.dto.insight.ResourceLink;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Прежний разбор ответа модели регулярными выражениями (AIServiceImpl.parseAIResponse до перехода
+ * на {@link InsightTextParser}). Сохранен без изменений как эталон для проверки эквивалентности
+ * и как базовая линия бенчмарков.
+ */
+final class LegacyInsightTextParser {
+
+    private LegacyInsightTextParser() {
+    }
+
+    /**
+     * Парсит содержимое ответа AI и преобразует в структурированный объект InsightResponse
+     */
+    static InsightResponse parse(String content, String topic) {
+        String summary = "";
+        List<String> keyConcepts = new ArrayList<>();
+        List<ResourceLink> resourceLinks = new ArrayList<>();
+        
+        // Паттерн для извлечения резюме, с более строгой обработкой заголовков секций
+        Pattern summaryPattern = Pattern.compile("(?i)(?:РЕЗЮМЕ|КРАТКОЕ РЕЗЮМЕ|SUMMARY):?\\s*([\\s\\S]*?)(?=\\s*(?:КЛЮЧЕВЫЕ КОНЦЕПЦИИ|KEY CONCEPTS):|\\s*(?:РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ|RECOMMENDED SOURCES):|$)");
+        Matcher summaryMatcher = summaryPattern.matcher(content);
+        
+        if (summaryMatcher.find()) {
+            summary = summaryMatcher.group(1).trim();
+            // Удаляем возможные заголовки "КЛЮЧЕВЫЕ КОНЦЕПЦИИ" внутри резюме
+            summary = summary.replaceAll("(?i)\\s*(?:КЛЮЧЕВЫЕ КОНЦЕПЦИИ|КЛЮЧЕВЫЕ КОНЦЕПЦИО|KEY CONCEPTS):?.*$", "");
+        }
+        
+        // Паттерн для извлечения ключевых концепций с поддержкой различных вариантов написания
+        Pattern conceptsPattern = Pattern.compile("(?i)(?:КЛЮЧЕВЫЕ КОНЦЕПЦИИ|КЛЮЧЕВЫЕ КОНЦЕПЦИО|KEY CONCEPTS):?\\s*([\\s\\S]*?)(?=\\s*(?:РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ|RECOMMENDED SOURCES):|$)");
+        Matcher conceptsMatcher = conceptsPattern.matcher(content);
+        
+        if (conceptsMatcher.find()) {
+            String conceptsBlock = conceptsMatcher.group(1).trim();
+            // Разбиваем блок концепций по маркерам списка (дефисы или нумерованные пункты)
+            // Ищем строки, начинающиеся с дефиса или с цифры, за которой следует точка или скобка
+            Pattern listItemPattern = Pattern.compile("(?m)^\\s*(?:(?:-|\\*|•|\\d+[\\.\\)]|[a-zA-Z][\\.\\)])|(?:[А-Я][а-я]*\\.)\\s+)(.+)$");
+            Matcher listItemMatcher = listItemPattern.matcher(conceptsBlock);
+            
+            while (listItemMatcher.find()) {
+                String conceptText = listItemMatcher.group(1).trim();
+                if (!conceptText.isEmpty()) {
+                    // Очищаем от потенциальных префиксов маркеров вложенных списков
+                    conceptText = conceptText.replaceAll("^\\s*(?:-|\\*|•|\\d+[\\.\\)]|[a-zA-Z][\\.\\)])\\s+", "");
+                    keyConcepts.add(conceptText);
+                }
+            }
+            
+            // Если шаблон не нашел никаких элементов списка, разбиваем по строкам
+            if (keyConcepts.isEmpty()) {
+                String[] lines = conceptsBlock.split("\\n");
+                for (String line : lines) {
+                    String trimmedLine = line.trim();
+                    if (!trimmedLine.isEmpty()) {
+                        // Удаляем возможные префиксы нумерации
+                        trimmedLine = trimmedLine.replaceAll("^\\s*(?:\\d+\\.\\s+|[a-zA-Z]\\.\\s+|-\\s+|\\*\\s+)", "");
+                        keyConcepts.add(trimmedLine);
+                    }
+                }
+            }
+        }
+        
+        // Паттерн для извлечения рекомендуемых источников с поддержкой различных вариантов написания
+        Pattern resourcesPattern = Pattern.compile("(?i)(?:РЕКОМЕНДУЕМЫЕ ИСТОЧНИКИ|RECOMMENDED SOURCES|ИСТОЧНИКИ|SOURCES):?\\s*([\\s\\S]*)$");
+        Matcher resourcesMatcher = resourcesPattern.matcher(content);
+        
+        if (resourcesMatcher.find()) {
+            String resourcesBlock = resourcesMatcher.group(1).trim();
+            // Разбиваем блок источников по маркерам списка (дефисы или нумерованные пункты)
+            // Ищем строки, начинающиеся с дефиса или с цифры, за которой следует точка
+            Pattern resourceItemPattern = Pattern.compile("(?m)^\\s*(?:(?:-|\\*|•|\\d+[\\.\\)]|[a-zA-Z][\\.\\)])\\s+)(.+)$");
+            Matcher resourceItemMatcher = resourceItemPattern.matcher(resourcesBlock);
+            
+            List<String> resourceLinesList = new ArrayList<>();
+            while (resourceItemMatcher.find()) {
+                resourceLinesList.add(resourceItemMatcher.group(1).trim());
+            }
+            
+            // Если шаблон не нашел никаких элементов списка, разбиваем по строкам
+            if (resourceLinesList.isEmpty()) {
+                String[] lines = resourcesBlock.split("\\n");
+                for (String line : lines) {
+                    String trimmedLine = line.trim();
+                    if (!trimmedLine.isEmpty()) {
+                        // Удаляем возможные префиксы нумерации
+                        trimmedLine = trimmedLine.replaceAll("^\\s*(?:\\d+\\.\\s+|[a-zA-Z]\\.\\s+|-\\s+|\\*\\s+)", "");
+                        resourceLinesList.add(trimmedLine);
+                    }
+                }
+            }
+            
+            String[] resourceLines = resourceLinesList.toArray(new String[0]);
+            
+            for (String line : resourceLines) {
+                String trimmedLine = line.trim();
+                if (!trimmedLine.isEmpty()) {
+                    // Пытаемся извлечь URL и заголовок из строки рекомендации
+                    String title;
+                    String url = "";
+                    
+                    // Попытка 1: Ищем URL в формате: Название: http://... или Название - http://...
+                    Pattern urlPattern1 = Pattern.compile("(?i)(.+?)(?::|\\s-\\s)\\s*(https?://\\S+)");
+                    Matcher urlMatcher1 = urlPattern1.matcher(trimmedLine);
+                    
+                    // Попытка 2: Ищем URL в формате: [Название](URL) или [Название][URL] или в квадратных скобках
+                    Pattern urlPattern2 = Pattern.compile("(?i)\\[([^\\]]+)\\](?:\\(|\\[)(https?://[^\\)\\]]+)(?:\\)|\\])");
+                    Matcher urlMatcher2 = urlPattern2.matcher(trimmedLine);
+                    
+                    // Попытка 3: Просто ищем URL в тексте
+                    Pattern urlPattern3 = Pattern.compile("(?i)(https?://\\S+)");
+                    Matcher urlMatcher3 = urlPattern3.matcher(trimmedLine);
+                    
+                    if (urlMatcher1.find()) {
+                        title = urlMatcher1.group(1).trim();
+                        url = urlMatcher1.group(2).trim();
+                        // Удаляем возможные скобки вокруг URL
+                        url = url.replaceAll("^\\[|\\]$|\\($|\\)$", "");
+                    } else if (urlMatcher2.find()) {
+                        title = urlMatcher2.group(1).trim();
+                        url = urlMatcher2.group(2).trim();
+                    } else if (urlMatcher3.find()) {
+                        // Если нашли только URL, используем текст до URL как название
+                        url = urlMatcher3.group(1);
+                        int urlStart = trimmedLine.indexOf(url);
+                        if (urlStart > 0) {
+                            title = trimmedLine.substring(0, urlStart).trim();
+                            // Удаляем двоеточие или дефис в конце заголовка
+                            title = title.replaceAll(":\\s*$|\\s*-\\s*$", "");
+                        } else {
+                            // Если URL в начале строки, пробуем получить название из домена
+                            String domain = url.replaceAll("^https?://(?:www\\.)?([^/]+).*$", "$1");
+                            title = "Resource from " + domain;
+                        }
+                    } else {
+                        // Если URL не найден, используем весь текст как название
+                        title = trimmedLine.trim();
+                        // Удаляем любые цифры с точкой в начале (например, "1.") и очищаем от номеров
+                        title = title.replaceAll("^\\d+\\.\\s+", "");
+                        // Создаем URL для поиска по теме и заголовку
+                        url = "https://www.google.com/search?q=" + topic.replace(" ", "+") + 
+                              "+" + title.replace(" ", "+");
+                    }
+                    
+                    // Очистка URL от любых остаточных квадратных скобок или круглых скобок
+                    url = url.replaceAll("\\[|\\]|\\(|\\)$", "");
+                    // Удаляем запятые или точки в конце URL
+                    url = url.replaceAll("[,.\"]$", "");
+                    
+                    resourceLinks.add(new ResourceLink(title, url));
+                }
+            }
+        }
+        
+        // Если не удалось извлечь резюме, используем тему как резюме
+        if (summary.isEmpty()) {
+            summary = "Анализ темы: " + topic;
+        }
+        
+        // Если не найдены ключевые концепции, добавляем заглушки
+        if (keyConcepts.isEmpty()) {
+            keyConcepts.add("Основные принципы " + topic);
+            keyConcepts.add("Практическое применение");
+            keyConcepts.add("Современные тренды и развитие");
+        }
+        
+        // Если не найдены источники, добавляем заглушки
+        if (resourceLinks.isEmpty()) {
+            resourceLinks.add(new ResourceLink("Руководство по " + topic, 
+                    "https://example.com/guides/" + topic.toLowerCase().replace(" ", "-")));
+            resourceLinks.add(new ResourceLink("Научные публикации", 
+                    "https://scholar.google.com/scholar?q=" + topic.replace(" ", "+")));
+        }
+        
+        List<Recommendation> recommendations = new ArrayList<>();
+        for (ResourceLink link : resourceLinks) {
+            recommendations.add(new Recommendation(link.getTitle(), link.getUrl()));
+        }
+        
+        return InsightResponse.builder()
+                .topic(topic)
+                .summary(summary)
+                .keyConcepts(keyConcepts)
+                .recommendations(recommendations)
+                .timestamp(Instant.now())
+                .build();
+    }
+}